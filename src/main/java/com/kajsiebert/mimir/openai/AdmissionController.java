@@ -0,0 +1,272 @@
+package com.kajsiebert.mimir.openai;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.kajsiebert.mimir.openai.rtp.RTPPacingEngine;
+import com.kajsiebert.mimir.openai.util.EventLoopContexts;
+import com.kajsiebert.mimir.openai.util.OptionsListener;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+
+/**
+ * Decides whether a new call is taken, so a crowd dialing in at once is turned away instead of
+ * degrading the calls already running.
+ *
+ * <p>A call is rejected when there are already as many calls as configured, in total or for its
+ * extension, or while the host is overloaded. Overload is measured every second: a probe timer on
+ * every event loop measures how late it fires, and the RTP pacing engine reports how late it ran
+ * its ticks. The host counts as overloaded only once {@link #OVERLOAD_WINDOWS} seconds in a row
+ * were over a limit, so a single GC pause does not turn callers away. A limit of 0 disables it, as
+ * all limits are by default. Once {@link #drain() draining}, no new call is taken.
+ */
+public class AdmissionController implements OptionsListener.LoadSource {
+  private static final Logger LOG = LoggerFactory.getLogger(AdmissionController.class);
+
+  static final long PROBE_INTERVAL_MS = 100;
+  static final long EVALUATION_INTERVAL_MS = 1000;
+
+  /** Consecutive evaluations over a limit before new calls are rejected. */
+  static final int OVERLOAD_WINDOWS = 3;
+
+  private final Vertx vertx;
+  private final RTPPacingEngine pacingEngine;
+  private final int eventLoops;
+  private final int maxCalls;
+  private final int maxCallsPerExtension;
+  private final long maxEventLoopLagNanos;
+  private final long maxPacingLatenessNanos;
+  private final int retryAfterSeconds;
+
+  private final Map<String, Integer> callsPerExtension = new HashMap<>();
+  private final AtomicLong maxLagNanos = new AtomicLong();
+  private final List<Long> timerIds = new ArrayList<>();
+  private int activeCalls = 0;
+  private int windowsOverLimit = 0; // Only touched by the evaluation timer
+  private volatile boolean overloaded = false;
+  private volatile boolean draining = false;
+
+  /**
+   * @param eventLoops number of event loops to probe for lag
+   * @param maxCalls most calls in total, or 0 for no limit
+   * @param maxCallsPerExtension most calls per extension, or 0 for no limit
+   * @param maxEventLoopLagMs event loop lag above which calls are rejected, or 0 not to measure it
+   * @param maxPacingLatenessMs RTP tick lateness above which calls are rejected, or 0 not to
+   *     measure it
+   * @param retryAfterSeconds how long rejected callers are told to wait before trying again
+   */
+  public AdmissionController(
+      Vertx vertx,
+      RTPPacingEngine pacingEngine,
+      int eventLoops,
+      int maxCalls,
+      int maxCallsPerExtension,
+      long maxEventLoopLagMs,
+      long maxPacingLatenessMs,
+      int retryAfterSeconds) {
+    this.vertx = vertx;
+    this.pacingEngine = pacingEngine;
+    this.eventLoops = eventLoops;
+    this.maxCalls = maxCalls;
+    this.maxCallsPerExtension = maxCallsPerExtension;
+    this.maxEventLoopLagNanos = TimeUnit.MILLISECONDS.toNanos(maxEventLoopLagMs);
+    this.maxPacingLatenessNanos = TimeUnit.MILLISECONDS.toNanos(maxPacingLatenessMs);
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  /** Starts measuring the load, if any load limit is configured. */
+  public void start() {
+    if (maxEventLoopLagNanos > 0) {
+      for (int i = 0; i < eventLoops; i++) {
+        startProbe(EventLoopContexts.newContext(vertx));
+      }
+    }
+    if (maxEventLoopLagNanos > 0 || maxPacingLatenessNanos > 0) {
+      addTimer(
+          vertx.setPeriodic(
+              EVALUATION_INTERVAL_MS,
+              id ->
+                  evaluate(
+                      maxLagNanos.getAndSet(0),
+                      pacingEngine != null ? pacingEngine.sampleMaxLatenessNanos() : 0)));
+    }
+  }
+
+  /** Measures how much later than scheduled the timers of one event loop fire. */
+  private void startProbe(Context context) {
+    context.runOnContext(
+        v -> {
+          long intervalNanos = TimeUnit.MILLISECONDS.toNanos(PROBE_INTERVAL_MS);
+          long[] last = {System.nanoTime()};
+          addTimer(
+              vertx.setPeriodic(
+                  PROBE_INTERVAL_MS,
+                  id -> {
+                    long now = System.nanoTime();
+                    long lag = now - last[0] - intervalNanos;
+                    last[0] = now;
+                    maxLagNanos.accumulateAndGet(lag, Math::max);
+                  }));
+        });
+  }
+
+  private synchronized void addTimer(long timerId) {
+    timerIds.add(timerId);
+  }
+
+  /**
+   * Updates whether the host is overloaded from the worst lag and lateness of the last window. It
+   * becomes overloaded after {@link #OVERLOAD_WINDOWS} windows over a limit in a row, and recovers
+   * with the first window within the limits.
+   */
+  void evaluate(long lagNanos, long latenessNanos) {
+    boolean lagging = maxEventLoopLagNanos > 0 && lagNanos > maxEventLoopLagNanos;
+    boolean late = maxPacingLatenessNanos > 0 && latenessNanos > maxPacingLatenessNanos;
+    windowsOverLimit = lagging || late ? windowsOverLimit + 1 : 0;
+    boolean wasOverloaded = overloaded;
+    overloaded = windowsOverLimit >= OVERLOAD_WINDOWS;
+    if (overloaded && !wasOverloaded) {
+      LOG.warn(
+          "Overloaded, rejecting new calls: event loop lag {}ms, RTP tick lateness {}ms",
+          TimeUnit.NANOSECONDS.toMillis(lagNanos),
+          TimeUnit.NANOSECONDS.toMillis(latenessNanos));
+    } else if (!overloaded && wasOverloaded) {
+      LOG.info("No longer overloaded, taking new calls again");
+    }
+  }
+
+  /**
+   * Admits a call to {@code extension} if there is capacity for it.
+   *
+   * @return the ticket to release when the call ends, or {@code null} if the call is rejected
+   */
+  public synchronized Ticket tryAdmit(String extension) {
+    if (draining) {
+      LOG.warn("Rejecting call to extension {}: draining", extension);
+      return null;
+    }
+    if (overloaded) {
+      LOG.warn("Rejecting call to extension {}: overloaded", extension);
+      return null;
+    }
+    if (maxCalls > 0 && activeCalls >= maxCalls) {
+      LOG.warn("Rejecting call to extension {}: {} calls active", extension, activeCalls);
+      return null;
+    }
+    int extensionCalls = callsPerExtension.getOrDefault(extension, 0);
+    if (maxCallsPerExtension > 0 && extensionCalls >= maxCallsPerExtension) {
+      LOG.warn("Rejecting call to extension {}: {} calls active on it", extension, extensionCalls);
+      return null;
+    }
+    activeCalls++;
+    callsPerExtension.put(extension, extensionCalls + 1);
+    return new Ticket(extension);
+  }
+
+  private synchronized void release(String extension) {
+    activeCalls--;
+    callsPerExtension.computeIfPresent(extension, (ext, calls) -> calls > 1 ? calls - 1 : null);
+    if (activeCalls == 0) {
+      notifyAll();
+    }
+  }
+
+  /** Stops taking new calls, letting the running ones finish. */
+  public void drain() {
+    if (!draining) {
+      draining = true;
+      LOG.info("Draining, rejecting new calls");
+    }
+  }
+
+  public boolean isDraining() {
+    return draining;
+  }
+
+  /**
+   * Waits until no call is active any more, or the timeout passed.
+   *
+   * @return whether all calls ended
+   */
+  public synchronized boolean awaitIdle(long timeoutMs) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    while (activeCalls > 0) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return false;
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    return true;
+  }
+
+  @Override
+  public synchronized int getActiveCalls() {
+    return activeCalls;
+  }
+
+  @Override
+  public int getMaxCalls() {
+    return maxCalls;
+  }
+
+  /** Returns whether a new call would be taken now, to any extension below its own limit. */
+  @Override
+  public synchronized boolean isAcceptingCalls() {
+    return !draining && !overloaded && (maxCalls <= 0 || activeCalls < maxCalls);
+  }
+
+  public boolean isOverloaded() {
+    return overloaded;
+  }
+
+  @Override
+  public int getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+
+  /** Stops measuring the load. */
+  public synchronized void close() {
+    timerIds.forEach(vertx::cancelTimer);
+    timerIds.clear();
+  }
+
+  @Override
+  public String toString() {
+    return "AdmissionController{maxCalls="
+        + maxCalls
+        + ", maxCallsPerExtension="
+        + maxCallsPerExtension
+        + ", maxEventLoopLagMs="
+        + TimeUnit.NANOSECONDS.toMillis(maxEventLoopLagNanos)
+        + ", maxPacingLatenessMs="
+        + TimeUnit.NANOSECONDS.toMillis(maxPacingLatenessNanos)
+        + "}";
+  }
+
+  /** An admitted call, counted until it is released. */
+  public final class Ticket {
+    private final String extension;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Ticket(String extension) {
+      this.extension = extension;
+    }
+
+    /** Stops counting the call. Only the first call has an effect. */
+    public void release() {
+      if (released.compareAndSet(false, true)) {
+        AdmissionController.this.release(extension);
+      }
+    }
+  }
+}
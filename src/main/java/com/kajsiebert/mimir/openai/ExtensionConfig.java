@@ -1,18 +1,27 @@
 package com.kajsiebert.mimir.openai;
 
+import com.kajsiebert.mimir.openai.rtp.RTPTimingConfig;
+
 /**
- * Represents the configuration for a given extension, including OpenAI instructions, voice, and
- * initial greeting.
+ * Represents the configuration for a given extension, including OpenAI instructions, voice, initial
+ * greeting and the RTP timing profile used for its calls.
  */
 public class ExtensionConfig {
   private final String instructions;
   private final String voice;
   private final String greeting;
+  private final RTPTimingConfig timingConfig;
 
   public ExtensionConfig(String instructions, String voice, String greeting) {
+    this(instructions, voice, greeting, RTPTimingConfig.defaultConfig());
+  }
+
+  public ExtensionConfig(
+      String instructions, String voice, String greeting, RTPTimingConfig timingConfig) {
     this.instructions = instructions;
     this.voice = voice;
     this.greeting = greeting;
+    this.timingConfig = timingConfig;
   }
 
   public String getInstructions() {
@@ -26,4 +35,8 @@ public class ExtensionConfig {
   public String getGreeting() {
     return greeting;
   }
+
+  public RTPTimingConfig getTimingConfig() {
+    return timingConfig;
+  }
 }
@@ -5,6 +5,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -12,6 +13,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.yaml.snakeyaml.Yaml;
 
+import com.kajsiebert.mimir.openai.rtp.RTPTimingConfig;
+
 /** Loads and provides extension-to-configuration mappings from a YAML file. */
 public class ExtensionConfigManager {
   private static final Logger LOG = LoggerFactory.getLogger(ExtensionConfigManager.class);
@@ -45,18 +48,42 @@ public class ExtensionConfigManager {
     if (extensions != null) {
       for (Map.Entry<Integer, Object> entry : extensions.entrySet()) {
         Integer ext = entry.getKey();
-        String configFile = (String) entry.getValue();
+        String configFile;
+        RTPTimingConfig timingConfig = RTPTimingConfig.defaultConfig();
+        if (entry.getValue() instanceof Map) {
+          // Long form: { config: clarke.yml, timing: robust }
+          Map<String, Object> extension = (Map<String, Object>) entry.getValue();
+          configFile = (String) extension.get("config");
+          String timing = (String) extension.get("timing");
+          if (timing != null) {
+            timingConfig = loadTimingConfig(ext, timing);
+          }
+        } else {
+          configFile = (String) entry.getValue();
+        }
         Map<String, Object> scientistConfig = loadScientistConfig(configFile);
         String name = (String) scientistConfig.get("name");
         String voice = (String) scientistConfig.get("voice");
         String greeting = (String) scientistConfig.get("initialisation");
         String instructions = (String) scientistConfig.get("instructions");
-        map.put(String.valueOf(ext), new ExtensionConfig(instructions, voice, greeting));
+        map.put(
+            String.valueOf(ext), new ExtensionConfig(instructions, voice, greeting, timingConfig));
       }
     }
     return new ExtensionConfigManager(map);
   }
 
+  private static RTPTimingConfig loadTimingConfig(Integer extension, String profile)
+      throws IOException {
+    try {
+      RTPTimingConfig timingConfig = RTPTimingConfig.forProfile(profile);
+      LOG.info("Extension {} uses RTP timing profile {}", extension, profile);
+      return timingConfig;
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Extension " + extension + ": " + e.getMessage(), e);
+    }
+  }
+
   /** Loads a scientist's configuration from their individual YAML file. */
   @SuppressWarnings("unchecked")
   private static Map<String, Object> loadScientistConfig(String configFile) throws IOException {
@@ -86,6 +113,11 @@ public class ExtensionConfigManager {
     return cfg;
   }
 
+  /** Returns the configuration of every extension, keyed by extension number. */
+  public Map<String, ExtensionConfig> getExtensions() {
+    return Collections.unmodifiableMap(configMap);
+  }
+
   /** Returns a default configuration if one exists. */
   public ExtensionConfig getDefaultConfig() {
     if (configMap.isEmpty()) {
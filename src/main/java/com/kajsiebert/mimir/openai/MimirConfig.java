@@ -0,0 +1,169 @@
+package com.kajsiebert.mimir.openai;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kohsuke.args4j.Option;
+
+import com.kajsiebert.mimir.openai.rtp.RTPPacingEngine;
+
+import io.vertx.core.VertxOptions;
+
+/**
+ * Bridge specific options. Parsed together with the mjSIP configuration, so every option can be
+ * given on the command line or in the {@code .mjsip-ua} file.
+ */
+public class MimirConfig {
+
+  /** Where the RTP sockets of calls live. */
+  public enum MediaEngineType {
+    /** One Vert.x datagram socket per call, paced by the RTP pacing engine. */
+    VERTX,
+    /** All sockets multiplexed on a few NIO selector threads that also pace. */
+    NIO
+  }
+
+  @Option(
+      name = "--native-transport",
+      usage = "Use Netty's native epoll transport for UDP and TCP when it is available.")
+  public boolean nativeTransport = false;
+
+  @Option(
+      name = "--event-loops",
+      usage = "Number of Vert.x event loops (0 derives it from the core count).")
+  public int eventLoops = 0;
+
+  @Option(name = "--worker-threads", usage = "Number of Vert.x worker threads for blocking work.")
+  public int workerThreads = 10;
+
+  @Option(
+      name = "--max-event-loop-execute",
+      usage = "Milliseconds an event loop task may run before Vert.x warns that it is blocked.")
+  public long maxEventLoopExecuteMs = 2000;
+
+  @Option(
+      name = "--rtp-pacer-threads",
+      usage = "Number of threads pacing RTP for all calls (0 derives it from the core count).")
+  public int rtpPacerThreads = 0;
+
+  @Option(
+      name = "--rtp-sleep-strategy",
+      usage = "How RTP pacer threads wait for a deadline: PARK, PARK_THEN_SPIN or BUSY_SPIN.")
+  public RTPPacingEngine.SleepStrategy rtpSleepStrategy = RTPPacingEngine.SleepStrategy.PARK;
+
+  @Option(
+      name = "--rtp-missed-ticks",
+      usage = "What a late RTP session does with missed ticks: SKIP, BURST or STRETCH.")
+  public RTPPacingEngine.MissedTickPolicy rtpMissedTickPolicy =
+      RTPPacingEngine.MissedTickPolicy.SKIP;
+
+  @Option(name = "--media-engine", usage = "RTP socket implementation: VERTX or NIO.")
+  public MediaEngineType mediaEngine = MediaEngineType.VERTX;
+
+  @Option(
+      name = "--media-threads",
+      usage = "Number of NIO selector threads for the NIO media engine (0 derives it).")
+  public int mediaThreads = 0;
+
+  @Option(
+      name = "--ws-pool-size",
+      usage =
+          "Realtime sessions kept connected ahead of calls per extension, so a call skips the"
+              + " connection setup; each holds an API connection around the clock (0 disables).")
+  public int wsPoolSize = 0;
+
+  @Option(
+      name = "--ws-pool-refresh",
+      usage = "Seconds after which an unused prewarmed realtime session is replaced.")
+  public int wsPoolRefreshSeconds = 600;
+
+  @Option(
+      name = "--ws-http-clients",
+      usage = "Number of shared HTTP clients the realtime sessions are spread over.")
+  public int wsHttpClients = 1;
+
+  @Option(
+      name = "--ws-openssl",
+      usage = "Use the native OpenSSL TLS engine for realtime sessions when it is available.")
+  public boolean wsOpenSsl = false;
+
+  @Option(
+      name = "--early-answer",
+      usage = "Answer calls right away with a ringback tone until the model's greeting is ready.")
+  public boolean earlyAnswer = false;
+
+  @Option(
+      name = "--answer-timeout",
+      usage = "Seconds a call may ring waiting for the model's greeting before it is given up.")
+  public int answerTimeoutSeconds = 30;
+
+  @Option(
+      name = "--greeting-cache",
+      usage =
+          "Play each extension's greeting from the audio its model generated on the first call.")
+  public boolean greetingCache = false;
+
+  @Option(
+      name = "--greeting-cache-dir",
+      usage = "Directory the cached greetings are kept in across restarts (memory only if unset).")
+  public String greetingCacheDir = null;
+
+  @Option(name = "--max-calls", usage = "Most concurrent calls in total (0 for no limit).")
+  public int maxCalls = 0;
+
+  @Option(
+      name = "--max-calls-per-extension",
+      usage = "Most concurrent calls to one extension (0 for no limit).")
+  public int maxCallsPerExtension = 0;
+
+  @Option(
+      name = "--max-event-loop-lag",
+      usage = "Milliseconds of event loop lag above which new calls are rejected (0 disables).")
+  public long maxEventLoopLagMs = 0;
+
+  @Option(
+      name = "--max-pacing-lateness",
+      usage = "Milliseconds of RTP tick lateness above which new calls are rejected (0 disables).")
+  public long maxPacingLatenessMs = 0;
+
+  @Option(
+      name = "--retry-after",
+      usage = "Seconds rejected callers are told to wait before calling again.")
+  public int retryAfterSeconds = 30;
+
+  @Option(
+      name = "--drain-timeout",
+      usage =
+          "Seconds a shutdown waits for running calls to end, rejecting new ones (0 does not"
+              + " wait).")
+  public int drainTimeoutSeconds = 0;
+
+  /** Returns the event loop count, one per available core if not configured. */
+  public int getEventLoops() {
+    return eventLoops > 0 ? eventLoops : Runtime.getRuntime().availableProcessors();
+  }
+
+  /** Returns the options of the Vert.x instance all calls share. */
+  public VertxOptions getVertxOptions() {
+    return new VertxOptions()
+        .setPreferNativeTransport(nativeTransport)
+        .setEventLoopPoolSize(getEventLoops())
+        .setWorkerPoolSize(workerThreads)
+        .setInternalBlockingPoolSize(workerThreads)
+        .setMaxEventLoopExecuteTime(maxEventLoopExecuteMs)
+        .setMaxEventLoopExecuteTimeUnit(TimeUnit.MILLISECONDS)
+        .setMaxWorkerExecuteTime(60000)
+        .setMaxWorkerExecuteTimeUnit(TimeUnit.MILLISECONDS)
+        .setWarningExceptionTime(5000)
+        .setWarningExceptionTimeUnit(TimeUnit.MILLISECONDS);
+  }
+
+  /** Returns the NIO selector thread count, deriving it from the available cores if not set. */
+  public int getMediaThreads() {
+    return mediaThreads > 0 ? mediaThreads : RTPPacingEngine.defaultThreadCount();
+  }
+
+  /** Returns the pacing thread count, deriving it from the available cores if not configured. */
+  public int getRtpPacerThreads() {
+    return rtpPacerThreads > 0 ? rtpPacerThreads : RTPPacingEngine.defaultThreadCount();
+  }
+}
@@ -1,8 +1,8 @@
 package com.kajsiebert.mimir.openai;
 
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.mjsip.media.FlowSpec;
 import org.mjsip.media.MediaStreamer;
@@ -12,48 +12,177 @@ import org.mjsip.ua.streamer.StreamerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.kajsiebert.mimir.openai.rtp.NioMediaEngine;
+import com.kajsiebert.mimir.openai.rtp.RTPPacingEngine;
+import com.kajsiebert.mimir.openai.websocket.GreetingCache;
+import com.kajsiebert.mimir.openai.websocket.RealtimeHttpClients;
+import com.kajsiebert.mimir.openai.websocket.WebsocketSessionPool;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 
+/**
+ * Sets up and tears down one incoming call, on the context of its realtime session. Nothing blocks
+ * the SIP thread that delivered the INVITE: the call moves from {@link CallState#RINGING} to {@link
+ * CallState#ANSWERED} when the model's greeting starts, or to {@link CallState#ENDED} when the
+ * session ends or a Vert.x timer finds it still ringing after the answer timeout.
+ */
 public class OpenAICallController implements StreamerFactory {
   private static final Logger LOG = LoggerFactory.getLogger(OpenAICallController.class);
 
   private static final OpenAIMediaOptions mediaOptions =
       new OpenAIMediaOptions(OpenAIMediaOptions.AudioCodecOptions.PCMU);
 
-  private final CompletableFuture<Void> callHandledFuture = new CompletableFuture<>();
+  /** How long a call may ring before it is given up, if not configured. */
+  public static final long DEFAULT_ANSWER_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
+  /** The states of a call, each only ever left for a later one. */
+  public enum CallState {
+    RINGING,
+    ANSWERED,
+    ENDED
+  }
+
+  private final Vertx vertx;
+  private final AtomicReference<CallState> state = new AtomicReference<>(CallState.RINGING);
+  private final Promise<CallState> callHandled = Promise.promise();
+  private final Promise<Void> callEnded = Promise.promise();
   private final UserAgent ua;
   private final OpenAIRealtimeBridge bridge;
+  private long answerTimerId = -1;
+
+  public OpenAICallController(
+      Vertx vertx, UserAgent ua, ExtensionConfig extensionConfig, RTPPacingEngine pacingEngine) {
+    this(vertx, ua, extensionConfig, pacingEngine, null);
+  }
+
+  public OpenAICallController(
+      Vertx vertx,
+      UserAgent ua,
+      ExtensionConfig extensionConfig,
+      RTPPacingEngine pacingEngine,
+      NioMediaEngine mediaEngine) {
+    this(
+        vertx,
+        ua,
+        extensionConfig,
+        pacingEngine,
+        mediaEngine,
+        null,
+        null,
+        null,
+        false,
+        DEFAULT_ANSWER_TIMEOUT_MS);
+  }
 
-  public OpenAICallController(Vertx vertx, UserAgent ua, ExtensionConfig extensionConfig) {
+  /**
+   * Creates the controller of an incoming call.
+   *
+   * @param earlyAnswer whether to answer right away and play a ringback tone until the greeting is
+   *     ready, rather than letting the caller hear ringing until the first model audio
+   * @param answerTimeoutMs how long the call may ring before it is given up
+   */
+  public OpenAICallController(
+      Vertx vertx,
+      UserAgent ua,
+      ExtensionConfig extensionConfig,
+      RTPPacingEngine pacingEngine,
+      NioMediaEngine mediaEngine,
+      WebsocketSessionPool sessionPool,
+      RealtimeHttpClients httpClients,
+      GreetingCache greetingCache,
+      boolean earlyAnswer,
+      long answerTimeoutMs) {
+    this.vertx = vertx;
     this.ua = ua;
 
-    bridge = new OpenAIRealtimeBridge(vertx, extensionConfig);
+    bridge =
+        new OpenAIRealtimeBridge(
+            vertx,
+            extensionConfig,
+            pacingEngine,
+            mediaEngine,
+            sessionPool,
+            httpClients,
+            greetingCache);
     bridge.onAudioReceived(
-        state -> {
-          LOG.debug("Audio received. Starting media agent. State: {}", state);
-          MediaAgent mediaAgent = new MediaAgent(mediaOptions.getMediaDescs(), this);
-          ua.accept(mediaAgent);
-          callHandledFuture.complete(null);
+        sessionState -> {
+          if (state.get() == CallState.RINGING) {
+            LOG.debug("Audio received. Starting media agent. State: {}", sessionState);
+            answer();
+          }
         });
     bridge.onCallEnded(
-        state -> {
-          LOG.debug("Call ended. State: {}", state);
-          ua.hangup();
-          callHandledFuture.complete(null);
+        sessionState -> {
+          LOG.debug("Call ended. State: {}", sessionState);
+          end();
         });
+
+    // The call is driven from its context from here on, the SIP thread returns right away
+    bridge
+        .getContext()
+        .runOnContext(
+            v -> {
+              answerTimerId = vertx.setTimer(answerTimeoutMs, id -> giveUp());
+              bridge.startSession();
+
+              if (earlyAnswer) {
+                // The model session starts in parallel, the tone hands over to its first audio
+                LOG.debug("Answering early with a comfort tone");
+                bridge.playComfortTone();
+                answer();
+              }
+            });
   }
 
-  @Override
-  public MediaStreamer createMediaStreamer(Executor executor, FlowSpec flow_spec) {
-    bridge.setFlowSpec(flow_spec);
-    return bridge;
+  private void answer() {
+    if (state.compareAndSet(CallState.RINGING, CallState.ANSWERED)) {
+      vertx.cancelTimer(answerTimerId);
+      MediaAgent mediaAgent = new MediaAgent(mediaOptions.getMediaDescs(), this);
+      ua.accept(mediaAgent);
+      callHandled.tryComplete(CallState.ANSWERED);
+    }
   }
 
-  public void awaitCallHandled(int timeoutSeconds) {
-    try {
-      callHandledFuture.get(timeoutSeconds, TimeUnit.SECONDS);
-    } catch (Exception e) {
+  /** Hangs up, unless the call already ended. */
+  private void end() {
+    if (state.getAndSet(CallState.ENDED) != CallState.ENDED) {
+      vertx.cancelTimer(answerTimerId);
       ua.hangup();
+      callHandled.tryComplete(CallState.ENDED);
+      callEnded.tryComplete();
     }
   }
+
+  /** Gives up a call still ringing at the answer timeout, closing its realtime session. */
+  private void giveUp() {
+    if (state.compareAndSet(CallState.RINGING, CallState.ENDED)) {
+      LOG.warn("Call not answered in time, hanging up");
+      ua.hangup();
+      bridge.halt();
+      callHandled.tryComplete(CallState.ENDED);
+      callEnded.tryComplete();
+    }
+  }
+
+  public CallState getState() {
+    return state.get();
+  }
+
+  /** Returns the state the call left ringing for, completed once it is answered or ended. */
+  public Future<CallState> callHandled() {
+    return callHandled.future();
+  }
+
+  /** Returns a future completed once the call has ended, however it ended. */
+  public Future<Void> callEnded() {
+    return callEnded.future();
+  }
+
+  @Override
+  public MediaStreamer createMediaStreamer(Executor executor, FlowSpec flow_spec) {
+    bridge.setFlowSpec(flow_spec);
+    return bridge;
+  }
 }
@@ -1,94 +1,295 @@
 package com.kajsiebert.mimir.openai;
 
+import java.io.IOException;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.mjsip.media.FlowSpec;
 import org.mjsip.media.MediaStreamer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.kajsiebert.mimir.openai.rtp.AdaptiveRTPSession;
+import com.kajsiebert.mimir.openai.rtp.NioMediaEngine;
+import com.kajsiebert.mimir.openai.rtp.NioRTPSession;
+import com.kajsiebert.mimir.openai.rtp.RTPAudioBuffer;
 import com.kajsiebert.mimir.openai.rtp.RTPConstants;
+import com.kajsiebert.mimir.openai.rtp.RTPPacingEngine;
 import com.kajsiebert.mimir.openai.rtp.RTPSession;
 import com.kajsiebert.mimir.openai.rtp.RTPTimerManager;
+import com.kajsiebert.mimir.openai.rtp.RTPTimingConfig;
 import com.kajsiebert.mimir.openai.util.ConsumerArray;
+import com.kajsiebert.mimir.openai.websocket.GreetingCache;
+import com.kajsiebert.mimir.openai.websocket.RealtimeHttpClients;
+import com.kajsiebert.mimir.openai.websocket.UplinkChunker;
 import com.kajsiebert.mimir.openai.websocket.WebsocketSession;
+import com.kajsiebert.mimir.openai.websocket.WebsocketSessionPool;
 import com.kajsiebert.mimir.openai.websocket.WebsocketSessionState;
 
+import io.vertx.core.Context;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 
+/**
+ * Bridges a call's RTP leg and its realtime session. All Vert.x work of the call, the RTP socket,
+ * the uplink and metrics timers, runs on the session's context. mjSIP starts and halts the bridge
+ * from its own threads, so both hand over to that context, where they run in order.
+ */
 public class OpenAIRealtimeBridge implements MediaStreamer {
   private static final Logger LOG = LoggerFactory.getLogger(OpenAIRealtimeBridge.class);
 
-  private static final long SEND_WS_AUDIO_INTERVAL_MS = 250;
   private final Vertx vertx;
   private final WebsocketSession websocketSession;
+  private final Context context;
   private final ConsumerArray<WebsocketSessionState> audioReceivedCallbacks = new ConsumerArray<>();
   private final ConsumerArray<WebsocketSessionState> callEndedCallbacks = new ConsumerArray<>();
 
+  private final RTPTimingConfig timingConfig;
+  private final RTPPacingEngine pacingEngine;
+  private final NioMediaEngine mediaEngine;
+
   private FlowSpec flowSpec;
-  private RTPSession rtpSession;
+  private boolean started = false;
+  // Confined to the context
+  private boolean halted = false;
+  private AdaptiveRTPSession rtpSession;
+  private NioRTPSession nioSession;
   private long audioFlushTimerId = -1;
+  private long metricsTimerId = -1;
   private RTPTimerManager rtpTimerManager;
+  private final UplinkChunker uplinkChunker;
+  private final WebsocketSessionPool sessionPool;
+  private final boolean pooledSession;
+
+  public OpenAIRealtimeBridge(
+      Vertx vertx, ExtensionConfig extensionConfig, RTPPacingEngine pacingEngine) {
+    this(vertx, extensionConfig, pacingEngine, null);
+  }
+
+  /**
+   * Creates a bridge whose RTP leg runs on {@code mediaEngine}, or on a Vert.x datagram socket
+   * paced by {@code pacingEngine} if it is {@code null}.
+   */
+  public OpenAIRealtimeBridge(
+      Vertx vertx,
+      ExtensionConfig extensionConfig,
+      RTPPacingEngine pacingEngine,
+      NioMediaEngine mediaEngine) {
+    this(vertx, extensionConfig, pacingEngine, mediaEngine, null, null, null);
+  }
 
-  public OpenAIRealtimeBridge(Vertx vertx, ExtensionConfig extensionConfig) {
+  /**
+   * Creates a bridge that takes its realtime session from {@code sessionPool} if it has one ready,
+   * or else connects a new one through {@code httpClients}. The session plays the greeting from
+   * {@code greetingCache} if it has one. Any of them may be {@code null}.
+   */
+  public OpenAIRealtimeBridge(
+      Vertx vertx,
+      ExtensionConfig extensionConfig,
+      RTPPacingEngine pacingEngine,
+      NioMediaEngine mediaEngine,
+      WebsocketSessionPool sessionPool,
+      RealtimeHttpClients httpClients,
+      GreetingCache greetingCache) {
     this.vertx = vertx;
-    this.rtpTimerManager = new RTPTimerManager(vertx);
+    this.timingConfig = extensionConfig.getTimingConfig();
+    this.pacingEngine = pacingEngine;
+    this.mediaEngine = mediaEngine;
+    this.rtpTimerManager = new RTPTimerManager(vertx, pacingEngine, timingConfig);
+    this.uplinkChunker =
+        new UplinkChunker(timingConfig.getUplinkMinChunkMs(), timingConfig.getUplinkMaxChunkMs());
 
-    websocketSession = new WebsocketSession(vertx, extensionConfig);
-    websocketSession.start();
+    this.sessionPool = sessionPool;
+    WebsocketSession pooled = sessionPool != null ? sessionPool.take() : null;
+    pooledSession = pooled != null;
+    websocketSession =
+        pooled != null
+            ? pooled
+            : new WebsocketSession(vertx, extensionConfig, httpClients, greetingCache);
     websocketSession.onAudioReceived(state -> audioReceivedCallbacks.accept(state));
     websocketSession.onCallEnded(state -> callEndedCallbacks.accept(state));
+    context = websocketSession.getContext();
+  }
+
+  /** Returns the context all of the call's Vert.x work runs on. */
+  public Context getContext() {
+    return context;
+  }
+
+  /**
+   * Claims the prewarmed realtime session or starts a new one. Called once the callbacks are
+   * registered, a cached greeting reports its audio right away.
+   */
+  public void startSession() {
+    if (pooledSession) {
+      LOG.debug("Using prewarmed realtime session, {}", sessionPool);
+      websocketSession.claim();
+    } else {
+      websocketSession.start();
+    }
   }
-  ;
 
   public void setFlowSpec(FlowSpec flowSpec) {
     this.flowSpec = flowSpec;
   }
 
   @Override
-  public boolean start() {
+  public synchronized boolean start() {
     LOG.debug("Starting OpenAIRealtimeBridge");
     if (flowSpec == null) {
       return false;
     }
-    if (rtpSession != null) {
+    if (started) {
       return false;
     }
 
-    rtpSession = new RTPSession(vertx, flowSpec);
+    NioRTPSession session = null;
+    if (mediaEngine != null) {
+      // The selector thread owns the socket and paces the websocket audio itself
+      try {
+        session =
+            mediaEngine.open(
+                flowSpec,
+                websocketSession::getNextRtpPacket,
+                websocketSession.getPacketPool(),
+                timingConfig.getJitterBufferDepth());
+      } catch (IOException e) {
+        LOG.error("Failed to open RTP socket on {}", flowSpec.getLocalPort(), e);
+        return false;
+      }
+    }
+    started = true;
+    if (session != null) {
+      NioRTPSession opened = session;
+      context.runOnContext(v -> startOnContext(opened, null));
+    } else {
+      // The socket is created on the context so its events are handled there, the remote address
+      // is resolved on a worker first since the lookup blocks. Failures end the call.
+      String remoteAddress = flowSpec.getRemoteAddress();
+      context
+          .executeBlocking(() -> RTPSession.resolveOnce(remoteAddress), false)
+          .onComplete(
+              ar -> {
+                if (ar.failed()) {
+                  fail(ar.cause());
+                } else {
+                  startOnContext(null, ar.result());
+                }
+              });
+    }
+    return true;
+  }
+
+  /**
+   * Starts the RTP leg, on {@code session} if the media engine opened one or else on a Vert.x
+   * socket sending to {@code remoteHost}.
+   */
+  private void startOnContext(NioRTPSession session, String remoteHost) {
+    if (halted) {
+      if (session != null) {
+        session.close();
+      }
+      return;
+    }
+    RTPAudioBuffer receivedAudio;
+    Supplier<String> timingReport;
+    if (session != null) {
+      nioSession = session;
+      receivedAudio = session.getJitterBuffer();
+      timingReport =
+          () ->
+              session
+                  + ", packetAllocations="
+                  + websocketSession.getPacketAllocations()
+                  + ", droppedAudioBytes="
+                  + websocketSession.getDroppedAudioBytes();
+    } else {
+      AdaptiveRTPSession rtp;
+      try {
+        rtp = new AdaptiveRTPSession(vertx, flowSpec, timingConfig, pacingEngine, remoteHost);
+      } catch (RuntimeException e) {
+        fail(e);
+        return;
+      }
+      rtpSession = rtp;
+      rtp.bound().onFailure(this::fail);
+      rtp.setPacketPool(websocketSession.getPacketPool());
+
+      // Start receiving websocket audio and sending RTP packets at the profile's pacing
+      rtpTimerManager.startPeriodicTask(
+          RTPConstants.PACKET_INTERVAL_MS,
+          () -> {
+            Buffer data = websocketSession.getNextRtpPacket();
+            if (data != null) {
+              rtp.sendPacket(data);
+            }
+          });
+      receivedAudio = rtp.getJitterBuffer();
+      timingReport =
+          () ->
+              rtp.getTimingMetrics()
+                  + ", "
+                  + rtpTimerManager.getTimingStats()
+                  + ", "
+                  + rtp.getJitterBuffer()
+                  + ", droppedPackets="
+                  + rtp.getDroppedPackets()
+                  + ", packetAllocations="
+                  + websocketSession.getPacketAllocations()
+                  + ", droppedAudioBytes="
+                  + websocketSession.getDroppedAudioBytes();
+    }
 
     LOG.debug("RTPSession created");
 
-    // Start receiving websocket audio and sending RTP packets using high-priority timer
-    rtpTimerManager.startPeriodicTask(
-        RTPConstants.PACKET_INTERVAL_MS,
-        () -> {
-          Buffer data = websocketSession.getNextRtpPacket();
-          if (data != null) {
-            rtpSession.sendPacket(data);
-          }
-        });
-
-    // Flush pending audio to websocket
+    // Stream received audio to the websocket every frame, in chunks sized to the link. The timer is
+    // the only reader of the received audio.
+    UplinkChunker chunker = uplinkChunker;
     audioFlushTimerId =
         vertx.setPeriodic(
-            SEND_WS_AUDIO_INTERVAL_MS,
+            RTPConstants.PACKET_INTERVAL_MS,
             id -> {
-              byte[] data = rtpSession.getAudioBuffer();
-              if (data.length > 0) {
-                websocketSession.sendAudio(data);
+              int chunkBytes =
+                  chunker.update(
+                      websocketSession.getUplinkPendingBytes(),
+                      websocketSession.getSmoothedRttNanos(),
+                      websocketSession.getMinRttNanos());
+              while (receivedAudio.getAvailableAudio() >= chunkBytes) {
+                if (websocketSession.sendAudio(receivedAudio, chunkBytes) == 0) {
+                  break; // Not connected yet, the audio waits in the jitter buffer
+                }
               }
             });
 
-    LOG.debug("OpenAIRealtimeBridge started");
+    if (timingConfig.isTimingMetricsEnabled() && timingConfig.getMetricsReportingIntervalMs() > 0) {
+      metricsTimerId =
+          vertx.setPeriodic(
+              timingConfig.getMetricsReportingIntervalMs(),
+              id ->
+                  LOG.info(
+                      "RTP timing: {}, {}, uplinkFrameAllocations={}, turn latency (ms): {}",
+                      timingReport.get(),
+                      uplinkChunker,
+                      websocketSession.getUplinkFrameAllocations(),
+                      websocketSession.getTurnLatency()));
+    }
 
-    return true;
+    LOG.debug("OpenAIRealtimeBridge started");
   }
 
   @Override
   public boolean halt() {
     LOG.debug("Halting OpenAIRealtimeBridge");
+    context.runOnContext(v -> haltOnContext());
+    return true;
+  }
+
+  private void haltOnContext() {
+    if (halted) {
+      return;
+    }
+    halted = true;
+    LOG.info("Turn latency (ms): {}", websocketSession.getTurnLatency());
     websocketSession.close();
 
     if (rtpSession != null) {
@@ -96,7 +297,13 @@ public class OpenAIRealtimeBridge implements MediaStreamer {
       rtpSession = null;
     }
 
-    // Stop the high-priority RTP timer
+    if (nioSession != null) {
+      LOG.info("RTP session closed. {}", nioSession);
+      nioSession.close();
+      nioSession = null;
+    }
+
+    // Unregister from the shared pacing engine
     rtpTimerManager.shutdown();
 
     if (audioFlushTimerId != -1) {
@@ -104,8 +311,24 @@ public class OpenAIRealtimeBridge implements MediaStreamer {
       audioFlushTimerId = -1;
     }
 
+    if (metricsTimerId != -1) {
+      vertx.cancelTimer(metricsTimerId);
+      metricsTimerId = -1;
+    }
+
     LOG.debug("OpenAIRealtimeBridge halted");
-    return true;
+  }
+
+  /** Ends the call whose RTP leg could not be started, on the context. */
+  private void fail(Throwable cause) {
+    LOG.error("Failed to start the RTP session on {}", flowSpec.getLocalPort(), cause);
+    haltOnContext();
+    callEndedCallbacks.accept(WebsocketSessionState.TERMINATED);
+  }
+
+  /** Plays a ringback tone to the caller until the model's first audio arrives. */
+  public void playComfortTone() {
+    websocketSession.playComfortTone();
   }
 
   public void onAudioReceived(Consumer<WebsocketSessionState> callback) {
@@ -1,15 +1,22 @@
 package com.kajsiebert.mimir.openai;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.mjsip.config.OptionParser;
 import org.mjsip.media.MediaDesc;
 import org.mjsip.pool.PortConfig;
 import org.mjsip.pool.PortPool;
 import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.header.Header;
+import org.mjsip.sip.header.ToHeader;
 import org.mjsip.sip.message.SipMessage;
 import org.mjsip.sip.message.SipMethods;
+import org.mjsip.sip.message.SipResponses;
 import org.mjsip.sip.provider.SipConfig;
 import org.mjsip.sip.provider.SipId;
 import org.mjsip.sip.provider.SipProvider;
@@ -26,7 +33,12 @@ import org.mjsip.ua.UserAgentListenerAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.kajsiebert.mimir.openai.rtp.NioMediaEngine;
+import com.kajsiebert.mimir.openai.rtp.RTPPacingEngine;
 import com.kajsiebert.mimir.openai.util.OptionsListener;
+import com.kajsiebert.mimir.openai.websocket.GreetingCache;
+import com.kajsiebert.mimir.openai.websocket.RealtimeHttpClients;
+import com.kajsiebert.mimir.openai.websocket.WebsocketSessionPool;
 
 import io.vertx.core.Vertx;
 import io.vertx.core.VertxOptions;
@@ -34,12 +46,21 @@ import io.vertx.core.VertxOptions;
 public class OpenAIRealtimeUserAgent extends RegisteringMultipleUAS {
   private static final Logger LOG = LoggerFactory.getLogger(OpenAIRealtimeUserAgent.class);
 
-  private static final OptionsListener optionsListener = new OptionsListener();
-
   /** Creates a {@link OpenAIRealtimeUserAgent} service. */
   private final Vertx vertx;
 
   private final ExtensionConfigManager extConfigManager;
+  private final RTPPacingEngine pacingEngine;
+  private final NioMediaEngine mediaEngine;
+  private final Map<ExtensionConfig, WebsocketSessionPool> sessionPools;
+  private final RealtimeHttpClients httpClients;
+  private final GreetingCache greetingCache;
+  private final boolean earlyAnswer;
+  private final long answerTimeoutMs;
+  private final AdmissionController admission;
+
+  /** The ticket of the INVITE being handled on this SIP thread, until its handler claims it. */
+  private final ThreadLocal<AdmissionController.Ticket> pendingTicket = new ThreadLocal<>();
 
   public OpenAIRealtimeUserAgent(
       SipProvider sip_provider,
@@ -48,19 +69,87 @@ public class OpenAIRealtimeUserAgent extends RegisteringMultipleUAS {
       boolean force_reverse_route,
       ServiceOptions serviceConfig,
       Vertx vertx,
-      ExtensionConfigManager extConfigManager) {
+      ExtensionConfigManager extConfigManager,
+      RTPPacingEngine pacingEngine,
+      NioMediaEngine mediaEngine,
+      Map<ExtensionConfig, WebsocketSessionPool> sessionPools,
+      RealtimeHttpClients httpClients,
+      GreetingCache greetingCache,
+      boolean earlyAnswer,
+      long answerTimeoutMs,
+      AdmissionController admission) {
 
     super(sip_provider, portPool, uaConfig, serviceConfig);
     sip_provider.addSelectiveListener(SipId.createMethodId(SipMethods.MESSAGE), this);
-    sip_provider.addSelectiveListener(SipId.createMethodId(SipMethods.OPTIONS), optionsListener);
+    // OPTIONS probes report the capacity left, so a proxy can steer calls to other bridges
+    sip_provider.addSelectiveListener(
+        SipId.createMethodId(SipMethods.OPTIONS), new OptionsListener(admission));
     this.vertx = vertx;
     this.extConfigManager = extConfigManager;
+    this.pacingEngine = pacingEngine;
+    this.mediaEngine = mediaEngine;
+    this.sessionPools = sessionPools;
+    this.httpClients = httpClients;
+    this.greetingCache = greetingCache;
+    this.earlyAnswer = earlyAnswer;
+    this.answerTimeoutMs = answerTimeoutMs;
+    this.admission = admission;
+  }
+
+  /**
+   * Rejects an INVITE with 503 and Retry-After when there is no capacity for another call.
+   * Re-INVITEs of calls already admitted always pass.
+   */
+  @Override
+  public void onReceivedMessage(SipProvider sip_provider, SipMessage msg) {
+    if (!isInitialInvite(msg)) {
+      super.onReceivedMessage(sip_provider, msg);
+      return;
+    }
+    AdmissionController.Ticket ticket = admission.tryAdmit(calledExtension(msg));
+    if (ticket == null) {
+      SipMessage response =
+          sip_provider
+              .messageFactory()
+              .createResponse(msg, SipResponses.SERVICE_UNAVAILABLE, null, null);
+      response.setHeader(
+          new Header("Retry-After", String.valueOf(admission.getRetryAfterSeconds())));
+      sip_provider.sendMessage(response);
+      return;
+    }
+    pendingTicket.set(ticket);
+    try {
+      super.onReceivedMessage(sip_provider, msg);
+    } finally {
+      // Not claimed if no call handler was created for the INVITE
+      AdmissionController.Ticket unclaimed = pendingTicket.get();
+      pendingTicket.remove();
+      if (unclaimed != null) {
+        unclaimed.release();
+      }
+    }
+  }
+
+  /** Returns whether {@code msg} is an INVITE creating a dialog, one without a To tag. */
+  static boolean isInitialInvite(SipMessage msg) {
+    if (!msg.isRequest() || !msg.isInvite()) {
+      return false;
+    }
+    ToHeader to = msg.getToHeader();
+    return to == null || !to.hasTag();
+  }
+
+  private static String calledExtension(SipMessage msg) {
+    Header header = msg.getHeader("X-Called-Extension");
+    return header != null ? header.getValue() : null;
   }
 
   @Override
   protected UserAgentListener createCallHandler(SipMessage msg) {
     String lastExtensionCalled = msg.getHeader("X-Called-Extension").getValue();
     final ExtensionConfig cfg = extConfigManager.getConfig(lastExtensionCalled);
+    final AdmissionController.Ticket ticket = pendingTicket.get();
+    pendingTicket.remove();
 
     LOG.debug("Creating call handler for extension: {}", lastExtensionCalled);
 
@@ -68,13 +157,57 @@ public class OpenAIRealtimeUserAgent extends RegisteringMultipleUAS {
       @Override
       public void onUaIncomingCall(
           UserAgent ua, NameAddress callee, NameAddress caller, MediaDesc[] media_descs) {
-        final OpenAICallController streamer =
-            new OpenAICallController(OpenAIRealtimeUserAgent.this.vertx, ua, cfg);
-        streamer.awaitCallHandled(30);
+        // The controller drives the call from Vert.x callbacks, the SIP thread returns right away
+        OpenAICallController controller =
+            new OpenAICallController(
+                OpenAIRealtimeUserAgent.this.vertx,
+                ua,
+                cfg,
+                OpenAIRealtimeUserAgent.this.pacingEngine,
+                OpenAIRealtimeUserAgent.this.mediaEngine,
+                sessionPools.get(cfg),
+                httpClients,
+                greetingCache,
+                earlyAnswer,
+                answerTimeoutMs);
+        controller
+            .callHandled()
+            .onSuccess(state -> LOG.debug("Call to extension {} {}", lastExtensionCalled, state));
+        controller.callEnded().onComplete(v -> releaseTicket());
+      }
+
+      @Override
+      public void onUaCallClosed(UserAgent ua) {
+        releaseTicket();
+      }
+
+      private void releaseTicket() {
+        if (ticket != null) {
+          ticket.release();
+        }
       }
     };
   }
 
+  /** Logs the threads the bridge runs on, to compare throughput between hosts. */
+  private static void logTopology(
+      MimirConfig mimirConfig, VertxOptions vertxOptions, boolean nativeTransport) {
+    LOG.info(
+        "Topology: {} cores, {} event loops on the {} transport, {} worker threads, {} RTP pacer"
+            + " threads ({}, {}), {} media engine{}",
+        Runtime.getRuntime().availableProcessors(),
+        vertxOptions.getEventLoopPoolSize(),
+        nativeTransport ? "native" : "NIO",
+        vertxOptions.getWorkerPoolSize(),
+        mimirConfig.getRtpPacerThreads(),
+        mimirConfig.rtpSleepStrategy,
+        mimirConfig.rtpMissedTickPolicy,
+        mimirConfig.mediaEngine,
+        mimirConfig.mediaEngine == MimirConfig.MediaEngineType.NIO
+            ? " with " + mimirConfig.getMediaThreads() + " selector threads"
+            : "");
+  }
+
   /** The main method. */
   public static void main(String[] args) {
     System.out.println("Echo " + SipStack.version);
@@ -84,9 +217,17 @@ public class OpenAIRealtimeUserAgent extends RegisteringMultipleUAS {
     SchedulerConfig schedulerConfig = new SchedulerConfig();
     PortConfig portConfig = new PortConfig();
     ServiceConfig serviceConfig = new ServiceConfig();
+    MimirConfig mimirConfig = new MimirConfig();
 
     OptionParser.parseOptions(
-        args, ".mjsip-ua", sipConfig, uaConfig, schedulerConfig, portConfig, serviceConfig);
+        args,
+        ".mjsip-ua",
+        sipConfig,
+        uaConfig,
+        schedulerConfig,
+        portConfig,
+        serviceConfig,
+        mimirConfig);
 
     sipConfig.normalize();
     uaConfig.normalize(sipConfig);
@@ -100,18 +241,90 @@ public class OpenAIRealtimeUserAgent extends RegisteringMultipleUAS {
       System.exit(1);
       return;
     }
-    // Initialize a single shared Vert.x instance for all sessions with optimized configuration
-    VertxOptions vertxOptions =
-        new VertxOptions()
-            .setEventLoopPoolSize(4) // Dedicated event loops
-            .setWorkerPoolSize(10) // Adequate worker threads for blocking operations
-            .setInternalBlockingPoolSize(10)
-            .setMaxEventLoopExecuteTime(
-                2000) // Allow slightly longer event loop execution for RTP timing
-            .setMaxWorkerExecuteTime(60000)
-            .setWarningExceptionTime(5000);
-
+    // Initialize a single shared Vert.x instance for all sessions
+    VertxOptions vertxOptions = mimirConfig.getVertxOptions();
     Vertx vertx = Vertx.vertx(vertxOptions);
+    if (mimirConfig.nativeTransport && !vertx.isNativeTransportEnabled()) {
+      LOG.warn(
+          "Native transport is not available, using NIO", vertx.unavailableNativeTransportCause());
+    }
+
+    // One pacing engine drives the RTP send tick of every call
+    RTPPacingEngine pacingEngine =
+        new RTPPacingEngine(
+            mimirConfig.getRtpPacerThreads(),
+            Thread.MAX_PRIORITY,
+            mimirConfig.rtpSleepStrategy,
+            mimirConfig.rtpMissedTickPolicy);
+    // Optionally multiplex all RTP sockets on a few NIO selector threads
+    NioMediaEngine mediaEngine;
+    try {
+      mediaEngine =
+          mimirConfig.mediaEngine == MimirConfig.MediaEngineType.NIO
+              ? new NioMediaEngine(mimirConfig.getMediaThreads())
+              : null;
+    } catch (IOException e) {
+      System.err.println("Error starting NIO media engine: " + e.getMessage());
+      System.exit(1);
+      return;
+    }
+    logTopology(mimirConfig, vertxOptions, vertx.isNativeTransportEnabled());
+
+    // Turn new calls away before they degrade the running ones
+    AdmissionController admission =
+        new AdmissionController(
+            vertx,
+            pacingEngine,
+            mimirConfig.getEventLoops(),
+            mimirConfig.maxCalls,
+            mimirConfig.maxCallsPerExtension,
+            mimirConfig.maxEventLoopLagMs,
+            mimirConfig.maxPacingLatenessMs,
+            mimirConfig.retryAfterSeconds);
+    admission.start();
+    LOG.info("Admission control: {}", admission);
+
+    // All realtime sessions share a few HTTP clients, and with them their TLS sessions
+    RealtimeHttpClients httpClients =
+        new RealtimeHttpClients(vertx, mimirConfig.wsHttpClients, mimirConfig.wsOpenSsl);
+
+    // Play each extension's greeting from the first one its model generated
+    GreetingCache greetingCache = null;
+    if (mimirConfig.greetingCache) {
+      greetingCache =
+          new GreetingCache(
+              vertx,
+              mimirConfig.greetingCacheDir != null
+                  ? Paths.get(mimirConfig.greetingCacheDir)
+                  : null);
+      try {
+        greetingCache.load(extConfigManager.getExtensions().values());
+      } catch (IOException e) {
+        System.err.println("Error loading cached greetings: " + e.getMessage());
+        System.exit(1);
+        return;
+      }
+    }
+
+    // Keep realtime sessions connected and configured ahead of each extension's calls
+    Map<ExtensionConfig, WebsocketSessionPool> sessionPools = new HashMap<>();
+    if (mimirConfig.wsPoolSize > 0) {
+      for (Map.Entry<String, ExtensionConfig> extension :
+          extConfigManager.getExtensions().entrySet()) {
+        WebsocketSessionPool pool =
+            new WebsocketSessionPool(
+                vertx,
+                extension.getKey(),
+                extension.getValue(),
+                httpClients,
+                greetingCache,
+                mimirConfig.wsPoolSize,
+                TimeUnit.SECONDS.toMillis(mimirConfig.wsPoolRefreshSeconds));
+        sessionPools.put(extension.getValue(), pool);
+        pool.start();
+      }
+    }
+
     OpenAIRealtimeUserAgent userAgent =
         new OpenAIRealtimeUserAgent(
             new SipProvider(sipConfig, new ConfiguredScheduler(schedulerConfig)),
@@ -120,7 +333,15 @@ public class OpenAIRealtimeUserAgent extends RegisteringMultipleUAS {
             false,
             serviceConfig,
             vertx,
-            extConfigManager);
+            extConfigManager,
+            pacingEngine,
+            mediaEngine,
+            sessionPools,
+            httpClients,
+            greetingCache,
+            mimirConfig.earlyAnswer,
+            TimeUnit.SECONDS.toMillis(mimirConfig.answerTimeoutSeconds),
+            admission);
 
     // Use CountDownLatch for clean shutdown coordination
     CountDownLatch shutdownLatch = new CountDownLatch(1);
@@ -131,6 +352,24 @@ public class OpenAIRealtimeUserAgent extends RegisteringMultipleUAS {
             new Thread(
                 () -> {
                   LOG.info("Shutdown signal received, cleaning up...");
+                  // Probes answer 503 from now on, a proxy stops sending calls here
+                  admission.drain();
+                  try {
+                    if (mimirConfig.drainTimeoutSeconds > 0
+                        && !admission.awaitIdle(
+                            TimeUnit.SECONDS.toMillis(mimirConfig.drainTimeoutSeconds))) {
+                      LOG.warn("{} calls still active after draining", admission.getActiveCalls());
+                    }
+                  } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                  }
+                  admission.close();
+                  sessionPools.values().forEach(WebsocketSessionPool::close);
+                  httpClients.close();
+                  pacingEngine.shutdown();
+                  if (mediaEngine != null) {
+                    mediaEngine.shutdown();
+                  }
                   try {
                     // Close Vert.x gracefully
                     vertx
@@ -146,7 +385,7 @@ public class OpenAIRealtimeUserAgent extends RegisteringMultipleUAS {
                             });
 
                     // Wait for cleanup with timeout
-                    if (!shutdownLatch.await(10, java.util.concurrent.TimeUnit.SECONDS)) {
+                    if (!shutdownLatch.await(10, TimeUnit.SECONDS)) {
                       LOG.warn("Shutdown timeout exceeded, forcing exit");
                     }
                   } catch (InterruptedException e) {
@@ -1,5 +1,7 @@
 package com.kajsiebert.mimir.openai.rtp;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -13,41 +15,127 @@ import io.vertx.core.buffer.Buffer;
 /**
  * Enhanced RTP session with adaptive timing and performance monitoring. Extends the basic
  * RTPSession with jitter detection and adaptive buffering.
+ *
+ * <p>Packets are handed to {@link #sendPacket} by a single producer. While the producer's timing is
+ * steady they are sent directly. Once its smoothed jitter passes the profile's warning threshold,
+ * packets are instead handed off through a lock-free single-producer single-consumer queue to a
+ * pacer on the {@link RTPPacingEngine}, which sends one packet every 20ms after the queue has
+ * filled to a target depth. The target depth follows the measured jitter. The mode is entered after
+ * {@link #ENTER_HOLD_PACKETS} jittery packets in a row. When jitter has stayed below half the
+ * threshold for {@link #EXIT_HOLD_PACKETS} packets, the pacer drains the queue and the session
+ * switches back to direct sending.
+ *
+ * <p>Leaving adaptive mode is a handshake through {@link Mode}, so a packet the producer hands off
+ * while the pacer is leaving is never stranded in the queue: either the pacer sees it and keeps
+ * pacing, or the producer sees the pacer gone and sends it itself.
  */
 public class AdaptiveRTPSession extends RTPSession {
   private static final Logger LOG = LoggerFactory.getLogger(AdaptiveRTPSession.class);
 
+  /** Intervals and jitter are recorded in microseconds, up to a minute. */
+  private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+  private static final long EXPECTED_INTERVAL_MICROS =
+      TimeUnit.MILLISECONDS.toMicros(RTPConstants.PACKET_INTERVAL_MS);
+
+  /** Packets to measure before adaptive mode may be enabled. */
+  private static final int MIN_SAMPLES = 10;
+
+  /** Consecutive jittery packets before entering adaptive mode. */
+  static final int ENTER_HOLD_PACKETS = 3;
+
+  /** Consecutive calm packets (one second) before leaving adaptive mode. */
+  static final int EXIT_HOLD_PACKETS = 50;
+
+  /** Log every this many dropped packets after the first one. */
+  private static final long DROP_LOG_INTERVAL = 500;
+
+  // Tail timing across all calls, merged from each session when it closes
+  private static final JitterHistogram PROCESS_INTERVALS =
+      new JitterHistogram(HIGHEST_TRACKABLE_MICROS);
+  private static final JitterHistogram PROCESS_JITTER =
+      new JitterHistogram(HIGHEST_TRACKABLE_MICROS);
+  private static final JitterHistogram PROCESS_BUFFERING =
+      new JitterHistogram(HIGHEST_TRACKABLE_MICROS);
+
   private final AtomicLong lastSendTime = new AtomicLong(0);
   private final AtomicLong totalSentPackets = new AtomicLong(0);
-  private final AtomicReference<TimingMetrics> metrics = new AtomicReference<>(new TimingMetrics());
+  private final AtomicLong droppedPackets = new AtomicLong(0);
+  private final AtomicLong underruns = new AtomicLong(0);
+  private final JitterHistogram intervalHistogram = new JitterHistogram(HIGHEST_TRACKABLE_MICROS);
+  private final JitterHistogram jitterHistogram = new JitterHistogram(HIGHEST_TRACKABLE_MICROS);
+  private final JitterHistogram bufferingHistogram = new JitterHistogram(HIGHEST_TRACKABLE_MICROS);
+  private final AtomicBoolean closed = new AtomicBoolean(false);
+  private final RTPTimingConfig timingConfig;
+  private final RTPPacingEngine pacingEngine;
+  private final long adaptiveThresholdMicros;
+  private final long jitterErrorMicros;
+
+  /** Who sends: the producer directly, or the pacer, which may be about to hand back. */
+  enum Mode {
+    DIRECT,
+    ADAPTIVE,
+    EXITING
+  }
+
+  // Adaptive buffer for smoother packet flow, filled by the producer and drained by the pacer
+  private final PacketHandoff adaptiveBuffer;
+  private final AtomicReference<Mode> mode = new AtomicReference<>(Mode.DIRECT);
+  private volatile boolean exitRequested = false;
+  private volatile int targetDepth = 1;
 
-  // Adaptive buffer for smoother packet flow
-  private final CircularBuffer<Buffer> adaptiveBuffer;
-  private volatile boolean adaptiveMode = false;
+  // Producer state
+  private long smoothedJitterMicros = 0;
+  private int jitteryPackets = 0;
+  private int calmPackets = 0;
+
+  // Pacer state
+  private volatile RTPPacingEngine.PacingHandle pacer;
+  private boolean primed = false;
 
   public AdaptiveRTPSession(Vertx vertx, FlowSpec flowSpec) {
-    super(vertx, flowSpec);
-    this.adaptiveBuffer = new CircularBuffer<>(10); // Buffer up to 10 packets
-    LOG.info("AdaptiveRTPSession initialized with adaptive buffering");
+    this(vertx, flowSpec, RTPTimingConfig.defaultConfig());
+  }
+
+  public AdaptiveRTPSession(Vertx vertx, FlowSpec flowSpec, RTPTimingConfig timingConfig) {
+    this(vertx, flowSpec, timingConfig, RTPPacingEngine.getDefault());
+  }
+
+  public AdaptiveRTPSession(
+      Vertx vertx, FlowSpec flowSpec, RTPTimingConfig timingConfig, RTPPacingEngine pacingEngine) {
+    this(vertx, flowSpec, timingConfig, pacingEngine, resolveOnce(flowSpec.getRemoteAddress()));
+  }
+
+  /** Creates a session sending to the already resolved {@code remoteHost}. */
+  public AdaptiveRTPSession(
+      Vertx vertx,
+      FlowSpec flowSpec,
+      RTPTimingConfig timingConfig,
+      RTPPacingEngine pacingEngine,
+      String remoteHost) {
+    super(vertx, flowSpec, timingConfig.getJitterBufferDepth(), remoteHost);
+    this.timingConfig = timingConfig;
+    this.pacingEngine = pacingEngine;
+    this.adaptiveBuffer = new PacketHandoff(Math.max(1, timingConfig.getAdaptiveBufferSize()));
+    this.adaptiveThresholdMicros =
+        TimeUnit.MILLISECONDS.toMicros(timingConfig.getJitterWarningThresholdMs());
+    this.jitterErrorMicros =
+        TimeUnit.MILLISECONDS.toMicros(timingConfig.getJitterErrorThresholdMs());
+    LOG.info("AdaptiveRTPSession initialized with {}", timingConfig);
   }
 
   @Override
   public void sendPacket(Buffer data) {
-    long currentTime = System.currentTimeMillis();
+    long currentTime = System.nanoTime();
     long lastTime = lastSendTime.getAndSet(currentTime);
 
-    if (lastTime > 0) {
-      long interval = currentTime - lastTime;
-      updateTimingMetrics(interval);
-
-      // Check if we should enable adaptive mode due to timing issues
-      if (shouldEnableAdaptiveMode(interval)) {
-        enableAdaptiveMode();
-      }
+    // Adaptive mode is decided from the recorded timing, so it also needs metrics enabled
+    if (lastTime > 0 && timingConfig.isTimingMetricsEnabled()) {
+      recordInterval(TimeUnit.NANOSECONDS.toMicros(currentTime - lastTime));
     }
 
-    if (adaptiveMode) {
-      sendPacketAdaptive(data);
+    if (mode.get() != Mode.DIRECT) {
+      sendPacketAdaptive(data, currentTime);
     } else {
       sendPacketDirect(data);
     }
@@ -55,48 +143,164 @@ public class AdaptiveRTPSession extends RTPSession {
     totalSentPackets.incrementAndGet();
   }
 
+  /** Closes the session and merges its timing into the process-wide histograms. */
+  @Override
+  public void close() {
+    RTPPacingEngine.PacingHandle handle = pacer;
+    if (handle != null) {
+      handle.cancel();
+    }
+    super.close();
+    if (closed.compareAndSet(false, true)) {
+      PROCESS_INTERVALS.add(intervalHistogram);
+      PROCESS_JITTER.add(jitterHistogram);
+      PROCESS_BUFFERING.add(bufferingHistogram);
+      LOG.info("RTP session closed. {}", getTimingMetrics());
+    }
+  }
+
   private void sendPacketDirect(Buffer data) {
     super.sendPacket(data);
   }
 
-  private void sendPacketAdaptive(Buffer data) {
-    // Add to buffer and send from buffer to smooth out timing
-    adaptiveBuffer.add(data);
+  private void sendPacketAdaptive(Buffer data, long now) {
+    if (!adaptiveBuffer.offer(data, now)) {
+      long dropped = droppedPackets.incrementAndGet();
+      discardPacket(data);
+      if (dropped == 1 || dropped % DROP_LOG_INTERVAL == 0) {
+        LOG.warn(
+            "Adaptive RTP buffer full, dropped {} packets so far (depth: {})",
+            dropped,
+            adaptiveBuffer.size());
+      }
+    }
 
-    // Send buffered packets if available
-    Buffer bufferedPacket = adaptiveBuffer.poll();
-    if (bufferedPacket != null) {
-      super.sendPacket(bufferedPacket);
+    // A pacer about to leave is kept pacing, it then sees the packet on its next tick. One that
+    // already left has stopped polling, so the producer sends what is left itself.
+    if (mode.get() == Mode.EXITING && mode.compareAndSet(Mode.EXITING, Mode.ADAPTIVE)) {
+      return;
+    }
+    if (mode.get() == Mode.DIRECT) {
+      Buffer stranded;
+      while ((stranded = adaptiveBuffer.poll()) != null) {
+        super.sendPacket(stranded);
+      }
     }
   }
 
-  private void updateTimingMetrics(long interval) {
-    TimingMetrics current = metrics.get();
-    TimingMetrics updated = current.update(interval);
-    metrics.set(updated);
+  /** Records one send interval and updates the adaptive mode from the smoothed jitter. */
+  void recordInterval(long intervalMicros) {
+    long jitter = Math.abs(intervalMicros - EXPECTED_INTERVAL_MICROS);
+    intervalHistogram.record(intervalMicros);
+    jitterHistogram.record(jitter);
+
+    // Interarrival jitter estimate as in RFC 3550, section 6.4.1, seeded with the mean of the
+    // first samples so it does not start out biased towards zero
+    long samples = jitterHistogram.getCount();
+    smoothedJitterMicros += (jitter - smoothedJitterMicros) / Math.min(samples, 16);
 
     // Log performance warnings
-    if (updated.averageJitter > 10.0) {
-      LOG.warn("High RTP timing jitter detected: {:.2f}ms average", updated.averageJitter);
+    if (jitterHistogram.getMean() > jitterErrorMicros) {
+      LOG.warn(
+          "High RTP timing jitter detected: {}us average", Math.round(jitterHistogram.getMean()));
     }
+
+    updateAdaptiveMode();
   }
 
-  private boolean shouldEnableAdaptiveMode(long interval) {
-    TimingMetrics current = metrics.get();
+  private void updateAdaptiveMode() {
+    if (!timingConfig.isAdaptiveModeEnabled() || jitterHistogram.getCount() <= MIN_SAMPLES) {
+      return;
+    }
+
+    // Enough depth to cover the jitter, plus one packet of slack
+    long depth = (smoothedJitterMicros + EXPECTED_INTERVAL_MICROS - 1) / EXPECTED_INTERVAL_MICROS;
+    targetDepth = (int) Math.min(depth + 1, adaptiveBuffer.maxDepth);
 
-    // Enable adaptive mode if jitter is consistently high
-    return current.sampleCount > 10 && current.averageJitter > 5.0;
+    if (mode.get() == Mode.DIRECT) {
+      if (smoothedJitterMicros <= adaptiveThresholdMicros) {
+        jitteryPackets = 0;
+      } else if (++jitteryPackets >= ENTER_HOLD_PACKETS) {
+        enableAdaptiveMode();
+      }
+    } else if (smoothedJitterMicros < adaptiveThresholdMicros / 2) {
+      if (++calmPackets >= EXIT_HOLD_PACKETS && !exitRequested) {
+        exitRequested = true;
+        LOG.info("RTP timing jitter settled, draining adaptive buffer");
+      }
+    } else {
+      calmPackets = 0;
+      exitRequested = false;
+    }
   }
 
   private void enableAdaptiveMode() {
-    if (!adaptiveMode) {
-      adaptiveMode = true;
-      LOG.info("Enabled adaptive RTP timing mode due to detected jitter");
+    jitteryPackets = 0;
+    calmPackets = 0;
+    exitRequested = false;
+    primed = false;
+    pacer =
+        pacingEngine.register(
+            TimeUnit.MILLISECONDS.toNanos(RTPConstants.PACKET_INTERVAL_MS),
+            // Buffered audio is already late, so catch up rather than drop
+            RTPPacingEngine.MissedTickPolicy.BURST,
+            deadline -> pace());
+    mode.set(Mode.ADAPTIVE);
+    LOG.info(
+        "Enabled adaptive RTP timing mode due to detected jitter ({}us), target depth {}",
+        smoothedJitterMicros,
+        targetDepth);
+  }
+
+  /** Runs on the pacing engine, the only consumer of the adaptive buffer while adaptive. */
+  private void pace() {
+    if (!primed) {
+      if (adaptiveBuffer.size() < targetDepth && !exitRequested) {
+        return;
+      }
+      primed = true;
+    }
+
+    Buffer packet = adaptiveBuffer.poll();
+    if (packet != null) {
+      bufferingHistogram.record(
+          TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - adaptiveBuffer.lastEnqueuedAt));
+      super.sendPacket(packet);
+    } else if (exitRequested) {
+      exit();
+    } else {
+      underruns.incrementAndGet();
+      primed = false;
+    }
+  }
+
+  /** Hands sending back to the producer, unless it handed off another packet meanwhile. */
+  private void exit() {
+    mode.set(Mode.EXITING);
+    // A packet offered before EXITING was visible to the producer is seen here
+    if (adaptiveBuffer.size() > 0) {
+      mode.compareAndSet(Mode.EXITING, Mode.ADAPTIVE);
+      return;
+    }
+    // Fails if a later packet's producer took adaptive mode back. Once it succeeds the producer
+    // may register a new pacer at any time, so only this one's handle is touched.
+    RTPPacingEngine.PacingHandle handle = pacer;
+    if (mode.compareAndSet(Mode.EXITING, Mode.DIRECT)) {
+      handle.cancel();
+      LOG.info("Disabled adaptive RTP timing mode");
     }
   }
 
+  /** Returns a snapshot of this session's send timing. */
   public TimingMetrics getTimingMetrics() {
-    return metrics.get();
+    return new TimingMetrics(
+        intervalHistogram.snapshot(), jitterHistogram.snapshot(), bufferingHistogram.snapshot());
+  }
+
+  /** Returns a snapshot of the send timing of all closed sessions in this process. */
+  public static TimingMetrics getProcessTimingMetrics() {
+    return new TimingMetrics(
+        PROCESS_INTERVALS.snapshot(), PROCESS_JITTER.snapshot(), PROCESS_BUFFERING.snapshot());
   }
 
   public long getTotalSentPackets() {
@@ -104,89 +308,129 @@ public class AdaptiveRTPSession extends RTPSession {
   }
 
   public boolean isAdaptiveModeEnabled() {
-    return adaptiveMode;
+    return mode.get() != Mode.DIRECT;
   }
 
-  /** Immutable timing metrics tracking */
+  /** Returns the number of packets the pacer currently buffers before sending. */
+  public int getTargetDepth() {
+    return targetDepth;
+  }
+
+  public int getBufferedPackets() {
+    return adaptiveBuffer.size();
+  }
+
+  /** Returns how often the pacer found the adaptive buffer empty and had to refill it. */
+  public long getUnderruns() {
+    return underruns.get();
+  }
+
+  public long getDroppedPackets() {
+    return droppedPackets.get();
+  }
+
+  /** Immutable snapshot of send interval, jitter and adaptive buffering delay, in milliseconds. */
   public static class TimingMetrics {
     public final long sampleCount;
     public final double averageInterval;
     public final double averageJitter;
-    public final long maxJitter;
-
-    public TimingMetrics() {
-      this(0, 0.0, 0.0, 0);
+    public final double p50Jitter;
+    public final double p99Jitter;
+    public final double p999Jitter;
+    public final double maxJitter;
+    public final long bufferedPackets;
+    public final double averageBufferingLatency;
+    public final double p99BufferingLatency;
+
+    public TimingMetrics(JitterHistogram.Snapshot intervals, JitterHistogram.Snapshot jitter) {
+      this(intervals, jitter, new JitterHistogram.Snapshot(0, 0.0, 0, 0, 0, 0));
     }
 
-    private TimingMetrics(
-        long sampleCount, double averageInterval, double averageJitter, long maxJitter) {
-      this.sampleCount = sampleCount;
-      this.averageInterval = averageInterval;
-      this.averageJitter = averageJitter;
-      this.maxJitter = maxJitter;
-    }
-
-    public TimingMetrics update(long interval) {
-      long expectedInterval = RTPConstants.PACKET_INTERVAL_MS;
-      long jitter = Math.abs(interval - expectedInterval);
-
-      long newSampleCount = sampleCount + 1;
-      double newAverageInterval = (averageInterval * sampleCount + interval) / newSampleCount;
-      double newAverageJitter = (averageJitter * sampleCount + jitter) / newSampleCount;
-      long newMaxJitter = Math.max(maxJitter, jitter);
-
-      return new TimingMetrics(newSampleCount, newAverageInterval, newAverageJitter, newMaxJitter);
+    public TimingMetrics(
+        JitterHistogram.Snapshot intervals,
+        JitterHistogram.Snapshot jitter,
+        JitterHistogram.Snapshot buffering) {
+      this.sampleCount = jitter.count;
+      this.averageInterval = intervals.mean / 1000.0;
+      this.averageJitter = jitter.mean / 1000.0;
+      this.p50Jitter = jitter.p50 / 1000.0;
+      this.p99Jitter = jitter.p99 / 1000.0;
+      this.p999Jitter = jitter.p999 / 1000.0;
+      this.maxJitter = jitter.max / 1000.0;
+      this.bufferedPackets = buffering.count;
+      this.averageBufferingLatency = buffering.mean / 1000.0;
+      this.p99BufferingLatency = buffering.p99 / 1000.0;
     }
 
     @Override
     public String toString() {
       return String.format(
-          "TimingMetrics{samples=%d, avgInterval=%.2fms, avgJitter=%.2fms, maxJitter=%dms}",
-          sampleCount, averageInterval, averageJitter, maxJitter);
+          "TimingMetrics{samples=%d, avgInterval=%.2fms, avgJitter=%.2fms, p50Jitter=%.2fms,"
+              + " p99Jitter=%.2fms, p999Jitter=%.2fms, maxJitter=%.2fms, bufferedPackets=%d,"
+              + " avgBuffering=%.2fms, p99Buffering=%.2fms}",
+          sampleCount,
+          averageInterval,
+          averageJitter,
+          p50Jitter,
+          p99Jitter,
+          p999Jitter,
+          maxJitter,
+          bufferedPackets,
+          averageBufferingLatency,
+          p99BufferingLatency);
     }
   }
 
-  /** Simple circular buffer for packet smoothing */
-  private static class CircularBuffer<T> {
-    private final Object[] buffer;
-    private final int capacity;
-    private int head = 0;
-    private int tail = 0;
-    private int size = 0;
-
-    public CircularBuffer(int capacity) {
-      this.capacity = capacity;
-      this.buffer = new Object[capacity];
+  /**
+   * Lock-free single-producer single-consumer ring of packets and the time they were enqueued. The
+   * producer only advances {@code tail} and the consumer only advances {@code head}.
+   */
+  private static final class PacketHandoff {
+    private final Buffer[] packets;
+    private final long[] enqueuedAt;
+    private final int mask;
+    private final int maxDepth;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /** Enqueue time of the packet returned by the last {@link #poll()}, consumer only. */
+    long lastEnqueuedAt;
+
+    PacketHandoff(int maxDepth) {
+      int capacity = Integer.highestOneBit(maxDepth - 1) << 1;
+      this.packets = new Buffer[Math.max(1, capacity)];
+      this.enqueuedAt = new long[packets.length];
+      this.mask = packets.length - 1;
+      this.maxDepth = maxDepth;
     }
 
-    public synchronized void add(T item) {
-      if (size == capacity) {
-        // Buffer full, overwrite oldest
-        head = (head + 1) % capacity;
-      } else {
-        size++;
+    boolean offer(Buffer packet, long now) {
+      long t = tail.get();
+      if (t - head.get() >= maxDepth) {
+        return false;
       }
-
-      buffer[tail] = item;
-      tail = (tail + 1) % capacity;
+      int index = (int) (t & mask);
+      packets[index] = packet;
+      enqueuedAt[index] = now;
+      tail.lazySet(t + 1);
+      return true;
     }
 
-    @SuppressWarnings("unchecked")
-    public synchronized T poll() {
-      if (size == 0) {
+    Buffer poll() {
+      long h = head.get();
+      if (h == tail.get()) {
         return null;
       }
-
-      T item = (T) buffer[head];
-      buffer[head] = null;
-      head = (head + 1) % capacity;
-      size--;
-
-      return item;
+      int index = (int) (h & mask);
+      Buffer packet = packets[index];
+      packets[index] = null;
+      lastEnqueuedAt = enqueuedAt[index];
+      head.lazySet(h + 1);
+      return packet;
     }
 
-    public synchronized int size() {
-      return size;
+    int size() {
+      return (int) (tail.get() - head.get());
     }
   }
 }
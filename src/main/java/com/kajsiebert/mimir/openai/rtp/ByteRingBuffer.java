@@ -1,39 +1,126 @@
 package com.kajsiebert.mimir.openai.rtp;
 
+import com.kajsiebert.mimir.openai.util.Base64Codec;
+
+/**
+ * Fixed-capacity FIFO of bytes backed by a single array. Appends and pops copy at most two
+ * contiguous segments with {@link System#arraycopy}, so the cost of an operation depends only on
+ * the number of bytes moved and never on how much data is already buffered.
+ *
+ * <p>This class is not thread-safe; callers that share an instance across threads must provide
+ * their own synchronization.
+ */
 public class ByteRingBuffer {
   private final byte[] buffer;
   private int head = 0;
   private int tail = 0;
   private int size = 0;
+  private final byte[] quantum = new byte[3];
 
   public ByteRingBuffer(int capacity) {
     buffer = new byte[capacity];
   }
 
   public boolean write(byte[] data) {
-    if (data.length > buffer.length - size) return false;
+    return write(data, 0, data.length);
+  }
+
+  /**
+   * Appends {@code length} bytes from {@code data}. The write is all-or-nothing: if there is not
+   * enough room nothing is copied.
+   *
+   * @return true if the bytes were appended, false if the buffer does not have enough room
+   */
+  public boolean write(byte[] data, int offset, int length) {
+    if (length > buffer.length - size) return false;
 
-    for (byte b : data) {
-      buffer[tail] = b;
-      tail = (tail + 1) % buffer.length;
+    int firstChunk = Math.min(length, buffer.length - tail);
+    System.arraycopy(data, offset, buffer, tail, firstChunk);
+    System.arraycopy(data, offset + firstChunk, buffer, 0, length - firstChunk);
+    tail = (tail + length) % buffer.length;
+    size += length;
+    return true;
+  }
+
+  /**
+   * Decodes {@code length} base64 characters from {@code src} straight into the buffer. The write
+   * is all-or-nothing like {@link #write(byte[], int, int)}.
+   *
+   * @return true if the decoded bytes were appended, false if the buffer does not have enough room
+   * @throws IllegalArgumentException if the text is not valid base64
+   */
+  public boolean writeBase64(char[] src, int offset, int length) {
+    int decoded = Base64Codec.decodedLength(src, offset, length);
+    if (decoded > buffer.length - size) return false;
+
+    int contiguous = buffer.length - tail;
+    if (decoded <= contiguous) {
+      Base64Codec.decode(src, offset, length, buffer, tail);
+    } else {
+      // Whole quanta up to the end of the array, the one straddling it through a scratch quantum,
+      // then the rest from the start of the array
+      int quanta = contiguous / 3;
+      int chars = quanta * 4;
+      Base64Codec.decode(src, offset, chars, buffer, tail);
+      int index = tail + quanta * 3;
+      int straddling =
+          Base64Codec.decode(src, offset + chars, Math.min(4, length - chars), quantum, 0);
+      for (int i = 0; i < straddling; i++) {
+        buffer[index++ % buffer.length] = quantum[i];
+      }
+      chars += 4;
+      if (chars < length) {
+        Base64Codec.decode(src, offset + chars, length - chars, buffer, index % buffer.length);
+      }
     }
-    size += data.length;
+    tail = (tail + decoded) % buffer.length;
+    size += decoded;
     return true;
   }
 
+  /**
+   * Removes up to {@code length} bytes from the head of the buffer and copies them into {@code
+   * dst}.
+   *
+   * @return the number of bytes copied, which is less than {@code length} if fewer are available
+   */
+  public int read(byte[] dst, int offset, int length) {
+    int count = Math.min(length, size);
+    if (count == 0) return 0;
+
+    int firstChunk = Math.min(count, buffer.length - head);
+    System.arraycopy(buffer, head, dst, offset, firstChunk);
+    System.arraycopy(buffer, 0, dst, offset + firstChunk, count - firstChunk);
+    head = (head + count) % buffer.length;
+    size -= count;
+    return count;
+  }
+
   public byte[] pop(int len) {
     if (size < len) return null;
 
     byte[] result = new byte[len];
-    for (int i = 0; i < len; i++) {
-      result[i] = buffer[head];
-      head = (head + 1) % buffer.length;
-    }
-    size -= len;
+    read(result, 0, len);
     return result;
   }
 
+  /** Discards all buffered bytes without touching the backing array. */
+  public void clear() {
+    head = 0;
+    tail = 0;
+    size = 0;
+  }
+
   public int size() {
     return size;
   }
+
+  public int capacity() {
+    return buffer.length;
+  }
+
+  /** Returns the number of bytes that can be written before the buffer is full. */
+  public int remaining() {
+    return buffer.length - size;
+  }
 }
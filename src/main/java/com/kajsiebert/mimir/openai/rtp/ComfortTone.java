@@ -0,0 +1,80 @@
+package com.kajsiebert.mimir.openai.rtp;
+
+/**
+ * A ringback tone in G.711 μ-law, played to a caller whose call was answered before the model's
+ * greeting is ready. The tone is the ETSI ringback, 425Hz for one second then four seconds of
+ * silence, with short fades so it does not click.
+ *
+ * <p>One cadence period is generated once and shared. Each call reads it through its own instance,
+ * which only keeps the position in the period.
+ */
+public class ComfortTone {
+
+  static final int SAMPLE_RATE = 8000;
+  static final int FREQUENCY_HZ = 425;
+  static final int TONE_MS = 1000;
+  static final int SILENCE_MS = 4000;
+
+  /** About -16dBFS, a comfortable level for a ringback. */
+  private static final double AMPLITUDE = 5000;
+
+  private static final int FADE_SAMPLES = SAMPLE_RATE * 5 / 1000;
+
+  private static final byte[] CADENCE = generateCadence();
+
+  private int position = 0;
+
+  /**
+   * Copies the next {@code length} bytes of the tone into {@code dst}.
+   *
+   * @return {@code length}, the tone never runs out
+   */
+  public int read(byte[] dst, int offset, int length) {
+    int copied = 0;
+    while (copied < length) {
+      int chunk = Math.min(length - copied, CADENCE.length - position);
+      System.arraycopy(CADENCE, position, dst, offset + copied, chunk);
+      copied += chunk;
+      position = (position + chunk) % CADENCE.length;
+    }
+    return length;
+  }
+
+  /** Returns the length of one cadence period in bytes, one byte per sample. */
+  static int getCadenceLength() {
+    return CADENCE.length;
+  }
+
+  private static byte[] generateCadence() {
+    int toneSamples = SAMPLE_RATE * TONE_MS / 1000;
+    int silenceSamples = SAMPLE_RATE * SILENCE_MS / 1000;
+    byte[] cadence = new byte[toneSamples + silenceSamples];
+    for (int i = 0; i < toneSamples; i++) {
+      double fade = Math.min(1.0, Math.min(i, toneSamples - 1 - i) / (double) FADE_SAMPLES);
+      double sample = AMPLITUDE * fade * Math.sin(2 * Math.PI * FREQUENCY_HZ * i / SAMPLE_RATE);
+      cadence[i] = linearToUlaw((int) Math.round(sample));
+    }
+    byte silence = linearToUlaw(0);
+    for (int i = toneSamples; i < cadence.length; i++) {
+      cadence[i] = silence;
+    }
+    return cadence;
+  }
+
+  /** Encodes a 16 bit linear sample as G.711 μ-law. */
+  static byte linearToUlaw(int sample) {
+    final int bias = 0x84;
+    final int clip = 32635;
+    int sign = (sample >> 8) & 0x80;
+    if (sign != 0) {
+      sample = -sample;
+    }
+    sample = Math.min(sample, clip) + bias;
+    int exponent = 7;
+    for (int mask = 0x4000; (sample & mask) == 0 && exponent > 0; mask >>= 1) {
+      exponent--;
+    }
+    int mantissa = (sample >> (exponent + 3)) & 0x0f;
+    return (byte) ~(sign | (exponent << 4) | mantissa);
+  }
+}
@@ -0,0 +1,170 @@
+package com.kajsiebert.mimir.openai.rtp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values with fixed log-linear buckets, in the style of
+ * HdrHistogram. Values below 128 get a bucket each, above that every power of two is split into 64
+ * buckets, so any recorded value is reported within about 1.6% of its true value.
+ *
+ * <p>Recording is a handful of atomic increments and never allocates, so it can sit on the RTP send
+ * path. Values above {@link #getHighestTrackableValue()} are clamped into the last bucket but still
+ * count towards the exact maximum and mean.
+ *
+ * <p>Histograms with the same highest trackable value can be merged with {@link #add}, which is how
+ * per-session histograms are folded into the process-wide ones.
+ */
+public class JitterHistogram {
+
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+
+  /** Values below this get a bucket of their own. */
+  private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT << 1;
+
+  private final long highestTrackableValue;
+  private final AtomicLongArray counts;
+  private final AtomicLong totalCount = new AtomicLong();
+  private final AtomicLong totalSum = new AtomicLong();
+  private final AtomicLong maxValue = new AtomicLong();
+
+  public JitterHistogram(long highestTrackableValue) {
+    if (highestTrackableValue < LINEAR_LIMIT) {
+      throw new IllegalArgumentException(
+          "Highest trackable value must be at least " + LINEAR_LIMIT);
+    }
+    this.highestTrackableValue = highestTrackableValue;
+    this.counts = new AtomicLongArray(bucketIndex(highestTrackableValue) + 1);
+  }
+
+  /** Records a value. Negative values are recorded as zero. */
+  public void record(long value) {
+    long clamped = Math.max(0, value);
+    counts.incrementAndGet(bucketIndex(Math.min(clamped, highestTrackableValue)));
+    totalCount.incrementAndGet();
+    totalSum.addAndGet(clamped);
+    maxValue.accumulateAndGet(clamped, Math::max);
+  }
+
+  /** Adds all values recorded in {@code other} to this histogram. */
+  public void add(JitterHistogram other) {
+    if (other.highestTrackableValue != highestTrackableValue) {
+      throw new IllegalArgumentException("Cannot merge histograms with different ranges");
+    }
+    for (int i = 0; i < counts.length(); i++) {
+      long count = other.counts.get(i);
+      if (count > 0) {
+        counts.addAndGet(i, count);
+      }
+    }
+    totalCount.addAndGet(other.totalCount.get());
+    totalSum.addAndGet(other.totalSum.get());
+    maxValue.accumulateAndGet(other.maxValue.get(), Math::max);
+  }
+
+  public void reset() {
+    for (int i = 0; i < counts.length(); i++) {
+      counts.set(i, 0);
+    }
+    totalCount.set(0);
+    totalSum.set(0);
+    maxValue.set(0);
+  }
+
+  public long getCount() {
+    return totalCount.get();
+  }
+
+  public double getMean() {
+    long count = totalCount.get();
+    return count > 0 ? (double) totalSum.get() / count : 0.0;
+  }
+
+  public long getMax() {
+    return maxValue.get();
+  }
+
+  public long getHighestTrackableValue() {
+    return highestTrackableValue;
+  }
+
+  /**
+   * Returns the value below which {@code percentile} percent of the recorded values fall, reported
+   * as the highest value of its bucket and never above the recorded maximum.
+   */
+  public long getValueAtPercentile(double percentile) {
+    long count = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      count += counts.get(i);
+    }
+    if (count == 0) {
+      return 0;
+    }
+
+    long target = Math.max(1, (long) (Math.min(percentile, 100.0) / 100.0 * count + 0.5));
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= target) {
+        return Math.min(highestValueInBucket(i), maxValue.get());
+      }
+    }
+    return maxValue.get();
+  }
+
+  /** Takes a point-in-time snapshot of the summary statistics. */
+  public Snapshot snapshot() {
+    return new Snapshot(
+        getCount(),
+        getMean(),
+        getValueAtPercentile(50.0),
+        getValueAtPercentile(99.0),
+        getValueAtPercentile(99.9),
+        getMax());
+  }
+
+  static int bucketIndex(long value) {
+    if (value < LINEAR_LIMIT) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & SUB_BUCKET_MASK);
+  }
+
+  static long highestValueInBucket(int index) {
+    if (index < LINEAR_LIMIT) {
+      return index;
+    }
+    int shift = (index >>> SUB_BUCKET_BITS) - 1;
+    long subBucket = (index & SUB_BUCKET_MASK) + SUB_BUCKET_COUNT;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  /** Immutable summary of a histogram at one point in time. */
+  public static class Snapshot {
+    public final long count;
+    public final double mean;
+    public final long p50;
+    public final long p99;
+    public final long p999;
+    public final long max;
+
+    public Snapshot(long count, double mean, long p50, long p99, long p999, long max) {
+      this.count = count;
+      this.mean = mean;
+      this.p50 = p50;
+      this.p99 = p99;
+      this.p999 = p999;
+      this.max = max;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "Snapshot{count=%d, mean=%.1f, p50=%d, p99=%d, p999=%d, max=%d}",
+          count, mean, p50, p99, p999, max);
+    }
+  }
+}
@@ -0,0 +1,356 @@
+package com.kajsiebert.mimir.openai.rtp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.mjsip.media.FlowSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Media engine that owns the RTP sockets of all calls on a small fixed set of selector threads, as
+ * an alternative to one Vert.x {@code DatagramSocket} per call paced by the {@link
+ * RTPPacingEngine}.
+ *
+ * <p>Each selector thread owns its sessions' non-blocking {@link DatagramChannel}s, receives into a
+ * direct buffer it owns, and sends each session's next packet every 20ms from the same thread, so a
+ * packet never crosses threads between the socket and the pacing. The channels are connected to the
+ * remote RTP address, so the kernel skips the per-packet route lookup and only datagrams from the
+ * remote endpoint are delivered (symmetric RTP).
+ *
+ * <p>Selector timeouts have millisecond resolution, so packets leave up to a millisecond after
+ * their deadline, the same resolution as the pacing engine's ticks.
+ */
+public class NioMediaEngine {
+  private static final Logger LOG = LoggerFactory.getLogger(NioMediaEngine.class);
+
+  /** Largest datagram we expect to receive, G.711 packets are 172 bytes. */
+  static final int MAX_DATAGRAM_SIZE = 1500;
+
+  private final MediaLoop[] loops;
+
+  public NioMediaEngine(int threads) throws IOException {
+    this(threads, System::nanoTime, true);
+  }
+
+  /**
+   * Creates an engine whose loops read the time from {@code nanoTime} and run no thread of their
+   * own, so a test drives them pass by pass with {@link #tick()}.
+   */
+  NioMediaEngine(int threads, LongSupplier nanoTime) throws IOException {
+    this(threads, nanoTime, false);
+  }
+
+  private NioMediaEngine(int threads, LongSupplier nanoTime, boolean startThreads)
+      throws IOException {
+    if (threads < 1) {
+      throw new IllegalArgumentException("At least one media thread is required");
+    }
+    loops = new MediaLoop[threads];
+    for (int i = 0; i < threads; i++) {
+      loops[i] = new MediaLoop("RTP-Media-" + i, nanoTime, startThreads);
+    }
+    if (startThreads) {
+      for (MediaLoop loop : loops) {
+        loop.thread.start();
+      }
+    }
+    LOG.info("NIO media engine started with {} selector threads", threads);
+  }
+
+  /**
+   * Opens the RTP socket of a call on the least loaded selector thread. The engine sends the next
+   * packet of {@code packetSource} every 20ms until the session is closed; a {@code null} packet
+   * skips the tick.
+   */
+  public NioRTPSession open(FlowSpec flowSpec, Supplier<Buffer> packetSource) throws IOException {
+    return open(flowSpec, packetSource, null, RTPAudioBuffer.DEFAULT_PLAYOUT_DEPTH);
+  }
+
+  /**
+   * Opens the RTP socket of a call like {@link #open(FlowSpec, Supplier)}, releasing each packet to
+   * {@code packetPool} as soon as it has been copied to the socket and receiving into a jitter
+   * buffer that waits {@code jitterBufferDepth} packets for a missing one.
+   */
+  public NioRTPSession open(
+      FlowSpec flowSpec,
+      Supplier<Buffer> packetSource,
+      RTPPacketPool packetPool,
+      int jitterBufferDepth)
+      throws IOException {
+    InetSocketAddress remote =
+        new InetSocketAddress(
+            RTPSession.resolveOnce(flowSpec.getRemoteAddress()), flowSpec.getRemotePort());
+
+    DatagramChannel channel = DatagramChannel.open();
+    try {
+      channel.configureBlocking(false);
+      channel.bind(new InetSocketAddress(flowSpec.getLocalPort()));
+      channel.connect(remote);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+
+    MediaLoop loop = leastLoadedLoop();
+    NioRTPSession session =
+        new NioRTPSession(loop, channel, packetSource, packetPool, jitterBufferDepth);
+    loop.sessionCount.incrementAndGet();
+    loop.submit(() -> loop.register(session));
+    LOG.info(
+        "RTP session on {} listening on port {}, connected to {}",
+        loop.thread.getName(),
+        flowSpec.getLocalPort(),
+        remote);
+    return session;
+  }
+
+  private MediaLoop leastLoadedLoop() {
+    MediaLoop loop = loops[0];
+    for (MediaLoop candidate : loops) {
+      if (candidate.sessionCount.get() < loop.sessionCount.get()) {
+        loop = candidate;
+      }
+    }
+    return loop;
+  }
+
+  public int getThreadCount() {
+    return loops.length;
+  }
+
+  /** Returns the number of open sessions over all selector threads. */
+  public int getSessionCount() {
+    int count = 0;
+    for (MediaLoop loop : loops) {
+      count += loop.sessionCount.get();
+    }
+    return count;
+  }
+
+  /**
+   * Runs one pass of every loop on the calling thread without waiting: queued tasks, the packets
+   * due by now and the datagrams already received. Only for engines created without selector
+   * threads.
+   */
+  void tick() throws IOException {
+    for (MediaLoop loop : loops) {
+      loop.poll();
+    }
+  }
+
+  /** Stops all selector threads and closes the sessions they own. */
+  public void shutdown() {
+    for (MediaLoop loop : loops) {
+      loop.running = false;
+      loop.selector.wakeup();
+      if (!loop.threaded) {
+        loop.closeAll();
+      }
+    }
+    LOG.info("NIO media engine stopped");
+  }
+
+  /** One selector thread, the sessions it owns and their pacing deadlines. */
+  static final class MediaLoop implements Runnable {
+    private final Thread thread;
+    private final boolean threaded;
+    private final LongSupplier nanoTime;
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final PriorityQueue<NioRTPSession> deadlines =
+        new PriorityQueue<>((a, b) -> Long.compare(a.nextDeadline - b.nextDeadline, 0));
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+    private final byte[] scratch = new byte[MAX_DATAGRAM_SIZE];
+    private volatile boolean running = true;
+
+    MediaLoop(String name, LongSupplier nanoTime, boolean threaded) throws IOException {
+      this.nanoTime = nanoTime;
+      this.threaded = threaded;
+      selector = Selector.open();
+      thread = new Thread(this, name);
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MAX_PRIORITY);
+    }
+
+    void submit(Runnable task) {
+      tasks.add(task);
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      while (running) {
+        try {
+          runTasks();
+          sendDuePackets(nanoTime.getAsLong());
+          select();
+          receiveReadyPackets();
+        } catch (Throwable t) {
+          LOG.warn("Exception in media loop, continuing: {}", t.getMessage(), t);
+        }
+      }
+      closeAll();
+    }
+
+    /** Runs one pass of the loop without waiting in the selector. */
+    void poll() throws IOException {
+      runTasks();
+      sendDuePackets(nanoTime.getAsLong());
+      selector.selectNow();
+      receiveReadyPackets();
+    }
+
+    private void runTasks() {
+      Runnable task;
+      while ((task = tasks.poll()) != null) {
+        task.run();
+      }
+    }
+
+    void register(NioRTPSession session) {
+      if (session.closed) {
+        return;
+      }
+      try {
+        session.channel.register(selector, SelectionKey.OP_READ, session);
+        session.nextDeadline = nanoTime.getAsLong();
+        deadlines.add(session);
+      } catch (IOException e) {
+        LOG.error("Failed to register RTP channel", e);
+        session.close();
+      }
+    }
+
+    void deregister(NioRTPSession session) {
+      deadlines.remove(session);
+      try {
+        session.channel.close();
+      } catch (IOException e) {
+        LOG.debug("Error closing RTP channel", e);
+      }
+      sessionCount.decrementAndGet();
+    }
+
+    private void select() throws IOException {
+      NioRTPSession next = deadlines.peek();
+      if (next == null) {
+        selector.select();
+        return;
+      }
+      long waitNanos = next.nextDeadline - nanoTime.getAsLong();
+      if (waitNanos <= 0) {
+        selector.selectNow();
+      } else {
+        // Round up, waking early would only spin until the deadline
+        selector.select(
+            TimeUnit.NANOSECONDS.toMillis(waitNanos + TimeUnit.MILLISECONDS.toNanos(1) - 1));
+      }
+    }
+
+    private void sendDuePackets(long now) {
+      NioRTPSession session;
+      while ((session = deadlines.peek()) != null && session.nextDeadline - now <= 0) {
+        deadlines.poll();
+        send(session);
+
+        // Stay on the 20ms grid, skipping ticks that were missed entirely
+        session.nextDeadline += session.intervalNanos;
+        if (session.nextDeadline - now <= 0) {
+          long missed = (now - session.nextDeadline) / session.intervalNanos + 1;
+          session.nextDeadline += missed * session.intervalNanos;
+          session.missedTicks += missed;
+        }
+        deadlines.add(session);
+      }
+    }
+
+    private void send(NioRTPSession session) {
+      Buffer packet;
+      try {
+        packet = session.packetSource.get();
+      } catch (Exception e) {
+        LOG.warn("Exception in RTP packet source, continuing: {}", e.getMessage(), e);
+        return;
+      }
+      if (packet == null) {
+        return;
+      }
+
+      int length = Math.min(packet.length(), MAX_DATAGRAM_SIZE);
+      packet.getBytes(0, length, scratch, 0);
+      if (session.packetPool != null) {
+        session.packetPool.release(packet);
+      }
+      sendBuffer.clear();
+      sendBuffer.put(scratch, 0, length).flip();
+      try {
+        session.channel.write(sendBuffer);
+        session.packetsSent++;
+      } catch (IOException e) {
+        session.onSendFailure(e);
+      }
+    }
+
+    private void receiveReadyPackets() {
+      Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+      while (keys.hasNext()) {
+        SelectionKey key = keys.next();
+        keys.remove();
+        if (key.isValid() && key.isReadable()) {
+          NioRTPSession session = (NioRTPSession) key.attachment();
+          receive(session);
+        }
+      }
+    }
+
+    private void receive(NioRTPSession session) {
+      try {
+        while (true) {
+          receiveBuffer.clear();
+          if (session.channel.read(receiveBuffer) <= 0) {
+            return;
+          }
+          receiveBuffer.flip();
+          int length = receiveBuffer.remaining();
+          receiveBuffer.get(scratch, 0, length);
+          session.onPacket(scratch, length);
+        }
+      } catch (IOException e) {
+        // ICMP port unreachable surfaces here on connected channels until the remote listens
+        LOG.debug("RTP receive failed: {}", e.getMessage());
+      }
+    }
+
+    private void closeAll() {
+      for (SelectionKey key : selector.keys()) {
+        try {
+          key.channel().close();
+        } catch (IOException e) {
+          LOG.debug("Error closing RTP channel", e);
+        }
+      }
+      try {
+        selector.close();
+      } catch (IOException e) {
+        LOG.debug("Error closing selector", e);
+      }
+    }
+  }
+}
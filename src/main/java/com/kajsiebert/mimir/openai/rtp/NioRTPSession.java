@@ -0,0 +1,108 @@
+package com.kajsiebert.mimir.openai.rtp;
+
+import java.io.IOException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * RTP leg of a call owned by a {@link NioMediaEngine} selector thread. The thread sends the
+ * session's packets and receives into its audio buffer; other threads only take the received audio
+ * and close the session.
+ */
+public class NioRTPSession {
+  private static final Logger LOG = LoggerFactory.getLogger(NioRTPSession.class);
+
+  /** Log every this many send failures after the first one. */
+  private static final long SEND_FAILURE_LOG_INTERVAL = 500;
+
+  final DatagramChannel channel;
+  final Supplier<Buffer> packetSource;
+  final RTPPacketPool packetPool;
+  final long intervalNanos = TimeUnit.MILLISECONDS.toNanos(RTPConstants.PACKET_INTERVAL_MS);
+  private final NioMediaEngine.MediaLoop loop;
+  private final RTPAudioBuffer audioBuffer;
+
+  // Owned by the selector thread, read by others for statistics only
+  long nextDeadline;
+  volatile long packetsSent;
+  volatile long packetsReceived;
+  volatile long missedTicks;
+  volatile long sendFailures;
+  volatile boolean closed;
+
+  NioRTPSession(
+      NioMediaEngine.MediaLoop loop,
+      DatagramChannel channel,
+      Supplier<Buffer> packetSource,
+      RTPPacketPool packetPool,
+      int jitterBufferDepth) {
+    this.loop = loop;
+    this.audioBuffer = new RTPAudioBuffer(jitterBufferDepth);
+    this.channel = channel;
+    this.packetSource = packetSource;
+    this.packetPool = packetPool;
+  }
+
+  void onPacket(byte[] packet, int length) {
+    audioBuffer.appendPacket(packet, length);
+    packetsReceived++;
+  }
+
+  void onSendFailure(IOException e) {
+    long failures = ++sendFailures;
+    if (failures == 1 || failures % SEND_FAILURE_LOG_INTERVAL == 0) {
+      LOG.warn("RTP send failed ({} failures so far): {}", failures, e.getMessage());
+    }
+  }
+
+  /** Takes the audio received since the last call. */
+  public byte[] getAudioBuffer() {
+    return audioBuffer.getAudioBuffer();
+  }
+
+  /** Stops pacing and closes the socket on the owning selector thread. */
+  public void close() {
+    if (!closed) {
+      closed = true;
+      loop.submit(() -> loop.deregister(this));
+    }
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  public long getPacketsSent() {
+    return packetsSent;
+  }
+
+  public long getPacketsReceived() {
+    return packetsReceived;
+  }
+
+  public long getMissedTicks() {
+    return missedTicks;
+  }
+
+  public long getSendFailures() {
+    return sendFailures;
+  }
+
+  /** Returns the jitter buffer of the received audio, for its loss and reorder counters. */
+  public RTPAudioBuffer getJitterBuffer() {
+    return audioBuffer;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "NioRTPSession{sent=%d, received=%d, missedTicks=%d, sendFailures=%d, %s}",
+        packetsSent, packetsReceived, missedTicks, sendFailures, audioBuffer);
+  }
+}
@@ -1,52 +1,290 @@
 package com.kajsiebert.mimir.openai.rtp;
 
-import java.util.PriorityQueue;
+import java.util.Arrays;
 
 import io.vertx.core.buffer.Buffer;
 
 /**
- * A JitterPacket is a packet that may have been received out of order. It contains the timestamp of
- * the packet and the payload.
+ * The RTPAudioBuffer is the 'receiving' partner of the @link{RTPAudioQueue}. It handles receiving
+ * RTP packets, ordering them based on their sequence number to fix jitter and then storing their
+ * audio up until we have enough to send to the websocket.
+ *
+ * <p>Packets are kept in a fixed array indexed by sequence number, so memory stays bounded however
+ * the network behaves. Packets are played out in sequence order as soon as they are contiguous. A
+ * missing packet is waited for until {@code playoutDepth} newer packets have arrived, then it is
+ * counted as lost and skipped. Packets that arrive after their slot was played out or skipped are
+ * late and dropped, as are duplicates. Sequence numbers are compared modulo 2^16, and large jumps
+ * are handled as in RFC 3550, appendix A.1: a jump is only accepted as a restart of the stream once
+ * the packet after it arrives in sequence.
+ *
+ * <p>Packets are appended by the thread receiving them and the audio is taken by the uplink, with
+ * the played out audio passing between the two through a lock-free {@link SpscByteRing}. A packet
+ * that arrives in sequence, the common case, has its payload copied once, straight from the
+ * datagram into the ring. Only packets that arrive ahead of a gap are staged in their slot. The
+ * counters are written by the receiving thread only and can be read from any thread.
  */
-class JitterPacket implements Comparable<JitterPacket> {
-  final long timestamp;
-  byte[] payload;
+public class RTPAudioBuffer {
 
-  JitterPacket(long timestamp, byte[] payload) {
-    this.timestamp = timestamp;
-    this.payload = payload;
-  }
+  /** Packets to wait for a missing one, 60ms of audio. */
+  public static final int DEFAULT_PLAYOUT_DEPTH = 3;
 
-  @Override
-  public int compareTo(JitterPacket other) {
-    return Long.compare(this.timestamp, other.timestamp);
-  }
-}
+  /** Packets the buffer can hold ahead of the playout point, about 1.3 seconds of audio. */
+  static final int CAPACITY = 64;
 
-/**
- * The RTPAudioBuffer is the 'receiving' partner of the @link{RTPAudioQueue}. It handles receiving
- * RTP packets, ordering them based on timestamp to fix jitter and then storing them up until we
- * have enough to send to the websocket.
- */
-public class RTPAudioBuffer {
+  private static final int MASK = CAPACITY - 1;
+  private static final int SEQUENCE_MOD = 1 << 16;
+  private static final int MAX_DROPOUT = 3000;
+  private static final int MAX_MISORDER = 100;
+
+  /** Played out audio waiting to be taken, four seconds of G.711. */
+  private static final int READY_CAPACITY = 4 * 8000;
+
+  private final int playoutDepth;
+  private final int[] sequences = new int[CAPACITY];
+  private final byte[][] payloads = new byte[CAPACITY][RTPConstants.RTP_PACKET_SIZE];
+  private final int[] lengths = new int[CAPACITY];
+  private final SpscByteRing ready = new SpscByteRing(READY_CAPACITY);
+
+  private boolean started = false;
+  private int nextSequence;
+  private int highestSequence;
+  private int badSequence = -1;
+  private volatile int buffered = 0;
 
-  private final PriorityQueue<JitterPacket> jitterBuffer = new PriorityQueue<>();
+  private volatile long lostPackets = 0;
+  private volatile long reorderedPackets = 0;
+  private volatile long duplicatePackets = 0;
+  private volatile long latePackets = 0;
+  private volatile long discardedPackets = 0;
+
+  public RTPAudioBuffer() {
+    this(DEFAULT_PLAYOUT_DEPTH);
+  }
+
+  public RTPAudioBuffer(int playoutDepth) {
+    if (playoutDepth < 0 || playoutDepth >= CAPACITY) {
+      throw new IllegalArgumentException(
+          "Playout depth must be between 0 and " + (CAPACITY - 1) + " packets");
+    }
+    this.playoutDepth = playoutDepth;
+    Arrays.fill(sequences, -1);
+  }
 
+  /** Appends a received packet, called by the receiving thread only. */
   public void appendPacket(Buffer rtpPacket) {
-    if (rtpPacket.length() > RTPConstants.RTP_HEADER_SIZE) {
-      long ts = rtpPacket.getInt(4) & 0xffffffffL;
-      byte[] payload = rtpPacket.getBytes(RTPConstants.RTP_HEADER_SIZE, rtpPacket.length());
+    int length = rtpPacket.length();
+    if (length > RTPConstants.RTP_HEADER_SIZE) {
+      int sequence = rtpPacket.getUnsignedShort(2);
+      int payloadLength = length - RTPConstants.RTP_HEADER_SIZE;
+      int slot = admit(sequence, payloadLength);
+      if (slot < 0) {
+        return;
+      }
+      if (sequence == nextSequence) {
+        playedDirectly(ready.write(rtpPacket, RTPConstants.RTP_HEADER_SIZE, payloadLength));
+      } else {
+        byte[] payload = store(slot, sequence, payloadLength);
+        rtpPacket.getBytes(RTPConstants.RTP_HEADER_SIZE, length, payload, 0);
+      }
+      playOut();
+    }
+  }
 
-      jitterBuffer.offer(new JitterPacket(ts, payload));
+  /** Appends a packet received into a byte array, as done by the NIO media engine. */
+  public void appendPacket(byte[] rtpPacket, int length) {
+    if (length > RTPConstants.RTP_HEADER_SIZE) {
+      int sequence = ((rtpPacket[2] & 0xff) << 8) | (rtpPacket[3] & 0xff);
+      int payloadLength = length - RTPConstants.RTP_HEADER_SIZE;
+      int slot = admit(sequence, payloadLength);
+      if (slot < 0) {
+        return;
+      }
+      if (sequence == nextSequence) {
+        playedDirectly(ready.write(rtpPacket, RTPConstants.RTP_HEADER_SIZE, payloadLength));
+      } else {
+        byte[] payload = store(slot, sequence, payloadLength);
+        System.arraycopy(rtpPacket, RTPConstants.RTP_HEADER_SIZE, payload, 0, payloadLength);
+      }
+      playOut();
     }
   }
 
+  /**
+   * Takes up to {@code length} bytes of the audio played out so far, called by the uplink only.
+   *
+   * @return the number of bytes copied into {@code dst}
+   */
+  public int readAudio(byte[] dst, int offset, int length) {
+    return ready.read(dst, offset, length);
+  }
+
+  /**
+   * Takes up to {@code length} bytes of the audio played out so far and writes them base64 encoded
+   * into {@code dst}, called by the uplink only.
+   *
+   * @return the number of audio bytes taken
+   */
+  public int readAudioBase64(byte[] dst, int offset, int length) {
+    return ready.readBase64(dst, offset, length);
+  }
+
+  /** Takes the audio played out since the last call, called by the uplink only. */
   public byte[] getAudioBuffer() {
-    Buffer combined = Buffer.buffer();
-    while (!jitterBuffer.isEmpty()) {
-      JitterPacket pkt = jitterBuffer.poll();
-      combined.appendBytes(pkt.payload);
+    byte[] audio = new byte[ready.size()];
+    ready.read(audio, 0, audio.length);
+    return audio;
+  }
+
+  /** Returns the number of played out bytes waiting to be taken. */
+  public int getAvailableAudio() {
+    return ready.size();
+  }
+
+  /**
+   * Decides whether a packet is kept, returning its slot or -1 if it is dropped. The packet is
+   * either played out directly if it is next in sequence, or stored in the slot.
+   */
+  private int admit(int sequence, int payloadLength) {
+    if (!started) {
+      restart(sequence);
+    }
+
+    int ahead = (sequence - nextSequence) & (SEQUENCE_MOD - 1);
+    if (ahead >= MAX_DROPOUT && ahead <= SEQUENCE_MOD - MAX_MISORDER) {
+      // A very large jump, only believe it once the next packet follows it
+      if (sequence != badSequence) {
+        badSequence = (sequence + 1) & (SEQUENCE_MOD - 1);
+        discardedPackets++;
+        return -1;
+      }
+      while (buffered > 0) {
+        advance();
+      }
+      restart(sequence);
+      ahead = 0;
+    } else if (ahead >= MAX_DROPOUT) {
+      // Behind the playout point, already played out or given up on
+      latePackets++;
+      discardedPackets++;
+      return -1;
+    }
+
+    // Make room by playing out or skipping the oldest slots
+    while (ahead >= CAPACITY) {
+      advance();
+      ahead--;
+    }
+
+    int slot = sequence & MASK;
+    if (sequences[slot] == sequence) {
+      duplicatePackets++;
+      discardedPackets++;
+      return -1;
     }
-    return combined.getBytes();
+
+    int sinceHighest = (highestSequence - sequence) & (SEQUENCE_MOD - 1);
+    if (sinceHighest > 0 && sinceHighest < SEQUENCE_MOD / 2) {
+      reorderedPackets++;
+    } else {
+      highestSequence = sequence;
+    }
+
+    return slot;
+  }
+
+  /** Marks a slot as holding a packet and returns the array its payload is to be copied to. */
+  private byte[] store(int slot, int sequence, int payloadLength) {
+    if (payloads[slot].length < payloadLength) {
+      payloads[slot] = new byte[payloadLength];
+    }
+    sequences[slot] = sequence;
+    lengths[slot] = payloadLength;
+    buffered++;
+    return payloads[slot];
+  }
+
+  /** Moves the playout point past a packet that was written straight into the ring. */
+  private void playedDirectly(boolean written) {
+    if (!written) {
+      discardedPackets++;
+    }
+    nextSequence = (nextSequence + 1) & (SEQUENCE_MOD - 1);
+  }
+
+  private void restart(int sequence) {
+    started = true;
+    nextSequence = sequence;
+    highestSequence = sequence;
+    badSequence = -1;
+  }
+
+  /** Plays out contiguous packets, skipping missing ones that were waited for long enough. */
+  private void playOut() {
+    while (buffered > 0) {
+      boolean present = sequences[nextSequence & MASK] == nextSequence;
+      int behindHighest = (highestSequence - nextSequence) & (SEQUENCE_MOD - 1);
+      if (!present && behindHighest < playoutDepth) {
+        return;
+      }
+      advance();
+    }
+  }
+
+  /** Moves the playout point one packet on, playing out the packet or counting it as lost. */
+  private void advance() {
+    int slot = nextSequence & MASK;
+    if (sequences[slot] == nextSequence) {
+      if (!ready.write(payloads[slot], 0, lengths[slot])) {
+        discardedPackets++;
+      }
+      sequences[slot] = -1;
+      buffered--;
+    } else {
+      lostPackets++;
+    }
+    nextSequence = (nextSequence + 1) & (SEQUENCE_MOD - 1);
+  }
+
+  public int getPlayoutDepth() {
+    return playoutDepth;
+  }
+
+  /** Returns the number of packets waiting for a missing packet before them. */
+  public int getBufferedPackets() {
+    return buffered;
+  }
+
+  /** Returns the number of packets that never arrived in time to be played out. */
+  public long getLostPackets() {
+    return lostPackets;
+  }
+
+  /** Returns the number of packets that arrived after a later packet but in time. */
+  public long getReorderedPackets() {
+    return reorderedPackets;
+  }
+
+  public long getDuplicatePackets() {
+    return duplicatePackets;
+  }
+
+  /** Returns the number of packets that arrived after their slot was played out or skipped. */
+  public long getLatePackets() {
+    return latePackets;
+  }
+
+  /**
+   * Returns the number of received packets that were not played out: duplicates, late packets,
+   * unconfirmed sequence jumps and audio that did not fit because nobody took it.
+   */
+  public long getDiscardedPackets() {
+    return discardedPackets;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "RTPAudioBuffer{buffered=%d, lost=%d, reordered=%d, duplicates=%d, late=%d, discarded=%d}",
+        buffered, lostPackets, reorderedPackets, duplicatePackets, latePackets, discardedPackets);
   }
 }
@@ -1,71 +1,158 @@
 package com.kajsiebert.mimir.openai.rtp;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.kajsiebert.mimir.openai.util.Base64Codec;
+
 import io.vertx.core.buffer.Buffer;
 
 /**
  * In our Websocket <-> RTP pipeline, we need to split our websocket originated TCP packets into RTP
  * packets, and send these at a fixed rate of 160 bytes every 20ms.
  *
- * <p>We handle that by appending audio to an audio buffer, and then creating RTP packets from the
- * audio buffer.
+ * <p>We handle that by appending audio to a fixed-capacity ring buffer, and then creating RTP
+ * packets from the head of the ring. Appending and popping are O(1) in the amount of buffered
+ * audio. Packets come from a per-call {@link RTPPacketPool}: the header is written in place and the
+ * payload is copied from the ring straight into the packet. Only when every pooled packet is still
+ * being sent is a new one allocated, counted in {@link #getPacketAllocations()}.
+ *
+ * <p>Audio is appended from the websocket event loop and packets are taken by the RTP timer, so all
+ * access to the ring is synchronized on the queue.
  */
 public class RTPAudioQueue {
-  private static final int AUDIO_BUFFER_SIZE = 32 * 1024;
+  private static final Logger LOG = LoggerFactory.getLogger(RTPAudioQueue.class);
+
+  /** Enough G.711 audio (8000 bytes per second) to hold a long model answer. */
+  private static final int AUDIO_BUFFER_SIZE = 60 * 8000;
 
-  private Buffer audioBuffer = Buffer.buffer(AUDIO_BUFFER_SIZE);
+  /** Log every this many drops after the first one. */
+  private static final long DROP_LOG_INTERVAL = 500;
+
+  private final ByteRingBuffer audioBuffer;
+  private final RTPPacketPool packetPool;
   private int sequenceNumber = 0;
   private long timestamp = 0;
+  private long droppedBytes = 0;
+  private long drops = 0;
+  private long packetAllocations = 0;
+  private ComfortTone comfortTone;
+
+  public RTPAudioQueue() {
+    this(AUDIO_BUFFER_SIZE);
+  }
+
+  public RTPAudioQueue(int capacity) {
+    this(capacity, new RTPPacketPool());
+  }
+
+  public RTPAudioQueue(int capacity, RTPPacketPool packetPool) {
+    this.audioBuffer = new ByteRingBuffer(capacity);
+    this.packetPool = packetPool;
+  }
 
   public void appendAudio(byte[] audio) {
-    audioBuffer.appendBytes(audio);
+    appendAudio(audio, 0, audio.length);
   }
 
-  public void clearAudio() {
-    audioBuffer = Buffer.buffer(AUDIO_BUFFER_SIZE);
+  /**
+   * Appends audio to the queue. If the ring is full, the audio that does not fit is dropped and
+   * counted in {@link #getDroppedBytes()}.
+   */
+  public synchronized void appendAudio(byte[] audio, int offset, int length) {
+    int accepted = Math.min(length, audioBuffer.remaining());
+    audioBuffer.write(audio, offset, accepted);
+
+    if (accepted < length) {
+      countDropped(length - accepted);
+    }
   }
 
-  public Buffer getNextRtpPacket() {
-    // Check if we have any audio data
-    if (audioBuffer.length() == 0) {
-      return null; // No data available
+  /**
+   * Appends base64 encoded audio, decoding it straight into the ring. As with {@link
+   * #appendAudio(byte[], int, int)}, the audio that does not fit is dropped and counted.
+   *
+   * @throws IllegalArgumentException if the text is not valid base64
+   */
+  public synchronized void appendBase64Audio(char[] base64, int offset, int length) {
+    int decoded = Base64Codec.decodedLength(base64, offset, length);
+    int remaining = audioBuffer.remaining();
+    if (decoded <= remaining) {
+      audioBuffer.writeBase64(base64, offset, length);
+      return;
     }
 
-    // Pop the next available bytes up to a max of RTP_PACKET_SIZE
-    int bytesToTake = Math.min(audioBuffer.length(), RTPConstants.RTP_PACKET_SIZE);
-    byte[] audioPayload = audioBuffer.getBytes(0, bytesToTake);
+    // Keep the whole quanta that fit
+    int acceptedChars = remaining / 3 * 4;
+    audioBuffer.writeBase64(base64, offset, acceptedChars);
+    countDropped(decoded - acceptedChars / 4 * 3);
+  }
 
-    // Create a new buffer with the remaining data
-    Buffer remaining = Buffer.buffer();
-    if (audioBuffer.length() > bytesToTake) {
-      remaining.appendBytes(audioBuffer.getBytes(bytesToTake, audioBuffer.length()));
+  private void countDropped(int bytes) {
+    droppedBytes += bytes;
+    drops++;
+    if (drops == 1 || drops % DROP_LOG_INTERVAL == 0) {
+      LOG.warn(
+          "RTP audio queue full, dropped {} bytes so far (capacity: {} bytes)",
+          droppedBytes,
+          audioBuffer.capacity());
     }
-    audioBuffer = remaining;
+  }
+
+  /**
+   * Plays {@code tone} whenever there is no audio to send, until it is set to {@code null}. Tone
+   * packets continue the queue's sequence numbers and timestamps, so audio takes over seamlessly.
+   */
+  public synchronized void setComfortTone(ComfortTone tone) {
+    this.comfortTone = tone;
+  }
+
+  public synchronized void clearAudio() {
+    audioBuffer.clear();
+  }
+
+  /** Returns the number of audio bytes waiting to be packetized. */
+  public synchronized int getBufferedBytes() {
+    return audioBuffer.size();
+  }
 
-    // Create and return the RTP packet
-    return createRtpPacket(audioPayload);
+  /** Returns the number of audio bytes dropped because the queue was full. */
+  public synchronized long getDroppedBytes() {
+    return droppedBytes;
   }
 
-  private Buffer createRtpPacket(byte[] payload) {
-    Buffer packet = Buffer.buffer(RTPConstants.RTP_HEADER_SIZE + payload.length);
+  /** Returns the pool the packets are taken from, senders release them there once sent. */
+  public RTPPacketPool getPacketPool() {
+    return packetPool;
+  }
+
+  /** Returns the number of packets that had to be allocated because the pool was exhausted. */
+  public synchronized long getPacketAllocations() {
+    return packetAllocations;
+  }
 
-    // RTP Header (12 bytes)
-    // Version 2, no padding, no extension, no CSRC
-    packet.appendByte((byte) 0x80);
-    // Payload type 0 for PCMU
-    packet.appendByte((byte) 0x00);
-    // Sequence number (16 bits)
-    packet.appendShort((short) sequenceNumber);
-    // Timestamp (32 bits)
-    packet.appendInt((int) timestamp);
-    // SSRC (32 bits)
-    packet.appendInt(RTPConstants.SSRC);
+  public synchronized Buffer getNextRtpPacket() {
+    if (audioBuffer.size() == 0 && comfortTone == null) {
+      return null; // No data available
+    }
+
+    RTPPacketPool.Slot slot = packetPool.acquire();
+    if (slot == null) {
+      // Every pooled packet is still in flight, fall back to a packet of its own
+      packetAllocations++;
+      slot = packetPool.allocate();
+    }
 
-    // Payload
-    packet.appendBytes(payload);
+    // Pop the next available bytes up to a max of RTP_PACKET_SIZE into the packet
+    int payloadLength =
+        audioBuffer.size() > 0
+            ? audioBuffer.read(slot.array(), slot.payloadOffset(), RTPConstants.RTP_PACKET_SIZE)
+            : comfortTone.read(slot.array(), slot.payloadOffset(), RTPConstants.RTP_PACKET_SIZE);
+    Buffer packet = slot.format(sequenceNumber, timestamp, payloadLength);
 
     // Update sequence number and timestamp
     sequenceNumber = (sequenceNumber + 1) & 0xFFFF;
-    timestamp += payload.length;
+    timestamp += payloadLength;
 
     return packet;
   }
@@ -0,0 +1,477 @@
+package com.kajsiebert.mimir.openai.rtp;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared pacing engine that drives the periodic send tick of every active RTP session from a small,
+ * fixed set of ticker threads.
+ *
+ * <p>Each ticker owns a hashed timing wheel with {@link #WHEEL_SIZE} slots of {@link #TICK_NANOS}.
+ * A registered task sits in the slot of its next deadline, so a tick only visits the tasks that are
+ * due and the cost per tick is independent of the total number of sessions. Sessions are spread
+ * over the tickers by load, and all wheel mutation happens on the owning ticker thread; other
+ * threads hand registrations over through a lock-free queue and cancel by flagging the handle.
+ *
+ * <p>Deadlines are absolute {@link System#nanoTime()} values on a fixed grid, so pacing does not
+ * drift and is immune to wall clock steps. How a ticker waits for its next deadline is chosen by a
+ * {@link SleepStrategy}, and what happens to a task that falls more than one interval behind is
+ * chosen by its {@link MissedTickPolicy}.
+ */
+public class RTPPacingEngine {
+  private static final Logger LOG = LoggerFactory.getLogger(RTPPacingEngine.class);
+
+  static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  static final int WHEEL_SIZE = 64; // Must be a power of two, spans 64ms at 1ms ticks
+
+  /** How long before a deadline {@link SleepStrategy#PARK_THEN_SPIN} stops parking. */
+  static final long SPIN_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+  private static volatile RTPPacingEngine defaultEngine;
+
+  /** How a ticker thread waits for its next deadline. */
+  public enum SleepStrategy {
+    /** Park until the deadline. Cheapest, accuracy is bounded by the OS timer slack. */
+    PARK,
+    /** Park until shortly before the deadline, then spin. Sub-millisecond accuracy for some CPU. */
+    PARK_THEN_SPIN,
+    /** Never park. Most accurate, but occupies a core per ticker thread. */
+    BUSY_SPIN
+  }
+
+  /** What to do with a task whose run was delayed past its following deadline. */
+  public enum MissedTickPolicy {
+    /** Drop the missed ticks and resume on the original grid. */
+    SKIP,
+    /** Run every missed tick back to back until the task has caught up. */
+    BURST,
+    /** Shift the grid so the next run is one interval after the late one. */
+    STRETCH
+  }
+
+  /** A periodic task that is told the deadline it was scheduled for. */
+  @FunctionalInterface
+  public interface PacedTask {
+    void run(long deadlineNanos);
+  }
+
+  private final Ticker[] tickers;
+  private final SleepStrategy sleepStrategy;
+  private final MissedTickPolicy defaultMissedTickPolicy;
+
+  public RTPPacingEngine(int threadCount, int threadPriority) {
+    this(threadCount, threadPriority, SleepStrategy.PARK, MissedTickPolicy.SKIP);
+  }
+
+  public RTPPacingEngine(
+      int threadCount,
+      int threadPriority,
+      SleepStrategy sleepStrategy,
+      MissedTickPolicy defaultMissedTickPolicy) {
+    this(
+        threadCount,
+        threadPriority,
+        sleepStrategy,
+        defaultMissedTickPolicy,
+        System::nanoTime,
+        true);
+  }
+
+  /**
+   * Creates an engine whose tickers read the time from {@code nanoTime} and run no thread of their
+   * own, so a test drives them tick by tick with {@link #tick()}.
+   */
+  RTPPacingEngine(
+      int threadCount, MissedTickPolicy defaultMissedTickPolicy, LongSupplier nanoTime) {
+    this(
+        threadCount,
+        Thread.NORM_PRIORITY,
+        SleepStrategy.PARK,
+        defaultMissedTickPolicy,
+        nanoTime,
+        false);
+  }
+
+  private RTPPacingEngine(
+      int threadCount,
+      int threadPriority,
+      SleepStrategy sleepStrategy,
+      MissedTickPolicy defaultMissedTickPolicy,
+      LongSupplier nanoTime,
+      boolean startThreads) {
+    if (threadCount < 1) {
+      throw new IllegalArgumentException("RTP pacing engine needs at least one thread");
+    }
+    this.sleepStrategy = sleepStrategy;
+    this.defaultMissedTickPolicy = defaultMissedTickPolicy;
+
+    tickers = new Ticker[threadCount];
+    for (int i = 0; i < threadCount; i++) {
+      tickers[i] = new Ticker("RTP-Pacer-" + i, threadPriority, sleepStrategy, nanoTime);
+      if (startThreads) {
+        tickers[i].thread.start();
+      }
+    }
+
+    LOG.info(
+        "RTPPacingEngine started with {} ticker thread(s), tick={}us, wheel={} slots, sleep={},"
+            + " missedTicks={}",
+        threadCount,
+        TimeUnit.NANOSECONDS.toMicros(TICK_NANOS),
+        WHEEL_SIZE,
+        sleepStrategy,
+        defaultMissedTickPolicy);
+  }
+
+  /** Returns a thread count that leaves most cores to Vert.x and the SIP stack. */
+  public static int defaultThreadCount() {
+    return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+  }
+
+  /**
+   * Returns the process-wide engine used by callers that were not handed one explicitly. It is
+   * created on first use with the default thread count.
+   */
+  public static RTPPacingEngine getDefault() {
+    RTPPacingEngine engine = defaultEngine;
+    if (engine == null) {
+      synchronized (RTPPacingEngine.class) {
+        engine = defaultEngine;
+        if (engine == null) {
+          engine = new RTPPacingEngine(defaultThreadCount(), Thread.MAX_PRIORITY);
+          defaultEngine = engine;
+        }
+      }
+    }
+    return engine;
+  }
+
+  /**
+   * Registers a task to run every {@code intervalNanos}, starting at the next tick, using the
+   * engine's default missed tick policy.
+   *
+   * @return a handle that cancels the task
+   */
+  public PacingHandle register(long intervalNanos, Runnable task) {
+    return register(intervalNanos, defaultMissedTickPolicy, deadline -> task.run());
+  }
+
+  /**
+   * Registers a task to run every {@code intervalNanos}, starting at the next tick.
+   *
+   * @return a handle that cancels the task
+   */
+  public PacingHandle register(long intervalNanos, MissedTickPolicy policy, PacedTask task) {
+    if (intervalNanos < TICK_NANOS) {
+      throw new IllegalArgumentException("Pacing interval must be at least one tick");
+    }
+
+    Ticker ticker = tickers[0];
+    for (Ticker candidate : tickers) {
+      if (candidate.taskCount.get() < ticker.taskCount.get()) {
+        ticker = candidate;
+      }
+    }
+
+    PacingHandle handle = new PacingHandle(ticker, intervalNanos, policy, task);
+    ticker.taskCount.incrementAndGet();
+    ticker.pending.offer(handle);
+    LockSupport.unpark(ticker.thread);
+    return handle;
+  }
+
+  /** Returns the number of tasks currently registered across all tickers. */
+  public int getActiveTaskCount() {
+    int count = 0;
+    for (Ticker ticker : tickers) {
+      count += ticker.taskCount.get();
+    }
+    return count;
+  }
+
+  /**
+   * Returns how late the latest run of any task was against its deadline at worst, since the
+   * previous call. Read periodically by a single monitor, it tells how well the tickers keep up.
+   */
+  public long sampleMaxLatenessNanos() {
+    long max = 0;
+    for (Ticker ticker : tickers) {
+      max = Math.max(max, ticker.maxLatenessNanos.getAndSet(0));
+    }
+    return max;
+  }
+
+  public int getThreadCount() {
+    return tickers.length;
+  }
+
+  public SleepStrategy getSleepStrategy() {
+    return sleepStrategy;
+  }
+
+  public MissedTickPolicy getDefaultMissedTickPolicy() {
+    return defaultMissedTickPolicy;
+  }
+
+  /**
+   * Runs on the calling thread what every ticker has due by now. Only for engines created without
+   * ticker threads.
+   */
+  void tick() {
+    for (Ticker ticker : tickers) {
+      ticker.step();
+    }
+  }
+
+  /** Stops all ticker threads. Registered tasks stop firing. */
+  public void shutdown() {
+    for (Ticker ticker : tickers) {
+      ticker.running = false;
+      LockSupport.unpark(ticker.thread);
+    }
+    for (Ticker ticker : tickers) {
+      try {
+        ticker.thread.join(TimeUnit.SECONDS.toMillis(5));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    LOG.info("RTPPacingEngine shutdown complete");
+  }
+
+  /** Registration handle for a periodic task. */
+  public static final class PacingHandle {
+    private final Ticker ticker;
+    private final long intervalNanos;
+    private final MissedTickPolicy missedTickPolicy;
+    private final PacedTask task;
+    private volatile boolean cancelled = false;
+    private volatile long missedTicks = 0;
+
+    // Owned by the ticker thread
+    private long deadline;
+    private long deadlineTick;
+    private PacingHandle next;
+
+    private PacingHandle(
+        Ticker ticker, long intervalNanos, MissedTickPolicy missedTickPolicy, PacedTask task) {
+      this.ticker = ticker;
+      this.intervalNanos = intervalNanos;
+      this.missedTickPolicy = missedTickPolicy;
+      this.task = task;
+    }
+
+    /** Stops the task. A run that is already in flight completes, no further runs start. */
+    public void cancel() {
+      if (!cancelled) {
+        cancelled = true;
+        LockSupport.unpark(ticker.thread);
+      }
+    }
+
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    public long getIntervalNanos() {
+      return intervalNanos;
+    }
+
+    public MissedTickPolicy getMissedTickPolicy() {
+      return missedTickPolicy;
+    }
+
+    /** Returns the number of ticks dropped or shifted because the task fell behind. */
+    public long getMissedTicks() {
+      return missedTicks;
+    }
+  }
+
+  /** One pacing thread and the timing wheel it owns. */
+  private static final class Ticker implements Runnable {
+    private final Thread thread;
+    private final SleepStrategy sleepStrategy;
+    private final LongSupplier nanoTime;
+    private final Queue<PacingHandle> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger taskCount = new AtomicInteger();
+    private final AtomicLong maxLatenessNanos = new AtomicLong();
+    private final PacingHandle[] wheel = new PacingHandle[WHEEL_SIZE];
+    private volatile boolean running = true;
+
+    private long epoch;
+    private long currentTick;
+
+    Ticker(String name, int priority, SleepStrategy sleepStrategy, LongSupplier nanoTime) {
+      this.sleepStrategy = sleepStrategy;
+      this.nanoTime = nanoTime;
+      epoch = nanoTime.getAsLong();
+      thread = new Thread(this, name);
+      thread.setDaemon(true);
+      thread.setPriority(priority);
+    }
+
+    @Override
+    public void run() {
+      while (running) {
+        step();
+        awaitTick(nextOccupiedTick());
+      }
+    }
+
+    /** Takes in new registrations and runs every tick that is due. */
+    void step() {
+      drainPending();
+
+      long now = nanoTime.getAsLong();
+      while (tickTime(currentTick) <= now) {
+        processSlot(currentTick);
+        currentTick++;
+      }
+    }
+
+    private long tickTime(long tick) {
+      return epoch + tick * TICK_NANOS;
+    }
+
+    /** Returns the first tick at or after {@code time}. */
+    private long ticksUntil(long time) {
+      return (time - epoch + TICK_NANOS - 1) / TICK_NANOS;
+    }
+
+    /**
+     * Returns the first tick within one wheel revolution whose slot holds a task, or the tick one
+     * revolution ahead if the wheel is empty. Empty ticks are not woken up for.
+     */
+    private long nextOccupiedTick() {
+      for (long tick = currentTick; tick < currentTick + WHEEL_SIZE; tick++) {
+        if (wheel[(int) (tick & (WHEEL_SIZE - 1))] != null) {
+          return tick;
+        }
+      }
+      return currentTick + WHEEL_SIZE;
+    }
+
+    /** Waits until {@code tick} is due, or until a registration or cancellation arrives. */
+    private void awaitTick(long tick) {
+      long deadline = tickTime(tick);
+      long remaining = deadline - nanoTime.getAsLong();
+
+      switch (sleepStrategy) {
+        case PARK:
+          if (remaining > 0) {
+            LockSupport.parkNanos(this, remaining);
+          }
+          break;
+        case PARK_THEN_SPIN:
+          if (remaining > SPIN_THRESHOLD_NANOS) {
+            LockSupport.parkNanos(this, remaining - SPIN_THRESHOLD_NANOS);
+          }
+          spinUntil(deadline);
+          break;
+        case BUSY_SPIN:
+          spinUntil(deadline);
+          break;
+      }
+    }
+
+    private void spinUntil(long deadline) {
+      while (running && pending.isEmpty() && nanoTime.getAsLong() - deadline < 0) {
+        Thread.onSpinWait();
+      }
+    }
+
+    private void drainPending() {
+      PacingHandle handle;
+      while ((handle = pending.poll()) != null) {
+        // Anchor the grid at the next tick from now, currentTick may lag while the wheel was idle
+        long firstTick = Math.max(currentTick, ticksUntil(nanoTime.getAsLong()));
+        handle.deadline = tickTime(firstTick);
+        schedule(handle, firstTick);
+      }
+    }
+
+    /** Places a handle in the slot of its deadline, but never earlier than {@code minTick}. */
+    private void schedule(PacingHandle handle, long minTick) {
+      long tick = ticksUntil(handle.deadline);
+      handle.deadlineTick = Math.max(tick, minTick);
+      int slot = (int) (handle.deadlineTick & (WHEEL_SIZE - 1));
+      handle.next = wheel[slot];
+      wheel[slot] = handle;
+    }
+
+    private void processSlot(long tick) {
+      int slot = (int) (tick & (WHEEL_SIZE - 1));
+      PacingHandle handle = wheel[slot];
+      wheel[slot] = null;
+
+      while (handle != null) {
+        PacingHandle next = handle.next;
+        handle.next = null;
+
+        if (handle.cancelled) {
+          taskCount.decrementAndGet();
+        } else if (handle.deadlineTick > tick) {
+          // Due in a later revolution of the wheel
+          handle.next = wheel[slot];
+          wheel[slot] = handle;
+        } else {
+          runTask(handle);
+          if (!handle.cancelled) {
+            advanceDeadline(handle, nanoTime.getAsLong());
+            schedule(handle, tick + 1);
+          } else {
+            taskCount.decrementAndGet();
+          }
+        }
+        handle = next;
+      }
+    }
+
+    /** Moves a handle to its next deadline, applying its policy if it has fallen behind. */
+    private void advanceDeadline(PacingHandle handle, long now) {
+      long next = handle.deadline + handle.intervalNanos;
+      if (next - now > 0) {
+        handle.deadline = next;
+        return;
+      }
+
+      long missed = (now - next) / handle.intervalNanos + 1;
+      switch (handle.missedTickPolicy) {
+        case BURST:
+          handle.deadline = next;
+          break;
+        case SKIP:
+          handle.deadline = next + missed * handle.intervalNanos;
+          handle.missedTicks += missed;
+          break;
+        case STRETCH:
+          long stretched = now + handle.intervalNanos;
+          handle.deadline = tickTime(ticksUntil(stretched));
+          handle.missedTicks += missed;
+          break;
+      }
+    }
+
+    private void runTask(PacingHandle handle) {
+      long lateness = nanoTime.getAsLong() - handle.deadline;
+      if (lateness > maxLatenessNanos.get()) {
+        // Only this thread raises it, a reset racing with this just loses one sample
+        maxLatenessNanos.set(lateness);
+      }
+      try {
+        handle.task.run(handle.deadline);
+      } catch (Throwable t) {
+        LOG.warn("Exception in paced task, continuing: {}", t.getMessage(), t);
+      }
+    }
+  }
+}
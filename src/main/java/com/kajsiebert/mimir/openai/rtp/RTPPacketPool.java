@@ -0,0 +1,168 @@
+package com.kajsiebert.mimir.openai.rtp;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Fixed set of preformatted RTP packet buffers owned by one call. The constant header fields are
+ * written once when the pool is created, so taking a packet only writes the sequence number and
+ * timestamp in place and copies the payload straight into the packet's backing array.
+ *
+ * <p>Packets are taken by the packetizer and given back by whichever thread finished sending them,
+ * either directly with {@link #release} or from the send completion returned by {@link
+ * #releaseOnCompletion}. Buffers that did not come from this pool are ignored, so senders can
+ * release every packet they send.
+ */
+public class RTPPacketPool {
+
+  /** Enough packets to cover the send queue and a full adaptive buffer. */
+  public static final int DEFAULT_SIZE = 32;
+
+  static final int PACKET_CAPACITY = RTPConstants.RTP_HEADER_SIZE + RTPConstants.RTP_PACKET_SIZE;
+
+  private final Slot[] slots;
+  private final AtomicIntegerArray inUse;
+  private int cursor = 0;
+
+  public RTPPacketPool() {
+    this(DEFAULT_SIZE);
+  }
+
+  public RTPPacketPool(int size) {
+    if (size < 1) {
+      throw new IllegalArgumentException("Pool size must be at least 1");
+    }
+    slots = new Slot[size];
+    inUse = new AtomicIntegerArray(size);
+    for (int i = 0; i < size; i++) {
+      slots[i] = new Slot(i);
+    }
+  }
+
+  /** Takes a free packet, or returns {@code null} if all packets are still being sent. */
+  Slot acquire() {
+    for (int n = 0; n < slots.length; n++) {
+      int index = cursor;
+      cursor = index + 1 == slots.length ? 0 : index + 1;
+      if (inUse.compareAndSet(index, 0, 1)) {
+        return slots[index];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Allocates a packet outside the pool, for when every pooled one is still being sent. It is
+   * formatted like a pooled one and releasing it does nothing.
+   */
+  Slot allocate() {
+    return new Slot(-1);
+  }
+
+  /** Gives a sent packet back to the pool. */
+  public void release(Buffer packet) {
+    Slot slot = slotOf(packet);
+    if (slot != null) {
+      slot.release();
+    }
+  }
+
+  /**
+   * Returns a send completion handler that runs {@code completion} and then gives {@code packet}
+   * back to the pool. The handler is preallocated per packet, so this does not allocate.
+   */
+  public Handler<AsyncResult<Void>> releaseOnCompletion(
+      Buffer packet, Handler<AsyncResult<Void>> completion) {
+    Slot slot = slotOf(packet);
+    if (slot == null) {
+      return completion;
+    }
+    slot.completion = completion;
+    return slot.onSent;
+  }
+
+  public int getSize() {
+    return slots.length;
+  }
+
+  /** Returns the number of packets that are not currently taken. */
+  public int getAvailable() {
+    int available = 0;
+    for (int i = 0; i < slots.length; i++) {
+      if (inUse.get(i) == 0) {
+        available++;
+      }
+    }
+    return available;
+  }
+
+  private Slot slotOf(Buffer packet) {
+    for (Slot slot : slots) {
+      if (slot.buffer == packet) {
+        return slot;
+      }
+    }
+    return null;
+  }
+
+  /** One pooled packet: the backing array, the Vert.x view of it and its send completion. */
+  final class Slot {
+    private final int index;
+    private final ByteBuf byteBuf;
+    final Buffer buffer;
+    private final Handler<AsyncResult<Void>> onSent;
+    private volatile Handler<AsyncResult<Void>> completion;
+
+    private Slot(int index) {
+      this.index = index;
+      this.byteBuf = Unpooled.buffer(PACKET_CAPACITY, PACKET_CAPACITY);
+      // Only a view of the ByteBuf lets the payload be copied into its array and the length be set
+      @SuppressWarnings("deprecation")
+      Buffer view = Buffer.buffer(byteBuf);
+      this.buffer = view;
+      this.onSent =
+          result -> {
+            Handler<AsyncResult<Void>> handler = completion;
+            completion = null;
+            release();
+            if (handler != null) {
+              handler.handle(result);
+            }
+          };
+
+      // Version 2, no padding, no extension, no CSRC, payload type 0 for PCMU
+      byteBuf.setByte(0, 0x80);
+      byteBuf.setByte(1, 0x00);
+      byteBuf.setInt(8, RTPConstants.SSRC);
+    }
+
+    /** The array the payload is copied into. */
+    byte[] array() {
+      return byteBuf.array();
+    }
+
+    /** Offset of the payload in {@link #array()}. */
+    int payloadOffset() {
+      return byteBuf.arrayOffset() + RTPConstants.RTP_HEADER_SIZE;
+    }
+
+    /** Writes the variable header fields and sets the packet length for the copied payload. */
+    Buffer format(int sequenceNumber, long timestamp, int payloadLength) {
+      byteBuf.setShort(2, sequenceNumber);
+      byteBuf.setInt(4, (int) timestamp);
+      byteBuf.setIndex(0, RTPConstants.RTP_HEADER_SIZE + payloadLength);
+      return buffer;
+    }
+
+    void release() {
+      if (index >= 0) {
+        inUse.compareAndSet(index, 1, 0);
+      }
+    }
+  }
+}
@@ -1,23 +1,65 @@
 package com.kajsiebert.mimir.openai.rtp;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.mjsip.media.FlowSpec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.datagram.DatagramSocket;
 import io.vertx.core.datagram.DatagramSocketOptions;
 
+/**
+ * UDP leg of a call. The remote address is resolved once when the session is created, so every
+ * packet is sent to an IP literal that Vert.x does not have to look up again, and all sends share
+ * one completion handler that counts failures.
+ *
+ * <p>If the packets come from an {@link RTPPacketPool} set with {@link #setPacketPool}, each packet
+ * goes back to the pool once the datagram has been written.
+ */
 public class RTPSession {
   private static final Logger LOG = LoggerFactory.getLogger(RTPSession.class);
 
-  private final FlowSpec flowSpec;
+  /** Log every this many send failures after the first one. */
+  private static final long SEND_FAILURE_LOG_INTERVAL = 500;
+
   private final DatagramSocket udpSocket;
-  final RTPAudioBuffer audioBuffer = new RTPAudioBuffer();
+  private final int remotePort;
+  private final String remoteHost;
+  private final AtomicLong sendFailures = new AtomicLong(0);
+  private final Handler<AsyncResult<Void>> sendCompletion = this::onSendComplete;
+  private final Promise<Void> bound = Promise.promise();
+  final RTPAudioBuffer audioBuffer;
+  private volatile RTPPacketPool packetPool;
 
   public RTPSession(Vertx vertx, FlowSpec flowSpec) {
-    this.flowSpec = flowSpec;
+    this(vertx, flowSpec, RTPAudioBuffer.DEFAULT_PLAYOUT_DEPTH);
+  }
+
+  /**
+   * Creates a session whose jitter buffer waits for {@code jitterBufferDepth} newer packets before
+   * giving up on a missing one.
+   */
+  public RTPSession(Vertx vertx, FlowSpec flowSpec, int jitterBufferDepth) {
+    this(vertx, flowSpec, jitterBufferDepth, resolveOnce(flowSpec.getRemoteAddress()));
+  }
+
+  /**
+   * Creates a session sending to {@code remoteHost}, the flow's remote address already resolved by
+   * {@link #resolveOnce}, which blocks and so must not run on an event loop.
+   */
+  public RTPSession(Vertx vertx, FlowSpec flowSpec, int jitterBufferDepth, String remoteHost) {
+    this.audioBuffer = new RTPAudioBuffer(jitterBufferDepth);
+    this.remotePort = flowSpec.getRemotePort();
+    this.remoteHost = remoteHost;
 
     DatagramSocketOptions options = new DatagramSocketOptions();
 
@@ -28,26 +70,102 @@ public class RTPSession {
         "0.0.0.0",
         ar -> {
           if (ar.succeeded()) {
-            LOG.info("Vert.x UDP listening on port {}", flowSpec.getLocalPort());
+            LOG.info(
+                "Vert.x UDP listening on port {}, sending to {}:{}",
+                flowSpec.getLocalPort(),
+                remoteHost,
+                remotePort);
             udpSocket.handler(
                 packet -> {
                   audioBuffer.appendPacket(packet.data());
                 });
+            bound.complete();
           } else {
             LOG.error("Failed to bind UDP socket on {}", flowSpec.getLocalPort(), ar.cause());
+            bound.fail(ar.cause());
           }
         });
   }
 
+  /**
+   * Resolves the remote host to an IP literal. If it cannot be resolved now, the name is kept and
+   * Vert.x resolves it on each send as before.
+   */
+  public static String resolveOnce(String host) {
+    return resolveOnce(host, InetAddress::getByName);
+  }
+
+  /** Looks a host name up, {@link InetAddress#getByName} outside of tests. */
+  @FunctionalInterface
+  interface Resolver {
+    InetAddress resolve(String host) throws UnknownHostException;
+  }
+
+  static String resolveOnce(String host, Resolver resolver) {
+    try {
+      return resolver.resolve(host).getHostAddress();
+    } catch (UnknownHostException e) {
+      LOG.warn("Could not resolve RTP remote address {}, resolving per packet", host);
+      return host;
+    }
+  }
+
   public void close() {
     udpSocket.close();
   }
 
+  /** Returns a future completed once the socket listens, or failed if it could not bind. */
+  public Future<Void> bound() {
+    return bound.future();
+  }
+
   public byte[] getAudioBuffer() {
     return audioBuffer.getAudioBuffer();
   }
 
+  /** Returns the jitter buffer of the received audio, for its loss and reorder counters. */
+  public RTPAudioBuffer getJitterBuffer() {
+    return audioBuffer;
+  }
+
+  /** Sets the pool sent packets are released to. */
+  public void setPacketPool(RTPPacketPool packetPool) {
+    this.packetPool = packetPool;
+  }
+
   public void sendPacket(Buffer data) {
-    udpSocket.send(data, flowSpec.getRemotePort(), flowSpec.getRemoteAddress(), snd -> {});
+    RTPPacketPool pool = packetPool;
+    udpSocket.send(
+        data,
+        remotePort,
+        remoteHost,
+        pool != null ? pool.releaseOnCompletion(data, sendCompletion) : sendCompletion);
+  }
+
+  /** Releases a packet that will not be sent. */
+  protected void discardPacket(Buffer data) {
+    RTPPacketPool pool = packetPool;
+    if (pool != null) {
+      pool.release(data);
+    }
+  }
+
+  /** Returns the number of packets the socket failed to send. */
+  public long getSendFailures() {
+    return sendFailures.get();
+  }
+
+  private void onSendComplete(AsyncResult<Void> result) {
+    if (result.failed()) {
+      long failures = sendFailures.incrementAndGet();
+      if (failures == 1 || failures % SEND_FAILURE_LOG_INTERVAL == 0) {
+        LOG.warn(
+            "RTP send to {}:{} failed ({} failures so far): {}",
+            remoteHost,
+            remotePort,
+            failures,
+            result.cause().getMessage());
+      }
+    }
   }
 }
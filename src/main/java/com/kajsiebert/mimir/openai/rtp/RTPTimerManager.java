@@ -1,9 +1,5 @@
 package com.kajsiebert.mimir.openai.rtp;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -14,143 +10,195 @@ import org.slf4j.LoggerFactory;
 import io.vertx.core.Vertx;
 
 /**
- * High-priority timer manager for RTP packet timing. Uses a dedicated thread pool with real-time
- * scheduling to ensure precise timing independent of Vert.x event loop performance.
+ * Per-session timer for RTP packet timing. The periodic task is registered with a shared {@link
+ * RTPPacingEngine}, so precise timing stays independent of Vert.x event loop performance without
+ * every call owning a high-priority thread. Timing configurations that do not ask for a dedicated
+ * thread run the task on a Vert.x periodic timer instead.
+ *
+ * <p>Jitter is measured with {@link System#nanoTime()} as the distance between each run and its
+ * absolute deadline on the expected cadence, so it is not quantised to milliseconds and does not
+ * accumulate drift.
  */
 public class RTPTimerManager {
   private static final Logger LOG = LoggerFactory.getLogger(RTPTimerManager.class);
 
-  private final ScheduledExecutorService rtpScheduler;
+  private final RTPPacingEngine pacingEngine;
+  private final RTPPacingEngine.MissedTickPolicy missedTickPolicy;
   private final Vertx vertx;
+  private final long jitterWarningNanos;
+  private final boolean useDedicatedThread;
   private final AtomicBoolean isRunning = new AtomicBoolean(false);
   private final AtomicLong totalPackets = new AtomicLong(0);
-  private final AtomicLong totalJitter = new AtomicLong(0);
+  private final AtomicLong totalJitterNanos = new AtomicLong(0);
+  private final AtomicLong maxJitterNanos = new AtomicLong(0);
+  private final AtomicLong missedTicks = new AtomicLong(0);
 
-  private ScheduledFuture<?> rtpTask;
-  private long lastExecutionTime = 0;
+  private RTPPacingEngine.PacingHandle rtpTask;
+  private long vertxTimerId = -1;
+  private long nextVertxDeadline;
 
   public RTPTimerManager(Vertx vertx) {
-    this.vertx = vertx;
+    this(vertx, RTPPacingEngine.getDefault());
+  }
+
+  public RTPTimerManager(Vertx vertx, RTPPacingEngine pacingEngine) {
+    this(vertx, pacingEngine, RTPTimingConfig.defaultConfig());
+  }
 
-    // Create dedicated thread pool for RTP timing with high priority
-    this.rtpScheduler = Executors.newSingleThreadScheduledExecutor(new RTPThreadFactory());
+  public RTPTimerManager(Vertx vertx, RTPPacingEngine pacingEngine, RTPTimingConfig timingConfig) {
+    this(vertx, pacingEngine, pacingEngine.getDefaultMissedTickPolicy(), timingConfig);
+  }
+
+  public RTPTimerManager(
+      Vertx vertx,
+      RTPPacingEngine pacingEngine,
+      RTPPacingEngine.MissedTickPolicy missedTickPolicy) {
+    this(vertx, pacingEngine, missedTickPolicy, RTPTimingConfig.defaultConfig());
+  }
 
-    LOG.info("RTPTimerManager initialized with dedicated scheduler");
+  public RTPTimerManager(
+      Vertx vertx,
+      RTPPacingEngine pacingEngine,
+      RTPPacingEngine.MissedTickPolicy missedTickPolicy,
+      RTPTimingConfig timingConfig) {
+    this.vertx = vertx;
+    this.pacingEngine = pacingEngine;
+    this.missedTickPolicy = missedTickPolicy;
+    this.jitterWarningNanos =
+        TimeUnit.MILLISECONDS.toNanos(timingConfig.getJitterWarningThresholdMs());
+    this.useDedicatedThread = timingConfig.isUseDedicatedThread();
+
+    LOG.debug(
+        "RTPTimerManager initialized on {}",
+        useDedicatedThread ? "shared pacing engine" : "Vert.x timer");
   }
 
-  /** Start periodic RTP packet sending with microsecond-level precision */
+  /** Start periodic RTP packet sending on absolute nanosecond deadlines */
   public void startPeriodicTask(long intervalMs, Runnable task) {
     if (isRunning.compareAndSet(false, true)) {
-      lastExecutionTime = System.currentTimeMillis();
-
-      rtpTask =
-          rtpScheduler.scheduleAtFixedRate(
-              () -> {
-                long currentTime = System.currentTimeMillis();
-                long actualInterval = currentTime - lastExecutionTime;
-                long jitter = Math.abs(actualInterval - intervalMs);
-
-                // Track timing statistics
-                totalPackets.incrementAndGet();
-                totalJitter.addAndGet(jitter);
-
-                // Log significant jitter (> 5ms indicates timing issues)
-                if (jitter > 5) {
-                  LOG.warn(
-                      "RTP timer jitter detected: {}ms (expected: {}ms, actual: {}ms)",
-                      jitter,
-                      intervalMs,
-                      actualInterval);
-                }
-
-                lastExecutionTime = currentTime;
-
-                // Execute task with exception handling to prevent termination
-                try {
-                  task.run();
-                } catch (Exception e) {
-                  LOG.warn("Exception in RTP task execution, continuing: {}", e.getMessage(), e);
-                }
-              },
-              0,
-              intervalMs,
-              TimeUnit.MILLISECONDS);
-
-      LOG.info("RTP periodic task started with {}ms interval", intervalMs);
+      if (useDedicatedThread) {
+        rtpTask =
+            pacingEngine.register(
+                TimeUnit.MILLISECONDS.toNanos(intervalMs),
+                missedTickPolicy,
+                deadline -> runTask(deadline, intervalMs, task));
+      } else {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+        nextVertxDeadline = System.nanoTime() + intervalNanos;
+        vertxTimerId =
+            vertx.setPeriodic(
+                intervalMs,
+                id -> {
+                  long deadline = nextVertxDeadline;
+                  nextVertxDeadline += intervalNanos;
+                  runTask(deadline, intervalMs, task);
+                });
+      }
+
+      LOG.info(
+          "RTP periodic task started with {}ms interval, missed ticks: {}",
+          intervalMs,
+          useDedicatedThread ? missedTickPolicy : "Vert.x timer");
     } else {
       LOG.warn("RTP timer manager already running");
     }
   }
 
+  private void runTask(long deadline, long intervalMs, Runnable task) {
+    long jitter = Math.abs(System.nanoTime() - deadline);
+
+    // Track timing statistics
+    totalPackets.incrementAndGet();
+    totalJitterNanos.addAndGet(jitter);
+    if (jitter > maxJitterNanos.get()) {
+      maxJitterNanos.set(jitter);
+    }
+
+    // Log jitter above the configured threshold, it indicates timing issues
+    if (jitter > jitterWarningNanos) {
+      LOG.warn(
+          "RTP timer jitter detected: {}us behind the {}ms cadence",
+          TimeUnit.NANOSECONDS.toMicros(jitter),
+          intervalMs);
+    }
+
+    // Execute task with exception handling to prevent termination
+    try {
+      task.run();
+    } catch (Exception e) {
+      LOG.warn("Exception in RTP task execution, continuing: {}", e.getMessage(), e);
+    }
+  }
+
   /** Stop the periodic RTP task */
   public void stop() {
     if (isRunning.compareAndSet(true, false)) {
-      if (rtpTask != null && !rtpTask.isCancelled()) {
-        rtpTask.cancel(false);
+      if (rtpTask != null) {
+        rtpTask.cancel();
+        missedTicks.addAndGet(rtpTask.getMissedTicks());
         rtpTask = null;
       }
+      if (vertxTimerId != -1) {
+        vertx.cancelTimer(vertxTimerId);
+        vertxTimerId = -1;
+      }
 
       // Log timing statistics
-      long packets = totalPackets.get();
-      if (packets > 0) {
-        double avgJitter = (double) totalJitter.get() / packets;
-        LOG.info(
-            "RTP timer stopped. Packets sent: {}, Average jitter: {}ms",
-            packets,
-            String.format("%.2f", avgJitter));
+      TimingStats stats = getTimingStats();
+      if (stats.totalPackets > 0) {
+        LOG.info("RTP timer stopped. {}", stats);
       }
 
       LOG.info("RTP periodic task stopped");
     }
   }
 
-  /** Shutdown the timer manager and release resources */
+  /**
+   * Shutdown the timer manager and release resources. The shared pacing engine keeps running for
+   * other sessions.
+   */
   public void shutdown() {
     stop();
-    rtpScheduler.shutdown();
-    try {
-      if (!rtpScheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-        rtpScheduler.shutdownNow();
-      }
-    } catch (InterruptedException e) {
-      rtpScheduler.shutdownNow();
-      Thread.currentThread().interrupt();
-    }
-    LOG.info("RTPTimerManager shutdown complete");
+    LOG.debug("RTPTimerManager shutdown complete");
   }
 
   /** Get timing statistics */
   public TimingStats getTimingStats() {
     long packets = totalPackets.get();
-    double avgJitter = packets > 0 ? (double) totalJitter.get() / packets : 0.0;
-    return new TimingStats(packets, avgJitter);
+    double avgJitter = packets > 0 ? nanosToMillis(totalJitterNanos.get()) / packets : 0.0;
+    RTPPacingEngine.PacingHandle task = rtpTask;
+    long missed = missedTicks.get() + (task != null ? task.getMissedTicks() : 0);
+    return new TimingStats(packets, avgJitter, nanosToMillis(maxJitterNanos.get()), missed);
   }
 
-  /** Custom thread factory for RTP timing threads with high priority */
-  private static class RTPThreadFactory implements ThreadFactory {
-    @Override
-    public Thread newThread(Runnable r) {
-      Thread thread = new Thread(r, "RTP-Timer-Thread");
-      thread.setDaemon(true);
-      thread.setPriority(Thread.MAX_PRIORITY); // Highest possible priority
-      return thread;
-    }
+  private static double nanosToMillis(long nanos) {
+    return nanos / 1_000_000.0;
   }
 
   /** Timing statistics container */
   public static class TimingStats {
     public final long totalPackets;
     public final double averageJitterMs;
+    public final double maxJitterMs;
+    public final long missedTicks;
 
     public TimingStats(long totalPackets, double averageJitterMs) {
+      this(totalPackets, averageJitterMs, averageJitterMs, 0);
+    }
+
+    public TimingStats(
+        long totalPackets, double averageJitterMs, double maxJitterMs, long missedTicks) {
       this.totalPackets = totalPackets;
       this.averageJitterMs = averageJitterMs;
+      this.maxJitterMs = maxJitterMs;
+      this.missedTicks = missedTicks;
     }
 
     @Override
     public String toString() {
       return String.format(
-          "TimingStats{packets=%d, avgJitter=%.2fms}", totalPackets, averageJitterMs);
+          "TimingStats{packets=%d, avgJitter=%.2fms, maxJitter=%.2fms, missedTicks=%d}",
+          totalPackets, averageJitterMs, maxJitterMs, missedTicks);
     }
   }
 }
@@ -11,6 +11,11 @@ public class RTPTimingConfig {
   private final long jitterErrorThresholdMs;
   private final int adaptiveBufferSize;
   private final boolean enableAdaptiveMode;
+  private final int jitterBufferDepth;
+
+  // Websocket uplink
+  private final int uplinkMinChunkMs;
+  private final int uplinkMaxChunkMs;
 
   // Thread priority settings
   private final int rtpThreadPriority;
@@ -25,6 +30,9 @@ public class RTPTimingConfig {
     this.jitterErrorThresholdMs = builder.jitterErrorThresholdMs;
     this.adaptiveBufferSize = builder.adaptiveBufferSize;
     this.enableAdaptiveMode = builder.enableAdaptiveMode;
+    this.jitterBufferDepth = builder.jitterBufferDepth;
+    this.uplinkMinChunkMs = builder.uplinkMinChunkMs;
+    this.uplinkMaxChunkMs = builder.uplinkMaxChunkMs;
     this.rtpThreadPriority = builder.rtpThreadPriority;
     this.useDedicatedThread = builder.useDedicatedThread;
     this.enableTimingMetrics = builder.enableTimingMetrics;
@@ -42,6 +50,8 @@ public class RTPTimingConfig {
         .jitterErrorThreshold(15)
         .adaptiveBufferSize(10)
         .enableAdaptiveMode(true)
+        .jitterBufferDepth(3)
+        .uplinkChunkRange(20, 250)
         .rtpThreadPriority(Thread.MAX_PRIORITY)
         .useDedicatedThread(true)
         .enableTimingMetrics(true)
@@ -56,6 +66,8 @@ public class RTPTimingConfig {
         .jitterErrorThreshold(5)
         .adaptiveBufferSize(5)
         .enableAdaptiveMode(false) // Disable buffering for lowest latency
+        .jitterBufferDepth(1)
+        .uplinkChunkRange(20, 100)
         .rtpThreadPriority(Thread.MAX_PRIORITY)
         .useDedicatedThread(true)
         .enableTimingMetrics(true)
@@ -70,6 +82,8 @@ public class RTPTimingConfig {
         .jitterErrorThreshold(25)
         .adaptiveBufferSize(20)
         .enableAdaptiveMode(true)
+        .jitterBufferDepth(6)
+        .uplinkChunkRange(40, 250)
         .rtpThreadPriority(Thread.NORM_PRIORITY + 2)
         .useDedicatedThread(true)
         .enableTimingMetrics(true)
@@ -77,6 +91,23 @@ public class RTPTimingConfig {
         .build();
   }
 
+  /**
+   * Returns the preset for a profile name as used in {@code extensions.yml}: {@code default},
+   * {@code lowLatency} or {@code robust}. Names are case-insensitive.
+   */
+  public static RTPTimingConfig forProfile(String profile) {
+    switch (profile.toLowerCase()) {
+      case "default":
+        return defaultConfig();
+      case "lowlatency":
+        return lowLatencyConfig();
+      case "robust":
+        return robustConfig();
+      default:
+        throw new IllegalArgumentException("Unknown RTP timing profile: " + profile);
+    }
+  }
+
   // Getters
   public long getJitterWarningThresholdMs() {
     return jitterWarningThresholdMs;
@@ -94,6 +125,21 @@ public class RTPTimingConfig {
     return enableAdaptiveMode;
   }
 
+  /** Received packets to wait for a missing one before skipping it. */
+  public int getJitterBufferDepth() {
+    return jitterBufferDepth;
+  }
+
+  /** Smallest amount of caller audio sent per websocket message, used while the link is idle. */
+  public int getUplinkMinChunkMs() {
+    return uplinkMinChunkMs;
+  }
+
+  /** Largest amount of caller audio sent per websocket message, used while it is congested. */
+  public int getUplinkMaxChunkMs() {
+    return uplinkMaxChunkMs;
+  }
+
   public int getRtpThreadPriority() {
     return rtpThreadPriority;
   }
@@ -115,6 +161,9 @@ public class RTPTimingConfig {
     private long jitterErrorThresholdMs = 15;
     private int adaptiveBufferSize = 10;
     private boolean enableAdaptiveMode = true;
+    private int jitterBufferDepth = RTPAudioBuffer.DEFAULT_PLAYOUT_DEPTH;
+    private int uplinkMinChunkMs = 20;
+    private int uplinkMaxChunkMs = 250;
     private int rtpThreadPriority = Thread.MAX_PRIORITY;
     private boolean useDedicatedThread = true;
     private boolean enableTimingMetrics = true;
@@ -140,6 +189,26 @@ public class RTPTimingConfig {
       return this;
     }
 
+    public Builder jitterBufferDepth(int packets) {
+      this.jitterBufferDepth = packets;
+      return this;
+    }
+
+    /** Sets the uplink chunk range, clamped to whole 20ms frames between 20ms and 250ms. */
+    public Builder uplinkChunkRange(int minMs, int maxMs) {
+      if (minMs > maxMs) {
+        throw new IllegalArgumentException("Uplink chunk minimum exceeds maximum");
+      }
+      this.uplinkMinChunkMs = clampChunk(minMs);
+      this.uplinkMaxChunkMs = clampChunk(maxMs);
+      return this;
+    }
+
+    private static int clampChunk(int ms) {
+      int frames = Math.round(ms / (float) RTPConstants.PACKET_INTERVAL_MS);
+      return (int) Math.max(20, Math.min(250, frames * RTPConstants.PACKET_INTERVAL_MS));
+    }
+
     public Builder rtpThreadPriority(int priority) {
       this.rtpThreadPriority =
           Math.max(Thread.MIN_PRIORITY, Math.min(Thread.MAX_PRIORITY, priority));
@@ -171,13 +240,17 @@ public class RTPTimingConfig {
     return String.format(
         "RTPTimingConfig{"
             + "jitterWarning=%dms, jitterError=%dms, "
-            + "adaptiveBuffer=%d, adaptiveMode=%s, "
+            + "adaptiveBuffer=%d, adaptiveMode=%s, jitterBufferDepth=%d, "
+            + "uplinkChunk=%d-%dms, "
             + "threadPriority=%d, dedicatedThread=%s, "
             + "metrics=%s, metricsInterval=%dms}",
         jitterWarningThresholdMs,
         jitterErrorThresholdMs,
         adaptiveBufferSize,
         enableAdaptiveMode,
+        jitterBufferDepth,
+        uplinkMinChunkMs,
+        uplinkMaxChunkMs,
         rtpThreadPriority,
         useDedicatedThread,
         enableTimingMetrics,
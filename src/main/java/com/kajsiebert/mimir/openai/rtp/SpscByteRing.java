@@ -0,0 +1,137 @@
+package com.kajsiebert.mimir.openai.rtp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.kajsiebert.mimir.openai.util.Base64Codec;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Lock-free single-producer single-consumer ring of bytes. One thread writes and another reads
+ * without locking: the producer only advances {@code tail} and the consumer only advances {@code
+ * head}, each publishing its position with an ordered store.
+ *
+ * <p>Writes copy straight from the source into the ring and reads copy straight out of it, in at
+ * most two contiguous slices when the data wraps around the end of the array.
+ */
+public class SpscByteRing {
+
+  private final byte[] buffer;
+  private final int mask;
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+  private final byte[] group = new byte[3];
+
+  /** Creates a ring holding at least {@code capacity} bytes, rounded up to a power of two. */
+  public SpscByteRing(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be at least 1");
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    this.buffer = new byte[size];
+    this.mask = size - 1;
+  }
+
+  /**
+   * Writes {@code length} bytes of {@code src}, producer only.
+   *
+   * @return {@code false} if they do not fit, in which case nothing is written
+   */
+  public boolean write(byte[] src, int offset, int length) {
+    long t = tail.get();
+    if (length > buffer.length - (int) (t - head.get())) {
+      return false;
+    }
+    int index = (int) (t & mask);
+    int firstChunk = Math.min(length, buffer.length - index);
+    System.arraycopy(src, offset, buffer, index, firstChunk);
+    System.arraycopy(src, offset + firstChunk, buffer, 0, length - firstChunk);
+    tail.lazySet(t + length);
+    return true;
+  }
+
+  /**
+   * Writes the bytes of {@code src} from {@code start} to {@code start + length}, producer only.
+   *
+   * @return {@code false} if they do not fit, in which case nothing is written
+   */
+  public boolean write(Buffer src, int start, int length) {
+    long t = tail.get();
+    if (length > buffer.length - (int) (t - head.get())) {
+      return false;
+    }
+    int index = (int) (t & mask);
+    int firstChunk = Math.min(length, buffer.length - index);
+    src.getBytes(start, start + firstChunk, buffer, index);
+    if (firstChunk < length) {
+      src.getBytes(start + firstChunk, start + length, buffer, 0);
+    }
+    tail.lazySet(t + length);
+    return true;
+  }
+
+  /**
+   * Removes up to {@code length} bytes and copies them into {@code dst}, consumer only.
+   *
+   * @return the number of bytes copied
+   */
+  public int read(byte[] dst, int offset, int length) {
+    long h = head.get();
+    int count = (int) Math.min(length, tail.get() - h);
+    if (count == 0) {
+      return 0;
+    }
+    int index = (int) (h & mask);
+    int firstChunk = Math.min(count, buffer.length - index);
+    System.arraycopy(buffer, index, dst, offset, firstChunk);
+    System.arraycopy(buffer, 0, dst, offset + firstChunk, count - firstChunk);
+    head.lazySet(h + count);
+    return count;
+  }
+
+  /**
+   * Removes up to {@code length} bytes and writes them base64 encoded into {@code dst}, which must
+   * have room for {@link Base64Codec#encodedLength} of {@code length} bytes, consumer only.
+   *
+   * @return the number of bytes removed
+   */
+  public int readBase64(byte[] dst, int offset, int length) {
+    long h = head.get();
+    int count = (int) Math.min(length, tail.get() - h);
+    if (count == 0) {
+      return 0;
+    }
+    int index = (int) (h & mask);
+    int firstChunk = Math.min(count, buffer.length - index);
+    if (firstChunk == count) {
+      Base64Codec.encode(buffer, index, count, dst, offset);
+    } else {
+      // Whole groups up to the end of the array, the group straddling it, then the rest
+      int groups = firstChunk / 3 * 3;
+      int out = offset + Base64Codec.encode(buffer, index, groups, dst, offset);
+      int straddling = Math.min(3, count - groups);
+      for (int i = 0; i < straddling; i++) {
+        group[i] = buffer[(index + groups + i) & mask];
+      }
+      out += Base64Codec.encode(group, 0, straddling, dst, out);
+      int rest = count - groups - straddling;
+      if (rest > 0) {
+        Base64Codec.encode(buffer, (index + groups + straddling) & mask, rest, dst, out);
+      }
+    }
+    head.lazySet(h + count);
+    return count;
+  }
+
+  /** Returns the number of bytes waiting to be read. */
+  public int size() {
+    return (int) (tail.get() - head.get());
+  }
+
+  public int capacity() {
+    return buffer.length;
+  }
+}
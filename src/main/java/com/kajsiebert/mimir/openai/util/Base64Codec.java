@@ -0,0 +1,146 @@
+package com.kajsiebert.mimir.openai.util;
+
+import java.util.Arrays;
+
+/**
+ * Standard base64 (RFC 4648, section 4) working on caller supplied arrays, for audio that is
+ * carried base64 encoded in websocket messages. Unlike {@link java.util.Base64} it decodes straight
+ * from the characters of a JSON string and encodes straight into the bytes of an outgoing frame, so
+ * neither a {@link String} nor an intermediate byte array is created per message.
+ *
+ * <p>Encoding always pads, decoding accepts both padded and unpadded input.
+ */
+public final class Base64Codec {
+
+  private static final char[] ALPHABET =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+  private static final byte[] ENCODE_TABLE = new byte[ALPHABET.length];
+
+  private static final int[] DECODE_TABLE = new int[128];
+
+  static {
+    Arrays.fill(DECODE_TABLE, -1);
+    for (int i = 0; i < ALPHABET.length; i++) {
+      ENCODE_TABLE[i] = (byte) ALPHABET[i];
+      DECODE_TABLE[ALPHABET[i]] = i;
+    }
+  }
+
+  private Base64Codec() {}
+
+  /** Returns the number of characters {@code length} bytes encode to, padding included. */
+  public static int encodedLength(int length) {
+    return (length + 2) / 3 * 4;
+  }
+
+  /**
+   * Encodes {@code length} bytes of {@code src} as ASCII base64 into {@code dst}, which must have
+   * room for {@link #encodedLength} bytes from {@code dstOffset}.
+   *
+   * @return the number of bytes written
+   */
+  public static int encode(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+    int in = offset;
+    int out = dstOffset;
+
+    // Whole groups of three bytes into four characters
+    int end = offset + length / 3 * 3;
+    while (in < end) {
+      int bits = (src[in] & 0xff) << 16 | (src[in + 1] & 0xff) << 8 | (src[in + 2] & 0xff);
+      dst[out] = ENCODE_TABLE[bits >>> 18];
+      dst[out + 1] = ENCODE_TABLE[(bits >>> 12) & 0x3f];
+      dst[out + 2] = ENCODE_TABLE[(bits >>> 6) & 0x3f];
+      dst[out + 3] = ENCODE_TABLE[bits & 0x3f];
+      in += 3;
+      out += 4;
+    }
+
+    // A last group of one or two bytes, padded
+    int tail = offset + length - in;
+    if (tail > 0) {
+      int bits = (src[in] & 0xff) << 16;
+      if (tail == 2) {
+        bits |= (src[in + 1] & 0xff) << 8;
+      }
+      dst[out] = ENCODE_TABLE[bits >>> 18];
+      dst[out + 1] = ENCODE_TABLE[(bits >>> 12) & 0x3f];
+      dst[out + 2] = tail == 2 ? ENCODE_TABLE[(bits >>> 6) & 0x3f] : (byte) '=';
+      dst[out + 3] = '=';
+      out += 4;
+    }
+    return out - dstOffset;
+  }
+
+  /**
+   * Returns the number of bytes {@code length} base64 characters decode to.
+   *
+   * @throws IllegalArgumentException if no valid base64 text has that length
+   */
+  public static int decodedLength(char[] src, int offset, int length) {
+    int padding = 0;
+    if (length > 0 && src[offset + length - 1] == '=') {
+      padding++;
+      if (length > 1 && src[offset + length - 2] == '=') {
+        padding++;
+      }
+    }
+    int unpadded = length - padding;
+    if (unpadded % 4 == 1 || (padding > 0 && length % 4 != 0)) {
+      throw new IllegalArgumentException("Invalid base64 length: " + length);
+    }
+    return unpadded / 4 * 3 + Math.max(0, unpadded % 4 - 1);
+  }
+
+  /**
+   * Decodes {@code length} base64 characters of {@code src} into {@code dst}, which must have room
+   * for {@link #decodedLength} bytes from {@code dstOffset}.
+   *
+   * @return the number of bytes written
+   * @throws IllegalArgumentException if the text is not valid base64, bytes decoded before the
+   *     invalid character have already been written
+   */
+  public static int decode(char[] src, int offset, int length, byte[] dst, int dstOffset) {
+    int decoded = decodedLength(src, offset, length);
+    int in = offset;
+    int out = dstOffset;
+
+    // Whole quanta of four characters into three bytes
+    int fullQuanta = decoded / 3;
+    for (int i = 0; i < fullQuanta; i++) {
+      int bits =
+          sextet(src, in) << 18
+              | sextet(src, in + 1) << 12
+              | sextet(src, in + 2) << 6
+              | sextet(src, in + 3);
+      dst[out] = (byte) (bits >> 16);
+      dst[out + 1] = (byte) (bits >> 8);
+      dst[out + 2] = (byte) bits;
+      in += 4;
+      out += 3;
+    }
+
+    // A last quantum of one or two bytes, with or without its padding
+    int tail = decoded - fullQuanta * 3;
+    if (tail > 0) {
+      int bits = sextet(src, in) << 18 | sextet(src, in + 1) << 12;
+      if (tail == 2) {
+        bits |= sextet(src, in + 2) << 6;
+      }
+      dst[out++] = (byte) (bits >> 16);
+      if (tail == 2) {
+        dst[out++] = (byte) (bits >> 8);
+      }
+    }
+    return out - dstOffset;
+  }
+
+  private static int sextet(char[] src, int index) {
+    char c = src[index];
+    int value = c < DECODE_TABLE.length ? DECODE_TABLE[c] : -1;
+    if (value < 0) {
+      throw new IllegalArgumentException("Invalid base64 character '" + c + "' at " + index);
+    }
+    return value;
+  }
+}
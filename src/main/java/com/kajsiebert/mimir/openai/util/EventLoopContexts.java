@@ -0,0 +1,28 @@
+package com.kajsiebert.mimir.openai.util;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.VertxInternal;
+
+/**
+ * Creates the Vert.x context a call runs on. Sockets, websockets and timers created on a context
+ * deliver their events on its event loop, so a call whose work all starts there is handled by a
+ * single thread.
+ */
+public final class EventLoopContexts {
+
+  private EventLoopContexts() {}
+
+  /**
+   * Returns a new event loop context, on the next event loop round robin.
+   *
+   * <p>{@link Vertx#getOrCreateContext()} called from a thread outside Vert.x, like a SIP thread,
+   * returns the same context every time, which would put all calls on one event loop.
+   */
+  public static Context newContext(Vertx vertx) {
+    if (vertx instanceof VertxInternal) {
+      return ((VertxInternal) vertx).createEventLoopContext();
+    }
+    return vertx.getOrCreateContext();
+  }
+}
@@ -1,18 +1,118 @@
 package com.kajsiebert.mimir.openai.util;
 
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.mjsip.sip.header.Header;
 import org.mjsip.sip.message.SipMessage;
 import org.mjsip.sip.message.SipResponses;
 import org.mjsip.sip.provider.SipProvider;
 import org.mjsip.sip.provider.SipProviderListener;
 
+/**
+ * Answers OPTIONS probes with the capacity left, so a SIP proxy can steer calls between several
+ * bridges: 200 with a load header while calls are taken, 503 with Retry-After while the bridge is
+ * saturated or draining.
+ *
+ * <p>The status is looked up at most once per {@link #STATUS_TTL_MS} and shared by the probes in
+ * between, so an aggressive health check interval only costs building the response itself, which
+ * has to echo the headers of each request.
+ */
 public class OptionsListener implements SipProviderListener {
 
+  /** Header carrying the active calls and the call limit, 0 if there is none. */
+  public static final String LOAD_HEADER = "X-Mimir-Load";
+
+  static final long STATUS_TTL_MS = 1000;
+
+  /** Where the load reported to OPTIONS probes comes from. */
+  public interface LoadSource {
+    int getActiveCalls();
+
+    /** Returns the most calls taken, or 0 if there is no limit. */
+    int getMaxCalls();
+
+    /** Returns whether a new call would be taken now. */
+    boolean isAcceptingCalls();
+
+    int getRetryAfterSeconds();
+  }
+
+  private final LoadSource load;
+  private final LongSupplier nanoTime;
+  private volatile Status status;
+
+  /** Creates a listener that always answers 200. */
+  public OptionsListener() {
+    this(null);
+  }
+
+  /**
+   * @param load the load to report, or {@code null} to always answer 200
+   */
+  public OptionsListener(LoadSource load) {
+    this(load, System::nanoTime);
+  }
+
+  OptionsListener(LoadSource load, LongSupplier nanoTime) {
+    this.load = load;
+    this.nanoTime = nanoTime;
+  }
+
   @Override
   public void onReceivedMessage(SipProvider sip_provider, SipMessage message) {
     if (message.isRequest("OPTIONS")) {
+      Status current = getStatus();
       SipMessage response =
-          sip_provider.messageFactory().createResponse(message, SipResponses.OK, null, null);
+          sip_provider.messageFactory().createResponse(message, current.code, null, null);
+      if (current.loadValue != null) {
+        response.setHeader(new Header(LOAD_HEADER, current.loadValue));
+      }
+      if (current.retryAfter != null) {
+        response.setHeader(new Header("Retry-After", current.retryAfter));
+      }
       sip_provider.sendMessage(response);
     }
   }
+
+  private Status getStatus() {
+    long now = nanoTime.getAsLong();
+    Status current = status;
+    // Probes racing at expiry may both look the status up, which is harmless
+    if (current == null || now - current.expiresNanos >= 0) {
+      current = lookUp(now + TimeUnit.MILLISECONDS.toNanos(STATUS_TTL_MS));
+      status = current;
+    }
+    return current;
+  }
+
+  private Status lookUp(long expiresNanos) {
+    if (load == null) {
+      return new Status(SipResponses.OK, null, null, expiresNanos);
+    }
+    String loadValue = "calls=" + load.getActiveCalls() + ";max=" + load.getMaxCalls();
+    if (load.isAcceptingCalls()) {
+      return new Status(SipResponses.OK, loadValue, null, expiresNanos);
+    }
+    return new Status(
+        SipResponses.SERVICE_UNAVAILABLE,
+        loadValue,
+        String.valueOf(load.getRetryAfterSeconds()),
+        expiresNanos);
+  }
+
+  /** What probes are answered with until it expires. */
+  private static final class Status {
+    private final int code;
+    private final String loadValue;
+    private final String retryAfter;
+    private final long expiresNanos;
+
+    Status(int code, String loadValue, String retryAfter, long expiresNanos) {
+      this.code = code;
+      this.loadValue = loadValue;
+      this.retryAfter = retryAfter;
+      this.expiresNanos = expiresNanos;
+    }
+  }
 }
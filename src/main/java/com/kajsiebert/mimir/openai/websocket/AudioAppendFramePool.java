@@ -0,0 +1,143 @@
+package com.kajsiebert.mimir.openai.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntConsumer;
+
+import com.kajsiebert.mimir.openai.util.Base64Codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.http.WebSocketFrame;
+
+/**
+ * Fixed set of preformatted {@code input_audio_buffer.append} text frames owned by one websocket
+ * session. The constant JSON before the audio is written once when the pool is created, so sending
+ * audio only base64 encodes it straight into the frame's backing array and closes the JSON after
+ * it. The frame is handed to the websocket as is through a {@link TextFrameView}, leaving the
+ * masking copy made by the websocket encoder as the only one.
+ *
+ * <p>Frames are taken by the uplink and given back by the completion of their write, which also
+ * reports the audio as sent. Audio larger than a pooled frame, or sent while every frame is still
+ * being written, gets a frame of its own, counted in {@link #getFrameAllocations()}.
+ */
+class AudioAppendFramePool {
+
+  /** Enough frames for the chunks sent in one uplink tick while earlier ones are still written. */
+  static final int DEFAULT_SIZE = 8;
+
+  /** The audio of the largest uplink chunk, 250ms of G.711. */
+  static final int AUDIO_CAPACITY = 250 * UplinkChunker.BYTES_PER_MS;
+
+  static final byte[] PREFIX =
+      "{\"type\":\"input_audio_buffer.append\",\"audio\":\"".getBytes(StandardCharsets.US_ASCII);
+  static final byte[] SUFFIX = "\"}".getBytes(StandardCharsets.US_ASCII);
+
+  private final Slot[] slots;
+  private final AtomicIntegerArray inUse;
+  private final IntConsumer audioSent;
+  private int cursor = 0;
+  private volatile long frameAllocations = 0;
+
+  /**
+   * @param audioSent called with the number of audio bytes in each frame once it is written
+   */
+  AudioAppendFramePool(int size, IntConsumer audioSent) {
+    if (size < 1) {
+      throw new IllegalArgumentException("Pool size must be at least 1");
+    }
+    this.audioSent = audioSent;
+    slots = new Slot[size];
+    inUse = new AtomicIntegerArray(size);
+    for (int i = 0; i < size; i++) {
+      slots[i] = new Slot(i, AUDIO_CAPACITY);
+    }
+  }
+
+  /** Takes a free frame with room for {@code audioLength} bytes of audio, uplink only. */
+  Slot acquire(int audioLength) {
+    if (audioLength <= AUDIO_CAPACITY) {
+      for (int n = 0; n < slots.length; n++) {
+        int index = cursor;
+        cursor = index + 1 == slots.length ? 0 : index + 1;
+        if (inUse.compareAndSet(index, 0, 1)) {
+          return slots[index];
+        }
+      }
+    }
+    frameAllocations++;
+    return new Slot(-1, audioLength);
+  }
+
+  public int getSize() {
+    return slots.length;
+  }
+
+  /** Returns the number of frames that are not currently taken. */
+  public int getAvailable() {
+    int available = 0;
+    for (int i = 0; i < slots.length; i++) {
+      if (inUse.get(i) == 0) {
+        available++;
+      }
+    }
+    return available;
+  }
+
+  /** Returns the number of frames allocated because the audio did not fit a pooled one. */
+  public long getFrameAllocations() {
+    return frameAllocations;
+  }
+
+  /** One frame: the backing array, the text frame viewing it and its write completion. */
+  final class Slot {
+    private final int index;
+    private final ByteBuf byteBuf;
+    private final TextFrameView frame;
+    final Handler<AsyncResult<Void>> onWritten;
+    private volatile int audioLength;
+
+    private Slot(int index, int audioCapacity) {
+      this.index = index;
+      int capacity = PREFIX.length + Base64Codec.encodedLength(audioCapacity) + SUFFIX.length;
+      // Netty releases a frame's buffer once it is written, and this one is written again and again
+      this.byteBuf = Unpooled.unreleasableBuffer(Unpooled.buffer(capacity, capacity));
+      this.frame = new TextFrameView(byteBuf);
+      this.onWritten =
+          result -> {
+            int sent = audioLength;
+            release();
+            audioSent.accept(sent);
+          };
+      byteBuf.setBytes(0, PREFIX);
+    }
+
+    /** The array the audio is encoded into. */
+    byte[] array() {
+      return byteBuf.array();
+    }
+
+    /** Offset of the encoded audio in {@link #array()}. */
+    int audioOffset() {
+      return byteBuf.arrayOffset() + PREFIX.length;
+    }
+
+    /** Closes the JSON after the encoded audio and returns the frame to write. */
+    WebSocketFrame frame(int audioLength, int encodedLength) {
+      this.audioLength = audioLength;
+      int suffixOffset = PREFIX.length + encodedLength;
+      byteBuf.setBytes(suffixOffset, SUFFIX);
+      byteBuf.setIndex(0, suffixOffset + SUFFIX.length);
+      return frame.frame();
+    }
+
+    /** Gives the frame back without writing it. */
+    void release() {
+      if (index >= 0) {
+        inUse.compareAndSet(index, 1, 0);
+      }
+    }
+  }
+}
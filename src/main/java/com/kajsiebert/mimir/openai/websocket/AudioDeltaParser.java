@@ -0,0 +1,108 @@
+package com.kajsiebert.mimir.openai.websocket;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.kajsiebert.mimir.openai.rtp.RTPAudioQueue;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Streaming parser for {@code response.audio.delta} messages, the bulk of what the server sends.
+ *
+ * <p>The message is read token by token from the frame's UTF-8 bytes. Fields before {@code delta}
+ * are skipped without being decoded, and the base64 audio is decoded from the parser's character
+ * buffer straight into the {@link RTPAudioQueue}, so neither a {@link
+ * io.vertx.core.json.JsonObject} nor the {@code delta} string is created. Any other message, or an
+ * audio delta whose {@code type} does not come before its {@code delta}, is left to the caller to
+ * parse in full.
+ *
+ * <p>Each websocket session has its own parser, used on the websocket's context only.
+ */
+class AudioDeltaParser {
+
+  static final String AUDIO_DELTA_TYPE = "response.audio.delta";
+
+  private static final char[] AUDIO_DELTA_TYPE_CHARS = AUDIO_DELTA_TYPE.toCharArray();
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private byte[] frameBytes = new byte[16 * 1024];
+
+  /**
+   * Appends the audio of a frame if it is an audio delta.
+   *
+   * @return true if the frame was an audio delta and its audio was appended to {@code queue}, false
+   *     if the frame has to be parsed in full
+   * @throws IllegalArgumentException if the delta is not valid base64
+   */
+  boolean parse(Buffer frame, RTPAudioQueue queue) {
+    return parse(frame, queue, null);
+  }
+
+  /**
+   * Appends the audio of a frame if it is an audio delta, also to {@code recorder} unless it is
+   * {@code null}.
+   *
+   * @see #parse(Buffer, RTPAudioQueue)
+   */
+  boolean parse(Buffer frame, RTPAudioQueue queue, GreetingCache.Recorder recorder) {
+    int length = frame.length();
+    if (frameBytes.length < length) {
+      frameBytes = new byte[Math.max(length, frameBytes.length * 2)];
+    }
+    frame.getBytes(0, length, frameBytes, 0);
+
+    try (JsonParser parser = JSON_FACTORY.createParser(frameBytes, 0, length)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        return false;
+      }
+      boolean audioDelta = false;
+      String field;
+      while ((field = parser.nextFieldName()) != null) {
+        JsonToken value = parser.nextToken();
+        if ("type".equals(field)) {
+          if (value != JsonToken.VALUE_STRING || !isAudioDeltaType(parser)) {
+            return false;
+          }
+          audioDelta = true;
+        } else if ("delta".equals(field)) {
+          if (!audioDelta || value != JsonToken.VALUE_STRING) {
+            return false;
+          }
+          char[] delta = parser.getTextCharacters();
+          int deltaOffset = parser.getTextOffset();
+          int deltaLength = parser.getTextLength();
+          queue.appendBase64Audio(delta, deltaOffset, deltaLength);
+          if (recorder != null) {
+            recorder.appendBase64(delta, deltaOffset, deltaLength);
+          }
+          return true;
+        } else {
+          parser.skipChildren();
+        }
+      }
+      return false;
+    } catch (IOException e) {
+      // Not valid JSON, the full parse reports it
+      return false;
+    }
+  }
+
+  private static boolean isAudioDeltaType(JsonParser parser) throws IOException {
+    int length = parser.getTextLength();
+    if (length != AUDIO_DELTA_TYPE_CHARS.length) {
+      return false;
+    }
+    char[] text = parser.getTextCharacters();
+    int offset = parser.getTextOffset();
+    for (int i = 0; i < length; i++) {
+      if (text[offset + i] != AUDIO_DELTA_TYPE_CHARS[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,240 @@
+package com.kajsiebert.mimir.openai.websocket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.kajsiebert.mimir.openai.ExtensionConfig;
+import com.kajsiebert.mimir.openai.util.Base64Codec;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.CopyOptions;
+
+/**
+ * The greeting audio each extension's model generated for its first call, so later calls play it as
+ * soon as RTP starts instead of waiting for the model to generate the same greeting again.
+ *
+ * <p>Greetings are keyed by a hash of the instructions, voice and greeting prompt they were
+ * generated from, so a greeting is never played for a configuration it was not generated with. With
+ * a directory, every greeting is also written there and read back by {@link #load} on the next
+ * start, which deletes the copies of configurations that no longer exist.
+ */
+public class GreetingCache {
+  private static final Logger LOG = LoggerFactory.getLogger(GreetingCache.class);
+
+  /** Greetings longer than this, 30 seconds of G.711, are not cached. */
+  static final int MAX_AUDIO_BYTES = 30 * 8000;
+
+  static final String FILE_SUFFIX = ".greeting";
+
+  private static final int FILE_MAGIC = 0x4d475231; // "MGR1"
+
+  private final Vertx vertx;
+  private final Path directory;
+  private final Map<String, Greeting> greetings = new ConcurrentHashMap<>();
+
+  /**
+   * @param directory where greetings are kept across restarts, or {@code null} to keep them in
+   *     memory only
+   */
+  public GreetingCache(Vertx vertx, Path directory) {
+    this.vertx = vertx;
+    this.directory = directory;
+  }
+
+  /**
+   * Reads the greetings of {@code configs} written by an earlier run and deletes the others.
+   * Blocks, call it before taking calls.
+   */
+  public void load(Collection<ExtensionConfig> configs) throws IOException {
+    if (directory == null) {
+      return;
+    }
+    Files.createDirectories(directory);
+    Set<String> keys = new HashSet<>();
+    for (ExtensionConfig config : configs) {
+      keys.add(key(config));
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        String key = name.substring(0, name.length() - FILE_SUFFIX.length());
+        if (!keys.contains(key)) {
+          LOG.info("Deleting greeting {} of a configuration that changed", file);
+          Files.delete(file);
+          continue;
+        }
+        try {
+          greetings.put(key, decode(key, Files.readAllBytes(file)));
+        } catch (IOException e) {
+          LOG.warn("Ignoring unreadable greeting {}", file, e);
+        }
+      }
+    }
+    LOG.info("Loaded {} cached greeting(s) from {}", greetings.size(), directory);
+  }
+
+  /** Returns the greeting generated for {@code config}, or {@code null} if there is none yet. */
+  public Greeting get(ExtensionConfig config) {
+    return greetings.get(key(config));
+  }
+
+  /**
+   * Caches a greeting generated for {@code config}, writing it to the directory if there is one.
+   */
+  public void put(ExtensionConfig config, byte[] audio, String transcript) {
+    if (audio.length == 0 || audio.length > MAX_AUDIO_BYTES) {
+      LOG.debug("Not caching a greeting of {} bytes", audio.length);
+      return;
+    }
+    String key = key(config);
+    Greeting greeting = new Greeting(audio, transcript);
+    if (greetings.putIfAbsent(key, greeting) != null) {
+      return;
+    }
+    LOG.info("Cached greeting of {}ms", audio.length / 8);
+    if (directory != null) {
+      write(key, greeting);
+    }
+  }
+
+  private void write(String key, Greeting greeting) {
+    String file = directory.resolve(key + FILE_SUFFIX).toString();
+    String partial = file + ".tmp";
+    // Written aside and moved in place, so a crash never leaves a truncated greeting behind
+    vertx
+        .fileSystem()
+        .writeFile(partial, Buffer.buffer(encode(key, greeting)))
+        .compose(
+            v ->
+                vertx
+                    .fileSystem()
+                    .move(
+                        partial,
+                        file,
+                        new CopyOptions().setReplaceExisting(true).setAtomicMove(true)))
+        .onFailure(err -> LOG.warn("Failed to write greeting {}", file, err));
+  }
+
+  /** Returns the key of the greetings generated for {@code config}. */
+  static String key(ExtensionConfig config) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      for (String part :
+          new String[] {config.getInstructions(), config.getVoice(), config.getGreeting()}) {
+        digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+      }
+      StringBuilder key = new StringBuilder();
+      for (byte b : Arrays.copyOf(digest.digest(), 16)) {
+        key.append(String.format("%02x", b));
+      }
+      return key.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  static byte[] encode(String key, Greeting greeting) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(greeting.audio.length + 256);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(FILE_MAGIC);
+      out.writeUTF(key);
+      out.writeUTF(greeting.transcript);
+      out.writeInt(greeting.audio.length);
+      out.write(greeting.audio);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to encode greeting", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  static Greeting decode(String key, byte[] data) throws IOException {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+      if (in.readInt() != FILE_MAGIC || !key.equals(in.readUTF())) {
+        throw new IOException("Not a greeting of configuration " + key);
+      }
+      String transcript = in.readUTF();
+      int length = in.readInt();
+      if (length <= 0 || length > MAX_AUDIO_BYTES) {
+        throw new IOException("Invalid greeting length " + length);
+      }
+      byte[] audio = new byte[length];
+      in.readFully(audio);
+      return new Greeting(audio, transcript);
+    }
+  }
+
+  /** A greeting's G.711 audio and what the model said in it. */
+  public static final class Greeting {
+    private final byte[] audio;
+    private final String transcript;
+
+    Greeting(byte[] audio, String transcript) {
+      this.audio = audio;
+      this.transcript = transcript != null ? transcript : "";
+    }
+
+    public byte[] getAudio() {
+      return audio;
+    }
+
+    public String getTranscript() {
+      return transcript;
+    }
+  }
+
+  /**
+   * Collects the audio of a greeting as the model generates it. Used on the websocket's context
+   * only.
+   */
+  static final class Recorder {
+    private byte[] audio = new byte[8000];
+    private int length = 0;
+    private String transcript = "";
+    private boolean overflowed = false;
+
+    void appendBase64(char[] base64, int offset, int count) {
+      int decoded = Base64Codec.decodedLength(base64, offset, count);
+      if (overflowed || length + decoded > MAX_AUDIO_BYTES) {
+        overflowed = true;
+        return;
+      }
+      if (length + decoded > audio.length) {
+        audio = Arrays.copyOf(audio, Math.max(length + decoded, audio.length * 2));
+      }
+      length += Base64Codec.decode(base64, offset, count, audio, length);
+    }
+
+    void setTranscript(String transcript) {
+      this.transcript = transcript;
+    }
+
+    /** Returns the recorded audio, or {@code null} if it was too long to cache. */
+    byte[] getAudio() {
+      return overflowed ? null : Arrays.copyOf(audio, length);
+    }
+
+    String getTranscript() {
+      return transcript;
+    }
+  }
+}
@@ -0,0 +1,237 @@
+package com.kajsiebert.mimir.openai.websocket;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.handler.ssl.ClientAuth;
+import io.netty.handler.ssl.SslContext;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.net.JdkSSLEngineOptions;
+import io.vertx.core.net.OpenSSLEngineOptions;
+import io.vertx.core.net.SSLEngineOptions;
+import io.vertx.core.spi.tls.SslContextFactory;
+
+/**
+ * The HTTP clients every realtime session connects through, created once for the process.
+ *
+ * <p>Sessions are spread round robin over a few clients, each allowing {@link
+ * #MAX_WEBSOCKETS_PER_CLIENT} websockets to the API, and no client is left open per call. Vert.x
+ * builds an SSL context per client, so the clients are handed one through {@link
+ * SharedSslEngineOptions}: they share its TLS session cache, and back to back calls resume the TLS
+ * session instead of doing a full handshake, whichever client they go through.
+ */
+public class RealtimeHttpClients {
+  private static final Logger LOG = LoggerFactory.getLogger(RealtimeHttpClients.class);
+
+  static final int MAX_WEBSOCKETS_PER_CLIENT = 256;
+  static final int CONNECT_TIMEOUT_MS = 5000;
+  static final long SSL_HANDSHAKE_TIMEOUT_MS = 5000;
+
+  private final HttpClient[] clients;
+  private final AtomicInteger next = new AtomicInteger();
+
+  /**
+   * @param shards the number of clients to spread the sessions over
+   * @param openSsl whether to use the native OpenSSL engine, falling back to the JDK one if it is
+   *     not available
+   */
+  public RealtimeHttpClients(Vertx vertx, int shards, boolean openSsl) {
+    if (shards < 1) {
+      throw new IllegalArgumentException("At least one HTTP client is required");
+    }
+    boolean useOpenSsl = openSsl && OpenSSLEngineOptions.isAvailable();
+    if (openSsl && !useOpenSsl) {
+      LOG.warn("OpenSSL is not available, realtime sessions use the JDK TLS engine");
+    }
+    HttpClientOptions options = options(useOpenSsl);
+    options.setSslEngineOptions(new SharedSslEngineOptions(options.getSslEngineOptions()));
+    clients = new HttpClient[shards];
+    for (int i = 0; i < shards; i++) {
+      clients[i] = vertx.createHttpClient(options);
+    }
+    LOG.info(
+        "Realtime sessions use {} HTTP client(s) with the {} TLS engine",
+        shards,
+        useOpenSsl ? "OpenSSL" : "JDK");
+  }
+
+  /** Returns the options of a client for realtime websockets. */
+  static HttpClientOptions options(boolean openSsl) {
+    return new HttpClientOptions()
+        .setProtocolVersion(HttpVersion.HTTP_1_1)
+        .setSsl(true)
+        .setSslEngineOptions(
+            openSsl
+                ? new OpenSSLEngineOptions().setSessionCacheEnabled(true)
+                : new JdkSSLEngineOptions())
+        .setConnectTimeout(CONNECT_TIMEOUT_MS)
+        .setSslHandshakeTimeout(SSL_HANDSHAKE_TIMEOUT_MS)
+        .setSslHandshakeTimeoutUnit(TimeUnit.MILLISECONDS)
+        .setTcpNoDelay(true)
+        .setMaxWebSockets(MAX_WEBSOCKETS_PER_CLIENT);
+  }
+
+  /** Returns the client for the next session. */
+  public HttpClient next() {
+    return clients[Math.floorMod(next.getAndIncrement(), clients.length)];
+  }
+
+  public int getSize() {
+    return clients.length;
+  }
+
+  /** Closes all clients, along with the websockets still open on them. */
+  public Future<Void> close() {
+    List<Future<Void>> closed = new ArrayList<>(clients.length);
+    for (HttpClient client : clients) {
+      closed.add(client.close());
+    }
+    return Future.join(closed).mapEmpty();
+  }
+
+  /**
+   * Engine options that hand every client created from them the same SSL context, and so the same
+   * TLS session cache. Vert.x copies the options into each client, and the copies share the
+   * contexts.
+   *
+   * <p>The contexts are told apart by the settings that Vert.x varies per connection, not by the
+   * key and trust managers, which are those of the first client to ask. That only holds for clients
+   * created from one options instance.
+   */
+  static final class SharedSslEngineOptions extends SSLEngineOptions {
+    private final SSLEngineOptions engineOptions;
+    private final Map<List<Object>, SslContext> contexts;
+
+    SharedSslEngineOptions(SSLEngineOptions engineOptions) {
+      this(engineOptions, new ConcurrentHashMap<>());
+    }
+
+    private SharedSslEngineOptions(
+        SSLEngineOptions engineOptions, Map<List<Object>, SslContext> contexts) {
+      this.engineOptions = engineOptions;
+      this.contexts = contexts;
+      setUseWorkerThread(engineOptions.getUseWorkerThread());
+    }
+
+    @Override
+    public SharedSslEngineOptions copy() {
+      return new SharedSslEngineOptions(engineOptions, contexts);
+    }
+
+    @Override
+    public SslContextFactory sslContextFactory() {
+      return new SharedSslContextFactory(engineOptions.sslContextFactory(), contexts);
+    }
+  }
+
+  /** Creates a context through the engine's own factory only if none was created alike before. */
+  private static final class SharedSslContextFactory implements SslContextFactory {
+    private final SslContextFactory factory;
+    private final Map<List<Object>, SslContext> contexts;
+
+    private boolean useAlpn;
+    private boolean forClient;
+    private ClientAuth clientAuth;
+    private Set<String> enabledCipherSuites;
+    private List<String> applicationProtocols;
+    private String serverName;
+
+    SharedSslContextFactory(SslContextFactory factory, Map<List<Object>, SslContext> contexts) {
+      this.factory = factory;
+      this.contexts = contexts;
+    }
+
+    @Override
+    public SslContextFactory useAlpn(boolean useAlpn) {
+      this.useAlpn = useAlpn;
+      factory.useAlpn(useAlpn);
+      return this;
+    }
+
+    @Override
+    public SslContextFactory clientAuth(ClientAuth clientAuth) {
+      this.clientAuth = clientAuth;
+      factory.clientAuth(clientAuth);
+      return this;
+    }
+
+    @Override
+    public SslContextFactory forClient(boolean forClient) {
+      this.forClient = forClient;
+      factory.forClient(forClient);
+      return this;
+    }
+
+    @Override
+    public SslContextFactory keyMananagerFactory(KeyManagerFactory keyManagerFactory) {
+      factory.keyMananagerFactory(keyManagerFactory);
+      return this;
+    }
+
+    @Override
+    public SslContextFactory trustManagerFactory(TrustManagerFactory trustManagerFactory) {
+      factory.trustManagerFactory(trustManagerFactory);
+      return this;
+    }
+
+    @Override
+    public SslContextFactory enabledCipherSuites(Set<String> enabledCipherSuites) {
+      this.enabledCipherSuites = enabledCipherSuites;
+      factory.enabledCipherSuites(enabledCipherSuites);
+      return this;
+    }
+
+    @Override
+    public SslContextFactory applicationProtocols(List<String> applicationProtocols) {
+      this.applicationProtocols = applicationProtocols;
+      factory.applicationProtocols(applicationProtocols);
+      return this;
+    }
+
+    @Override
+    public SslContextFactory serverName(String serverName) {
+      this.serverName = serverName;
+      factory.serverName(serverName);
+      return this;
+    }
+
+    @Override
+    public SslContext create() throws SSLException {
+      List<Object> key =
+          Arrays.asList(
+              forClient,
+              useAlpn,
+              clientAuth,
+              enabledCipherSuites,
+              applicationProtocols,
+              serverName);
+      SslContext context = contexts.get(key);
+      if (context == null) {
+        // Two clients racing here each create one, the loser's is dropped
+        SslContext created = factory.create();
+        context = contexts.putIfAbsent(key, created);
+        if (context == null) {
+          context = created;
+        }
+      }
+      return context;
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package com.kajsiebert.mimir.openai.websocket;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * When each phase of a realtime session's bootstrap was reached, to see where the time to the
+ * greeting goes. Phases are timed from {@link #start}, the moment the connection was requested.
+ *
+ * <p>The connect phase covers DNS, TCP, TLS and the websocket upgrade together, as the Vert.x
+ * client reports the websocket only once all of them are done. For a prewarmed session the gap
+ * between {@link Phase#SESSION_UPDATED} and {@link Phase#RESPONSE_REQUESTED} is the time it waited
+ * for a call.
+ */
+public class SessionTimings {
+
+  /** The bootstrap phases in the order they are normally reached. */
+  public enum Phase {
+    CONNECTED("connected"),
+    SESSION_CREATED("session.created"),
+    SESSION_UPDATED("session.updated"),
+    RESPONSE_REQUESTED("response.create"),
+    FIRST_AUDIO("first audio");
+
+    private final String label;
+
+    Phase(String label) {
+      this.label = label;
+    }
+  }
+
+  private static final Phase[] PHASES = Phase.values();
+
+  private volatile long startedAt = 0;
+  private final AtomicLongArray reachedAt = new AtomicLongArray(PHASES.length);
+
+  /** Starts timing, forgetting any phases reached before. */
+  void start() {
+    for (int i = 0; i < PHASES.length; i++) {
+      reachedAt.set(i, 0);
+    }
+    startedAt = System.nanoTime();
+  }
+
+  /** Records that {@code phase} was reached now, unless it was already. */
+  void mark(Phase phase) {
+    reachedAt.compareAndSet(phase.ordinal(), 0, System.nanoTime());
+  }
+
+  /** Returns whether {@code phase} has been reached. */
+  public boolean reached(Phase phase) {
+    return reachedAt.get(phase.ordinal()) != 0;
+  }
+
+  /** Returns the time from the start until {@code phase} was reached, or -1 if it was not yet. */
+  public long getNanos(Phase phase) {
+    long at = reachedAt.get(phase.ordinal());
+    return at == 0 ? -1 : at - startedAt;
+  }
+
+  public long getMillis(Phase phase) {
+    long nanos = getNanos(phase);
+    return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("SessionTimings{");
+    for (Phase phase : PHASES) {
+      if (phase.ordinal() > 0) {
+        sb.append(", ");
+      }
+      sb.append(phase.label).append('=');
+      long millis = getMillis(phase);
+      sb.append(millis < 0 ? "-" : millis + "ms");
+    }
+    return sb.append('}').toString();
+  }
+}
@@ -0,0 +1,62 @@
+package com.kajsiebert.mimir.openai.websocket;
+
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.http.WebSocketFrame;
+import io.vertx.core.http.WebSocketFrameType;
+import io.vertx.core.http.impl.ws.WebSocketFrameImpl;
+
+/**
+ * A text frame of the readable bytes of a reusable buffer. This is the only place the websocket
+ * code uses Vert.x internals.
+ *
+ * <p>The public API only creates text frames from a String, which copies the text. Vert.x's own
+ * frame class takes the buffer as is, so one frame can be written again and again without a copy.
+ * If that class or its constructor is missing, each frame is created from a String of the buffer
+ * instead.
+ */
+final class TextFrameView {
+  private static final Logger LOG = LoggerFactory.getLogger(TextFrameView.class);
+
+  /** Whether frames can view their buffer, checked once. */
+  static final boolean VIEWS_SUPPORTED = probe();
+
+  private final ByteBuf buffer;
+  private final WebSocketFrame view;
+
+  TextFrameView(ByteBuf buffer) {
+    this(buffer, VIEWS_SUPPORTED);
+  }
+
+  TextFrameView(ByteBuf buffer, boolean viewable) {
+    this.buffer = buffer;
+    this.view = viewable ? newView(buffer) : null;
+  }
+
+  /** Returns a frame of the buffer's readable bytes as they are now. */
+  WebSocketFrame frame() {
+    if (view != null) {
+      return view;
+    }
+    return WebSocketFrame.textFrame(buffer.toString(StandardCharsets.UTF_8), true);
+  }
+
+  private static WebSocketFrame newView(ByteBuf buffer) {
+    return new WebSocketFrameImpl(WebSocketFrameType.TEXT, buffer, true);
+  }
+
+  private static boolean probe() {
+    try {
+      newView(Unpooled.EMPTY_BUFFER);
+      return true;
+    } catch (LinkageError e) {
+      LOG.warn("Websocket frames cannot view a buffer, pooled frames are copied: {}", e.toString());
+      return false;
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package com.kajsiebert.mimir.openai.websocket;
+
+import java.util.concurrent.TimeUnit;
+
+import com.kajsiebert.mimir.openai.rtp.RTPConstants;
+
+/**
+ * Decides how much caller audio to aggregate into each websocket message. Small chunks let the
+ * server VAD see the start and end of speech sooner, larger ones cost fewer messages when the link
+ * cannot keep up.
+ *
+ * <p>The uplink calls {@link #update} every 20ms frame with the audio still queued on the websocket
+ * and the round trip time measured with pings. If the queue holds more than two chunks, or the
+ * round trip has grown well above the lowest one seen, the link is treated as congested and the
+ * chunk size doubles. Once the queue has drained and the round trip is back to normal, it shrinks
+ * again by one frame per update, down to the minimum.
+ */
+public class UplinkChunker {
+
+  static final int FRAME_MS = (int) RTPConstants.PACKET_INTERVAL_MS;
+
+  /** G.711 carries 8 bytes of audio per millisecond. */
+  static final int BYTES_PER_MS = 8;
+
+  /** Round trip time above the lowest one that counts as queueing in the network. */
+  static final long CONGESTION_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+  private final int minChunkMs;
+  private final int maxChunkMs;
+  private volatile int chunkMs;
+
+  public UplinkChunker(int minChunkMs, int maxChunkMs) {
+    if (minChunkMs < FRAME_MS || maxChunkMs < minChunkMs) {
+      throw new IllegalArgumentException(
+          "Uplink chunk range must be at least " + FRAME_MS + "ms with min <= max");
+    }
+    this.minChunkMs = minChunkMs;
+    this.maxChunkMs = maxChunkMs;
+    this.chunkMs = minChunkMs;
+  }
+
+  /**
+   * Adapts the chunk size to the current link state.
+   *
+   * @param pendingBytes audio bytes written to the websocket but not yet sent
+   * @param smoothedRttNanos smoothed round trip time, or 0 if not measured yet
+   * @param minRttNanos lowest round trip time seen, or 0 if not measured yet
+   * @return the number of audio bytes to send per message
+   */
+  public int update(long pendingBytes, long smoothedRttNanos, long minRttNanos) {
+    boolean queueBuilding = pendingBytes > 2L * getChunkBytes();
+    boolean rttInflated =
+        minRttNanos > 0 && smoothedRttNanos - minRttNanos > CONGESTION_DELAY_NANOS;
+
+    if (queueBuilding || rttInflated) {
+      chunkMs = Math.min(maxChunkMs, chunkMs * 2);
+    } else if (pendingBytes == 0) {
+      chunkMs = Math.max(minChunkMs, chunkMs - FRAME_MS);
+    }
+    return getChunkBytes();
+  }
+
+  public int getChunkMs() {
+    return chunkMs;
+  }
+
+  public int getChunkBytes() {
+    return chunkMs * BYTES_PER_MS;
+  }
+
+  /** Returns the largest chunk in bytes, the most audio sent in one message. */
+  public int getMaxChunkBytes() {
+    return maxChunkMs * BYTES_PER_MS;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "UplinkChunker{chunk=%dms, range=%d-%dms}", chunkMs, minChunkMs, maxChunkMs);
+  }
+}
@@ -1,6 +1,12 @@
 package com.kajsiebert.mimir.openai.websocket;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Consumer;
@@ -11,32 +17,77 @@ import org.slf4j.LoggerFactory;
 import io.vertx.core.json.JsonObject;
 
 /**
- * Base class that provides message handling capabilities using reflection to find methods annotated
- * with @Message.
+ * Base class that provides message handling for methods annotated with @WebsocketMessage.
+ *
+ * <p>The annotated methods of each handler class are discovered once, the first time the class is
+ * instantiated, into a dispatch table shared by all its instances. Each entry is a direct invoker
+ * generated with {@link LambdaMetafactory}, so handling a message is a single map lookup and a
+ * plain method call, without reflection or allocation.
  */
 public abstract class WebsocketMessageHandler {
   private static final Logger LOG = LoggerFactory.getLogger(WebsocketMessageHandler.class);
 
-  private final Map<String, Method> handlers = new HashMap<>();
+  private static final MethodType INVOKER_TYPE =
+      MethodType.methodType(void.class, WebsocketMessageHandler.class, JsonObject.class);
+
+  private static final ClassValue<Map<String, MessageInvoker>> DISPATCH_TABLES =
+      new ClassValue<Map<String, MessageInvoker>>() {
+        @Override
+        protected Map<String, MessageInvoker> computeValue(Class<?> type) {
+          return buildDispatchTable(type);
+        }
+      };
+
+  private final Map<String, MessageInvoker> handlers;
 
   protected WebsocketMessageHandler() {
-    initializeHandlers();
+    handlers = DISPATCH_TABLES.get(getClass());
   }
 
-  /** Scans the class for methods annotated with @Message and builds a lookup map. */
-  private void initializeHandlers() {
-    Class<?> clazz = this.getClass();
-    Method[] methods = clazz.getDeclaredMethods();
+  /** Calls a handler method on a handler instance. */
+  @FunctionalInterface
+  interface MessageInvoker {
+    void invoke(WebsocketMessageHandler target, JsonObject msg);
+  }
 
-    for (Method method : methods) {
+  /** Scans the class for methods annotated with @WebsocketMessage and builds its dispatch table. */
+  private static Map<String, MessageInvoker> buildDispatchTable(Class<?> type) {
+    Map<String, MessageInvoker> table = new HashMap<>();
+    for (Method method : type.getDeclaredMethods()) {
       WebsocketMessage messageAnnotation = method.getAnnotation(WebsocketMessage.class);
       if (messageAnnotation != null) {
         String messageType = messageAnnotation.value();
-        method.setAccessible(true); // Allow calling private/protected methods
-        handlers.put(messageType, method);
+        table.put(messageType, createInvoker(type, method));
         LOG.debug("Registered handler for message type: {}", messageType);
       }
     }
+    return Map.copyOf(table);
+  }
+
+  /** Generates a class implementing {@link MessageInvoker} that calls {@code method} directly. */
+  private static MessageInvoker createInvoker(Class<?> type, Method method) {
+    if (Modifier.isStatic(method.getModifiers())
+        || method.getParameterCount() != 1
+        || method.getParameterTypes()[0] != JsonObject.class) {
+      throw new IllegalStateException(
+          "Websocket message handler must be an instance method taking a JsonObject: " + method);
+    }
+    try {
+      // A lookup with private access to the handler class, so private handlers work as well
+      MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+      MethodHandle target = lookup.unreflect(method);
+      CallSite site =
+          LambdaMetafactory.metafactory(
+              lookup,
+              "invoke",
+              MethodType.methodType(MessageInvoker.class),
+              INVOKER_TYPE,
+              target,
+              target.type().changeReturnType(void.class));
+      return (MessageInvoker) site.getTarget().invokeExact();
+    } catch (Throwable e) {
+      throw new IllegalStateException("Cannot create invoker for " + method, e);
+    }
   }
 
   /**
@@ -46,18 +97,12 @@ public abstract class WebsocketMessageHandler {
    * @return a Consumer that will invoke the handler method, or null if no handler found
    */
   public Consumer<JsonObject> getHandler(String messageType) {
-    Method method = handlers.get(messageType);
-    if (method == null) {
+    MessageInvoker invoker = handlers.get(messageType);
+    if (invoker == null) {
       return null;
     }
 
-    return (msg) -> {
-      try {
-        method.invoke(this, msg);
-      } catch (Exception e) {
-        LOG.error("Error invoking handler for message type: {}", messageType, e);
-      }
-    };
+    return (msg) -> invoke(invoker, messageType, msg);
   }
 
   /**
@@ -68,15 +113,21 @@ public abstract class WebsocketMessageHandler {
    * @return true if a handler was found and invoked, false otherwise
    */
   public boolean handle(String messageType, JsonObject msg) {
-    Consumer<JsonObject> handler = getHandler(messageType);
-    if (handler != null) {
-      handler.accept(msg);
-      LOG.debug("Handled message type: {}", messageType);
-      return true;
-    } else {
-      LOG.debug("No handler found for message type: {}", messageType);
+    MessageInvoker invoker = handlers.get(messageType);
+    if (invoker == null) {
+      LOG.trace("No handler found for message type: {}", messageType);
       return false;
     }
+    invoke(invoker, messageType, msg);
+    return true;
+  }
+
+  private void invoke(MessageInvoker invoker, String messageType, JsonObject msg) {
+    try {
+      invoker.invoke(this, msg);
+    } catch (Exception e) {
+      LOG.error("Error invoking handler for message type: {}", messageType, e);
+    }
   }
 
   /** Returns all registered message types. */
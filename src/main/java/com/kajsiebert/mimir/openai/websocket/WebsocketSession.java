@@ -1,48 +1,134 @@
 package com.kajsiebert.mimir.openai.websocket;
 
-import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.kajsiebert.mimir.openai.ExtensionConfig;
+import com.kajsiebert.mimir.openai.rtp.ComfortTone;
+import com.kajsiebert.mimir.openai.rtp.JitterHistogram;
+import com.kajsiebert.mimir.openai.rtp.RTPAudioBuffer;
 import com.kajsiebert.mimir.openai.rtp.RTPAudioQueue;
+import com.kajsiebert.mimir.openai.rtp.RTPPacketPool;
+import com.kajsiebert.mimir.openai.util.Base64Codec;
 import com.kajsiebert.mimir.openai.util.ConsumerArray;
+import com.kajsiebert.mimir.openai.util.EventLoopContexts;
 
+import io.vertx.core.Context;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpClient;
-import io.vertx.core.http.HttpClientOptions;
-import io.vertx.core.http.HttpVersion;
 import io.vertx.core.http.WebSocket;
 import io.vertx.core.http.WebSocketConnectOptions;
 import io.vertx.core.http.WebSocketFrame;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
+/**
+ * A session with the realtime API for one call. The session owns the call's Vert.x context: its
+ * websocket is connected from it, so the server's messages and the session's timers are handled on
+ * its event loop, and the rest of the call runs its Vert.x work there too.
+ */
 public class WebsocketSession extends WebsocketMessageHandler {
   private static final Logger LOG = LoggerFactory.getLogger(WebsocketSession.class);
 
+  /** How often the round trip time to the server is measured with a ping. */
+  static final long RTT_PROBE_INTERVAL_MS = 2000;
+
+  private static final long HIGHEST_TRACKABLE_LATENCY_MS = TimeUnit.MINUTES.toMillis(1);
+
   private final Vertx vertx;
   private final ExtensionConfig extensionConfig;
-  protected WebsocketSessionState state = WebsocketSessionState.NEW;
+  private final Context context;
+  // Changed on the context, read by the pool and the call from other threads
+  protected volatile WebsocketSessionState state = WebsocketSessionState.NEW;
   private final RTPAudioQueue audioQueue = new RTPAudioQueue();
+  private final AudioDeltaParser audioDeltaParser = new AudioDeltaParser();
   private final ConsumerArray<WebsocketSessionState> audioReceivedCallbacks = new ConsumerArray<>();
   private final ConsumerArray<WebsocketSessionState> callEndedCallbacks = new ConsumerArray<>();
 
-  private WebSocket webSocket;
-
+  private final RealtimeHttpClients httpClients;
+  private HttpClient ownHttpClient;
+  // Set once the session configuration is written, nothing else may go ahead of it
+  private volatile WebSocket webSocket;
+  private long rttProbeTimerId = -1;
+
+  // A prewarmed session is configured but only answers once claimed for a call
+  private boolean answerRequested = true;
+  private boolean responseRequested = false;
+  private boolean configured = false;
+  private final SessionTimings timings = new SessionTimings();
+
+  // The greeting is played from the cache if it has one, or else recorded into it
+  private final GreetingCache greetingCache;
+  private GreetingCache.Greeting cachedGreeting;
+  private volatile GreetingCache.Recorder greetingRecorder;
+
+  // Uplink state, written on the websocket's context and read by the uplink
+  private final AtomicLong uplinkPendingBytes = new AtomicLong();
+  private final AudioAppendFramePool appendFrames =
+      new AudioAppendFramePool(
+          AudioAppendFramePool.DEFAULT_SIZE, sent -> uplinkPendingBytes.addAndGet(-sent));
+  private volatile long smoothedRttNanos = 0;
+  private volatile long minRttNanos = 0;
+
+  // Time from the end of the caller's speech to the first audio of the answer
+  private final JitterHistogram turnLatencyMillis =
+      new JitterHistogram(HIGHEST_TRACKABLE_LATENCY_MS);
+  private long speechStoppedAt = 0;
+
+  /** Creates a session with an HTTP client of its own, closed with the session. */
   public WebsocketSession(Vertx vertx, ExtensionConfig extensionConfig) {
+    this(vertx, extensionConfig, null);
+  }
+
+  /** Creates a session connecting through one of the shared {@code httpClients}. */
+  public WebsocketSession(
+      Vertx vertx, ExtensionConfig extensionConfig, RealtimeHttpClients httpClients) {
+    this(vertx, extensionConfig, httpClients, null);
+  }
+
+  /**
+   * Creates a session connecting through one of the shared {@code httpClients}, playing its
+   * greeting from {@code greetingCache} if it has one. Either may be {@code null}.
+   */
+  public WebsocketSession(
+      Vertx vertx,
+      ExtensionConfig extensionConfig,
+      RealtimeHttpClients httpClients,
+      GreetingCache greetingCache) {
     this.vertx = vertx;
     this.extensionConfig = extensionConfig;
+    this.httpClients = httpClients;
+    this.greetingCache = greetingCache;
+    this.context = EventLoopContexts.newContext(vertx);
   }
 
+  /**
+   * Connects and configures the session for a call that is already waiting, answering as soon as
+   * the server has applied the configuration.
+   */
   public boolean start() {
-    HttpClientOptions clientOpts =
-        new HttpClientOptions().setProtocolVersion(HttpVersion.HTTP_1_1).setSsl(true);
+    timings.start();
+    if (answerRequested) {
+      playCachedGreeting();
+    }
+    context.runOnContext(v -> connect());
+    return true;
+  }
 
-    HttpClient httpClient = vertx.createHttpClient(clientOpts);
+  /** Connects the websocket from the session's context, which then handles its events. */
+  private void connect() {
+    HttpClient httpClient;
+    if (httpClients != null) {
+      httpClient = httpClients.next();
+    } else {
+      httpClient = vertx.createHttpClient(RealtimeHttpClients.options(false));
+      ownHttpClient = httpClient;
+    }
     String host = "api.openai.com";
     int port = 443;
     String uri = "/v1/realtime?model=gpt-4o-realtime-preview-2024-12-17";
@@ -63,42 +149,210 @@ public class WebsocketSession extends WebsocketMessageHandler {
             webSocket = wsRes.result();
             LOG.info("WebSocket connected to OpenAI");
 
-            this.webSocket = webSocket;
             webSocket.frameHandler(this::handleFrame);
             webSocket.exceptionHandler(this::handleException);
             webSocket.closeHandler(this::handleClose);
-
-            this.state = WebsocketSessionState.CONNECTED;
-            this.webSocket.writeTextMessage(this.getSessionConfig().encode());
+            webSocket.pongHandler(this::handlePong);
+            rttProbeTimerId = vertx.setPeriodic(RTT_PROBE_INTERVAL_MS, id -> probeRtt());
+
+            if (this.state == WebsocketSessionState.NEW) {
+              this.state = WebsocketSessionState.CONNECTED;
+            }
+            timings.mark(SessionTimings.Phase.CONNECTED);
+            sendBootstrap(webSocket);
           } else {
             LOG.error("WebSocket connection failed", wsRes.cause());
+            this.state = WebsocketSessionState.TERMINATED;
+            closeOwnHttpClient();
+            callEndedCallbacks.accept(this.state);
           }
         });
+  }
 
-    return true;
+  /**
+   * Sends the session configuration and, for a call that is waiting, the greeting request right
+   * behind it. The server handles client events in order, so the greeting is generated with the
+   * configured instructions and voice without waiting for {@code session.updated}.
+   */
+  private synchronized void sendBootstrap(WebSocket webSocket) {
+    webSocket.writeTextMessage(this.getSessionConfig().encode());
+    // Published under the lock only now, so a racing claim() cannot answer before session.update
+    this.webSocket = webSocket;
+    if (answerRequested) {
+      requestResponse();
+    }
+  }
+
+  /**
+   * Connects and configures the session ahead of a call. It waits configured until {@link #claim}
+   * answers it.
+   */
+  public synchronized boolean prewarm() {
+    answerRequested = false;
+    return start();
+  }
+
+  /**
+   * Claims a prewarmed session for a call, requesting the greeting now if it is connected, or right
+   * after its configuration once it is.
+   */
+  public void claim() {
+    synchronized (this) {
+      answerRequested = true;
+    }
+    playCachedGreeting();
+    synchronized (this) {
+      if (this.webSocket != null && this.state != WebsocketSessionState.TERMINATED) {
+        requestResponse();
+      }
+    }
+  }
+
+  /**
+   * Queues the cached greeting, if there is one, so RTP plays it as soon as it starts while the
+   * session connects.
+   */
+  private void playCachedGreeting() {
+    GreetingCache.Greeting greeting;
+    synchronized (this) {
+      if (greetingCache == null || cachedGreeting != null || responseRequested) {
+        return;
+      }
+      greeting = greetingCache.get(extensionConfig);
+      if (greeting == null) {
+        return;
+      }
+      cachedGreeting = greeting;
+    }
+    LOG.debug("Playing cached greeting");
+    audioQueue.appendAudio(greeting.getAudio());
+    audioReceived();
+  }
+
+  private void requestResponse() {
+    if (!responseRequested) {
+      responseRequested = true;
+      if (cachedGreeting != null) {
+        // The caller hears the cached greeting, the model only needs to know it was said
+        this.webSocket.writeTextMessage(
+            this.getGreetingItem(cachedGreeting.getTranscript()).encode());
+      } else {
+        if (greetingCache != null) {
+          greetingRecorder = new GreetingCache.Recorder();
+        }
+        this.webSocket.writeTextMessage(this.getCreateResponse().encode());
+      }
+      timings.mark(SessionTimings.Phase.RESPONSE_REQUESTED);
+      if (configured && this.state == WebsocketSessionState.SESSION_CREATED) {
+        this.state = WebsocketSessionState.ANSWERED;
+      }
+    }
+  }
+
+  /** Returns whether the session is configured and waiting to be claimed. */
+  public synchronized boolean isReady() {
+    return configured && !answerRequested && this.state == WebsocketSessionState.SESSION_CREATED;
+  }
+
+  /** Returns the context the session's events are handled on, for the rest of the call to use. */
+  public Context getContext() {
+    return context;
+  }
+
+  public WebsocketSessionState getState() {
+    return state;
+  }
+
+  /** Returns the time from {@link #start} until the session was configured, or 0 until then. */
+  public long getSetupNanos() {
+    return Math.max(0, timings.getNanos(SessionTimings.Phase.SESSION_UPDATED));
+  }
+
+  /** Returns when each phase of the session's bootstrap was reached. */
+  public SessionTimings getTimings() {
+    return timings;
   }
 
   public void close() {
-    this.webSocket.close();
+    stopRttProbe();
+    if (this.webSocket != null) {
+      this.webSocket.close();
+    }
+    closeOwnHttpClient();
+  }
+
+  private void closeOwnHttpClient() {
+    HttpClient client = ownHttpClient;
+    if (client != null) {
+      ownHttpClient = null;
+      client.close();
+    }
+  }
+
+  private void stopRttProbe() {
+    if (rttProbeTimerId != -1) {
+      vertx.cancelTimer(rttProbeTimerId);
+      rttProbeTimerId = -1;
+    }
+  }
+
+  /** Pings the server with the send time as payload, the pong echoes it back. */
+  private void probeRtt() {
+    if (state != WebsocketSessionState.TERMINATED) {
+      webSocket.writePing(Buffer.buffer(Long.BYTES).appendLong(System.nanoTime()));
+    }
+  }
+
+  protected void handlePong(Buffer data) {
+    if (data.length() != Long.BYTES) {
+      return;
+    }
+    long rtt = System.nanoTime() - data.getLong(0);
+    long smoothed = smoothedRttNanos;
+    // Smoothed like TCP's SRTT, RFC 6298
+    smoothedRttNanos = smoothed == 0 ? rtt : smoothed + (rtt - smoothed) / 8;
+    long min = minRttNanos;
+    if (min == 0 || rtt < min) {
+      minRttNanos = rtt;
+    }
   }
 
   protected void handleFrame(WebSocketFrame frame) {
     if (frame.isText()) {
+      // Audio deltas are streamed straight into the audio queue, everything else is parsed in full
+      if (parseAudioDelta(frame.binaryData())) {
+        return;
+      }
       JsonObject msg = new JsonObject(frame.textData());
       String type = msg.getString("type");
       handle(type, msg);
     }
   }
-  ;
+
+  private boolean parseAudioDelta(Buffer frameData) {
+    try {
+      if (!audioDeltaParser.parse(frameData, audioQueue, greetingRecorder)) {
+        return false;
+      }
+      audioReceived();
+    } catch (IllegalArgumentException e) {
+      LOG.error("Invalid audio in {} message", AudioDeltaParser.AUDIO_DELTA_TYPE, e);
+    }
+    return true;
+  }
 
   protected void handleException(Throwable err) {
     this.state = WebsocketSessionState.TERMINATED;
+    stopRttProbe();
+    closeOwnHttpClient();
     LOG.error("WebSocket error", err);
     callEndedCallbacks.accept(this.state);
   }
 
   protected void handleClose(Void v) {
     this.state = WebsocketSessionState.TERMINATED;
+    stopRttProbe();
+    closeOwnHttpClient();
     LOG.info("WebSocket closed");
     callEndedCallbacks.accept(this.state);
   }
@@ -135,39 +389,110 @@ public class WebsocketSession extends WebsocketMessageHandler {
     return msg;
   }
 
+  /** Adds the greeting played from the cache to the conversation as said by the model. */
+  public JsonObject getGreetingItem(String transcript) {
+    JsonObject item =
+        new JsonObject()
+            .put("type", "message")
+            .put("role", "assistant")
+            .put("content", JsonArray.of(JsonObject.of("type", "text", "text", transcript)));
+    return JsonObject.of("type", "conversation.item.create", "item", item);
+  }
+
   @WebsocketMessage("session.created")
-  public void handleSessionCreated(JsonObject msg) {
-    this.state = WebsocketSessionState.SESSION_CREATED;
+  public synchronized void handleSessionCreated(JsonObject msg) {
+    // A cached greeting may already be playing
+    if (this.state.compareTo(WebsocketSessionState.SESSION_CREATED) < 0) {
+      this.state = WebsocketSessionState.SESSION_CREATED;
+    }
+    timings.mark(SessionTimings.Phase.SESSION_CREATED);
   }
 
   @WebsocketMessage("session.updated")
-  public void handleSessionUpdated(JsonObject msg) {
-    if (this.state == WebsocketSessionState.SESSION_CREATED) {
-      this.webSocket.writeTextMessage(this.getCreateResponse().encode());
-      this.state = WebsocketSessionState.ANSWERED;
+  public synchronized void handleSessionUpdated(JsonObject msg) {
+    if (this.state == WebsocketSessionState.SESSION_CREATED
+        || (cachedGreeting != null && this.state == WebsocketSessionState.AUDIO_RECEIVED)) {
+      configured = true;
+      timings.mark(SessionTimings.Phase.SESSION_UPDATED);
+      if (responseRequested && this.state == WebsocketSessionState.SESSION_CREATED) {
+        this.state = WebsocketSessionState.ANSWERED;
+      }
     } else {
       LOG.warn("Received session.updated message in state: {}", this.state);
     }
   }
 
-  @WebsocketMessage("response.audio.delta")
+  /**
+   * Handles an audio delta that could not be streamed by {@link AudioDeltaParser}, because its
+   * {@code delta} came before its {@code type}.
+   */
+  @WebsocketMessage(AudioDeltaParser.AUDIO_DELTA_TYPE)
   public void handleResponseAudioDelta(JsonObject msg) {
     String deltaB64 = msg.getString("delta");
     if (deltaB64 != null) {
+      char[] delta = deltaB64.toCharArray();
+      audioQueue.appendBase64Audio(delta, 0, delta.length);
+      if (greetingRecorder != null) {
+        greetingRecorder.appendBase64(delta, 0, delta.length);
+      }
+      audioReceived();
+    }
+  }
 
-      if (this.state.compareTo(WebsocketSessionState.AUDIO_RECEIVED) < 0) {
+  private void audioReceived() {
+    if (this.state.compareTo(WebsocketSessionState.AUDIO_RECEIVED) < 0) {
+      synchronized (this) {
         this.state = WebsocketSessionState.AUDIO_RECEIVED;
-        audioReceivedCallbacks.accept(this.state);
+        audioQueue.setComfortTone(null);
       }
+      timings.mark(SessionTimings.Phase.FIRST_AUDIO);
+      LOG.info("Greeting audio received, {}", timings);
+      audioReceivedCallbacks.accept(this.state);
+    }
 
-      byte[] audio = Base64.getDecoder().decode(deltaB64);
-      audioQueue.appendAudio(audio);
+    if (speechStoppedAt != 0) {
+      long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - speechStoppedAt);
+      speechStoppedAt = 0;
+      turnLatencyMillis.record(latencyMs);
+      LOG.debug("First response audio {}ms after the caller stopped speaking", latencyMs);
     }
   }
 
   @WebsocketMessage("input_audio_buffer.speech_started")
   public void handleInputAudioBufferSpeechStarted(JsonObject msg) {
     audioQueue.clearAudio();
+    speechStoppedAt = 0;
+    if (greetingRecorder != null) {
+      LOG.debug("Greeting interrupted by the caller, not caching it");
+      greetingRecorder = null;
+    }
+  }
+
+  @WebsocketMessage("input_audio_buffer.speech_stopped")
+  public void handleInputAudioBufferSpeechStopped(JsonObject msg) {
+    speechStoppedAt = System.nanoTime();
+  }
+
+  @WebsocketMessage("response.audio_transcript.done")
+  public void handleResponseAudioTranscriptDone(JsonObject msg) {
+    if (greetingRecorder != null) {
+      greetingRecorder.setTranscript(msg.getString("transcript", ""));
+    }
+  }
+
+  /** Caches the greeting once the model has generated all of it. */
+  @WebsocketMessage("response.done")
+  public void handleResponseDone(JsonObject msg) {
+    GreetingCache.Recorder recorder = greetingRecorder;
+    if (recorder == null) {
+      return;
+    }
+    greetingRecorder = null;
+    JsonObject response = msg.getJsonObject("response");
+    byte[] audio = recorder.getAudio();
+    if (response != null && "completed".equals(response.getString("status")) && audio != null) {
+      greetingCache.put(extensionConfig, audio, recorder.getTranscript());
+    }
   }
 
   @WebsocketMessage("error")
@@ -184,13 +509,93 @@ public class WebsocketSession extends WebsocketMessageHandler {
   }
 
   public void sendAudio(byte[] audio) {
-    String audioB64 = Base64.getEncoder().encodeToString(audio);
-    JsonObject msg =
-        new JsonObject().put("type", "input_audio_buffer.append").put("audio", audioB64);
-    webSocket.writeTextMessage(msg.encode());
+    sendAudio(audio, 0, audio.length);
+  }
+
+  /** Sends a slice of received audio, encoding it straight into a pooled frame. */
+  public void sendAudio(byte[] audio, int offset, int length) {
+    if (webSocket == null) {
+      return;
+    }
+    AudioAppendFramePool.Slot slot = appendFrames.acquire(length);
+    int encodedLength = Base64Codec.encode(audio, offset, length, slot.array(), slot.audioOffset());
+    writeAudioFrame(slot, length, encodedLength);
+  }
+
+  /**
+   * Sends up to {@code length} bytes of received audio taken from {@code source}, encoding them
+   * straight from its ring into a pooled frame. Called by the uplink, the only reader of {@code
+   * source}.
+   *
+   * @return the number of audio bytes sent, 0 while the session is not connected yet
+   */
+  public int sendAudio(RTPAudioBuffer source, int length) {
+    if (webSocket == null) {
+      return 0;
+    }
+    AudioAppendFramePool.Slot slot = appendFrames.acquire(length);
+    int taken = source.readAudioBase64(slot.array(), slot.audioOffset(), length);
+    if (taken == 0) {
+      slot.release();
+      return 0;
+    }
+    writeAudioFrame(slot, taken, Base64Codec.encodedLength(taken));
+    return taken;
+  }
+
+  private void writeAudioFrame(AudioAppendFramePool.Slot slot, int audioLength, int encodedLength) {
+    uplinkPendingBytes.addAndGet(audioLength);
+    webSocket.writeFrame(slot.frame(audioLength, encodedLength), slot.onWritten);
+  }
+
+  /** Returns the caller audio bytes written to the websocket that have not been sent yet. */
+  public long getUplinkPendingBytes() {
+    return uplinkPendingBytes.get();
+  }
+
+  /** Returns the smoothed round trip time to the server, or 0 before the first pong. */
+  public long getSmoothedRttNanos() {
+    return smoothedRttNanos;
+  }
+
+  /** Returns the lowest round trip time to the server seen, or 0 before the first pong. */
+  public long getMinRttNanos() {
+    return minRttNanos;
+  }
+
+  /** Returns the time from the end of the caller's speech to the first answer audio, in ms. */
+  public JitterHistogram.Snapshot getTurnLatency() {
+    return turnLatencyMillis.snapshot();
+  }
+
+  /** Plays a ringback tone over RTP until the first model audio arrives. */
+  public synchronized void playComfortTone() {
+    if (this.state.compareTo(WebsocketSessionState.AUDIO_RECEIVED) < 0) {
+      audioQueue.setComfortTone(new ComfortTone());
+    }
   }
 
   public Buffer getNextRtpPacket() {
     return audioQueue.getNextRtpPacket();
   }
+
+  /** Returns the pool the RTP packets are taken from, they are released there once sent. */
+  public RTPPacketPool getPacketPool() {
+    return audioQueue.getPacketPool();
+  }
+
+  /** Returns how many uplink frames had to be allocated because no pooled one was free. */
+  public long getUplinkFrameAllocations() {
+    return appendFrames.getFrameAllocations();
+  }
+
+  /** Returns how many RTP packets had to be allocated because the pool was exhausted. */
+  public long getPacketAllocations() {
+    return audioQueue.getPacketAllocations();
+  }
+
+  /** Returns how many bytes of model audio were dropped because the audio queue was full. */
+  public long getDroppedAudioBytes() {
+    return audioQueue.getDroppedBytes();
+  }
 }
@@ -0,0 +1,223 @@
+package com.kajsiebert.mimir.openai.websocket;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.kajsiebert.mimir.openai.ExtensionConfig;
+
+import io.vertx.core.Vertx;
+
+/**
+ * Keeps sessions to the realtime API connected and configured for one extension ahead of its calls,
+ * so a call only waits for the greeting instead of DNS, TCP, TLS, the websocket upgrade and the
+ * session setup round trips.
+ *
+ * <p>Every {@link #MAINTENANCE_INTERVAL_MS} the pool drops sessions the server closed, replaces
+ * sessions older than the refresh age well before the server's own session limit, and tops up to a
+ * target derived from the recent call rate: enough sessions to cover the calls expected while a
+ * replacement is set up, and always at least one. An incoming call {@link #take takes} a configured
+ * session if there is one, or else one that is still being set up, which is still further along
+ * than a new connection.
+ */
+public class WebsocketSessionPool {
+  private static final Logger LOG = LoggerFactory.getLogger(WebsocketSessionPool.class);
+
+  static final long MAINTENANCE_INTERVAL_MS = 5000;
+
+  /** Sessions are replaced after this long, the server ends sessions after 30 minutes. */
+  public static final long DEFAULT_REFRESH_AGE_MS = TimeUnit.MINUTES.toMillis(10);
+
+  /** Weight of the latest interval in the smoothed call rate. */
+  private static final double RATE_SMOOTHING = 0.2;
+
+  /** Setup time assumed until a session has been measured. */
+  private static final long DEFAULT_SETUP_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+  private final Vertx vertx;
+  private final String extension;
+  private final Supplier<WebsocketSession> sessionFactory;
+  private final int maxSize;
+  private final long refreshAgeNanos;
+  private final Deque<Entry> idle = new ArrayDeque<>();
+
+  private long maintenanceTimerId = -1;
+  private int callsSinceMaintenance = 0;
+  private double callsPerSecond = 0;
+  private long setupNanos = DEFAULT_SETUP_NANOS;
+  private long hits = 0;
+  private long misses = 0;
+  private boolean closed = false;
+
+  public WebsocketSessionPool(
+      Vertx vertx,
+      String extension,
+      ExtensionConfig extensionConfig,
+      RealtimeHttpClients httpClients,
+      GreetingCache greetingCache,
+      int maxSize,
+      long refreshAgeMs) {
+    this(
+        vertx,
+        extension,
+        maxSize,
+        refreshAgeMs,
+        () -> new WebsocketSession(vertx, extensionConfig, httpClients, greetingCache));
+  }
+
+  WebsocketSessionPool(
+      Vertx vertx,
+      String extension,
+      int maxSize,
+      long refreshAgeMs,
+      Supplier<WebsocketSession> sessionFactory) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("Pool size must be at least 1");
+    }
+    this.vertx = vertx;
+    this.extension = extension;
+    this.maxSize = maxSize;
+    this.refreshAgeNanos = TimeUnit.MILLISECONDS.toNanos(refreshAgeMs);
+    this.sessionFactory = sessionFactory;
+  }
+
+  /** Warms the first session and starts maintaining the pool. */
+  public synchronized void start() {
+    maintain();
+    maintenanceTimerId = vertx.setPeriodic(MAINTENANCE_INTERVAL_MS, id -> maintain());
+  }
+
+  /**
+   * Takes a session for an incoming call. The caller registers its callbacks and then {@link
+   * WebsocketSession#claim claims} it.
+   *
+   * @return a prewarmed session, or {@code null} if there is none and the caller has to start one
+   */
+  public synchronized WebsocketSession take() {
+    callsSinceMaintenance++;
+    Entry taken = null;
+    for (Iterator<Entry> it = idle.iterator(); it.hasNext(); ) {
+      Entry entry = it.next();
+      if (entry.session.getState() == WebsocketSessionState.TERMINATED) {
+        it.remove();
+      } else if (entry.session.isReady()) {
+        taken = entry;
+        break;
+      } else if (taken == null) {
+        taken = entry;
+      }
+    }
+    if (taken == null) {
+      misses++;
+      return null;
+    }
+    idle.remove(taken);
+    hits++;
+    if (!closed) {
+      // Replace the taken session right away rather than at the next maintenance
+      vertx.runOnContext(v -> refill());
+    }
+    return taken.session;
+  }
+
+  /** Updates the call rate, then refills the pool. */
+  synchronized void maintain() {
+    double intervalRate = callsSinceMaintenance * 1000.0 / MAINTENANCE_INTERVAL_MS;
+    callsSinceMaintenance = 0;
+    callsPerSecond += RATE_SMOOTHING * (intervalRate - callsPerSecond);
+    refill();
+  }
+
+  /** Drops closed and old sessions and tops the pool up to the target size. */
+  synchronized void refill() {
+    if (closed) {
+      return;
+    }
+    long now = System.nanoTime();
+    for (Iterator<Entry> it = idle.iterator(); it.hasNext(); ) {
+      Entry entry = it.next();
+      WebsocketSession session = entry.session;
+      if (session.getState() == WebsocketSessionState.TERMINATED) {
+        it.remove();
+      } else if (now - entry.createdAt > refreshAgeNanos) {
+        it.remove();
+        session.close();
+      } else if (session.getSetupNanos() > 0 && !entry.measured) {
+        entry.measured = true;
+        setupNanos += (long) (RATE_SMOOTHING * (session.getSetupNanos() - setupNanos));
+      }
+    }
+
+    int target = getTargetSize();
+    while (idle.size() < target) {
+      WebsocketSession session = sessionFactory.get();
+      session.prewarm();
+      idle.add(new Entry(session, now));
+    }
+    LOG.trace("{}", this);
+  }
+
+  /** Returns the sessions to keep: the calls expected while one is set up, at least one. */
+  synchronized int getTargetSize() {
+    double expectedCalls = callsPerSecond * setupNanos / TimeUnit.SECONDS.toNanos(1);
+    return (int) Math.min(maxSize, 1 + Math.ceil(expectedCalls));
+  }
+
+  /** Stops maintaining the pool and closes its sessions. */
+  public synchronized void close() {
+    closed = true;
+    if (maintenanceTimerId != -1) {
+      vertx.cancelTimer(maintenanceTimerId);
+      maintenanceTimerId = -1;
+    }
+    for (Entry entry : idle) {
+      entry.session.close();
+    }
+    idle.clear();
+  }
+
+  /** Returns the number of sessions waiting for a call, configured or still being set up. */
+  public synchronized int getIdleCount() {
+    return idle.size();
+  }
+
+  /** Returns the number of calls that took a prewarmed session. */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /** Returns the number of calls that found no prewarmed session. */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        "WebsocketSessionPool{extension=%s, idle=%d, target=%d, callsPerMinute=%.1f, setupMs=%d,"
+            + " hits=%d, misses=%d}",
+        extension,
+        idle.size(),
+        getTargetSize(),
+        callsPerSecond * 60,
+        TimeUnit.NANOSECONDS.toMillis(setupNanos),
+        hits,
+        misses);
+  }
+
+  private static final class Entry {
+    final WebsocketSession session;
+    final long createdAt;
+    boolean measured = false;
+
+    Entry(WebsocketSession session, long createdAt) {
+      this.session = session;
+      this.createdAt = createdAt;
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package com.kajsiebert.mimir.openai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("AdmissionController Tests")
+class AdmissionControllerTest {
+
+  private static AdmissionController create(int maxCalls, int maxCallsPerExtension) {
+    return new AdmissionController(null, null, 1, maxCalls, maxCallsPerExtension, 200, 20, 30);
+  }
+
+  @Test
+  @DisplayName("Should reject calls beyond the global limit until one is released")
+  void shouldEnforceGlobalLimit() {
+    AdmissionController admission = create(2, 0);
+
+    AdmissionController.Ticket first = admission.tryAdmit("100");
+    assertThat(admission.tryAdmit("101")).isNotNull();
+    assertThat(admission.tryAdmit("102")).isNull();
+    assertThat(admission.getActiveCalls()).isEqualTo(2);
+
+    first.release();
+    assertThat(admission.tryAdmit("102")).isNotNull();
+  }
+
+  @Test
+  @DisplayName("Should reject calls beyond the limit of their extension only")
+  void shouldEnforcePerExtensionLimit() {
+    AdmissionController admission = create(0, 1);
+
+    AdmissionController.Ticket ticket = admission.tryAdmit("100");
+    assertThat(ticket).isNotNull();
+    assertThat(admission.tryAdmit("100")).isNull();
+    assertThat(admission.tryAdmit("101")).isNotNull();
+
+    ticket.release();
+    assertThat(admission.tryAdmit("100")).isNotNull();
+  }
+
+  @Test
+  @DisplayName("Should count a released call only once")
+  void shouldReleaseOnce() {
+    AdmissionController admission = create(0, 0);
+    AdmissionController.Ticket ticket = admission.tryAdmit("100");
+    admission.tryAdmit("100");
+
+    ticket.release();
+    ticket.release();
+
+    assertThat(admission.getActiveCalls()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("Should reject calls while the event loops lag or RTP ticks run late")
+  void shouldRejectWhileOverloaded() {
+    AdmissionController admission = create(0, 0);
+
+    admission.evaluate(TimeUnit.MILLISECONDS.toNanos(500), 0);
+    admission.evaluate(TimeUnit.MILLISECONDS.toNanos(500), 0);
+    admission.evaluate(0, TimeUnit.MILLISECONDS.toNanos(50));
+    assertThat(admission.isOverloaded()).isTrue();
+    assertThat(admission.tryAdmit("100")).isNull();
+
+    admission.evaluate(0, TimeUnit.MILLISECONDS.toNanos(50));
+    assertThat(admission.isOverloaded()).isTrue();
+
+    admission.evaluate(TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.MILLISECONDS.toNanos(5));
+    assertThat(admission.isOverloaded()).isFalse();
+    assertThat(admission.tryAdmit("100")).isNotNull();
+    assertThat(admission.getActiveCalls()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("Should keep taking calls through a single spike")
+  void shouldIgnoreSingleSpike() {
+    AdmissionController admission = create(0, 0);
+
+    for (int i = 0; i < AdmissionController.OVERLOAD_WINDOWS - 1; i++) {
+      admission.evaluate(TimeUnit.SECONDS.toNanos(1), 0);
+      assertThat(admission.isOverloaded()).isFalse();
+    }
+    admission.evaluate(0, 0);
+    admission.evaluate(TimeUnit.SECONDS.toNanos(1), 0);
+
+    assertThat(admission.isOverloaded()).isFalse();
+    assertThat(admission.tryAdmit("100")).isNotNull();
+  }
+
+  @Test
+  @DisplayName("Should ignore load limits set to 0")
+  void shouldIgnoreDisabledLoadLimits() {
+    AdmissionController admission = new AdmissionController(null, null, 1, 0, 0, 0, 0, 30);
+
+    admission.evaluate(TimeUnit.SECONDS.toNanos(5), TimeUnit.SECONDS.toNanos(5));
+
+    assertThat(admission.isOverloaded()).isFalse();
+  }
+
+  @Test
+  @DisplayName("Should report whether calls are taken for OPTIONS probes")
+  void shouldReportAcceptingCalls() {
+    AdmissionController admission = create(1, 0);
+    assertThat(admission.isAcceptingCalls()).isTrue();
+
+    AdmissionController.Ticket ticket = admission.tryAdmit("100");
+    assertThat(admission.isAcceptingCalls()).isFalse();
+
+    ticket.release();
+    for (int i = 0; i < AdmissionController.OVERLOAD_WINDOWS; i++) {
+      admission.evaluate(TimeUnit.SECONDS.toNanos(1), 0);
+    }
+    assertThat(admission.isAcceptingCalls()).isFalse();
+  }
+
+  @Test
+  @DisplayName("Should reject new calls while draining and wait for running ones to end")
+  void shouldDrain() throws InterruptedException {
+    AdmissionController admission = create(0, 0);
+    AdmissionController.Ticket ticket = admission.tryAdmit("100");
+
+    admission.drain();
+
+    assertThat(admission.isAcceptingCalls()).isFalse();
+    assertThat(admission.tryAdmit("101")).isNull();
+    assertThat(admission.awaitIdle(10)).isFalse();
+
+    new Thread(ticket::release).start();
+    assertThat(admission.awaitIdle(5000)).isTrue();
+  }
+}
@@ -8,6 +8,8 @@ import java.io.IOException;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import com.kajsiebert.mimir.openai.rtp.RTPTimingConfig;
+
 @DisplayName("ExtensionConfigManager Tests")
 class ExtensionConfigManagerTest {
 
@@ -70,6 +72,26 @@ class ExtensionConfigManagerTest {
             "You are a friendly research assistant. Be enthusiastic about science.");
   }
 
+  @Test
+  @DisplayName("Should load timing profile from the long extension form")
+  void shouldLoadTimingProfileFromLongExtensionForm() throws IOException {
+    ExtensionConfigManager manager = ExtensionConfigManager.load("test-extensions.yml");
+
+    assertThat(manager.getConfig("1001").getTimingConfig().toString())
+        .isEqualTo(RTPTimingConfig.defaultConfig().toString());
+    assertThat(manager.getConfig("1002").getTimingConfig().toString())
+        .isEqualTo(RTPTimingConfig.robustConfig().toString());
+  }
+
+  @Test
+  @DisplayName("Should reject an unknown timing profile")
+  void shouldRejectUnknownTimingProfile() {
+    assertThatThrownBy(() -> ExtensionConfigManager.load("test-extensions-bad-timing.yml"))
+        .isInstanceOf(IOException.class)
+        .hasMessageContaining("Extension 1001")
+        .hasMessageContaining("satellite");
+  }
+
   @Test
   @DisplayName("Should handle empty configuration gracefully")
   void shouldHandleEmptyConfigurationGracefully() {
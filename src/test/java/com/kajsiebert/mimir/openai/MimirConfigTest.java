@@ -0,0 +1,45 @@
+package com.kajsiebert.mimir.openai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.VertxOptions;
+
+@DisplayName("MimirConfig Tests")
+class MimirConfigTest {
+
+  @Test
+  @DisplayName("Should derive one event loop per core unless configured")
+  void shouldDeriveEventLoopsFromCores() {
+    MimirConfig config = new MimirConfig();
+    assertThat(config.getEventLoops()).isEqualTo(Runtime.getRuntime().availableProcessors());
+
+    config.eventLoops = 3;
+    assertThat(config.getEventLoops()).isEqualTo(3);
+  }
+
+  @Test
+  @DisplayName("Should build Vert.x options from the configured topology")
+  void shouldBuildVertxOptions() {
+    MimirConfig config = new MimirConfig();
+    config.nativeTransport = true;
+    config.eventLoops = 6;
+    config.workerThreads = 12;
+    config.maxEventLoopExecuteMs = 500;
+
+    VertxOptions options = config.getVertxOptions();
+
+    assertThat(options.getPreferNativeTransport()).isTrue();
+    assertThat(options.getEventLoopPoolSize()).isEqualTo(6);
+    assertThat(options.getWorkerPoolSize()).isEqualTo(12);
+    assertThat(
+            options.getMaxEventLoopExecuteTimeUnit().toMillis(options.getMaxEventLoopExecuteTime()))
+        .isEqualTo(500);
+    assertThat(options.getMaxWorkerExecuteTimeUnit()).isEqualTo(TimeUnit.MILLISECONDS);
+    assertThat(options.getWarningExceptionTimeUnit()).isEqualTo(TimeUnit.MILLISECONDS);
+  }
+}
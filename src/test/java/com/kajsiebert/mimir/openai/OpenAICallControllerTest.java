@@ -0,0 +1,165 @@
+package com.kajsiebert.mimir.openai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mjsip.ua.MediaAgent;
+import org.mjsip.ua.UserAgent;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.kajsiebert.mimir.openai.OpenAICallController.CallState;
+import com.kajsiebert.mimir.openai.rtp.RTPPacingEngine;
+import com.kajsiebert.mimir.openai.websocket.WebsocketSession;
+import com.kajsiebert.mimir.openai.websocket.WebsocketSessionPool;
+import com.kajsiebert.mimir.openai.websocket.WebsocketSessionState;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("OpenAICallController Tests")
+class OpenAICallControllerTest {
+
+  private static final long TIMER_ID = 7L;
+  private static final long ANSWER_TIMEOUT_MS = 30_000;
+
+  @Mock private Vertx vertx;
+  @Mock private UserAgent ua;
+  @Mock private RTPPacingEngine pacingEngine;
+  @Mock private WebsocketSessionPool sessionPool;
+  @Mock private WebsocketSession session;
+  @Mock private Context context;
+
+  @Captor private ArgumentCaptor<Handler<Long>> timeoutHandler;
+  @Captor private ArgumentCaptor<Consumer<WebsocketSessionState>> audioReceived;
+  @Captor private ArgumentCaptor<Consumer<WebsocketSessionState>> callEnded;
+
+  private final ExtensionConfig extensionConfig = new ExtensionConfig("Be Clarke", "alloy", "Hi");
+
+  @BeforeEach
+  void setUp() {
+    when(sessionPool.take()).thenReturn(session);
+    when(session.getContext()).thenReturn(context);
+    doAnswer(
+            invocation -> {
+              Handler<Void> task = invocation.getArgument(0);
+              task.handle(null);
+              return null;
+            })
+        .when(context)
+        .runOnContext(any());
+    when(vertx.setTimer(eq(ANSWER_TIMEOUT_MS), timeoutHandler.capture())).thenReturn(TIMER_ID);
+  }
+
+  private OpenAICallController createController(boolean earlyAnswer) {
+    OpenAICallController controller =
+        new OpenAICallController(
+            vertx,
+            ua,
+            extensionConfig,
+            pacingEngine,
+            null,
+            sessionPool,
+            null,
+            null,
+            earlyAnswer,
+            ANSWER_TIMEOUT_MS);
+    verify(session).onAudioReceived(audioReceived.capture());
+    verify(session).onCallEnded(callEnded.capture());
+    return controller;
+  }
+
+  @Test
+  @DisplayName("Should return while ringing and answer when the greeting starts")
+  void shouldAnswerWhenGreetingStarts() {
+    OpenAICallController controller = createController(false);
+
+    verify(session).claim();
+    assertThat(controller.getState()).isEqualTo(CallState.RINGING);
+    assertThat(controller.callHandled().isComplete()).isFalse();
+    verify(ua, never()).accept(any());
+
+    audioReceived.getValue().accept(WebsocketSessionState.AUDIO_RECEIVED);
+    audioReceived.getValue().accept(WebsocketSessionState.AUDIO_RECEIVED);
+
+    verify(ua, times(1)).accept(any(MediaAgent.class));
+    verify(vertx).cancelTimer(TIMER_ID);
+    assertThat(controller.getState()).isEqualTo(CallState.ANSWERED);
+    assertThat(controller.callHandled().result()).isEqualTo(CallState.ANSWERED);
+  }
+
+  @Test
+  @DisplayName("Should hang up and close the session when the call rings too long")
+  void shouldGiveUpAfterAnswerTimeout() {
+    OpenAICallController controller = createController(false);
+
+    timeoutHandler.getValue().handle(TIMER_ID);
+
+    verify(ua).hangup();
+    verify(session).close();
+    assertThat(controller.getState()).isEqualTo(CallState.ENDED);
+    assertThat(controller.callHandled().result()).isEqualTo(CallState.ENDED);
+    assertThat(controller.callEnded().succeeded()).isTrue();
+
+    // A greeting arriving late does not answer the call any more
+    audioReceived.getValue().accept(WebsocketSessionState.AUDIO_RECEIVED);
+    verify(ua, never()).accept(any());
+  }
+
+  @Test
+  @DisplayName("Should hang up once when the session ends")
+  void shouldHangUpOnceWhenSessionEnds() {
+    OpenAICallController controller = createController(false);
+    audioReceived.getValue().accept(WebsocketSessionState.AUDIO_RECEIVED);
+    assertThat(controller.callEnded().isComplete()).isFalse();
+
+    callEnded.getValue().accept(WebsocketSessionState.TERMINATED);
+    callEnded.getValue().accept(WebsocketSessionState.TERMINATED);
+    timeoutHandler.getValue().handle(TIMER_ID);
+
+    verify(ua, times(1)).hangup();
+    assertThat(controller.getState()).isEqualTo(CallState.ENDED);
+    assertThat(controller.callEnded().succeeded()).isTrue();
+  }
+
+  @Test
+  @DisplayName("Should set up and halt the call on the context of its session")
+  void shouldRunOnSessionContext() {
+    OpenAICallController controller = createController(false);
+    verify(context).runOnContext(any());
+
+    timeoutHandler.getValue().handle(TIMER_ID);
+
+    // The timeout hands the bridge's halt over to the context as well
+    verify(context, times(2)).runOnContext(any());
+    verify(session).close();
+    assertThat(controller.getState()).isEqualTo(CallState.ENDED);
+  }
+
+  @Test
+  @DisplayName("Should answer right away with a comfort tone when answering early")
+  void shouldAnswerEarly() {
+    OpenAICallController controller = createController(true);
+
+    verify(session).playComfortTone();
+    verify(ua).accept(any(MediaAgent.class));
+    verify(vertx).cancelTimer(TIMER_ID);
+    assertThat(controller.getState()).isEqualTo(CallState.ANSWERED);
+  }
+}
@@ -0,0 +1,81 @@
+package com.kajsiebert.mimir.openai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mjsip.media.FlowSpec;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.kajsiebert.mimir.openai.rtp.RTPPacingEngine;
+import com.kajsiebert.mimir.openai.util.EventLoopContexts;
+import com.kajsiebert.mimir.openai.websocket.WebsocketSession;
+import com.kajsiebert.mimir.openai.websocket.WebsocketSessionPool;
+import com.kajsiebert.mimir.openai.websocket.WebsocketSessionState;
+
+import io.vertx.core.Vertx;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("OpenAIRealtimeBridge Tests")
+class OpenAIRealtimeBridgeTest {
+
+  @Mock private WebsocketSessionPool sessionPool;
+  @Mock private WebsocketSession session;
+  @Mock private FlowSpec flowSpec;
+
+  private Vertx vertx;
+  private RTPPacingEngine pacingEngine;
+
+  @BeforeEach
+  void setUp() {
+    vertx = Vertx.vertx();
+    pacingEngine = new RTPPacingEngine(1, Thread.NORM_PRIORITY);
+    when(sessionPool.take()).thenReturn(session);
+    when(session.getContext()).thenReturn(EventLoopContexts.newContext(vertx));
+    lenient().when(flowSpec.getRemoteAddress()).thenReturn("127.0.0.1");
+    lenient().when(flowSpec.getRemotePort()).thenReturn(40000);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    pacingEngine.shutdown();
+    vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  @DisplayName("Should end the call when the RTP socket cannot bind")
+  void shouldEndCallWhenSocketCannotBind() throws Exception {
+    try (DatagramSocket taken = new DatagramSocket(0, InetAddress.getByName("0.0.0.0"))) {
+      when(flowSpec.getLocalPort()).thenReturn(taken.getLocalPort());
+      OpenAIRealtimeBridge bridge =
+          new OpenAIRealtimeBridge(
+              vertx,
+              new ExtensionConfig("Be Clarke", "alloy", "Hi"),
+              pacingEngine,
+              null,
+              sessionPool,
+              null,
+              null);
+      CompletableFuture<WebsocketSessionState> ended = new CompletableFuture<>();
+      bridge.onCallEnded(ended::complete);
+      bridge.setFlowSpec(flowSpec);
+
+      assertThat(bridge.start()).isTrue();
+
+      assertThat(ended.get(5, TimeUnit.SECONDS)).isEqualTo(WebsocketSessionState.TERMINATED);
+      verify(session).close();
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package com.kajsiebert.mimir.openai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mjsip.sip.header.ToHeader;
+import org.mjsip.sip.message.SipMessage;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("OpenAIRealtimeUserAgent Tests")
+class OpenAIRealtimeUserAgentTest {
+
+  @Mock private SipMessage msg;
+  @Mock private ToHeader to;
+
+  @Test
+  @DisplayName("Should admit an INVITE without a To tag as a new call")
+  void shouldTreatInviteWithoutTagAsInitial() {
+    when(msg.isRequest()).thenReturn(true);
+    when(msg.isInvite()).thenReturn(true);
+    when(msg.getToHeader()).thenReturn(to);
+    when(to.hasTag()).thenReturn(false);
+
+    assertThat(OpenAIRealtimeUserAgent.isInitialInvite(msg)).isTrue();
+  }
+
+  @Test
+  @DisplayName("Should pass re-INVITEs of running calls without admission")
+  void shouldNotTreatReInviteAsInitial() {
+    when(msg.isRequest()).thenReturn(true);
+    when(msg.isInvite()).thenReturn(true);
+    when(msg.getToHeader()).thenReturn(to);
+    when(to.hasTag()).thenReturn(true);
+
+    assertThat(OpenAIRealtimeUserAgent.isInitialInvite(msg)).isFalse();
+  }
+
+  @Test
+  @DisplayName("Should pass other requests without admission")
+  void shouldNotTreatOtherRequestsAsInitial() {
+    when(msg.isRequest()).thenReturn(true);
+    when(msg.isInvite()).thenReturn(false);
+
+    assertThat(OpenAIRealtimeUserAgent.isInitialInvite(msg)).isFalse();
+  }
+}
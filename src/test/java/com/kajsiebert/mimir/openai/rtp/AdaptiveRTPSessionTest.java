@@ -4,10 +4,16 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.within;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -120,42 +126,174 @@ class AdaptiveRTPSessionTest {
     assertThat(adaptiveSession.isAdaptiveModeEnabled()).isTrue();
   }
 
+  @Test
+  @DisplayName("Should not enable adaptive mode when the timing profile disables it")
+  void shouldNotEnableAdaptiveModeWhenProfileDisablesIt() {
+    AdaptiveRTPSession lowLatencySession =
+        new AdaptiveRTPSession(vertx, flowSpec, RTPTimingConfig.lowLatencyConfig());
+
+    for (int i = 0; i < 20; i++) {
+      lowLatencySession.sendPacket(Buffer.buffer("test data"));
+      lowLatencySession.recordInterval(60_000);
+    }
+
+    assertThat(lowLatencySession.getTimingMetrics().averageJitter).isGreaterThan(10.0);
+    assertThat(lowLatencySession.isAdaptiveModeEnabled()).isFalse();
+  }
+
+  @Test
+  @DisplayName("Should not record timing when metrics are disabled")
+  void shouldNotRecordTimingWhenMetricsAreDisabled() {
+    AdaptiveRTPSession quietSession =
+        new AdaptiveRTPSession(
+            vertx, flowSpec, RTPTimingConfig.builder().enableTimingMetrics(false).build());
+
+    for (int i = 0; i < 5; i++) {
+      quietSession.sendPacket(Buffer.buffer("test data"));
+    }
+
+    assertThat(quietSession.getTotalSentPackets()).isEqualTo(5);
+    assertThat(quietSession.getTimingMetrics().sampleCount).isZero();
+  }
+
+  @Test
+  @DisplayName("Should buffer to the target depth and pace packets out")
+  void shouldBufferToTargetDepthAndPacePacketsOut() throws InterruptedException {
+    for (int i = 0; i < 20; i++) {
+      adaptiveSession.recordInterval(60_000); // 40ms jitter
+    }
+    assertThat(adaptiveSession.isAdaptiveModeEnabled()).isTrue();
+    assertThat(adaptiveSession.getTargetDepth()).isBetween(2, 10);
+
+    int packets = adaptiveSession.getTargetDepth();
+    for (int i = 0; i < packets; i++) {
+      adaptiveSession.sendPacket(Buffer.buffer("test data"));
+    }
+
+    verify(datagramSocket, timeout(1000).times(packets))
+        .send(any(Buffer.class), anyInt(), anyString(), any());
+    AdaptiveRTPSession.TimingMetrics metrics = adaptiveSession.getTimingMetrics();
+    assertThat(metrics.bufferedPackets).isEqualTo(packets);
+    assertThat(metrics.averageBufferingLatency).isGreaterThan(0.0);
+    assertThat(adaptiveSession.getDroppedPackets()).isZero();
+  }
+
+  @Test
+  @DisplayName("Should leave adaptive mode once jitter has settled")
+  void shouldLeaveAdaptiveModeOnceJitterHasSettled() throws InterruptedException {
+    for (int i = 0; i < 20; i++) {
+      adaptiveSession.recordInterval(60_000);
+    }
+    assertThat(adaptiveSession.isAdaptiveModeEnabled()).isTrue();
+    adaptiveSession.sendPacket(Buffer.buffer("test data"));
+
+    // Settling below half the threshold must hold for a while before leaving
+    for (int i = 0; i < AdaptiveRTPSession.EXIT_HOLD_PACKETS / 2; i++) {
+      adaptiveSession.recordInterval(20_000);
+    }
+    Thread.sleep(100);
+    assertThat(adaptiveSession.isAdaptiveModeEnabled()).isTrue();
+
+    for (int i = 0; i < 200; i++) {
+      adaptiveSession.recordInterval(20_000);
+    }
+    for (int i = 0; i < 50 && adaptiveSession.isAdaptiveModeEnabled(); i++) {
+      Thread.sleep(20);
+    }
+
+    assertThat(adaptiveSession.isAdaptiveModeEnabled()).isFalse();
+    assertThat(adaptiveSession.getBufferedPackets()).isZero();
+    verify(datagramSocket).send(any(Buffer.class), anyInt(), anyString(), any());
+  }
+
+  @Test
+  @DisplayName("Should hand sending back only once the pacer drained every handed off packet")
+  void shouldHandBackOnlyWhenDrained() {
+    RTPPacingEngine engine = mock(RTPPacingEngine.class);
+    RTPPacingEngine ticks = new RTPPacingEngine(1, Thread.NORM_PRIORITY);
+    AtomicReference<RTPPacingEngine.PacedTask> pacer = new AtomicReference<>();
+    AtomicReference<RTPPacingEngine.PacingHandle> handle = new AtomicReference<>();
+    when(engine.register(anyLong(), any(RTPPacingEngine.MissedTickPolicy.class), any()))
+        .thenAnswer(
+            invocation -> {
+              pacer.set(invocation.getArgument(2));
+              // A real handle whose task does nothing, the test runs the pacer itself
+              handle.set(ticks.register(invocation.getArgument(0), () -> {}));
+              return handle.get();
+            });
+    try {
+      AdaptiveRTPSession session =
+          new AdaptiveRTPSession(vertx, flowSpec, RTPTimingConfig.defaultConfig(), engine);
+      for (int i = 0; i < 20; i++) {
+        session.recordInterval(60_000);
+      }
+      session.sendPacket(Buffer.buffer("first"));
+      session.sendPacket(Buffer.buffer("second"));
+      for (int i = 0; i < 200; i++) {
+        session.recordInterval(20_000);
+      }
+
+      pacer.get().run(0);
+      assertThat(session.isAdaptiveModeEnabled()).isTrue();
+      pacer.get().run(0);
+      assertThat(session.isAdaptiveModeEnabled()).isTrue();
+      pacer.get().run(0);
+      assertThat(session.isAdaptiveModeEnabled()).isFalse();
+      assertThat(handle.get().isCancelled()).isTrue();
+
+      session.sendPacket(Buffer.buffer("third"));
+      verify(datagramSocket, times(3)).send(any(Buffer.class), anyInt(), anyString(), any());
+      assertThat(session.getBufferedPackets()).isZero();
+    } finally {
+      ticks.shutdown();
+    }
+  }
+
+  @Test
+  @DisplayName("Should not enter adaptive mode on a single stall")
+  void shouldNotEnterAdaptiveModeOnSingleStall() {
+    for (int i = 0; i < 20; i++) {
+      adaptiveSession.recordInterval(20_000);
+    }
+    adaptiveSession.recordInterval(100_000);
+
+    assertThat(adaptiveSession.isAdaptiveModeEnabled()).isFalse();
+  }
+
   @Test
   @DisplayName("Should update timing metrics correctly")
   void shouldUpdateTimingMetricsCorrectly() {
-    AdaptiveRTPSession.TimingMetrics initialMetrics = new AdaptiveRTPSession.TimingMetrics();
-    assertThat(initialMetrics.sampleCount).isZero();
-    assertThat(initialMetrics.averageInterval).isZero();
-    assertThat(initialMetrics.averageJitter).isZero();
-    assertThat(initialMetrics.maxJitter).isZero();
-
     // Update with first interval
-    AdaptiveRTPSession.TimingMetrics updated1 = initialMetrics.update(100);
+    adaptiveSession.recordInterval(100_000);
+    AdaptiveRTPSession.TimingMetrics updated1 = adaptiveSession.getTimingMetrics();
     assertThat(updated1.sampleCount).isEqualTo(1);
     assertThat(updated1.averageInterval).isEqualTo(100.0);
     // Jitter compared to expected 20ms interval
     assertThat(updated1.averageJitter).isEqualTo(80.0); // |100 - 20|
-    assertThat(updated1.maxJitter).isEqualTo(80);
+    assertThat(updated1.maxJitter).isEqualTo(80.0);
 
     // Update with second interval
-    AdaptiveRTPSession.TimingMetrics updated2 = updated1.update(30);
+    adaptiveSession.recordInterval(30_000);
+    AdaptiveRTPSession.TimingMetrics updated2 = adaptiveSession.getTimingMetrics();
     assertThat(updated2.sampleCount).isEqualTo(2);
     assertThat(updated2.averageInterval).isEqualTo(65.0); // (100 + 30) / 2
     assertThat(updated2.averageJitter).isEqualTo(45.0); // (80 + 10) / 2
-    assertThat(updated2.maxJitter).isEqualTo(80); // max(80, 10)
+    assertThat(updated2.maxJitter).isEqualTo(80.0); // max(80, 10)
   }
 
   @Test
   @DisplayName("Should provide meaningful string representation of timing metrics")
   void shouldProvideStringRepresentationOfTimingMetrics() {
-    AdaptiveRTPSession.TimingMetrics metrics =
-        new AdaptiveRTPSession.TimingMetrics().update(100).update(200).update(150);
+    adaptiveSession.recordInterval(100_000);
+    adaptiveSession.recordInterval(200_000);
+    adaptiveSession.recordInterval(150_000);
 
-    String metricsString = metrics.toString();
+    String metricsString = adaptiveSession.getTimingMetrics().toString();
     assertThat(metricsString)
         .contains("samples=3")
         .contains("avgInterval=150.00ms")
         .contains("avgJitter=")
+        .contains("p99Jitter=")
         .contains("maxJitter=");
   }
 
@@ -178,38 +316,64 @@ class AdaptiveRTPSessionTest {
   @Test
   @DisplayName("Should calculate jitter based on expected RTP interval")
   void shouldCalculateJitterBasedOnExpectedRtpInterval() {
-    // Create metrics with known intervals
-    AdaptiveRTPSession.TimingMetrics metrics = new AdaptiveRTPSession.TimingMetrics();
+    long expectedMicros = RTPConstants.PACKET_INTERVAL_MS * 1000;
 
     // Test with exact expected interval (should be 0 jitter)
-    AdaptiveRTPSession.TimingMetrics exactMetrics = metrics.update(RTPConstants.PACKET_INTERVAL_MS);
+    adaptiveSession.recordInterval(expectedMicros);
+    AdaptiveRTPSession.TimingMetrics exactMetrics = adaptiveSession.getTimingMetrics();
     assertThat(exactMetrics.averageJitter).isZero();
     assertThat(exactMetrics.maxJitter).isZero();
 
     // Test with interval that's off by 5ms
-    AdaptiveRTPSession.TimingMetrics jitterMetrics =
-        exactMetrics.update(RTPConstants.PACKET_INTERVAL_MS + 5);
+    adaptiveSession.recordInterval(expectedMicros + 5_000);
+    AdaptiveRTPSession.TimingMetrics jitterMetrics = adaptiveSession.getTimingMetrics();
     assertThat(jitterMetrics.averageJitter).isEqualTo(2.5); // (0 + 5) / 2
-    assertThat(jitterMetrics.maxJitter).isEqualTo(5);
+    assertThat(jitterMetrics.maxJitter).isEqualTo(5.0);
   }
 
   @Test
   @DisplayName("Should track maximum jitter correctly")
   void shouldTrackMaximumJitterCorrectly() {
-    AdaptiveRTPSession.TimingMetrics metrics = new AdaptiveRTPSession.TimingMetrics();
-
     // Add intervals with varying jitter
-    metrics = metrics.update(25); // jitter = 5
-    assertThat(metrics.maxJitter).isEqualTo(5);
+    adaptiveSession.recordInterval(25_000); // jitter = 5
+    assertThat(adaptiveSession.getTimingMetrics().maxJitter).isEqualTo(5.0);
+
+    adaptiveSession.recordInterval(35_000); // jitter = 15
+    assertThat(adaptiveSession.getTimingMetrics().maxJitter).isEqualTo(15.0);
+
+    adaptiveSession.recordInterval(22_000); // jitter = 2
+    assertThat(adaptiveSession.getTimingMetrics().maxJitter).isEqualTo(15.0); // Should remain 15
 
-    metrics = metrics.update(35); // jitter = 15
-    assertThat(metrics.maxJitter).isEqualTo(15);
+    adaptiveSession.recordInterval(50_000); // jitter = 30
+    assertThat(adaptiveSession.getTimingMetrics().maxJitter).isEqualTo(30.0); // Should update
+  }
 
-    metrics = metrics.update(22); // jitter = 2
-    assertThat(metrics.maxJitter).isEqualTo(15); // Should remain 15
+  @Test
+  @DisplayName("Should report tail jitter percentiles")
+  void shouldReportTailJitterPercentiles() {
+    for (int i = 0; i < 999; i++) {
+      adaptiveSession.recordInterval(20_000 + (i % 2) * 1_000); // jitter 0 or 1ms
+    }
+    adaptiveSession.recordInterval(60_000); // one 40ms stall
 
-    metrics = metrics.update(50); // jitter = 30
-    assertThat(metrics.maxJitter).isEqualTo(30); // Should update to 30
+    AdaptiveRTPSession.TimingMetrics metrics = adaptiveSession.getTimingMetrics();
+    assertThat(metrics.p50Jitter).isLessThanOrEqualTo(1.0);
+    assertThat(metrics.p99Jitter).isCloseTo(1.0, within(0.02));
+    assertThat(metrics.p999Jitter).isCloseTo(1.0, within(0.02));
+    assertThat(metrics.maxJitter).isEqualTo(40.0);
+  }
+
+  @Test
+  @DisplayName("Should merge timing into process-wide metrics on close")
+  void shouldMergeTimingIntoProcessMetricsOnClose() {
+    long before = AdaptiveRTPSession.getProcessTimingMetrics().sampleCount;
+
+    adaptiveSession.recordInterval(20_000);
+    adaptiveSession.recordInterval(21_000);
+    adaptiveSession.close();
+    adaptiveSession.close();
+
+    assertThat(AdaptiveRTPSession.getProcessTimingMetrics().sampleCount).isEqualTo(before + 2);
   }
 
   @Test
@@ -231,20 +395,21 @@ class AdaptiveRTPSessionTest {
   @Test
   @DisplayName("Should calculate running averages correctly")
   void shouldCalculateRunningAveragesCorrectly() {
-    AdaptiveRTPSession.TimingMetrics metrics = new AdaptiveRTPSession.TimingMetrics();
-
     // First update: interval=100
-    metrics = metrics.update(100);
+    adaptiveSession.recordInterval(100_000);
+    AdaptiveRTPSession.TimingMetrics metrics = adaptiveSession.getTimingMetrics();
     assertThat(metrics.averageInterval).isEqualTo(100.0);
     assertThat(metrics.averageJitter).isEqualTo(80.0); // |100 - 20|
 
     // Second update: interval=50
-    metrics = metrics.update(50);
+    adaptiveSession.recordInterval(50_000);
+    metrics = adaptiveSession.getTimingMetrics();
     assertThat(metrics.averageInterval).isEqualTo(75.0); // (100 + 50) / 2
     assertThat(metrics.averageJitter).isEqualTo(55.0); // (80 + 30) / 2
 
     // Third update: interval=20 (perfect timing)
-    metrics = metrics.update(20);
+    adaptiveSession.recordInterval(20_000);
+    metrics = adaptiveSession.getTimingMetrics();
     assertThat(metrics.averageInterval).isCloseTo(56.67, within(0.01)); // (100 + 50 + 20) / 3
     assertThat(metrics.averageJitter).isCloseTo(36.67, within(0.01)); // (80 + 30 + 0) / 3
   }
@@ -2,6 +2,8 @@ package com.kajsiebert.mimir.openai.rtp;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.Base64;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -171,4 +173,75 @@ class ByteRingBufferTest {
     byte[] remaining = buffer.pop(3);
     assertThat(remaining).isEqualTo(initialData);
   }
+
+  @Test
+  @DisplayName("Should read partial data into a caller supplied array")
+  void shouldReadPartialDataIntoArray() {
+    buffer.write(new byte[] {1, 2, 3});
+    byte[] dst = new byte[5];
+
+    int read = buffer.read(dst, 1, 4);
+
+    assertThat(read).isEqualTo(3);
+    assertThat(dst).isEqualTo(new byte[] {0, 1, 2, 3, 0});
+    assertThat(buffer.size()).isZero();
+    assertThat(buffer.read(dst, 0, 5)).isZero();
+  }
+
+  @Test
+  @DisplayName("Should write from an offset and read across the wrap-around point")
+  void shouldWriteFromOffsetAndReadAcrossWrapAround() {
+    buffer.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+    buffer.read(new byte[6], 0, 6);
+
+    boolean written = buffer.write(new byte[] {0, 0, 9, 10, 11, 12, 13}, 2, 5);
+    assertThat(written).isTrue();
+    assertThat(buffer.remaining()).isEqualTo(CAPACITY - 7);
+
+    byte[] dst = new byte[7];
+    assertThat(buffer.read(dst, 0, 7)).isEqualTo(7);
+    assertThat(dst).isEqualTo(new byte[] {7, 8, 9, 10, 11, 12, 13});
+  }
+
+  @Test
+  @DisplayName("Should discard all data on clear and accept writes up to capacity")
+  void shouldDiscardAllDataOnClear() {
+    buffer.write(new byte[] {1, 2, 3, 4, 5, 6, 7});
+    buffer.pop(5);
+
+    buffer.clear();
+
+    assertThat(buffer.size()).isZero();
+    assertThat(buffer.remaining()).isEqualTo(buffer.capacity());
+    assertThat(buffer.write(new byte[CAPACITY])).isTrue();
+  }
+
+  @Test
+  @DisplayName("Should decode base64 straight into the buffer across the wrap-around point")
+  void shouldDecodeBase64AcrossWrapAround() {
+    byte[] audio = {10, 20, 30, 40, 50, 60, 70};
+    // Each start position puts the wrap-around at a different place within a quantum
+    for (int start = 0; start < CAPACITY; start++) {
+      buffer.clear();
+      buffer.write(new byte[start]);
+      buffer.read(new byte[start], 0, start);
+
+      char[] base64 = Base64.getEncoder().encodeToString(audio).toCharArray();
+      assertThat(buffer.writeBase64(base64, 0, base64.length)).isTrue();
+
+      byte[] dst = new byte[audio.length];
+      assertThat(buffer.read(dst, 0, dst.length)).isEqualTo(audio.length);
+      assertThat(dst).isEqualTo(audio);
+    }
+  }
+
+  @Test
+  @DisplayName("Should reject base64 that does not fit without writing it")
+  void shouldRejectBase64ThatDoesNotFit() {
+    buffer.write(new byte[5]);
+    char[] base64 = Base64.getEncoder().encodeToString(new byte[6]).toCharArray();
+
+    assertThat(buffer.writeBase64(base64, 0, base64.length)).isFalse();
+    assertThat(buffer.size()).isEqualTo(5);
+  }
 }
@@ -0,0 +1,54 @@
+package com.kajsiebert.mimir.openai.rtp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("ComfortTone Tests")
+class ComfortToneTest {
+
+  @Test
+  @DisplayName("Should encode linear samples as G.711 mu-law")
+  void shouldEncodeUlaw() {
+    assertThat(ComfortTone.linearToUlaw(0)).isEqualTo((byte) 0xFF);
+    assertThat(ComfortTone.linearToUlaw(-1)).isEqualTo((byte) 0x7F);
+    assertThat(ComfortTone.linearToUlaw(32767)).isEqualTo((byte) 0x80);
+    assertThat(ComfortTone.linearToUlaw(-32768)).isEqualTo((byte) 0x00);
+  }
+
+  @Test
+  @DisplayName("Should play one second of tone then four seconds of silence")
+  void shouldFollowRingbackCadence() {
+    assertThat(ComfortTone.getCadenceLength()).isEqualTo(5 * ComfortTone.SAMPLE_RATE);
+
+    byte[] period = new byte[ComfortTone.getCadenceLength()];
+    new ComfortTone().read(period, 0, period.length);
+
+    int toneSamples = ComfortTone.SAMPLE_RATE * ComfortTone.TONE_MS / 1000;
+    int audible = 0;
+    for (int i = 0; i < toneSamples; i++) {
+      if (period[i] != ComfortTone.linearToUlaw(0)) {
+        audible++;
+      }
+    }
+    assertThat(audible).isGreaterThan(toneSamples * 9 / 10);
+    for (int i = toneSamples; i < period.length; i++) {
+      assertThat(period[i]).isEqualTo(ComfortTone.linearToUlaw(0));
+    }
+  }
+
+  @Test
+  @DisplayName("Should wrap around to the start of the cadence")
+  void shouldWrapAroundCadence() {
+    ComfortTone tone = new ComfortTone();
+    byte[] start = new byte[160];
+    tone.read(start, 0, start.length);
+    byte[] rest = new byte[ComfortTone.getCadenceLength() - start.length];
+    tone.read(rest, 0, rest.length);
+
+    byte[] next = new byte[160];
+    assertThat(tone.read(next, 0, next.length)).isEqualTo(160);
+    assertThat(next).isEqualTo(start);
+  }
+}
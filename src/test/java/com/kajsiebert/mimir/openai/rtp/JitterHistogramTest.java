@@ -0,0 +1,134 @@
+package com.kajsiebert.mimir.openai.rtp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("JitterHistogram Tests")
+class JitterHistogramTest {
+
+  @Test
+  @DisplayName("Should start empty")
+  void shouldStartEmpty() {
+    JitterHistogram histogram = new JitterHistogram(60_000_000);
+
+    assertThat(histogram.getCount()).isZero();
+    assertThat(histogram.getMean()).isZero();
+    assertThat(histogram.getMax()).isZero();
+    assertThat(histogram.getValueAtPercentile(99.0)).isZero();
+  }
+
+  @Test
+  @DisplayName("Should record small values exactly")
+  void shouldRecordSmallValuesExactly() {
+    JitterHistogram histogram = new JitterHistogram(60_000_000);
+
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+
+    assertThat(histogram.getCount()).isEqualTo(100);
+    assertThat(histogram.getMean()).isEqualTo(50.5);
+    assertThat(histogram.getValueAtPercentile(50.0)).isEqualTo(50);
+    assertThat(histogram.getValueAtPercentile(99.0)).isEqualTo(99);
+    assertThat(histogram.getValueAtPercentile(100.0)).isEqualTo(100);
+  }
+
+  @Test
+  @DisplayName("Should report large values within bucket precision")
+  void shouldReportLargeValuesWithinBucketPrecision() {
+    JitterHistogram histogram = new JitterHistogram(60_000_000);
+
+    for (long value : new long[] {150, 1_234, 20_000, 987_654, 45_000_000}) {
+      histogram.reset();
+      histogram.record(value);
+      histogram.record(value);
+
+      assertThat(histogram.getValueAtPercentile(50.0))
+          .isCloseTo(value, within((long) Math.ceil(value / 64.0)));
+    }
+  }
+
+  @Test
+  @DisplayName("Should map bucket boundaries contiguously")
+  void shouldMapBucketBoundariesContiguously() {
+    int previous = JitterHistogram.bucketIndex(0);
+    for (long value = 1; value < 100_000; value++) {
+      int index = JitterHistogram.bucketIndex(value);
+      assertThat(index).isBetween(previous, previous + 1);
+      assertThat(JitterHistogram.highestValueInBucket(index)).isGreaterThanOrEqualTo(value);
+      previous = index;
+    }
+  }
+
+  @Test
+  @DisplayName("Should clamp values above the trackable range")
+  void shouldClampValuesAboveTrackableRange() {
+    JitterHistogram histogram = new JitterHistogram(1_000);
+
+    histogram.record(5_000);
+    histogram.record(-3);
+
+    assertThat(histogram.getCount()).isEqualTo(2);
+    assertThat(histogram.getMax()).isEqualTo(5_000);
+    assertThat(histogram.getValueAtPercentile(0.0)).isZero();
+    assertThat(histogram.getValueAtPercentile(100.0)).isGreaterThanOrEqualTo(1_000);
+  }
+
+  @Test
+  @DisplayName("Should reject a range smaller than the linear buckets")
+  void shouldRejectTooSmallRange() {
+    assertThatThrownBy(() -> new JitterHistogram(10)).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  @DisplayName("Should merge histograms")
+  void shouldMergeHistograms() {
+    JitterHistogram process = new JitterHistogram(60_000_000);
+    JitterHistogram first = new JitterHistogram(60_000_000);
+    JitterHistogram second = new JitterHistogram(60_000_000);
+    first.record(10);
+    first.record(20);
+    second.record(30_000);
+
+    process.add(first);
+    process.add(second);
+
+    JitterHistogram.Snapshot snapshot = process.snapshot();
+    assertThat(snapshot.count).isEqualTo(3);
+    assertThat(snapshot.mean).isCloseTo(10_010.0, within(0.01));
+    assertThat(snapshot.p50).isEqualTo(20);
+    assertThat(snapshot.max).isEqualTo(30_000);
+    assertThatThrownBy(() -> process.add(new JitterHistogram(1_000)))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  @DisplayName("Should record concurrently without losing samples")
+  void shouldRecordConcurrentlyWithoutLosingSamples() throws InterruptedException {
+    JitterHistogram histogram = new JitterHistogram(60_000_000);
+    int threads = 4;
+    int perThread = 10_000;
+    CountDownLatch done = new CountDownLatch(threads);
+
+    for (int t = 0; t < threads; t++) {
+      new Thread(
+              () -> {
+                for (int i = 0; i < perThread; i++) {
+                  histogram.record(i % 500);
+                }
+                done.countDown();
+              })
+          .start();
+    }
+    done.await();
+
+    assertThat(histogram.getCount()).isEqualTo(threads * perThread);
+    assertThat(histogram.getMax()).isEqualTo(499);
+  }
+}
@@ -0,0 +1,181 @@
+package com.kajsiebert.mimir.openai.rtp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.lenient;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mjsip.media.FlowSpec;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Unit tests for NioMediaEngine, exchanging real datagrams over loopback. Pacing is driven from a
+ * fake clock, so it is asserted in packets per tick rather than against the wall clock.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("NioMediaEngine Tests")
+class NioMediaEngineTest {
+
+  @Mock private FlowSpec flowSpec;
+
+  private NioMediaEngine engine;
+  private DatagramChannel remote;
+  private int localPort;
+  private long now = 0;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    engine = new NioMediaEngine(2);
+
+    remote = DatagramChannel.open();
+    remote.bind(new InetSocketAddress("127.0.0.1", 0));
+    remote.socket().setSoTimeout(1000);
+    localPort = freePort();
+
+    lenient().when(flowSpec.getLocalPort()).thenReturn(localPort);
+    lenient().when(flowSpec.getRemotePort()).thenReturn(remote.socket().getLocalPort());
+    lenient().when(flowSpec.getRemoteAddress()).thenReturn("127.0.0.1");
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    engine.shutdown();
+    remote.close();
+  }
+
+  @Test
+  @DisplayName("Should pace packets from the source to the remote address")
+  void shouldPacePacketsToRemoteAddress() throws IOException {
+    NioMediaEngine clockedEngine = new NioMediaEngine(1, () -> now);
+    AtomicInteger sequence = new AtomicInteger();
+
+    try {
+      NioRTPSession session =
+          clockedEngine.open(flowSpec, () -> Buffer.buffer().appendInt(sequence.getAndIncrement()));
+
+      advanceTo(clockedEngine, 19);
+      assertThat(session.getPacketsSent()).isEqualTo(1);
+      advanceTo(clockedEngine, 80);
+      assertThat(session.getPacketsSent()).isEqualTo(5);
+
+      ByteBuffer received = ByteBuffer.allocate(64);
+      for (int i = 0; i < 5; i++) {
+        received.clear();
+        assertThat(remote.receive(received)).isNotNull();
+        received.flip();
+        assertThat(received.getInt()).isEqualTo(i);
+      }
+    } finally {
+      clockedEngine.shutdown();
+    }
+  }
+
+  @Test
+  @DisplayName("Should skip ticks when the source has nothing to send")
+  void shouldSkipTicksWithoutPackets() throws IOException {
+    NioMediaEngine clockedEngine = new NioMediaEngine(1, () -> now);
+    AtomicInteger polls = new AtomicInteger();
+
+    try {
+      NioRTPSession session =
+          clockedEngine.open(
+              flowSpec,
+              () -> {
+                polls.incrementAndGet();
+                return null;
+              });
+
+      advanceTo(clockedEngine, 100);
+
+      assertThat(polls.get()).isEqualTo(6);
+      assertThat(session.getPacketsSent()).isZero();
+      assertThat(session.getMissedTicks()).isZero();
+    } finally {
+      clockedEngine.shutdown();
+    }
+  }
+
+  @Test
+  @DisplayName("Should receive RTP payloads into the audio buffer")
+  void shouldReceivePayloadsIntoAudioBuffer() throws IOException, InterruptedException {
+    NioRTPSession session = engine.open(flowSpec, () -> null);
+    byte[] packet = new byte[RTPConstants.RTP_HEADER_SIZE + 4];
+    packet[0] = (byte) 0x80;
+    packet[RTPConstants.RTP_HEADER_SIZE] = 1;
+    packet[RTPConstants.RTP_HEADER_SIZE + 3] = 4;
+
+    remote.send(ByteBuffer.wrap(packet), new InetSocketAddress("127.0.0.1", localPort));
+    for (int i = 0; i < 50 && session.getPacketsReceived() == 0; i++) {
+      Thread.sleep(10);
+    }
+
+    assertThat(session.getPacketsReceived()).isEqualTo(1);
+    assertThat(session.getAudioBuffer()).containsExactly(1, 0, 0, 4);
+    assertThat(session.getAudioBuffer()).isEmpty();
+    session.close();
+  }
+
+  @Test
+  @DisplayName("Should release the socket when a session is closed")
+  void shouldReleaseSocketWhenClosed() throws IOException, InterruptedException {
+    NioRTPSession session = engine.open(flowSpec, () -> null);
+    assertThat(engine.getSessionCount()).isEqualTo(1);
+
+    session.close();
+    for (int i = 0; i < 50 && engine.getSessionCount() > 0; i++) {
+      Thread.sleep(10);
+    }
+
+    assertThat(session.isClosed()).isTrue();
+    assertThat(engine.getSessionCount()).isZero();
+    try (DatagramSocket rebound = new DatagramSocket(localPort)) {
+      assertThat(rebound.getLocalPort()).isEqualTo(localPort);
+    }
+  }
+
+  @Test
+  @DisplayName("Should reject a port that is already in use")
+  void shouldRejectPortInUse() throws IOException {
+    NioRTPSession session = engine.open(flowSpec, () -> null);
+
+    assertThatThrownBy(() -> engine.open(flowSpec, () -> null)).isInstanceOf(IOException.class);
+    assertThat(engine.getSessionCount()).isEqualTo(1);
+    session.close();
+  }
+
+  @Test
+  @DisplayName("Should require at least one selector thread")
+  void shouldRequireAtLeastOneThread() {
+    assertThatThrownBy(() -> new NioMediaEngine(0)).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  /** Moves the fake clock forward one millisecond at a time up to {@code millis}, ticking each. */
+  private void advanceTo(NioMediaEngine clockedEngine, long millis) throws IOException {
+    clockedEngine.tick();
+    while (now < TimeUnit.MILLISECONDS.toNanos(millis)) {
+      now += TimeUnit.MILLISECONDS.toNanos(1);
+      clockedEngine.tick();
+    }
+  }
+
+  private static int freePort() throws IOException {
+    try (DatagramSocket socket = new DatagramSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package com.kajsiebert.mimir.openai.rtp;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -15,7 +16,7 @@ class RTPAudioBufferTest {
 
   @BeforeEach
   void setUp() {
-    audioBuffer = new RTPAudioBuffer();
+    audioBuffer = new RTPAudioBuffer(3);
   }
 
   @Test
@@ -30,169 +31,264 @@ class RTPAudioBufferTest {
   @Test
   @DisplayName("Should append single RTP packet correctly")
   void shouldAppendSingleRtpPacketCorrectly() {
-    Buffer rtpPacket = createRtpPacket(1000L, new byte[] {1, 2, 3, 4});
+    audioBuffer.appendPacket(createRtpPacket(100, new byte[] {1, 2, 3, 4}));
 
-    audioBuffer.appendPacket(rtpPacket);
-    byte[] result = audioBuffer.getAudioBuffer();
+    assertThat(audioBuffer.getAudioBuffer()).isEqualTo(new byte[] {1, 2, 3, 4});
+  }
 
-    assertThat(result).isEqualTo(new byte[] {1, 2, 3, 4});
+  @Test
+  @DisplayName("Should order packets by sequence number")
+  void shouldOrderPacketsBySequenceNumber() {
+    audioBuffer.appendPacket(createRtpPacket(10, new byte[] {1, 1, 1}));
+    audioBuffer.appendPacket(createRtpPacket(12, new byte[] {3, 3, 3}));
+    audioBuffer.appendPacket(createRtpPacket(11, new byte[] {2, 2, 2}));
+
+    assertThat(audioBuffer.getAudioBuffer()).isEqualTo(new byte[] {1, 1, 1, 2, 2, 2, 3, 3, 3});
+    assertThat(audioBuffer.getReorderedPackets()).isEqualTo(1);
+    assertThat(audioBuffer.getLostPackets()).isZero();
   }
 
   @Test
-  @DisplayName("Should order packets by timestamp correctly")
-  void shouldOrderPacketsByTimestampCorrectly() {
-    // Add packets out of order
-    Buffer packet3 = createRtpPacket(3000L, new byte[] {3, 3, 3});
-    Buffer packet1 = createRtpPacket(1000L, new byte[] {1, 1, 1});
-    Buffer packet2 = createRtpPacket(2000L, new byte[] {2, 2, 2});
+  @DisplayName("Should hold packets behind a gap until the playout depth is reached")
+  void shouldHoldPacketsBehindAGap() {
+    audioBuffer.appendPacket(createRtpPacket(1, new byte[] {1}));
+    audioBuffer.appendPacket(createRtpPacket(3, new byte[] {3}));
+    audioBuffer.appendPacket(createRtpPacket(4, new byte[] {4}));
 
-    audioBuffer.appendPacket(packet3);
-    audioBuffer.appendPacket(packet1);
-    audioBuffer.appendPacket(packet2);
+    assertThat(audioBuffer.getAudioBuffer()).isEqualTo(new byte[] {1});
+    assertThat(audioBuffer.getBufferedPackets()).isEqualTo(2);
 
-    byte[] result = audioBuffer.getAudioBuffer();
+    audioBuffer.appendPacket(createRtpPacket(5, new byte[] {5}));
 
-    // Should be ordered by timestamp: packet1, packet2, packet3
-    assertThat(result).isEqualTo(new byte[] {1, 1, 1, 2, 2, 2, 3, 3, 3});
+    assertThat(audioBuffer.getAudioBuffer()).isEqualTo(new byte[] {3, 4, 5});
+    assertThat(audioBuffer.getLostPackets()).isEqualTo(1);
+    assertThat(audioBuffer.getBufferedPackets()).isZero();
   }
 
   @Test
-  @DisplayName("Should handle packets with same timestamp")
-  void shouldHandlePacketsWithSameTimestamp() {
-    Buffer packet1 = createRtpPacket(1000L, new byte[] {1, 1});
-    Buffer packet2 = createRtpPacket(1000L, new byte[] {2, 2});
+  @DisplayName("Should fill a gap with a packet that arrives in time")
+  void shouldFillAGapWithAPacketThatArrivesInTime() {
+    audioBuffer.appendPacket(createRtpPacket(1, new byte[] {1}));
+    audioBuffer.appendPacket(createRtpPacket(3, new byte[] {3}));
+    audioBuffer.appendPacket(createRtpPacket(2, new byte[] {2}));
+
+    assertThat(audioBuffer.getAudioBuffer()).isEqualTo(new byte[] {1, 2, 3});
+    assertThat(audioBuffer.getLostPackets()).isZero();
+    assertThat(audioBuffer.getReorderedPackets()).isEqualTo(1);
+  }
 
-    audioBuffer.appendPacket(packet1);
-    audioBuffer.appendPacket(packet2);
+  @Test
+  @DisplayName("Should drop packets that arrive after their slot was skipped")
+  void shouldDropLatePackets() {
+    audioBuffer.appendPacket(createRtpPacket(1, new byte[] {1}));
+    for (int sequence = 3; sequence <= 5; sequence++) {
+      audioBuffer.appendPacket(createRtpPacket(sequence, new byte[] {(byte) sequence}));
+    }
+    audioBuffer.appendPacket(createRtpPacket(2, new byte[] {2}));
 
-    byte[] result = audioBuffer.getAudioBuffer();
+    assertThat(audioBuffer.getAudioBuffer()).isEqualTo(new byte[] {1, 3, 4, 5});
+    assertThat(audioBuffer.getLatePackets()).isEqualTo(1);
+    assertThat(audioBuffer.getDiscardedPackets()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("Should drop duplicate packets")
+  void shouldDropDuplicatePackets() {
+    audioBuffer.appendPacket(createRtpPacket(1, new byte[] {1}));
+    audioBuffer.appendPacket(createRtpPacket(3, new byte[] {3}));
+    audioBuffer.appendPacket(createRtpPacket(3, new byte[] {9}));
+    audioBuffer.appendPacket(createRtpPacket(1, new byte[] {9}));
+    audioBuffer.appendPacket(createRtpPacket(2, new byte[] {2}));
+
+    assertThat(audioBuffer.getAudioBuffer()).isEqualTo(new byte[] {1, 2, 3});
+    assertThat(audioBuffer.getDuplicatePackets()).isEqualTo(1);
+    assertThat(audioBuffer.getLatePackets()).isEqualTo(1);
+    assertThat(audioBuffer.getDiscardedPackets()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("Should order packets across sequence number wraparound")
+  void shouldOrderPacketsAcrossSequenceNumberWraparound() {
+    audioBuffer.appendPacket(createRtpPacket(65534, new byte[] {1}));
+    audioBuffer.appendPacket(createRtpPacket(0, new byte[] {3}));
+    audioBuffer.appendPacket(createRtpPacket(65535, new byte[] {2}));
+    audioBuffer.appendPacket(createRtpPacket(1, new byte[] {4}));
+
+    assertThat(audioBuffer.getAudioBuffer()).isEqualTo(new byte[] {1, 2, 3, 4});
+    assertThat(audioBuffer.getLostPackets()).isZero();
+    assertThat(audioBuffer.getLatePackets()).isZero();
+  }
+
+  @Test
+  @DisplayName("Should play out immediately with a playout depth of zero")
+  void shouldPlayOutImmediatelyWithAPlayoutDepthOfZero() {
+    RTPAudioBuffer immediate = new RTPAudioBuffer(0);
 
-    // Should contain both packets' data
-    assertThat(result).hasSize(4);
-    assertThat(result).containsAnyOf((byte) 1, (byte) 2);
+    immediate.appendPacket(createRtpPacket(1, new byte[] {1}));
+    immediate.appendPacket(createRtpPacket(3, new byte[] {3}));
+    immediate.appendPacket(createRtpPacket(2, new byte[] {2}));
+
+    assertThat(immediate.getAudioBuffer()).isEqualTo(new byte[] {1, 3});
+    assertThat(immediate.getLostPackets()).isEqualTo(1);
+    assertThat(immediate.getLatePackets()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("Should skip ahead when a packet is beyond the buffer capacity")
+  void shouldSkipAheadWhenAPacketIsBeyondTheBufferCapacity() {
+    audioBuffer.appendPacket(createRtpPacket(1, new byte[] {1}));
+    audioBuffer.appendPacket(createRtpPacket(3, new byte[] {3}));
+    audioBuffer.appendPacket(createRtpPacket(3 + RTPAudioBuffer.CAPACITY, new byte[] {4}));
+
+    // Everything up to the playout depth before the new packet is given up on
+    assertThat(audioBuffer.getAudioBuffer()).isEqualTo(new byte[] {1, 3});
+    assertThat(audioBuffer.getLostPackets()).isEqualTo(RTPAudioBuffer.CAPACITY - 2);
+    assertThat(audioBuffer.getBufferedPackets()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("Should only resynchronize on a large jump once the next packet follows")
+  void shouldOnlyResynchronizeOnALargeJumpOnceTheNextPacketFollows() {
+    audioBuffer.appendPacket(createRtpPacket(1, new byte[] {1}));
+    audioBuffer.appendPacket(createRtpPacket(20000, new byte[] {9}));
+    audioBuffer.appendPacket(createRtpPacket(2, new byte[] {2}));
+
+    assertThat(audioBuffer.getAudioBuffer()).isEqualTo(new byte[] {1, 2});
+    assertThat(audioBuffer.getDiscardedPackets()).isEqualTo(1);
+
+    audioBuffer.appendPacket(createRtpPacket(30000, new byte[] {7}));
+    audioBuffer.appendPacket(createRtpPacket(30001, new byte[] {8}));
+
+    assertThat(audioBuffer.getAudioBuffer()).isEqualTo(new byte[] {8});
+    assertThat(audioBuffer.getLostPackets()).isZero();
   }
 
   @Test
   @DisplayName("Should ignore packets smaller than RTP header size")
   void shouldIgnorePacketsSmallerThanRtpHeaderSize() {
-    // Create a packet smaller than RTP_HEADER_SIZE (12 bytes)
     Buffer smallPacket = Buffer.buffer();
-    smallPacket.appendBytes(new byte[] {1, 2, 3, 4, 5}); // Only 5 bytes
+    smallPacket.appendBytes(new byte[] {1, 2, 3, 4, 5});
 
     audioBuffer.appendPacket(smallPacket);
-    byte[] result = audioBuffer.getAudioBuffer();
 
-    assertThat(result).isEmpty();
+    assertThat(audioBuffer.getAudioBuffer()).isEmpty();
   }
 
   @Test
-  @DisplayName("Should handle packet with exactly header size")
-  void shouldHandlePacketWithExactlyHeaderSize() {
-    // Create packet with exactly RTP_HEADER_SIZE bytes (no payload)
-    Buffer headerOnlyPacket = Buffer.buffer();
-    headerOnlyPacket.appendBytes(new byte[12]); // Exactly RTP_HEADER_SIZE
-    headerOnlyPacket.setInt(4, 1000); // Set timestamp
-
-    audioBuffer.appendPacket(headerOnlyPacket);
-    byte[] result = audioBuffer.getAudioBuffer();
+  @DisplayName("Should handle zero-length payload")
+  void shouldHandleZeroLengthPayload() {
+    audioBuffer.appendPacket(createRtpPacket(1, new byte[0]));
 
-    assertThat(result).isEmpty(); // No payload data
+    assertThat(audioBuffer.getAudioBuffer()).isEmpty();
   }
 
   @Test
-  @DisplayName("Should handle large number of packets")
-  void shouldHandleLargeNumberOfPackets() {
-    int packetCount = 100;
+  @DisplayName("Should accept packets received into a byte array")
+  void shouldAcceptPacketsReceivedIntoAByteArray() {
+    byte[] second = createRtpPacket(6, new byte[] {6, 6}).getBytes();
+    byte[] first = createRtpPacket(5, new byte[] {5, 5, 5}).getBytes();
 
-    // Add many packets with different timestamps
-    for (int i = 0; i < packetCount; i++) {
-      long timestamp = i * 1000L;
-      byte[] payload = new byte[] {(byte) i};
-      Buffer packet = createRtpPacket(timestamp, payload);
-      audioBuffer.appendPacket(packet);
-    }
-
-    byte[] result = audioBuffer.getAudioBuffer();
+    audioBuffer.appendPacket(first, first.length);
+    audioBuffer.appendPacket(second, second.length);
 
-    assertThat(result).hasSize(packetCount);
-    // Verify ordering - should be 0, 1, 2, ..., 99
-    for (int i = 0; i < packetCount; i++) {
-      assertThat(result[i]).isEqualTo((byte) i);
-    }
+    assertThat(audioBuffer.getAudioBuffer()).isEqualTo(new byte[] {5, 5, 5, 6, 6});
   }
 
   @Test
-  @DisplayName("Should handle packets with wraparound timestamps")
-  void shouldHandlePacketsWithWraparoundTimestamps() {
-    // Test with timestamps that might wraparound (large values)
-    Buffer packet1 = createRtpPacket(0xFFFFFFFFL, new byte[] {1}); // Max unsigned int
-    Buffer packet2 = createRtpPacket(0x00000001L, new byte[] {2}); // Small value
-    Buffer packet3 = createRtpPacket(0x80000000L, new byte[] {3}); // Middle value
-
-    audioBuffer.appendPacket(packet1);
-    audioBuffer.appendPacket(packet2);
-    audioBuffer.appendPacket(packet3);
+  @DisplayName("Should handle large payloads and many packets")
+  void shouldHandleLargePayloadsAndManyPackets() {
+    byte[] large = new byte[RTPConstants.RTP_PACKET_SIZE * 2];
+    large[large.length - 1] = 42;
+    audioBuffer.appendPacket(createRtpPacket(0, large));
+    for (int i = 1; i < 1000; i++) {
+      audioBuffer.appendPacket(createRtpPacket(i, new byte[] {(byte) i}));
+    }
 
     byte[] result = audioBuffer.getAudioBuffer();
 
-    // Should handle the ordering based on the natural Long.compare behavior
-    assertThat(result).hasSize(3);
+    assertThat(result).hasSize(large.length + 999);
+    assertThat(result[large.length - 1]).isEqualTo((byte) 42);
+    assertThat(result[large.length]).isEqualTo((byte) 1);
   }
 
   @Test
   @DisplayName("Should clear buffer after getting audio data")
   void shouldClearBufferAfterGettingAudioData() {
-    Buffer packet = createRtpPacket(1000L, new byte[] {1, 2, 3});
-    audioBuffer.appendPacket(packet);
+    audioBuffer.appendPacket(createRtpPacket(1, new byte[] {1, 2, 3}));
 
-    // First call should return data
-    byte[] result1 = audioBuffer.getAudioBuffer();
-    assertThat(result1).isEqualTo(new byte[] {1, 2, 3});
-
-    // Second call should return empty buffer
-    byte[] result2 = audioBuffer.getAudioBuffer();
-    assertThat(result2).isEmpty();
+    assertThat(audioBuffer.getAudioBuffer()).isEqualTo(new byte[] {1, 2, 3});
+    assertThat(audioBuffer.getAudioBuffer()).isEmpty();
   }
 
   @Test
-  @DisplayName("Should handle mixed payload sizes")
-  void shouldHandleMixedPayloadSizes() {
-    Buffer packet1 = createRtpPacket(1000L, new byte[] {1});
-    Buffer packet2 = createRtpPacket(2000L, new byte[] {2, 2, 2, 2, 2});
-    Buffer packet3 = createRtpPacket(3000L, new byte[] {3, 3});
-
-    audioBuffer.appendPacket(packet1);
-    audioBuffer.appendPacket(packet2);
-    audioBuffer.appendPacket(packet3);
-
-    byte[] result = audioBuffer.getAudioBuffer();
-
-    assertThat(result).isEqualTo(new byte[] {1, 2, 2, 2, 2, 2, 3, 3});
+  @DisplayName("Should read played out audio in slices")
+  void shouldReadPlayedOutAudioInSlices() {
+    audioBuffer.appendPacket(createRtpPacket(1, new byte[] {1, 2, 3}));
+    audioBuffer.appendPacket(createRtpPacket(2, new byte[] {4, 5}));
+    byte[] chunk = new byte[4];
+
+    assertThat(audioBuffer.getAvailableAudio()).isEqualTo(5);
+    assertThat(audioBuffer.readAudio(chunk, 0, chunk.length)).isEqualTo(4);
+    assertThat(chunk).isEqualTo(new byte[] {1, 2, 3, 4});
+    assertThat(audioBuffer.readAudio(chunk, 0, chunk.length)).isEqualTo(1);
+    assertThat(chunk[0]).isEqualTo((byte) 5);
+    assertThat(audioBuffer.readAudio(chunk, 0, chunk.length)).isZero();
   }
 
   @Test
-  @DisplayName("Should handle zero-length payload")
-  void shouldHandleZeroLengthPayload() {
-    Buffer packet = createRtpPacket(1000L, new byte[0]);
+  @DisplayName("Should hand audio from a receiving thread to a reading thread intact")
+  void shouldHandAudioFromAReceivingThreadToAReadingThreadIntact() throws Exception {
+    int packets = 20000;
+    Thread receiver =
+        new Thread(
+            () -> {
+              for (int i = 0; i < packets; i++) {
+                byte[] payload = new byte[RTPConstants.RTP_PACKET_SIZE];
+                payload[0] = (byte) i;
+                payload[payload.length - 1] = (byte) i;
+                while (audioBuffer.getAvailableAudio() > 16000) {
+                  Thread.yield();
+                }
+                audioBuffer.appendPacket(createRtpPacket(i, payload));
+              }
+            });
+    receiver.start();
+
+    byte[] chunk = new byte[RTPConstants.RTP_PACKET_SIZE];
+    for (int i = 0; i < packets; i++) {
+      int read = 0;
+      while (read < chunk.length) {
+        read += audioBuffer.readAudio(chunk, read, chunk.length - read);
+      }
+      assertThat(chunk[0]).isEqualTo((byte) i);
+      assertThat(chunk[chunk.length - 1]).isEqualTo((byte) i);
+    }
+    receiver.join();
 
-    audioBuffer.appendPacket(packet);
-    byte[] result = audioBuffer.getAudioBuffer();
+    assertThat(audioBuffer.getDiscardedPackets()).isZero();
+    assertThat(audioBuffer.getLostPackets()).isZero();
+  }
 
-    assertThat(result).isEmpty();
+  @Test
+  @DisplayName("Should reject a playout depth the buffer cannot hold")
+  void shouldRejectAPlayoutDepthTheBufferCannotHold() {
+    assertThatThrownBy(() -> new RTPAudioBuffer(RTPAudioBuffer.CAPACITY))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> new RTPAudioBuffer(-1)).isInstanceOf(IllegalArgumentException.class);
   }
 
   /**
-   * Helper method to create an RTP packet with the specified timestamp and payload. This creates a
-   * minimal valid RTP packet for testing purposes.
+   * Helper method to create an RTP packet with the specified sequence number and payload. This
+   * creates a minimal valid RTP packet for testing purposes.
    */
-  private Buffer createRtpPacket(long timestamp, byte[] payload) {
+  private Buffer createRtpPacket(int sequenceNumber, byte[] payload) {
     Buffer packet = Buffer.buffer();
 
     // RTP Header (12 bytes minimum)
     packet.appendByte((byte) 0x80); // Version 2, no padding, no extension, no CSRC
     packet.appendByte((byte) 0x00); // Payload type
-    packet.appendShort((short) 1); // Sequence number
-    packet.appendInt((int) timestamp); // Timestamp (position 4-7)
+    packet.appendShort((short) sequenceNumber); // Sequence number (position 2-3)
+    packet.appendInt(sequenceNumber * 160); // Timestamp
     packet.appendInt(0x12345678); // SSRC
 
     // Payload
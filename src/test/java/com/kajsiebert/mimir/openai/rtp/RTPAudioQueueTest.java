@@ -2,6 +2,8 @@ package com.kajsiebert.mimir.openai.rtp;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.Base64;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -298,4 +300,123 @@ class RTPAudioQueueTest {
     assertThat(payload[51]).isEqualTo((byte) 101);
     assertThat(payload[52]).isEqualTo((byte) 102);
   }
+
+  @Test
+  @DisplayName("Should drop audio that does not fit in the ring")
+  void shouldDropAudioThatDoesNotFit() {
+    RTPAudioQueue smallQueue = new RTPAudioQueue(RTPConstants.RTP_PACKET_SIZE);
+
+    smallQueue.appendAudio(new byte[RTPConstants.RTP_PACKET_SIZE - 10]);
+    smallQueue.appendAudio(new byte[30]);
+
+    assertThat(smallQueue.getBufferedBytes()).isEqualTo(RTPConstants.RTP_PACKET_SIZE);
+    assertThat(smallQueue.getDroppedBytes()).isEqualTo(20);
+
+    Buffer packet = smallQueue.getNextRtpPacket();
+    assertThat(packet.length())
+        .isEqualTo(RTPConstants.RTP_HEADER_SIZE + RTPConstants.RTP_PACKET_SIZE);
+    assertThat(smallQueue.getBufferedBytes()).isZero();
+  }
+
+  @Test
+  @DisplayName("Should decode base64 audio and drop the whole quanta that do not fit")
+  void shouldDecodeBase64AudioAndDropWhatDoesNotFit() {
+    RTPAudioQueue smallQueue = new RTPAudioQueue(RTPConstants.RTP_PACKET_SIZE);
+    smallQueue.appendAudio(new byte[RTPConstants.RTP_PACKET_SIZE - 10]);
+
+    char[] base64 = Base64.getEncoder().encodeToString(new byte[30]).toCharArray();
+    smallQueue.appendBase64Audio(base64, 0, base64.length);
+
+    // 9 bytes, three whole quanta, fit in the 10 bytes left
+    assertThat(smallQueue.getBufferedBytes()).isEqualTo(RTPConstants.RTP_PACKET_SIZE - 1);
+    assertThat(smallQueue.getDroppedBytes()).isEqualTo(21);
+  }
+
+  @Test
+  @DisplayName("Should keep counting audio dropped by every append to a full ring")
+  void shouldKeepCountingDroppedAudio() {
+    RTPAudioQueue smallQueue = new RTPAudioQueue(RTPConstants.RTP_PACKET_SIZE);
+    smallQueue.appendAudio(new byte[RTPConstants.RTP_PACKET_SIZE]);
+
+    for (int i = 0; i < 1000; i++) {
+      smallQueue.appendAudio(new byte[RTPConstants.RTP_PACKET_SIZE]);
+    }
+
+    assertThat(smallQueue.getDroppedBytes()).isEqualTo(1000L * RTPConstants.RTP_PACKET_SIZE);
+  }
+
+  @Test
+  @DisplayName("Should keep packet payloads independent of later appends")
+  void shouldKeepPacketPayloadsIndependentOfLaterAppends() {
+    audioQueue.appendAudio(new byte[] {1, 2, 3});
+    Buffer packet1 = audioQueue.getNextRtpPacket();
+
+    audioQueue.appendAudio(new byte[] {4, 5, 6});
+    Buffer packet2 = audioQueue.getNextRtpPacket();
+
+    assertThat(packet1.getBytes(RTPConstants.RTP_HEADER_SIZE, packet1.length()))
+        .isEqualTo(new byte[] {1, 2, 3});
+    assertThat(packet2.getBytes(RTPConstants.RTP_HEADER_SIZE, packet2.length()))
+        .isEqualTo(new byte[] {4, 5, 6});
+  }
+
+  @Test
+  @DisplayName("Should not allocate packets while sent packets are released")
+  void shouldNotAllocatePacketsWhileSentPacketsAreReleased() {
+    byte[] audioData = new byte[RTPConstants.RTP_PACKET_SIZE];
+
+    for (int i = 0; i < 1000; i++) {
+      audioData[0] = (byte) i;
+      audioQueue.appendAudio(audioData);
+      Buffer packet = audioQueue.getNextRtpPacket();
+
+      assertThat(packet.getShort(2)).isEqualTo((short) i);
+      assertThat(packet.getByte(RTPConstants.RTP_HEADER_SIZE)).isEqualTo((byte) i);
+      audioQueue.getPacketPool().release(packet);
+    }
+
+    assertThat(audioQueue.getPacketAllocations()).isZero();
+  }
+
+  @Test
+  @DisplayName("Should allocate packets only when the pool is exhausted")
+  void shouldAllocatePacketsOnlyWhenThePoolIsExhausted() {
+    RTPAudioQueue pooledQueue = new RTPAudioQueue(8000, new RTPPacketPool(2));
+    pooledQueue.appendAudio(new byte[RTPConstants.RTP_PACKET_SIZE * 4]);
+
+    Buffer packet1 = pooledQueue.getNextRtpPacket();
+    Buffer packet2 = pooledQueue.getNextRtpPacket();
+    assertThat(pooledQueue.getPacketAllocations()).isZero();
+
+    Buffer packet3 = pooledQueue.getNextRtpPacket();
+    assertThat(pooledQueue.getPacketAllocations()).isEqualTo(1);
+    assertThat(packet3).isNotSameAs(packet1).isNotSameAs(packet2);
+
+    pooledQueue.getPacketPool().release(packet1);
+    assertThat(pooledQueue.getNextRtpPacket()).isSameAs(packet1);
+    assertThat(pooledQueue.getPacketAllocations()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("Should play the comfort tone until audio arrives, keeping the sequence")
+  void shouldPlayComfortToneUntilAudioArrives() {
+    audioQueue.setComfortTone(new ComfortTone());
+
+    Buffer tonePacket = audioQueue.getNextRtpPacket();
+    assertThat(tonePacket).isNotNull();
+    assertThat(tonePacket.length())
+        .isEqualTo(RTPConstants.RTP_HEADER_SIZE + RTPConstants.RTP_PACKET_SIZE);
+
+    byte[] audioData = {1, 2, 3, 4, 5};
+    audioQueue.appendAudio(audioData);
+    audioQueue.setComfortTone(null);
+    Buffer audioPacket = audioQueue.getNextRtpPacket();
+
+    assertThat(audioPacket.getUnsignedShort(2)).isEqualTo(tonePacket.getUnsignedShort(2) + 1);
+    assertThat(audioPacket.getUnsignedInt(4))
+        .isEqualTo(tonePacket.getUnsignedInt(4) + RTPConstants.RTP_PACKET_SIZE);
+    assertThat(audioPacket.getBytes(RTPConstants.RTP_HEADER_SIZE, audioPacket.length()))
+        .isEqualTo(audioData);
+    assertThat(audioQueue.getNextRtpPacket()).isNull();
+  }
 }
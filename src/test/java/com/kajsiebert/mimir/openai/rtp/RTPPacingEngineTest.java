@@ -0,0 +1,301 @@
+package com.kajsiebert.mimir.openai.rtp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for RTPPacingEngine. The wheel is driven tick by tick from a fake clock, so runs and
+ * lateness are asserted in logical ticks rather than against the wall clock.
+ */
+@DisplayName("RTPPacingEngine Tests")
+class RTPPacingEngineTest {
+
+  private long now = 0;
+  private RTPPacingEngine engine;
+
+  @BeforeEach
+  void setUp() {
+    engine = new RTPPacingEngine(2, RTPPacingEngine.MissedTickPolicy.SKIP, () -> now);
+  }
+
+  @AfterEach
+  void tearDown() {
+    engine.shutdown();
+  }
+
+  @Test
+  @DisplayName("Should run a registered task periodically")
+  void shouldRunRegisteredTaskPeriodically() {
+    List<Long> deadlines = new ArrayList<>();
+
+    engine.register(
+        millis(20), RTPPacingEngine.MissedTickPolicy.SKIP, deadline -> deadlines.add(deadline));
+    advanceTo(100);
+
+    assertThat(deadlines)
+        .containsExactly(millis(0), millis(20), millis(40), millis(60), millis(80), millis(100));
+    assertThat(engine.getActiveTaskCount()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("Should serve many sessions from a fixed number of threads")
+  void shouldServeManySessionsFromFixedThreads() {
+    int sessions = 200;
+    AtomicInteger runs = new AtomicInteger();
+    List<RTPPacingEngine.PacingHandle> handles = new ArrayList<>();
+
+    for (int i = 0; i < sessions; i++) {
+      handles.add(engine.register(millis(20), runs::incrementAndGet));
+    }
+    advanceTo(40);
+
+    assertThat(runs.get()).isEqualTo(sessions * 3);
+    assertThat(engine.getThreadCount()).isEqualTo(2);
+    assertThat(engine.getActiveTaskCount()).isEqualTo(sessions);
+
+    handles.forEach(RTPPacingEngine.PacingHandle::cancel);
+  }
+
+  @Test
+  @DisplayName("Should stop running a task once cancelled")
+  void shouldStopRunningTaskOnceCancelled() {
+    AtomicInteger runs = new AtomicInteger();
+
+    RTPPacingEngine.PacingHandle handle = engine.register(millis(10), runs::incrementAndGet);
+    advanceTo(10);
+    handle.cancel();
+    advanceTo(100);
+
+    assertThat(handle.isCancelled()).isTrue();
+    assertThat(runs.get()).isEqualTo(2);
+    assertThat(engine.getActiveTaskCount()).isZero();
+  }
+
+  @Test
+  @DisplayName("Should keep running other tasks when one throws")
+  void shouldKeepRunningOtherTasksWhenOneThrows() {
+    AtomicInteger runs = new AtomicInteger();
+
+    engine.register(
+        millis(10),
+        () -> {
+          throw new RuntimeException("Test exception");
+        });
+    engine.register(millis(10), runs::incrementAndGet);
+    advanceTo(20);
+
+    assertThat(runs.get()).isEqualTo(3);
+  }
+
+  @Test
+  @DisplayName("Should support intervals longer than one wheel revolution")
+  void shouldSupportIntervalsLongerThanWheel() {
+    long interval = RTPPacingEngine.TICK_NANOS * (RTPPacingEngine.WHEEL_SIZE + 36);
+    List<Long> deadlines = new ArrayList<>();
+    List<Long> runTimes = new ArrayList<>();
+
+    engine.register(
+        interval,
+        RTPPacingEngine.MissedTickPolicy.SKIP,
+        deadline -> {
+          deadlines.add(deadline);
+          runTimes.add(now);
+        });
+    advanceTo(TimeUnit.NANOSECONDS.toMillis(2 * interval));
+
+    assertThat(deadlines).containsExactly(0L, interval, 2 * interval);
+    assertThat(runTimes).isEqualTo(deadlines);
+  }
+
+  @Test
+  @DisplayName("Should report how late tasks ran since the last sample")
+  void shouldReportMaxLateness() {
+    AtomicInteger runs = new AtomicInteger();
+
+    engine.register(
+        millis(5),
+        RTPPacingEngine.MissedTickPolicy.BURST,
+        deadline -> {
+          if (runs.getAndIncrement() == 0) {
+            stall(30);
+          }
+        });
+    advanceTo(31);
+
+    // The run due at 5ms was caught up in the burst at 31ms
+    assertThat(engine.sampleMaxLatenessNanos()).isEqualTo(millis(26));
+
+    advanceTo(60);
+
+    assertThat(engine.sampleMaxLatenessNanos()).isZero();
+  }
+
+  @Test
+  @DisplayName("Should reject intervals shorter than one tick")
+  void shouldRejectIntervalsShorterThanOneTick() {
+    assertThatThrownBy(() -> engine.register(RTPPacingEngine.TICK_NANOS - 1, () -> {}))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  @DisplayName("Should spread sessions over the ticker threads")
+  void shouldSpreadSessionsOverTickerThreads() throws InterruptedException {
+    RTPPacingEngine threadedEngine = new RTPPacingEngine(2, Thread.NORM_PRIORITY);
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+    CountDownLatch latch = new CountDownLatch(4);
+
+    try {
+      for (int i = 0; i < 4; i++) {
+        threadedEngine.register(
+            millis(20),
+            () -> {
+              threads.add(Thread.currentThread().getName());
+              latch.countDown();
+            });
+      }
+
+      assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(threads).containsExactlyInAnyOrder("RTP-Pacer-0", "RTP-Pacer-1");
+    } finally {
+      threadedEngine.shutdown();
+    }
+  }
+
+  @Test
+  @DisplayName("Should skip missed ticks and stay on the original grid")
+  void shouldSkipMissedTicksAndStayOnGrid() {
+    List<Long> deadlines = new ArrayList<>();
+
+    RTPPacingEngine.PacingHandle handle =
+        engine.register(
+            millis(10),
+            RTPPacingEngine.MissedTickPolicy.SKIP,
+            deadline -> {
+              deadlines.add(deadline);
+              if (deadlines.size() == 1) {
+                stall(55);
+              }
+            });
+    advanceTo(80);
+
+    assertThat(handle.getMissedTicks()).isEqualTo(5);
+    assertThat(deadlines).containsExactly(millis(0), millis(60), millis(70), millis(80));
+  }
+
+  @Test
+  @DisplayName("Should burst missed ticks back to back")
+  void shouldBurstMissedTicksBackToBack() {
+    List<Long> deadlines = new ArrayList<>();
+    List<Long> runTimes = new ArrayList<>();
+
+    RTPPacingEngine.PacingHandle handle =
+        engine.register(
+            millis(10),
+            RTPPacingEngine.MissedTickPolicy.BURST,
+            deadline -> {
+              deadlines.add(deadline);
+              runTimes.add(now);
+              if (deadlines.size() == 1) {
+                stall(55);
+              }
+            });
+    advanceTo(70);
+
+    assertThat(handle.getMissedTicks()).isZero();
+    assertThat(deadlines)
+        .containsExactly(
+            millis(0),
+            millis(10),
+            millis(20),
+            millis(30),
+            millis(40),
+            millis(50),
+            millis(60),
+            millis(70));
+    // Every run missed during the stall ran on the first tick after it
+    assertThat(runTimes.subList(1, 6)).containsOnly(millis(56));
+  }
+
+  @Test
+  @DisplayName("Should stretch the grid after a late run")
+  void shouldStretchGridAfterLateRun() {
+    List<Long> deadlines = new ArrayList<>();
+
+    RTPPacingEngine.PacingHandle handle =
+        engine.register(
+            millis(10),
+            RTPPacingEngine.MissedTickPolicy.STRETCH,
+            deadline -> {
+              deadlines.add(deadline);
+              if (deadlines.size() == 1) {
+                stall(35);
+              }
+            });
+    advanceTo(55);
+
+    // The late run ended at 35ms, so the grid restarts one interval after it
+    assertThat(handle.getMissedTicks()).isEqualTo(3);
+    assertThat(deadlines).containsExactly(millis(0), millis(45), millis(55));
+  }
+
+  @Test
+  @DisplayName("Should never run a task before its deadline when spinning")
+  void shouldNeverRunBeforeDeadlineWhenSpinning() throws InterruptedException {
+    RTPPacingEngine spinningEngine =
+        new RTPPacingEngine(
+            1,
+            Thread.NORM_PRIORITY,
+            RTPPacingEngine.SleepStrategy.PARK_THEN_SPIN,
+            RTPPacingEngine.MissedTickPolicy.SKIP);
+    List<Long> lateness = new ArrayList<>();
+    CountDownLatch latch = new CountDownLatch(10);
+
+    try {
+      spinningEngine.register(
+          millis(20),
+          RTPPacingEngine.MissedTickPolicy.SKIP,
+          deadline -> {
+            if (latch.getCount() > 0) {
+              lateness.add(System.nanoTime() - deadline);
+              latch.countDown();
+            }
+          });
+
+      assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(lateness).allSatisfy(late -> assertThat(late).isNotNegative());
+    } finally {
+      spinningEngine.shutdown();
+    }
+  }
+
+  /** Moves the fake clock forward one tick at a time up to {@code millis}, running what is due. */
+  private void advanceTo(long millis) {
+    engine.tick();
+    while (now < millis(millis)) {
+      now += RTPPacingEngine.TICK_NANOS;
+      engine.tick();
+    }
+  }
+
+  /** Makes the task that is running take {@code millis} on the fake clock. */
+  private void stall(long millis) {
+    now += millis(millis);
+  }
+
+  private static long millis(long millis) {
+    return TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+}
@@ -0,0 +1,110 @@
+package com.kajsiebert.mimir.openai.rtp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+
+@DisplayName("RTPPacketPool Tests")
+class RTPPacketPoolTest {
+
+  @Test
+  @DisplayName("Should preformat the constant header fields")
+  void shouldPreformatTheConstantHeaderFields() {
+    RTPPacketPool pool = new RTPPacketPool(1);
+
+    Buffer packet = pool.acquire().format(42, 1234, 0);
+
+    assertThat(packet.length()).isEqualTo(RTPConstants.RTP_HEADER_SIZE);
+    assertThat(packet.getByte(0)).isEqualTo((byte) 0x80);
+    assertThat(packet.getByte(1)).isEqualTo((byte) 0x00);
+    assertThat(packet.getShort(2)).isEqualTo((short) 42);
+    assertThat(packet.getInt(4)).isEqualTo(1234);
+    assertThat(packet.getInt(8)).isEqualTo(RTPConstants.SSRC);
+  }
+
+  @Test
+  @DisplayName("Should write the payload into the packet's backing array")
+  void shouldWriteThePayloadIntoThePacketsBackingArray() {
+    RTPPacketPool pool = new RTPPacketPool(1);
+    RTPPacketPool.Slot slot = pool.acquire();
+
+    slot.array()[slot.payloadOffset()] = 7;
+    slot.array()[slot.payloadOffset() + 1] = 8;
+    Buffer packet = slot.format(0, 0, 2);
+
+    assertThat(packet.getBytes(RTPConstants.RTP_HEADER_SIZE, packet.length()))
+        .isEqualTo(new byte[] {7, 8});
+  }
+
+  @Test
+  @DisplayName("Should allocate packets outside the pool that releasing leaves alone")
+  void shouldAllocatePacketsOutsideThePool() {
+    RTPPacketPool pool = new RTPPacketPool(1);
+    RTPPacketPool.Slot pooled = pool.acquire();
+
+    RTPPacketPool.Slot allocated = pool.allocate();
+    Buffer packet = allocated.format(42, 1234, 0);
+
+    assertThat(allocated).isNotSameAs(pooled);
+    assertThat(packet.getByte(0)).isEqualTo((byte) 0x80);
+    assertThat(packet.getInt(8)).isEqualTo(RTPConstants.SSRC);
+    pool.release(packet);
+    allocated.release();
+    assertThat(pool.getAvailable()).isZero();
+  }
+
+  @Test
+  @DisplayName("Should hand out each packet once until it is released")
+  void shouldHandOutEachPacketOnceUntilItIsReleased() {
+    RTPPacketPool pool = new RTPPacketPool(2);
+
+    RTPPacketPool.Slot first = pool.acquire();
+    RTPPacketPool.Slot second = pool.acquire();
+
+    assertThat(first).isNotSameAs(second);
+    assertThat(pool.acquire()).isNull();
+    assertThat(pool.getAvailable()).isZero();
+
+    pool.release(first.buffer);
+    assertThat(pool.getAvailable()).isEqualTo(1);
+    assertThat(pool.acquire()).isSameAs(first);
+  }
+
+  @Test
+  @DisplayName("Should release the packet when the send completes")
+  void shouldReleaseThePacketWhenTheSendCompletes() {
+    RTPPacketPool pool = new RTPPacketPool(1);
+    Buffer packet = pool.acquire().format(0, 0, 0);
+    AtomicReference<AsyncResult<Void>> completed = new AtomicReference<>();
+
+    Handler<AsyncResult<Void>> onSent = pool.releaseOnCompletion(packet, completed::set);
+    assertThat(pool.getAvailable()).isZero();
+
+    onSent.handle(Future.succeededFuture());
+
+    assertThat(completed.get().succeeded()).isTrue();
+    assertThat(pool.getAvailable()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("Should pass packets from elsewhere through unchanged")
+  void shouldPassPacketsFromElsewhereThroughUnchanged() {
+    RTPPacketPool pool = new RTPPacketPool(1);
+    pool.acquire();
+    Buffer foreign = Buffer.buffer(new byte[RTPConstants.RTP_HEADER_SIZE]);
+    Handler<AsyncResult<Void>> completion = result -> {};
+
+    assertThat(pool.releaseOnCompletion(foreign, completion)).isSameAs(completion);
+    pool.release(foreign);
+
+    assertThat(pool.getAvailable()).isZero();
+  }
+}
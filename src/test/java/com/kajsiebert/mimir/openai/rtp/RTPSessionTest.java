@@ -7,12 +7,17 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mjsip.media.FlowSpec;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -170,4 +175,57 @@ class RTPSessionTest {
   private void simulatePacketReceived(Buffer packet) {
     rtpSession.audioBuffer.appendPacket(packet);
   }
+
+  @Test
+  void shouldResolveRemoteAddressOnce() {
+    lenient().when(flowSpec.getRemoteAddress()).thenReturn("localhost");
+    RTPSession session = new RTPSession(vertx, flowSpec);
+
+    session.sendPacket(Buffer.buffer("one"));
+    session.sendPacket(Buffer.buffer("two"));
+
+    verify(datagramSocket, times(2))
+        .send(
+            any(Buffer.class),
+            eq(5006),
+            eq(InetAddress.getLoopbackAddress().getHostAddress()),
+            any());
+  }
+
+  @Test
+  void shouldKeepUnresolvableHostForPerPacketResolution() {
+    RTPSession.Resolver unresolvable =
+        host -> {
+          throw new UnknownHostException(host);
+        };
+    RTPSession.Resolver resolvable =
+        host -> InetAddress.getByAddress(host, new byte[] {10, 1, 2, 3});
+
+    assertThat(RTPSession.resolveOnce("no-such-host.invalid", unresolvable))
+        .isEqualTo("no-such-host.invalid");
+    assertThat(RTPSession.resolveOnce("media.example", resolvable)).isEqualTo("10.1.2.3");
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldReuseOneCompletionHandlerAndCountFailures() {
+    ArgumentCaptor<Handler<AsyncResult<Void>>> handlers = ArgumentCaptor.forClass(Handler.class);
+
+    rtpSession.sendPacket(Buffer.buffer("one"));
+    rtpSession.sendPacket(Buffer.buffer("two"));
+    verify(datagramSocket, times(2))
+        .send(any(Buffer.class), anyInt(), anyString(), handlers.capture());
+    assertThat(handlers.getAllValues().get(0)).isSameAs(handlers.getAllValues().get(1));
+
+    AsyncResult<Void> failed = mock(AsyncResult.class);
+    lenient().when(failed.failed()).thenReturn(true);
+    lenient().when(failed.cause()).thenReturn(new RuntimeException("Network unreachable"));
+    AsyncResult<Void> succeeded = mock(AsyncResult.class);
+
+    handlers.getValue().handle(failed);
+    handlers.getValue().handle(succeeded);
+    handlers.getValue().handle(failed);
+
+    assertThat(rtpSession.getSendFailures()).isEqualTo(2);
+  }
 }
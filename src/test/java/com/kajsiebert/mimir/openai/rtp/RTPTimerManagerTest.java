@@ -4,6 +4,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -12,6 +13,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import io.vertx.core.Context;
 import io.vertx.core.Vertx;
 import io.vertx.junit5.VertxExtension;
 import io.vertx.junit5.VertxTestContext;
@@ -176,4 +178,42 @@ class RTPTimerManagerTest {
     assertThat(representation).contains("packets=100");
     assertThat(representation).contains("avgJitter=2.50ms");
   }
+
+  @Test
+  void shouldFallBackToVertxTimerWithoutDedicatedThread(Vertx vertx) throws InterruptedException {
+    RTPTimingConfig config = RTPTimingConfig.builder().useDedicatedThread(false).build();
+    RTPTimerManager vertxTimerManager =
+        new RTPTimerManager(vertx, RTPPacingEngine.getDefault(), config);
+    CountDownLatch latch = new CountDownLatch(3);
+    AtomicBoolean onEventLoop = new AtomicBoolean(true);
+
+    vertxTimerManager.startPeriodicTask(
+        20,
+        () -> {
+          onEventLoop.compareAndSet(true, Context.isOnEventLoopThread());
+          latch.countDown();
+        });
+
+    assertThat(latch.await(500, TimeUnit.MILLISECONDS)).isTrue();
+    vertxTimerManager.stop();
+
+    assertThat(onEventLoop.get()).isTrue();
+    assertThat(vertxTimerManager.getTimingStats().totalPackets).isGreaterThanOrEqualTo(3);
+  }
+
+  @Test
+  void shouldMeasureJitterAgainstAbsoluteDeadlinesInNanoseconds() throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(5);
+
+    timerManager.startPeriodicTask(20, latch::countDown);
+    latch.await(500, TimeUnit.MILLISECONDS);
+    timerManager.stop();
+
+    RTPTimerManager.TimingStats stats = timerManager.getTimingStats();
+    assertThat(stats.totalPackets).isGreaterThanOrEqualTo(5);
+    assertThat(stats.maxJitterMs).isGreaterThanOrEqualTo(stats.averageJitterMs);
+    // Sub-millisecond resolution, not whole milliseconds
+    assertThat(stats.averageJitterMs).isNotEqualTo(Math.floor(stats.averageJitterMs));
+    assertThat(stats.toString()).contains("maxJitter=").contains("missedTicks=");
+  }
 }
@@ -1,6 +1,7 @@
 package com.kajsiebert.mimir.openai.rtp;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -17,6 +18,9 @@ class RTPTimingConfigTest {
     assertThat(config.getJitterErrorThresholdMs()).isEqualTo(15);
     assertThat(config.getAdaptiveBufferSize()).isEqualTo(10);
     assertThat(config.isAdaptiveModeEnabled()).isTrue();
+    assertThat(config.getJitterBufferDepth()).isEqualTo(3);
+    assertThat(config.getUplinkMinChunkMs()).isEqualTo(20);
+    assertThat(config.getUplinkMaxChunkMs()).isEqualTo(250);
     assertThat(config.getRtpThreadPriority()).isEqualTo(Thread.MAX_PRIORITY);
     assertThat(config.isUseDedicatedThread()).isTrue();
     assertThat(config.isTimingMetricsEnabled()).isTrue();
@@ -32,6 +36,8 @@ class RTPTimingConfigTest {
     assertThat(config.getJitterErrorThresholdMs()).isEqualTo(5);
     assertThat(config.getAdaptiveBufferSize()).isEqualTo(5);
     assertThat(config.isAdaptiveModeEnabled()).isFalse(); // Disabled for lowest latency
+    assertThat(config.getJitterBufferDepth()).isEqualTo(1);
+    assertThat(config.getUplinkMaxChunkMs()).isEqualTo(100);
     assertThat(config.getRtpThreadPriority()).isEqualTo(Thread.MAX_PRIORITY);
     assertThat(config.isUseDedicatedThread()).isTrue();
     assertThat(config.isTimingMetricsEnabled()).isTrue();
@@ -47,6 +53,8 @@ class RTPTimingConfigTest {
     assertThat(config.getJitterErrorThresholdMs()).isEqualTo(25);
     assertThat(config.getAdaptiveBufferSize()).isEqualTo(20);
     assertThat(config.isAdaptiveModeEnabled()).isTrue();
+    assertThat(config.getJitterBufferDepth()).isEqualTo(6);
+    assertThat(config.getUplinkMinChunkMs()).isEqualTo(40);
     assertThat(config.getRtpThreadPriority()).isEqualTo(Thread.NORM_PRIORITY + 2);
     assertThat(config.isUseDedicatedThread()).isTrue();
     assertThat(config.isTimingMetricsEnabled()).isTrue();
@@ -179,4 +187,38 @@ class RTPTimingConfigTest {
 
     assertThat(builder1).isNotSameAs(builder2);
   }
+
+  @Test
+  @DisplayName("Should look up presets by profile name")
+  void shouldLookUpPresetsByProfileName() {
+    assertThat(RTPTimingConfig.forProfile("default").toString())
+        .isEqualTo(RTPTimingConfig.defaultConfig().toString());
+    assertThat(RTPTimingConfig.forProfile("lowLatency").toString())
+        .isEqualTo(RTPTimingConfig.lowLatencyConfig().toString());
+    assertThat(RTPTimingConfig.forProfile("ROBUST").toString())
+        .isEqualTo(RTPTimingConfig.robustConfig().toString());
+  }
+
+  @Test
+  @DisplayName("Should reject unknown profile names")
+  void shouldRejectUnknownProfileNames() {
+    assertThatThrownBy(() -> RTPTimingConfig.forProfile("satellite"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("satellite");
+  }
+
+  @Test
+  @DisplayName("Should clamp the uplink chunk range to whole frames")
+  void shouldClampTheUplinkChunkRangeToWholeFrames() {
+    RTPTimingConfig config = RTPTimingConfig.builder().uplinkChunkRange(5, 1000).build();
+    assertThat(config.getUplinkMinChunkMs()).isEqualTo(20);
+    assertThat(config.getUplinkMaxChunkMs()).isEqualTo(250);
+
+    config = RTPTimingConfig.builder().uplinkChunkRange(50, 110).build();
+    assertThat(config.getUplinkMinChunkMs()).isEqualTo(60);
+    assertThat(config.getUplinkMaxChunkMs()).isEqualTo(120);
+
+    assertThatThrownBy(() -> RTPTimingConfig.builder().uplinkChunkRange(100, 40))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
 }
@@ -0,0 +1,124 @@
+package com.kajsiebert.mimir.openai.rtp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.kajsiebert.mimir.openai.util.Base64Codec;
+
+import io.vertx.core.buffer.Buffer;
+
+@DisplayName("SpscByteRing Tests")
+class SpscByteRingTest {
+
+  @Test
+  @DisplayName("Should round the capacity up to a power of two")
+  void shouldRoundTheCapacityUpToAPowerOfTwo() {
+    assertThat(new SpscByteRing(1000).capacity()).isEqualTo(1024);
+    assertThat(new SpscByteRing(1024).capacity()).isEqualTo(1024);
+    assertThatThrownBy(() -> new SpscByteRing(0)).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  @DisplayName("Should read back what was written")
+  void shouldReadBackWhatWasWritten() {
+    SpscByteRing ring = new SpscByteRing(16);
+
+    assertThat(ring.write(new byte[] {9, 1, 2, 3, 9}, 1, 3)).isTrue();
+    assertThat(ring.size()).isEqualTo(3);
+
+    byte[] dst = new byte[5];
+    assertThat(ring.read(dst, 1, 4)).isEqualTo(3);
+    assertThat(dst).isEqualTo(new byte[] {0, 1, 2, 3, 0});
+    assertThat(ring.size()).isZero();
+  }
+
+  @Test
+  @DisplayName("Should write and read across the end of the array")
+  void shouldWriteAndReadAcrossTheEndOfTheArray() {
+    SpscByteRing ring = new SpscByteRing(8);
+    ring.write(new byte[6], 0, 6);
+    ring.read(new byte[6], 0, 6);
+
+    assertThat(ring.write(new byte[] {1, 2, 3, 4, 5}, 0, 5)).isTrue();
+    assertThat(ring.write(Buffer.buffer(new byte[] {0, 6, 7}), 1, 2)).isTrue();
+
+    byte[] dst = new byte[8];
+    assertThat(ring.read(dst, 0, 8)).isEqualTo(7);
+    assertThat(dst).startsWith(1, 2, 3, 4, 5, 6, 7);
+  }
+
+  @Test
+  @DisplayName("Should reject writes that do not fit")
+  void shouldRejectWritesThatDoNotFit() {
+    SpscByteRing ring = new SpscByteRing(4);
+    ring.write(new byte[] {1, 2, 3}, 0, 3);
+
+    assertThat(ring.write(new byte[] {4, 5}, 0, 2)).isFalse();
+    assertThat(ring.write(Buffer.buffer(new byte[] {4, 5}), 0, 2)).isFalse();
+    assertThat(ring.size()).isEqualTo(3);
+    assertThat(ring.write(new byte[] {4}, 0, 1)).isTrue();
+  }
+
+  @Test
+  @DisplayName("Should keep the byte order between a writer and a reader thread")
+  void shouldKeepTheByteOrderBetweenAWriterAndAReaderThread() throws Exception {
+    SpscByteRing ring = new SpscByteRing(256);
+    int total = 1_000_000;
+    Thread writer =
+        new Thread(
+            () -> {
+              byte[] chunk = new byte[7];
+              int next = 0;
+              while (next < total) {
+                int length = Math.min(chunk.length, total - next);
+                for (int i = 0; i < length; i++) {
+                  chunk[i] = (byte) (next + i);
+                }
+                if (ring.write(chunk, 0, length)) {
+                  next += length;
+                } else {
+                  Thread.yield();
+                }
+              }
+            });
+    writer.start();
+
+    byte[] dst = new byte[13];
+    int expected = 0;
+    while (expected < total) {
+      int read = ring.read(dst, 0, dst.length);
+      for (int i = 0; i < read; i++) {
+        assertThat(dst[i]).isEqualTo((byte) (expected + i));
+      }
+      expected += read;
+    }
+    writer.join();
+
+    assertThat(ring.size()).isZero();
+  }
+
+  @Test
+  @DisplayName("Should read base64 encoded audio across the wrap-around point")
+  void shouldReadBase64AcrossWrapAround() {
+    byte[] data = {10, 20, 30, 40, 50, 60, 70, 80, 90, 100, 110};
+    // Each start position puts the wrap-around at a different place within a group
+    for (int start = 0; start < 16; start++) {
+      SpscByteRing ring = new SpscByteRing(16);
+      ring.write(new byte[start], 0, start);
+      ring.read(new byte[start], 0, start);
+      ring.write(data, 0, data.length);
+
+      byte[] encoded = new byte[Base64Codec.encodedLength(data.length)];
+      assertThat(ring.readBase64(encoded, 0, 64)).isEqualTo(data.length);
+      assertThat(new String(encoded, StandardCharsets.US_ASCII))
+          .isEqualTo(Base64.getEncoder().encodeToString(data));
+      assertThat(ring.size()).isZero();
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package com.kajsiebert.mimir.openai.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Base64Codec Tests")
+class Base64CodecTest {
+
+  @Test
+  @DisplayName("Should decode padded base64 the same as the JDK for every tail length")
+  void shouldDecodePaddedBase64LikeTheJdk() {
+    Random random = new Random(42);
+    for (int length = 0; length < 50; length++) {
+      byte[] data = new byte[length];
+      random.nextBytes(data);
+      char[] base64 = Base64.getEncoder().encodeToString(data).toCharArray();
+
+      assertThat(Base64Codec.decodedLength(base64, 0, base64.length)).isEqualTo(length);
+      byte[] decoded = new byte[length + 2];
+      assertThat(Base64Codec.decode(base64, 0, base64.length, decoded, 2)).isEqualTo(length);
+      assertThat(decoded).endsWith(data);
+    }
+  }
+
+  @Test
+  @DisplayName("Should encode the same as the JDK for every tail length")
+  void shouldEncodeLikeTheJdk() {
+    Random random = new Random(7);
+    for (int length = 0; length < 50; length++) {
+      byte[] data = new byte[length + 1];
+      random.nextBytes(data);
+
+      byte[] encoded = new byte[Base64Codec.encodedLength(length)];
+      assertThat(Base64Codec.encode(data, 1, length, encoded, 0)).isEqualTo(encoded.length);
+      assertThat(new String(encoded, StandardCharsets.US_ASCII))
+          .isEqualTo(Base64.getEncoder().encodeToString(Arrays.copyOfRange(data, 1, length + 1)));
+    }
+  }
+
+  @Test
+  @DisplayName("Should decode unpadded base64 from an offset")
+  void shouldDecodeUnpaddedBase64FromOffset() {
+    byte[] data = {1, 2, 3, 4, 5};
+    String unpadded = Base64.getEncoder().withoutPadding().encodeToString(data);
+    char[] base64 = ("\"" + unpadded + "\"").toCharArray();
+
+    byte[] decoded = new byte[data.length];
+    int written = Base64Codec.decode(base64, 1, unpadded.length(), decoded, 0);
+
+    assertThat(written).isEqualTo(data.length);
+    assertThat(decoded).isEqualTo(data);
+  }
+
+  @Test
+  @DisplayName("Should reject invalid characters and lengths")
+  void shouldRejectInvalidBase64() {
+    char[] invalidChar = "AB*D".toCharArray();
+    char[] invalidLength = "ABCDE".toCharArray();
+    byte[] dst = new byte[3];
+
+    assertThatThrownBy(() -> Base64Codec.decode(invalidChar, 0, invalidChar.length, dst, 0))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> Base64Codec.decodedLength(invalidLength, 0, invalidLength.length))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
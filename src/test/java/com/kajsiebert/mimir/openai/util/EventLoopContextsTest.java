@@ -0,0 +1,59 @@
+package com.kajsiebert.mimir.openai.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+
+@DisplayName("EventLoopContexts Tests")
+class EventLoopContextsTest {
+
+  private Vertx vertx;
+
+  @BeforeEach
+  void setUp() {
+    vertx = Vertx.vertx(new VertxOptions().setEventLoopPoolSize(2));
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  @DisplayName("Should spread new contexts over the event loops from a non Vert.x thread")
+  void shouldCreateDistinctContexts() throws Exception {
+    Context first = EventLoopContexts.newContext(vertx);
+    Context second = EventLoopContexts.newContext(vertx);
+
+    assertThat(first).isNotSameAs(second);
+    assertThat(first.isEventLoopContext()).isTrue();
+    assertThat(threadOf(first)).isNotEqualTo(threadOf(second));
+  }
+
+  @Test
+  @DisplayName("Should fire timers set on a context on that context")
+  void shouldKeepTimersOnTheirContext() throws Exception {
+    Context context = EventLoopContexts.newContext(vertx);
+    CompletableFuture<Context> fired = new CompletableFuture<>();
+
+    context.runOnContext(v -> vertx.setTimer(1, id -> fired.complete(Vertx.currentContext())));
+
+    assertThat(fired.get(5, TimeUnit.SECONDS)).isSameAs(context);
+  }
+
+  private static Thread threadOf(Context context) throws Exception {
+    CompletableFuture<Thread> thread = new CompletableFuture<>();
+    context.runOnContext(v -> thread.complete(Thread.currentThread()));
+    return thread.get(5, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,130 @@
+package com.kajsiebert.mimir.openai.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mjsip.sip.header.Header;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipMessageFactory;
+import org.mjsip.sip.message.SipResponses;
+import org.mjsip.sip.provider.SipProvider;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("OptionsListener Tests")
+class OptionsListenerTest {
+
+  @Mock private SipProvider sipProvider;
+  @Mock private SipMessageFactory messageFactory;
+  @Mock private SipMessage request;
+  @Mock private SipMessage response;
+  @Mock private OptionsListener.LoadSource load;
+
+  @Captor private ArgumentCaptor<Header> headers;
+
+  private final AtomicLong now = new AtomicLong();
+
+  @BeforeEach
+  void setUp() {
+    // Not every test answers, or reports the load or a Retry-After
+    when(request.isRequest("OPTIONS")).thenReturn(true);
+    lenient().when(sipProvider.messageFactory()).thenReturn(messageFactory);
+    lenient()
+        .when(messageFactory.createResponse(eq(request), anyInt(), any(), any()))
+        .thenReturn(response);
+    lenient().when(load.getActiveCalls()).thenReturn(3);
+    lenient().when(load.getMaxCalls()).thenReturn(20);
+    lenient().when(load.getRetryAfterSeconds()).thenReturn(30);
+  }
+
+  private String header(String name) {
+    verify(response, atLeast(0)).setHeader(headers.capture());
+    return headers.getAllValues().stream()
+        .filter(header -> header.getName().equals(name))
+        .map(Header::getValue)
+        .findFirst()
+        .orElse(null);
+  }
+
+  @Test
+  @DisplayName("Should answer 200 with the load while calls are taken")
+  void shouldAnswerOkWithLoad() {
+    when(load.isAcceptingCalls()).thenReturn(true);
+
+    new OptionsListener(load, now::get).onReceivedMessage(sipProvider, request);
+
+    verify(messageFactory).createResponse(request, SipResponses.OK, null, null);
+    verify(sipProvider).sendMessage(response);
+    assertThat(header(OptionsListener.LOAD_HEADER)).isEqualTo("calls=3;max=20");
+    assertThat(header("Retry-After")).isNull();
+  }
+
+  @Test
+  @DisplayName("Should answer 503 with Retry-After while no calls are taken")
+  void shouldAnswerUnavailableWhenSaturated() {
+    when(load.isAcceptingCalls()).thenReturn(false);
+
+    new OptionsListener(load, now::get).onReceivedMessage(sipProvider, request);
+
+    verify(messageFactory).createResponse(request, SipResponses.SERVICE_UNAVAILABLE, null, null);
+    assertThat(header("Retry-After")).isEqualTo("30");
+    assertThat(header(OptionsListener.LOAD_HEADER)).isEqualTo("calls=3;max=20");
+  }
+
+  @Test
+  @DisplayName("Should look the load up once per status lifetime")
+  void shouldCacheStatus() {
+    when(load.isAcceptingCalls()).thenReturn(true);
+    OptionsListener listener = new OptionsListener(load, now::get);
+
+    listener.onReceivedMessage(sipProvider, request);
+    when(load.isAcceptingCalls()).thenReturn(false);
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(OptionsListener.STATUS_TTL_MS - 1));
+    listener.onReceivedMessage(sipProvider, request);
+
+    verify(load, times(1)).isAcceptingCalls();
+    verify(messageFactory, times(2)).createResponse(request, SipResponses.OK, null, null);
+
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+    listener.onReceivedMessage(sipProvider, request);
+
+    verify(messageFactory).createResponse(request, SipResponses.SERVICE_UNAVAILABLE, null, null);
+  }
+
+  @Test
+  @DisplayName("Should answer 200 without a load header when there is no load to report")
+  void shouldAnswerOkWithoutLoad() {
+    new OptionsListener().onReceivedMessage(sipProvider, request);
+
+    verify(messageFactory).createResponse(request, SipResponses.OK, null, null);
+    verify(response, never()).setHeader(any());
+  }
+
+  @Test
+  @DisplayName("Should ignore other requests")
+  void shouldIgnoreOtherRequests() {
+    when(request.isRequest("OPTIONS")).thenReturn(false);
+
+    new OptionsListener(load, now::get).onReceivedMessage(sipProvider, request);
+
+    verify(sipProvider, never()).sendMessage(any());
+  }
+}
@@ -0,0 +1,117 @@
+package com.kajsiebert.mimir.openai.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.kajsiebert.mimir.openai.util.Base64Codec;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.WebSocket;
+import io.vertx.core.http.WebSocketFrame;
+
+@DisplayName("AudioAppendFramePool Tests")
+class AudioAppendFramePoolTest {
+
+  private Vertx vertx;
+
+  @BeforeEach
+  void setUp() {
+    vertx = Vertx.vertx();
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+  }
+
+  /** Encodes {@code audio} into {@code slot} the way the uplink does. */
+  private static WebSocketFrame encode(AudioAppendFramePool.Slot slot, byte[] audio) {
+    String base64 = Base64.getEncoder().encodeToString(audio);
+    byte[] encoded = base64.getBytes(StandardCharsets.US_ASCII);
+    System.arraycopy(encoded, 0, slot.array(), slot.audioOffset(), encoded.length);
+    return slot.frame(audio.length, Base64Codec.encodedLength(audio.length));
+  }
+
+  @Test
+  @DisplayName("Should send every pooled frame through a websocket many times over")
+  void shouldReuseFramesOverRealWebsocket() throws Exception {
+    int frames = AudioAppendFramePool.DEFAULT_SIZE * 4;
+    List<String> received = new CopyOnWriteArrayList<>();
+    CountDownLatch allReceived = new CountDownLatch(frames);
+    HttpServer server =
+        vertx
+            .createHttpServer()
+            .webSocketHandler(
+                ws ->
+                    ws.textMessageHandler(
+                        text -> {
+                          received.add(text);
+                          allReceived.countDown();
+                        }))
+            .listen(0, "127.0.0.1")
+            .toCompletionStage()
+            .toCompletableFuture()
+            .get(5, TimeUnit.SECONDS);
+    WebSocket client =
+        vertx
+            .createHttpClient()
+            .webSocket(server.actualPort(), "127.0.0.1", "/")
+            .toCompletionStage()
+            .toCompletableFuture()
+            .get(5, TimeUnit.SECONDS);
+
+    AtomicLong sentBytes = new AtomicLong();
+    AudioAppendFramePool pool =
+        new AudioAppendFramePool(AudioAppendFramePool.DEFAULT_SIZE, sentBytes::addAndGet);
+    CompletableFuture<Void> written = new CompletableFuture<>();
+    // Sequentially, so every frame of the pool is written several times
+    vertx.runOnContext(v -> writeNext(client, pool, 0, frames, written));
+    written.get(5, TimeUnit.SECONDS);
+
+    assertThat(allReceived.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(pool.getFrameAllocations()).isZero();
+    assertThat(sentBytes.get()).isEqualTo(frames);
+    for (int i = 0; i < frames; i++) {
+      String audio = Base64.getEncoder().encodeToString(new byte[] {(byte) i});
+      assertThat(received.get(i))
+          .isEqualTo("{\"type\":\"input_audio_buffer.append\",\"audio\":\"" + audio + "\"}");
+    }
+  }
+
+  private static void writeNext(
+      WebSocket client,
+      AudioAppendFramePool pool,
+      int i,
+      int frames,
+      CompletableFuture<Void> written) {
+    if (i == frames) {
+      written.complete(null);
+      return;
+    }
+    AudioAppendFramePool.Slot slot = pool.acquire(1);
+    client.writeFrame(
+        encode(slot, new byte[] {(byte) i}),
+        ar -> {
+          slot.onWritten.handle(ar);
+          if (ar.failed()) {
+            written.completeExceptionally(ar.cause());
+          } else {
+            writeNext(client, pool, i + 1, frames, written);
+          }
+        });
+  }
+}
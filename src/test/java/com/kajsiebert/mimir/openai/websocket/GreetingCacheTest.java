@@ -0,0 +1,96 @@
+package com.kajsiebert.mimir.openai.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.kajsiebert.mimir.openai.ExtensionConfig;
+
+@DisplayName("GreetingCache Tests")
+class GreetingCacheTest {
+
+  private final ExtensionConfig config = new ExtensionConfig("Be Clarke", "alloy", "Say hello");
+
+  @Test
+  @DisplayName("Should return a greeting only for the configuration it was generated with")
+  void shouldKeyGreetingsByConfiguration() {
+    GreetingCache cache = new GreetingCache(null, null);
+    cache.put(config, new byte[] {1, 2, 3}, "Hello");
+
+    assertThat(cache.get(new ExtensionConfig("Be Clarke", "alloy", "Say hello")).getAudio())
+        .containsExactly(1, 2, 3);
+    assertThat(cache.get(new ExtensionConfig("Be Clarke", "alloy", "Say hi"))).isNull();
+    assertThat(cache.get(new ExtensionConfig("Be Clarke", "echo", "Say hello"))).isNull();
+    assertThat(cache.get(new ExtensionConfig("Be Asimov", "alloy", "Say hello"))).isNull();
+  }
+
+  @Test
+  @DisplayName("Should keep the first greeting and skip empty or overlong ones")
+  void shouldSkipUnusableGreetings() {
+    GreetingCache cache = new GreetingCache(null, null);
+    cache.put(config, new byte[0], "");
+    cache.put(config, new byte[GreetingCache.MAX_AUDIO_BYTES + 1], "");
+    assertThat(cache.get(config)).isNull();
+
+    cache.put(config, new byte[] {1}, "First");
+    cache.put(config, new byte[] {2}, "Second");
+    assertThat(cache.get(config).getTranscript()).isEqualTo("First");
+  }
+
+  @Test
+  @DisplayName("Should read back greetings of current configurations and delete the others")
+  void shouldLoadCurrentGreetingsAndDeleteStaleOnes(@TempDir Path directory) throws IOException {
+    ExtensionConfig stale = new ExtensionConfig("Be Clarke", "alloy", "Say hi");
+    String key = GreetingCache.key(config);
+    String staleKey = GreetingCache.key(stale);
+    Files.write(
+        directory.resolve(key + GreetingCache.FILE_SUFFIX),
+        GreetingCache.encode(key, new GreetingCache.Greeting(new byte[] {4, 5}, "Hello")));
+    Files.write(
+        directory.resolve(staleKey + GreetingCache.FILE_SUFFIX),
+        GreetingCache.encode(staleKey, new GreetingCache.Greeting(new byte[] {6}, "Hi")));
+
+    GreetingCache cache = new GreetingCache(null, directory);
+    cache.load(List.of(config));
+
+    assertThat(cache.get(config).getAudio()).containsExactly(4, 5);
+    assertThat(cache.get(config).getTranscript()).isEqualTo("Hello");
+    assertThat(cache.get(stale)).isNull();
+    assertThat(directory.resolve(staleKey + GreetingCache.FILE_SUFFIX)).doesNotExist();
+  }
+
+  @Test
+  @DisplayName("Should reject a greeting file of another configuration")
+  void shouldRejectGreetingOfOtherConfiguration() {
+    byte[] data =
+        GreetingCache.encode("other", new GreetingCache.Greeting(new byte[] {1}, "Hello"));
+
+    assertThatThrownBy(() -> GreetingCache.decode(GreetingCache.key(config), data))
+        .isInstanceOf(IOException.class);
+  }
+
+  @Test
+  @DisplayName("Should record decoded audio until it is too long to cache")
+  void shouldRecordUntilTooLong() {
+    GreetingCache.Recorder recorder = new GreetingCache.Recorder();
+    char[] chunk = Base64.getEncoder().encodeToString(new byte[6000]).toCharArray();
+
+    recorder.appendBase64(chunk, 0, chunk.length);
+    recorder.appendBase64(chunk, 0, chunk.length);
+    assertThat(recorder.getAudio()).hasSize(12000);
+
+    for (int i = 0; i < GreetingCache.MAX_AUDIO_BYTES / 6000; i++) {
+      recorder.appendBase64(chunk, 0, chunk.length);
+    }
+    assertThat(recorder.getAudio()).isNull();
+  }
+}
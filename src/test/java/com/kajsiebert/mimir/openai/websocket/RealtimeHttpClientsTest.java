@@ -0,0 +1,115 @@
+package com.kajsiebert.mimir.openai.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import io.netty.handler.ssl.SslContext;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.net.JdkSSLEngineOptions;
+import io.vertx.core.net.OpenSSLEngineOptions;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("RealtimeHttpClients Tests")
+class RealtimeHttpClientsTest {
+
+  @Mock private Vertx vertx;
+
+  @Test
+  @DisplayName("Should hand out the shared clients round robin")
+  void shouldHandOutClientsRoundRobin() {
+    HttpClient first = mock(HttpClient.class);
+    HttpClient second = mock(HttpClient.class);
+    when(vertx.createHttpClient(any(HttpClientOptions.class))).thenReturn(first, second);
+
+    RealtimeHttpClients clients = new RealtimeHttpClients(vertx, 2, false);
+
+    assertThat(clients.getSize()).isEqualTo(2);
+    assertThat(clients.next()).isSameAs(first);
+    assertThat(clients.next()).isSameAs(second);
+    assertThat(clients.next()).isSameAs(first);
+    verify(vertx, times(2)).createHttpClient(any(HttpClientOptions.class));
+  }
+
+  @Test
+  @DisplayName("Should hand every client the same SSL context")
+  void shouldShareSslContextAcrossClients() throws Exception {
+    ArgumentCaptor<HttpClientOptions> options = ArgumentCaptor.forClass(HttpClientOptions.class);
+    when(vertx.createHttpClient(options.capture()))
+        .thenReturn(mock(HttpClient.class), mock(HttpClient.class));
+
+    new RealtimeHttpClients(vertx, 2, false);
+
+    // Each client builds its context from its own copy of the options, as Vert.x does
+    SslContext first = clientContext(new HttpClientOptions(options.getAllValues().get(0)), false);
+    SslContext second = clientContext(new HttpClientOptions(options.getAllValues().get(1)), false);
+    SslContext alpn = clientContext(new HttpClientOptions(options.getAllValues().get(1)), true);
+
+    assertThat(second).isSameAs(first);
+    assertThat(alpn).isNotSameAs(first);
+  }
+
+  @Test
+  @DisplayName("Should close every client")
+  void shouldCloseEveryClient() {
+    HttpClient first = mock(HttpClient.class);
+    HttpClient second = mock(HttpClient.class);
+    when(vertx.createHttpClient(any(HttpClientOptions.class))).thenReturn(first, second);
+    when(first.close()).thenReturn(Future.succeededFuture());
+    when(second.close()).thenReturn(Future.succeededFuture());
+    RealtimeHttpClients clients = new RealtimeHttpClients(vertx, 2, false);
+
+    assertThat(clients.close().succeeded()).isTrue();
+
+    verify(first).close();
+    verify(second).close();
+  }
+
+  @Test
+  @DisplayName("Should configure TLS clients for realtime websockets")
+  void shouldConfigureClientsForRealtimeWebsockets() {
+    HttpClientOptions options = RealtimeHttpClients.options(false);
+
+    assertThat(options.isSsl()).isTrue();
+    assertThat(options.getProtocolVersion()).isEqualTo(HttpVersion.HTTP_1_1);
+    assertThat(options.getSslEngineOptions()).isInstanceOf(JdkSSLEngineOptions.class);
+    assertThat(options.getConnectTimeout()).isEqualTo(RealtimeHttpClients.CONNECT_TIMEOUT_MS);
+    assertThat(options.getMaxWebSockets()).isEqualTo(RealtimeHttpClients.MAX_WEBSOCKETS_PER_CLIENT);
+
+    OpenSSLEngineOptions openSsl =
+        (OpenSSLEngineOptions) RealtimeHttpClients.options(true).getSslEngineOptions();
+    assertThat(openSsl.isSessionCacheEnabled()).isTrue();
+  }
+
+  @Test
+  @DisplayName("Should require at least one client")
+  void shouldRequireAtLeastOneClient() {
+    assertThatThrownBy(() -> new RealtimeHttpClients(vertx, 0, false))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private static SslContext clientContext(HttpClientOptions options, boolean useAlpn)
+      throws Exception {
+    return options
+        .getSslEngineOptions()
+        .sslContextFactory()
+        .forClient(true)
+        .useAlpn(useAlpn)
+        .create();
+  }
+}
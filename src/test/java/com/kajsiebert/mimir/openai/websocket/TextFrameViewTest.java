@@ -0,0 +1,89 @@
+package com.kajsiebert.mimir.openai.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.http.WebSocketFrame;
+import io.vertx.core.http.impl.ws.WebSocketFrameImpl;
+
+@DisplayName("TextFrameView Tests")
+class TextFrameViewTest {
+
+  /** The Vert.x version whose frame class the views were checked against. */
+  private static final String VERIFIED_VERTX_VERSION = "4.4.5";
+
+  private static ByteBuf text(String text) {
+    return Unpooled.unreleasableBuffer(
+        Unpooled.copiedBuffer(text.getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  @Test
+  @DisplayName("Should be checked again when Vert.x is upgraded")
+  void shouldBeVerifiedAgainstThisVertxVersion() throws IOException {
+    String version;
+    try (InputStream in =
+        WebSocketFrame.class
+            .getClassLoader()
+            .getResourceAsStream("META-INF/vertx/vertx-version.txt")) {
+      version = new String(in.readAllBytes(), StandardCharsets.US_ASCII).trim();
+    }
+
+    assertThat(version)
+        .as(
+            "TextFrameView relies on the internal WebSocketFrameImpl viewing the buffer and never"
+                + " releasing it. Check that this still holds on Vert.x %s, then update this test.",
+            version)
+        .isEqualTo(VERIFIED_VERTX_VERSION);
+    assertThat(TextFrameView.VIEWS_SUPPORTED).isTrue();
+  }
+
+  @Test
+  @DisplayName("Should write the buffer's current bytes without copying them")
+  void shouldViewBuffer() {
+    ByteBuf buffer = text("{\"a\":1}");
+    TextFrameView view = new TextFrameView(buffer);
+    WebSocketFrame frame = view.frame();
+
+    buffer.setByte(5, '2');
+
+    assertThat(frame.isText()).isTrue();
+    assertThat(frame.isFinal()).isTrue();
+    assertThat(frame.textData()).isEqualTo("{\"a\":2}");
+    assertThat(view.frame()).isSameAs(frame);
+  }
+
+  @Test
+  @DisplayName("Should keep the buffer usable after a written frame was released")
+  void shouldSurviveRelease() {
+    ByteBuf buffer = text("{\"a\":1}");
+    WebSocketFrameImpl frame = (WebSocketFrameImpl) new TextFrameView(buffer).frame();
+
+    // What Netty's frame encoder does with a written frame
+    frame.getBinaryData().release();
+
+    assertThat(frame.getBinaryData().refCnt()).isPositive();
+    assertThat(frame.textData()).isEqualTo("{\"a\":1}");
+  }
+
+  @Test
+  @DisplayName("Should copy the buffer into each frame when frames cannot view it")
+  void shouldCopyWhenViewsAreUnavailable() {
+    ByteBuf buffer = text("{\"a\":1}");
+    TextFrameView view = new TextFrameView(buffer, false);
+    WebSocketFrame first = view.frame();
+
+    buffer.setByte(5, '2');
+
+    assertThat(first.isText()).isTrue();
+    assertThat(first.textData()).isEqualTo("{\"a\":1}");
+    assertThat(view.frame().textData()).isEqualTo("{\"a\":2}");
+  }
+}
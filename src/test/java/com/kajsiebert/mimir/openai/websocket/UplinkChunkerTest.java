@@ -0,0 +1,80 @@
+package com.kajsiebert.mimir.openai.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("UplinkChunker Tests")
+class UplinkChunkerTest {
+
+  private static final long RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(30);
+
+  @Test
+  @DisplayName("Should start with the smallest chunk")
+  void shouldStartWithTheSmallestChunk() {
+    UplinkChunker chunker = new UplinkChunker(20, 250);
+
+    assertThat(chunker.getChunkMs()).isEqualTo(20);
+    assertThat(chunker.update(0, 0, 0)).isEqualTo(160);
+    assertThat(chunker.getMaxChunkBytes()).isEqualTo(2000);
+  }
+
+  @Test
+  @DisplayName("Should double the chunk while the write queue builds up")
+  void shouldDoubleTheChunkWhileTheWriteQueueBuildsUp() {
+    UplinkChunker chunker = new UplinkChunker(20, 250);
+
+    chunker.update(1000, RTT_NANOS, RTT_NANOS);
+    assertThat(chunker.getChunkMs()).isEqualTo(40);
+    chunker.update(1000, RTT_NANOS, RTT_NANOS);
+    assertThat(chunker.getChunkMs()).isEqualTo(80);
+    chunker.update(1000, RTT_NANOS, RTT_NANOS);
+    assertThat(chunker.getChunkMs()).isEqualTo(80);
+    chunker.update(10000, RTT_NANOS, RTT_NANOS);
+    chunker.update(10000, RTT_NANOS, RTT_NANOS);
+    assertThat(chunker.getChunkMs()).isEqualTo(250);
+  }
+
+  @Test
+  @DisplayName("Should grow the chunk when the round trip time is inflated")
+  void shouldGrowTheChunkWhenTheRoundTripTimeIsInflated() {
+    UplinkChunker chunker = new UplinkChunker(20, 250);
+
+    chunker.update(0, RTT_NANOS + UplinkChunker.CONGESTION_DELAY_NANOS + 1, RTT_NANOS);
+
+    assertThat(chunker.getChunkMs()).isEqualTo(40);
+  }
+
+  @Test
+  @DisplayName("Should shrink the chunk one frame at a time once the link is idle")
+  void shouldShrinkTheChunkOneFrameAtATimeOnceTheLinkIsIdle() {
+    UplinkChunker chunker = new UplinkChunker(20, 100);
+    chunker.update(10000, RTT_NANOS, RTT_NANOS);
+    chunker.update(10000, RTT_NANOS, RTT_NANOS);
+    assertThat(chunker.getChunkMs()).isEqualTo(80);
+
+    // Some audio still queued but not building up holds the size
+    chunker.update(100, RTT_NANOS, RTT_NANOS);
+    assertThat(chunker.getChunkMs()).isEqualTo(80);
+
+    chunker.update(0, RTT_NANOS, RTT_NANOS);
+    assertThat(chunker.getChunkMs()).isEqualTo(60);
+    for (int i = 0; i < 10; i++) {
+      chunker.update(0, RTT_NANOS, RTT_NANOS);
+    }
+    assertThat(chunker.getChunkMs()).isEqualTo(20);
+  }
+
+  @Test
+  @DisplayName("Should reject a range below one frame or inverted")
+  void shouldRejectARangeBelowOneFrameOrInverted() {
+    assertThatThrownBy(() -> new UplinkChunker(10, 250))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> new UplinkChunker(100, 40))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
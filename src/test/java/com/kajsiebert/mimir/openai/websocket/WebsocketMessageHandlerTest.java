@@ -1,6 +1,7 @@
 package com.kajsiebert.mimir.openai.websocket;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.util.function.Consumer;
 
@@ -144,6 +145,33 @@ class WebsocketMessageHandlerTest {
     assertThat(registeredTypes).doesNotContain("no.annotation");
   }
 
+  @Test
+  @DisplayName("Should dispatch to the instance handling the message")
+  void shouldDispatchToTheInstanceHandlingTheMessage() {
+    TestableMessageHandler other = new TestableMessageHandler();
+
+    other.handle("test.message", new JsonObject());
+
+    assertThat(other.getHandleCount("test.message")).isEqualTo(1);
+    assertThat(messageHandler.getHandleCount("test.message")).isZero();
+    assertThat(other.getRegisteredMessageTypes())
+        .containsExactlyInAnyOrder(messageHandler.getRegisteredMessageTypes());
+  }
+
+  @Test
+  @DisplayName("Should reject handler methods that do not take a JsonObject")
+  void shouldRejectHandlerMethodsThatDoNotTakeAJsonObject() {
+    assertThatThrownBy(InvalidMessageHandler::new)
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("handleText");
+  }
+
+  /** Handler with a method the dispatch table cannot call */
+  private static class InvalidMessageHandler extends WebsocketMessageHandler {
+    @WebsocketMessage("invalid.message")
+    public void handleText(String msg) {}
+  }
+
   /** Test implementation of WebsocketMessageHandler for testing purposes */
   private static class TestableMessageHandler extends WebsocketMessageHandler {
 
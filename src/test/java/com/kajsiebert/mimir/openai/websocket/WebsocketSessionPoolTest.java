@@ -0,0 +1,162 @@
+package com.kajsiebert.mimir.openai.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import io.vertx.core.Vertx;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("WebsocketSessionPool Tests")
+class WebsocketSessionPoolTest {
+
+  @Mock private Vertx vertx;
+
+  private final List<WebsocketSession> created = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    lenient().when(vertx.setPeriodic(anyLong(), any())).thenReturn(1L);
+  }
+
+  private WebsocketSessionPool createPool(int maxSize, long refreshAgeMs) {
+    return new WebsocketSessionPool(
+        vertx,
+        "100",
+        maxSize,
+        refreshAgeMs,
+        () -> {
+          WebsocketSession session = mock(WebsocketSession.class);
+          lenient().when(session.getState()).thenReturn(WebsocketSessionState.CONNECTED);
+          created.add(session);
+          return session;
+        });
+  }
+
+  @Test
+  @DisplayName("Should prewarm one session when started")
+  void shouldPrewarmOneSessionWhenStarted() {
+    WebsocketSessionPool pool = createPool(4, WebsocketSessionPool.DEFAULT_REFRESH_AGE_MS);
+
+    pool.start();
+
+    assertThat(created).hasSize(1);
+    verify(created.get(0)).prewarm();
+    assertThat(pool.getIdleCount()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("Should hand out a configured session before one still being set up")
+  void shouldPreferConfiguredSessions() {
+    WebsocketSessionPool pool = createPool(4, WebsocketSessionPool.DEFAULT_REFRESH_AGE_MS);
+    pool.start();
+    // A burst of calls raises the target above one
+    for (int i = 0; i < 5; i++) {
+      pool.take();
+    }
+    pool.maintain();
+    assertThat(pool.getIdleCount()).isGreaterThan(1);
+    WebsocketSession ready = created.get(created.size() - 1);
+    when(ready.isReady()).thenReturn(true);
+
+    assertThat(pool.take()).isSameAs(ready);
+  }
+
+  @Test
+  @DisplayName("Should report a miss when no session is idle")
+  void shouldReportMissWhenEmpty() {
+    WebsocketSessionPool pool = createPool(1, WebsocketSessionPool.DEFAULT_REFRESH_AGE_MS);
+    pool.start();
+
+    assertThat(pool.take()).isSameAs(created.get(0));
+    assertThat(pool.take()).isNull();
+    assertThat(pool.getHits()).isEqualTo(1);
+    assertThat(pool.getMisses()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("Should drop sessions the server closed and replace them")
+  void shouldReplaceTerminatedSessions() {
+    WebsocketSessionPool pool = createPool(1, WebsocketSessionPool.DEFAULT_REFRESH_AGE_MS);
+    pool.start();
+    when(created.get(0).getState()).thenReturn(WebsocketSessionState.TERMINATED);
+
+    pool.refill();
+
+    assertThat(created).hasSize(2);
+    assertThat(pool.getIdleCount()).isEqualTo(1);
+    assertThat(pool.take()).isSameAs(created.get(1));
+  }
+
+  @Test
+  @DisplayName("Should close and replace sessions older than the refresh age")
+  void shouldRefreshOldSessions() throws InterruptedException {
+    WebsocketSessionPool pool = createPool(1, 1);
+    pool.start();
+
+    TimeUnit.MILLISECONDS.sleep(5);
+    pool.refill();
+
+    verify(created.get(0)).close();
+    assertThat(created).hasSize(2);
+    assertThat(pool.getIdleCount()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("Should size the pool from the call rate within the maximum")
+  void shouldSizePoolFromCallRate() {
+    WebsocketSessionPool pool = createPool(3, WebsocketSessionPool.DEFAULT_REFRESH_AGE_MS);
+    pool.start();
+    assertThat(pool.getTargetSize()).isEqualTo(1);
+
+    for (int interval = 0; interval < 10; interval++) {
+      for (int i = 0; i < 50; i++) {
+        pool.take();
+      }
+      pool.maintain();
+    }
+
+    assertThat(pool.getTargetSize()).isEqualTo(3);
+    assertThat(pool.getIdleCount()).isEqualTo(3);
+  }
+
+  @Test
+  @DisplayName("Should close idle sessions and stop refilling when closed")
+  void shouldCloseIdleSessions() {
+    WebsocketSessionPool pool = createPool(1, WebsocketSessionPool.DEFAULT_REFRESH_AGE_MS);
+    pool.start();
+
+    pool.close();
+    pool.refill();
+
+    verify(created.get(0)).close();
+    verify(vertx).cancelTimer(1L);
+    assertThat(created).hasSize(1);
+    assertThat(pool.getIdleCount()).isZero();
+    verify(vertx, never()).runOnContext(any());
+  }
+
+  @Test
+  @DisplayName("Should reject a pool without sessions")
+  void shouldRejectEmptyPool() {
+    assertThatThrownBy(() -> createPool(0, WebsocketSessionPool.DEFAULT_REFRESH_AGE_MS))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
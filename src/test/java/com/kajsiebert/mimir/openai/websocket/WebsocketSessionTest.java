@@ -3,14 +3,19 @@ package com.kajsiebert.mimir.openai.websocket;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -22,8 +27,11 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import com.kajsiebert.mimir.openai.ExtensionConfig;
+import com.kajsiebert.mimir.openai.rtp.RTPAudioBuffer;
 
 import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
@@ -51,6 +59,8 @@ class WebsocketSessionTest {
 
   @Mock private ExtensionConfig extensionConfig;
 
+  @Mock private Context context;
+
   private WebsocketSession websocketSession;
   private AtomicReference<Handler<WebSocketFrame>> frameHandler;
   private AtomicReference<Handler<Throwable>> exceptionHandler;
@@ -112,6 +122,18 @@ class WebsocketSessionTest {
     lenient().when(webSocket.writeTextMessage(anyString())).thenReturn(null);
     lenient().when(webSocket.close()).thenReturn(null);
 
+    // Run the tasks of the session's context right away
+    lenient().when(vertx.getOrCreateContext()).thenReturn(context);
+    lenient()
+        .doAnswer(
+            invocation -> {
+              Handler<Void> task = invocation.getArgument(0);
+              task.handle(null);
+              return null;
+            })
+        .when(context)
+        .runOnContext(any());
+
     websocketSession = new WebsocketSession(vertx, extensionConfig);
   }
 
@@ -131,6 +153,17 @@ class WebsocketSessionTest {
     verify(httpClient).webSocket(any(WebSocketConnectOptions.class), any());
   }
 
+  @Test
+  @DisplayName("Should connect from the context it owns")
+  void shouldConnectFromItsContext() {
+    assertThat(websocketSession.getContext()).isSameAs(context);
+
+    websocketSession.start();
+
+    verify(context).runOnContext(any());
+    verify(httpClient).webSocket(any(WebSocketConnectOptions.class), any());
+  }
+
   @Test
   @DisplayName("Should setup WebSocket handlers on successful connection")
   void shouldSetupWebSocketHandlersOnSuccessfulConnection() {
@@ -149,14 +182,139 @@ class WebsocketSessionTest {
 
     websocketSession.start();
 
-    verify(webSocket).writeTextMessage(messageCaptor.capture());
-    String sentMessage = messageCaptor.getValue();
+    // The greeting request is pipelined right behind the configuration
+    verify(webSocket, times(2)).writeTextMessage(messageCaptor.capture());
+    String sentMessage = messageCaptor.getAllValues().get(0);
     JsonObject sentJson = new JsonObject(sentMessage);
 
     assertThat(sentJson.getString("type")).isEqualTo("session.update");
     assertThat(sentJson.getJsonObject("session").getString("instructions"))
         .isEqualTo("Test instructions");
     assertThat(sentJson.getJsonObject("session").getString("voice")).isEqualTo("alloy");
+    assertThat(new JsonObject(messageCaptor.getAllValues().get(1)).getString("type"))
+        .isEqualTo("response.create");
+  }
+
+  @Test
+  @DisplayName("Should time each phase of the session bootstrap")
+  void shouldTimeEachBootstrapPhase() {
+    websocketSession.start();
+    SessionTimings timings = websocketSession.getTimings();
+    assertThat(timings.reached(SessionTimings.Phase.CONNECTED)).isTrue();
+    assertThat(timings.reached(SessionTimings.Phase.RESPONSE_REQUESTED)).isTrue();
+    assertThat(timings.getNanos(SessionTimings.Phase.SESSION_CREATED)).isEqualTo(-1);
+
+    simulateTextFrame(new JsonObject().put("type", "session.created").encode());
+    simulateTextFrame(new JsonObject().put("type", "session.updated").encode());
+    simulateTextFrame(
+        new JsonObject()
+            .put("type", "response.audio.delta")
+            .put("delta", Base64.getEncoder().encodeToString(new byte[] {1}))
+            .encode());
+
+    for (SessionTimings.Phase phase : SessionTimings.Phase.values()) {
+      assertThat(timings.getNanos(phase)).as(phase.name()).isGreaterThanOrEqualTo(0);
+    }
+    assertThat(timings.getNanos(SessionTimings.Phase.FIRST_AUDIO))
+        .isGreaterThanOrEqualTo(timings.getNanos(SessionTimings.Phase.SESSION_UPDATED));
+    assertThat(websocketSession.state).isEqualTo(WebsocketSessionState.AUDIO_RECEIVED);
+    assertThat(timings.toString()).startsWith("SessionTimings{connected=").contains("first audio=");
+  }
+
+  @Test
+  @DisplayName("Should record a generated greeting into the cache")
+  void shouldRecordGeneratedGreeting() {
+    GreetingCache cache = new GreetingCache(vertx, null);
+    WebsocketSession session = new WebsocketSession(vertx, extensionConfig, null, cache);
+    session.start();
+    byte[] greeting = {1, 2, 3, 4, 5, 6};
+
+    simulateTextFrame(new JsonObject().put("type", "session.created").encode());
+    simulateTextFrame(new JsonObject().put("type", "session.updated").encode());
+    simulateTextFrame(
+        new JsonObject()
+            .put("type", "response.audio.delta")
+            .put("delta", Base64.getEncoder().encodeToString(Arrays.copyOf(greeting, 3)))
+            .encode());
+    simulateTextFrame(
+        "{\"delta\":\""
+            + Base64.getEncoder().encodeToString(Arrays.copyOfRange(greeting, 3, 6))
+            + "\",\"type\":\"response.audio.delta\"}");
+    simulateTextFrame(
+        new JsonObject()
+            .put("type", "response.audio_transcript.done")
+            .put("transcript", "Hello there")
+            .encode());
+    assertThat(cache.get(extensionConfig)).isNull();
+    simulateTextFrame(responseDone("completed"));
+
+    GreetingCache.Greeting cached = cache.get(extensionConfig);
+    assertThat(cached.getAudio()).isEqualTo(greeting);
+    assertThat(cached.getTranscript()).isEqualTo("Hello there");
+  }
+
+  @Test
+  @DisplayName("Should not cache a greeting the caller interrupted")
+  void shouldNotCacheInterruptedGreeting() {
+    GreetingCache cache = new GreetingCache(vertx, null);
+    WebsocketSession session = new WebsocketSession(vertx, extensionConfig, null, cache);
+    session.start();
+
+    simulateTextFrame(
+        new JsonObject()
+            .put("type", "response.audio.delta")
+            .put("delta", Base64.getEncoder().encodeToString(new byte[] {1, 2, 3}))
+            .encode());
+    simulateTextFrame(new JsonObject().put("type", "input_audio_buffer.speech_started").encode());
+    simulateTextFrame(responseDone("cancelled"));
+
+    assertThat(cache.get(extensionConfig)).isNull();
+  }
+
+  @Test
+  @DisplayName("Should play a cached greeting right away and only tell the model about it")
+  void shouldPlayCachedGreeting() {
+    GreetingCache cache = new GreetingCache(vertx, null);
+    byte[] greeting = new byte[200];
+    Arrays.fill(greeting, (byte) 7);
+    cache.put(extensionConfig, greeting, "Hello there");
+    AtomicReference<WebsocketSessionState> callbackState = new AtomicReference<>();
+    WebsocketSession session = new WebsocketSession(vertx, extensionConfig, null, cache);
+    session.onAudioReceived(callbackState::set);
+    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+
+    session.start();
+
+    assertThat(callbackState.get()).isEqualTo(WebsocketSessionState.AUDIO_RECEIVED);
+    Buffer packet = session.getNextRtpPacket();
+    assertThat(packet.getBytes(12, packet.length())).containsOnly(7);
+    verify(webSocket, times(2)).writeTextMessage(messageCaptor.capture());
+    assertThat(new JsonObject(messageCaptor.getAllValues().get(0)).getString("type"))
+        .isEqualTo("session.update");
+    JsonObject item = new JsonObject(messageCaptor.getAllValues().get(1));
+    assertThat(item.getString("type")).isEqualTo("conversation.item.create");
+    assertThat(item.getJsonObject("item").getString("role")).isEqualTo("assistant");
+    assertThat(
+            item.getJsonObject("item").getJsonArray("content").getJsonObject(0).getString("text"))
+        .isEqualTo("Hello there");
+
+    // The live session catching up does not move the state back
+    simulateTextFrame(new JsonObject().put("type", "session.created").encode());
+    simulateTextFrame(new JsonObject().put("type", "session.updated").encode());
+    assertThat(session.getState()).isEqualTo(WebsocketSessionState.AUDIO_RECEIVED);
+    assertThat(session.getTimings().reached(SessionTimings.Phase.SESSION_UPDATED)).isTrue();
+  }
+
+  @Test
+  @DisplayName("Should not send caller audio before the session is configured")
+  void shouldNotSendAudioBeforeConnected() {
+    RTPAudioBuffer source = mock(RTPAudioBuffer.class);
+
+    assertThat(websocketSession.sendAudio(source, 160)).isZero();
+    websocketSession.sendAudio(new byte[160]);
+
+    verify(source, never()).readAudioBase64(any(), anyInt(), anyInt());
+    verify(webSocket, never()).writeFrame(any(), any());
   }
 
   @Test
@@ -218,6 +376,108 @@ class WebsocketSessionTest {
     assertThat(websocketSession.state).isEqualTo(WebsocketSessionState.ANSWERED);
   }
 
+  @Test
+  @DisplayName("Should connect through the shared clients without creating one")
+  void shouldConnectThroughSharedClients() {
+    RealtimeHttpClients httpClients = mock(RealtimeHttpClients.class);
+    when(httpClients.next()).thenReturn(httpClient);
+    WebsocketSession shared = new WebsocketSession(vertx, extensionConfig, httpClients);
+
+    shared.start();
+    shared.close();
+
+    verify(httpClient).webSocket(any(WebSocketConnectOptions.class), any());
+    verify(vertx, never()).createHttpClient(any(HttpClientOptions.class));
+    verify(httpClient, never()).close();
+  }
+
+  @Test
+  @DisplayName("Should close its own client when the session closes")
+  void shouldCloseOwnClientWhenSessionCloses() {
+    websocketSession.start();
+
+    simulateClose();
+    websocketSession.close();
+
+    verify(httpClient).close();
+  }
+
+  @Test
+  @DisplayName("Should keep a prewarmed session configured until it is claimed")
+  void shouldKeepPrewarmedSessionUntilClaimed() {
+    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    websocketSession.prewarm();
+    simulateTextFrame(new JsonObject().put("type", "session.created").encode());
+    simulateTextFrame(new JsonObject().put("type", "session.updated").encode());
+
+    assertThat(websocketSession.isReady()).isTrue();
+    assertThat(websocketSession.getSetupNanos()).isPositive();
+    verify(webSocket).writeTextMessage(anyString());
+
+    websocketSession.claim();
+
+    verify(webSocket, times(2)).writeTextMessage(messageCaptor.capture());
+    assertThat(new JsonObject(messageCaptor.getAllValues().get(1)).getString("type"))
+        .isEqualTo("response.create");
+    assertThat(websocketSession.state).isEqualTo(WebsocketSessionState.ANSWERED);
+    assertThat(websocketSession.isReady()).isFalse();
+  }
+
+  @Test
+  @DisplayName("Should answer a session claimed while it is still being set up once configured")
+  void shouldAnswerSessionClaimedDuringSetup() {
+    websocketSession.prewarm();
+    simulateTextFrame(new JsonObject().put("type", "session.created").encode());
+
+    websocketSession.claim();
+    assertThat(websocketSession.state).isEqualTo(WebsocketSessionState.SESSION_CREATED);
+
+    simulateTextFrame(new JsonObject().put("type", "session.updated").encode());
+    assertThat(websocketSession.state).isEqualTo(WebsocketSessionState.ANSWERED);
+  }
+
+  @Test
+  @DisplayName("Should configure a session claimed while it connects before answering it")
+  void shouldConfigureBeforeAnsweringSessionClaimedWhileConnecting() {
+    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    // The claim races in after the connection is up but before the configuration is written
+    when(webSocket.pongHandler(any()))
+        .thenAnswer(
+            invocation -> {
+              websocketSession.claim();
+              return webSocket;
+            });
+
+    websocketSession.prewarm();
+
+    verify(webSocket, times(2)).writeTextMessage(messageCaptor.capture());
+    assertThat(new JsonObject(messageCaptor.getAllValues().get(0)).getString("type"))
+        .isEqualTo("session.update");
+    assertThat(new JsonObject(messageCaptor.getAllValues().get(1)).getString("type"))
+        .isEqualTo("response.create");
+  }
+
+  @Test
+  @DisplayName("Should end the call when the connection fails")
+  void shouldEndCallWhenConnectionFails() {
+    AtomicReference<WebsocketSessionState> callbackState = new AtomicReference<>();
+    websocketSession.onCallEnded(callbackState::set);
+    doAnswer(
+            invocation -> {
+              Handler<AsyncResult<WebSocket>> resultHandler = invocation.getArgument(1);
+              resultHandler.handle(Future.failedFuture("connection refused"));
+              return null;
+            })
+        .when(httpClient)
+        .webSocket(any(WebSocketConnectOptions.class), any());
+
+    websocketSession.start();
+
+    assertThat(websocketSession.getState()).isEqualTo(WebsocketSessionState.TERMINATED);
+    assertThat(callbackState.get()).isEqualTo(WebsocketSessionState.TERMINATED);
+    websocketSession.close();
+  }
+
   @Test
   @DisplayName("Should handle response.audio.delta message and update state")
   void shouldHandleResponseAudioDeltaMessageAndUpdateState() {
@@ -237,6 +497,67 @@ class WebsocketSessionTest {
     assertThat(nextPacket).isNotNull();
   }
 
+  @Test
+  @DisplayName("Should play the comfort tone until the first audio arrives")
+  void shouldPlayComfortToneUntilFirstAudio() {
+    websocketSession.start();
+    websocketSession.playComfortTone();
+    assertThat(websocketSession.getNextRtpPacket()).isNotNull();
+
+    byte[] testAudio = {1, 2, 3};
+    simulateTextFrame(
+        new JsonObject()
+            .put("type", "response.audio.delta")
+            .put("delta", Base64.getEncoder().encodeToString(testAudio))
+            .encode());
+
+    Buffer packet = websocketSession.getNextRtpPacket();
+    assertThat(packet.getBytes(12, packet.length())).isEqualTo(testAudio);
+    assertThat(websocketSession.getNextRtpPacket()).isNull();
+
+    // Too late for a tone once the model is talking
+    websocketSession.playComfortTone();
+    assertThat(websocketSession.getNextRtpPacket()).isNull();
+  }
+
+  @Test
+  @DisplayName("Should stream audio deltas past the fields before the delta")
+  void shouldStreamAudioDeltaPastOtherFields() {
+    websocketSession.start();
+    byte[] testAudio = {1, 2, 3, 4, 5, 6, 7};
+    JsonObject audioDeltaMsg =
+        new JsonObject()
+            .put("type", "response.audio.delta")
+            .put("event_id", "event_123")
+            .put("meta", new JsonObject().put("delta", "bm90IGF1ZGlv").put("list", JsonArray.of(1)))
+            .put("output_index", 0)
+            .put("delta", Base64.getEncoder().encodeToString(testAudio))
+            .put("item_id", "item_456");
+
+    simulateTextFrame(audioDeltaMsg.encode());
+
+    Buffer packet = websocketSession.getNextRtpPacket();
+    assertThat(packet.getBytes(12, packet.length())).isEqualTo(testAudio);
+    assertThat(websocketSession.state).isEqualTo(WebsocketSessionState.AUDIO_RECEIVED);
+  }
+
+  @Test
+  @DisplayName("Should handle audio deltas whose delta comes before their type")
+  void shouldHandleAudioDeltaWithDeltaBeforeType() {
+    websocketSession.start();
+    byte[] testAudio = {9, 8, 7};
+    String msg =
+        "{\"delta\":\""
+            + Base64.getEncoder().encodeToString(testAudio)
+            + "\",\"type\":\"response.audio.delta\"}";
+
+    simulateTextFrame(msg);
+
+    Buffer packet = websocketSession.getNextRtpPacket();
+    assertThat(packet.getBytes(12, packet.length())).isEqualTo(testAudio);
+    assertThat(websocketSession.state).isEqualTo(WebsocketSessionState.AUDIO_RECEIVED);
+  }
+
   @Test
   @DisplayName("Should handle input_audio_buffer.speech_started message and clear audio")
   void shouldHandleInputAudioBufferSpeechStartedMessage() {
@@ -282,15 +603,17 @@ class WebsocketSessionTest {
   @Test
   @DisplayName("Should send audio data correctly")
   void shouldSendAudioDataCorrectly() {
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<WebSocketFrame> frameCaptor = ArgumentCaptor.forClass(WebSocketFrame.class);
     websocketSession.start();
 
     byte[] audioData = {1, 2, 3, 4, 5};
     websocketSession.sendAudio(audioData);
 
-    verify(webSocket, times(2)).writeTextMessage(messageCaptor.capture());
-    String sentMessage = messageCaptor.getAllValues().get(1); // Second message
-    JsonObject sentJson = new JsonObject(sentMessage);
+    // Audio is written as a text frame with a completion handler that tracks the uplink queue
+    verify(webSocket).writeFrame(frameCaptor.capture(), any());
+    WebSocketFrame sentFrame = frameCaptor.getValue();
+    assertThat(sentFrame.isText()).isTrue();
+    JsonObject sentJson = new JsonObject(sentFrame.textData());
 
     assertThat(sentJson.getString("type")).isEqualTo("input_audio_buffer.append");
     String sentAudioB64 = sentJson.getString("audio");
@@ -298,6 +621,121 @@ class WebsocketSessionTest {
     assertThat(decodedAudio).isEqualTo(audioData);
   }
 
+  @Test
+  @DisplayName("Should send a slice of audio data")
+  void shouldSendASliceOfAudioData() {
+    ArgumentCaptor<WebSocketFrame> frameCaptor = ArgumentCaptor.forClass(WebSocketFrame.class);
+    websocketSession.start();
+
+    byte[] audioData = {1, 2, 3, 4, 5, 6, 7};
+    websocketSession.sendAudio(audioData, 2, 4);
+
+    verify(webSocket).writeFrame(frameCaptor.capture(), any());
+    JsonObject sentJson = new JsonObject(frameCaptor.getValue().textData());
+    assertThat(Base64.getDecoder().decode(sentJson.getString("audio")))
+        .isEqualTo(new byte[] {3, 4, 5, 6});
+  }
+
+  @Test
+  @DisplayName("Should send received audio encoded straight from the jitter buffer")
+  void shouldSendReceivedAudioFromTheJitterBuffer() {
+    ArgumentCaptor<WebSocketFrame> frameCaptor = ArgumentCaptor.forClass(WebSocketFrame.class);
+    websocketSession.start();
+    RTPAudioBuffer receivedAudio = new RTPAudioBuffer(0);
+    byte[] packet = new byte[12 + 160];
+    for (int i = 0; i < 160; i++) {
+      packet[12 + i] = (byte) i;
+    }
+    receivedAudio.appendPacket(packet, packet.length);
+
+    assertThat(websocketSession.sendAudio(receivedAudio, 100)).isEqualTo(100);
+    assertThat(websocketSession.sendAudio(receivedAudio, 100)).isEqualTo(60);
+    assertThat(websocketSession.sendAudio(receivedAudio, 100)).isZero();
+
+    verify(webSocket, times(2)).writeFrame(frameCaptor.capture(), any());
+    byte[] sent = new byte[160];
+    int length = 0;
+    for (WebSocketFrame frame : frameCaptor.getAllValues()) {
+      byte[] audio =
+          Base64.getDecoder().decode(new JsonObject(frame.textData()).getString("audio"));
+      System.arraycopy(audio, 0, sent, length, audio.length);
+      length += audio.length;
+    }
+    assertThat(length).isEqualTo(160);
+    assertThat(sent).isEqualTo(Arrays.copyOfRange(packet, 12, packet.length));
+    assertThat(websocketSession.getUplinkPendingBytes()).isEqualTo(160);
+  }
+
+  @Test
+  @DisplayName("Should track audio queued on the websocket until it is written")
+  void shouldTrackAudioQueuedOnTheWebsocketUntilItIsWritten() {
+    ArgumentCaptor<Handler<AsyncResult<Void>>> completionCaptor =
+        ArgumentCaptor.forClass(Handler.class);
+    websocketSession.start();
+
+    websocketSession.sendAudio(new byte[160]);
+    websocketSession.sendAudio(new byte[320]);
+
+    assertThat(websocketSession.getUplinkPendingBytes()).isEqualTo(480);
+    verify(webSocket, times(2)).writeFrame(any(), completionCaptor.capture());
+    completionCaptor.getAllValues().get(0).handle(null);
+    assertThat(websocketSession.getUplinkPendingBytes()).isEqualTo(320);
+  }
+
+  @Test
+  @DisplayName("Should allocate a frame only when every pooled frame is being written")
+  void shouldAllocateFrameOnlyWhenPoolIsExhausted() {
+    ArgumentCaptor<Handler<AsyncResult<Void>>> completionCaptor =
+        ArgumentCaptor.forClass(Handler.class);
+    websocketSession.start();
+
+    for (int i = 0; i <= AudioAppendFramePool.DEFAULT_SIZE; i++) {
+      websocketSession.sendAudio(new byte[160]);
+    }
+    assertThat(websocketSession.getUplinkFrameAllocations()).isEqualTo(1);
+
+    verify(webSocket, times(AudioAppendFramePool.DEFAULT_SIZE + 1))
+        .writeFrame(any(), completionCaptor.capture());
+    completionCaptor.getAllValues().get(0).handle(null);
+    websocketSession.sendAudio(new byte[160]);
+    assertThat(websocketSession.getUplinkFrameAllocations()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("Should measure the round trip time from pongs")
+  void shouldMeasureTheRoundTripTimeFromPongs() {
+    long sentAt = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(40);
+
+    websocketSession.handlePong(Buffer.buffer().appendLong(sentAt));
+
+    assertThat(websocketSession.getSmoothedRttNanos())
+        .isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(40));
+    assertThat(websocketSession.getMinRttNanos()).isEqualTo(websocketSession.getSmoothedRttNanos());
+
+    websocketSession.handlePong(Buffer.buffer("not a probe"));
+    assertThat(websocketSession.getMinRttNanos()).isEqualTo(websocketSession.getSmoothedRttNanos());
+  }
+
+  @Test
+  @DisplayName("Should measure the latency from the end of speech to the first answer audio")
+  void shouldMeasureTheLatencyFromTheEndOfSpeechToTheFirstAnswerAudio() {
+    websocketSession.start();
+    JsonObject audioDeltaMsg =
+        new JsonObject()
+            .put("type", "response.audio.delta")
+            .put("delta", Base64.getEncoder().encodeToString(new byte[] {1}));
+
+    // Audio before any speech, such as the greeting, is not a turn
+    simulateTextFrame(audioDeltaMsg.encode());
+    assertThat(websocketSession.getTurnLatency().count).isZero();
+
+    simulateTextFrame(new JsonObject().put("type", "input_audio_buffer.speech_stopped").encode());
+    simulateTextFrame(audioDeltaMsg.encode());
+    simulateTextFrame(audioDeltaMsg.encode());
+
+    assertThat(websocketSession.getTurnLatency().count).isEqualTo(1);
+  }
+
   @Test
   @DisplayName("Should close WebSocket connection")
   void shouldCloseWebSocketConnection() {
@@ -413,11 +851,19 @@ class WebsocketSessionTest {
   }
 
   // Helper methods for simulating WebSocket events
+  private static String responseDone(String status) {
+    return new JsonObject()
+        .put("type", "response.done")
+        .put("response", new JsonObject().put("status", status))
+        .encode();
+  }
+
   private void simulateTextFrame(String textData) {
     if (frameHandler.get() != null) {
       WebSocketFrame frame = mock(WebSocketFrame.class);
       when(frame.isText()).thenReturn(true);
-      when(frame.textData()).thenReturn(textData);
+      lenient().when(frame.textData()).thenReturn(textData);
+      lenient().when(frame.binaryData()).thenReturn(Buffer.buffer(textData));
       frameHandler.get().handle(frame);
     }
   }